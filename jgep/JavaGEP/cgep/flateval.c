@@ -0,0 +1,201 @@
+/**
+ * FILE: flateval.c
+ *
+ * author: matthew sottile (matt@cs.uoregon.edu)
+ *
+ * Licensed under the terms of the GNU Public Licence.  See LICENCE.GPL 
+ * for details.
+ */
+/**
+ * evaluator for flat (postfix) programs over columnar data.  this is the
+ * expression evaluator of regress.c reworked for the java library: rather
+ * than walking a tree once per test case, the program is run over blocks
+ * of rows, so every instruction is a tight loop over a block of values.
+ *
+ * the semantics follow the java interpreter (jGEP.ArithmeticIndividual
+ * and jGEP.ArithmeticFunctions), so that results agree with it.
+ */
+#include "flateval.h"
+#include <math.h>
+#include <stdlib.h>
+#include <string.h>
+
+/* rows evaluated at a time.  one block per stack slot fits in cache. */
+#define BLOCK 256
+
+/**
+ * java's Math.min/Math.max: NaN if either argument is NaN, and -0.0 is
+ * less than 0.0.
+ */
+static double jmin(double a, double b) {
+  if (a != a || b != b) return NAN;
+  if (a == b) return signbit(a) ? a : b;
+  return (a < b) ? a : b;
+}
+
+static double jmax(double a, double b) {
+  if (a != a || b != b) return NAN;
+  if (a == b) return signbit(a) ? b : a;
+  return (a > b) ? a : b;
+}
+
+/**
+ * java's Math.pow, which differs from C99 for NaN exponents and for
+ * +-1 raised to an infinite power.
+ */
+static double jpow(double a, double b) {
+  if (b != b) return NAN;
+  if (fabs(a) == 1.0 && isinf(b)) return NAN;
+  return pow(a, b);
+}
+
+/**
+ * check that a program is well formed, refers only to existing columns
+ * and constants, and fits in depth stack slots.
+ */
+static int check(const int *code, int len, int nconsts, int depth,
+                 int ncols) {
+  int i, sp = 0;
+
+  for (i = 0; i < len; i++) {
+    int op = code[i];
+
+    if (op >= 0) {
+      if (op >= ncols) return 0;
+      sp++;
+    } else if (op == FLAT_CONST) {
+      if (++i >= len) return 0;
+      if (code[i] < 0 || code[i] >= nconsts) return 0;
+      sp++;
+    } else {
+      switch (op) {
+      case FLAT_SQRT: case FLAT_SIN: case FLAT_COS:
+      case FLAT_EXP:  case FLAT_LOG:
+        if (sp < 1) return 0;
+        break;
+      case FLAT_ADD: case FLAT_SUB: case FLAT_MUL: case FLAT_DIV:
+      case FLAT_MIN: case FLAT_MAX: case FLAT_POW:
+        if (sp < 2) return 0;
+        sp -= 1;
+        break;
+      case FLAT_IF:
+        if (sp < 3) return 0;
+        sp -= 2;
+        break;
+      default:
+        return 0;
+      }
+    }
+    if (sp > depth) return 0;
+  }
+
+  return sp == 1;
+}
+
+int flat_eval(const int *code, int len,
+              const double *consts, int nconsts,
+              int depth, int div,
+              const double *data, long nrows, int ncols,
+              double *out) {
+  double *bufs;
+  const double **slot;
+  long r0;
+  int i, j, n, sp;
+
+  if (depth < 1 || !check(code, len, nconsts, depth, ncols)) 
+    return FLAT_BADPROGRAM;
+
+  /* 
+   * each stack slot owns a block buffer, but a pushed column just points
+   * into the data.  results are always written to the owned buffer.
+   */
+  bufs = (double *)malloc(sizeof(double) * BLOCK * depth);
+  slot = (const double **)malloc(sizeof(double *) * depth);
+  if (bufs == NULL || slot == NULL) {
+    free(bufs);
+    free(slot);
+    return FLAT_NOMEM;
+  }
+
+  for (r0 = 0; r0 < nrows; r0 += BLOCK) {
+    n = (nrows - r0 < BLOCK) ? (int)(nrows - r0) : BLOCK;
+    sp = 0;
+
+    for (i = 0; i < len; i++) {
+      int op = code[i];
+      double *d;
+      const double *a, *b, *c;
+
+      if (op >= 0) {
+        slot[sp++] = data + (long)op * nrows + r0;
+        continue;
+      }
+
+      if (op == FLAT_CONST) {
+        double k = consts[code[++i]];
+        d = bufs + sp * BLOCK;
+        for (j = 0; j < n; j++) d[j] = k;
+        slot[sp++] = d;
+        continue;
+      }
+
+      switch (op) {
+      case FLAT_SQRT: case FLAT_SIN: case FLAT_COS:
+      case FLAT_EXP:  case FLAT_LOG:
+        a = slot[sp-1];
+        d = bufs + (sp-1) * BLOCK;
+        switch (op) {
+        case FLAT_SQRT: for (j = 0; j < n; j++) d[j] = sqrt(a[j]); break;
+        case FLAT_SIN:  for (j = 0; j < n; j++) d[j] = sin(a[j]);  break;
+        case FLAT_COS:  for (j = 0; j < n; j++) d[j] = cos(a[j]);  break;
+        case FLAT_EXP:  for (j = 0; j < n; j++) d[j] = exp(a[j]);  break;
+        case FLAT_LOG:  for (j = 0; j < n; j++) d[j] = log(a[j]);  break;
+        }
+        slot[sp-1] = d;
+        break;
+
+      case FLAT_IF:
+        a = slot[sp-3];
+        b = slot[sp-2];
+        c = slot[sp-1];
+        d = bufs + (sp-3) * BLOCK;
+        for (j = 0; j < n; j++) d[j] = (a[j] > 0.0) ? b[j] : c[j];
+        slot[sp-3] = d;
+        sp -= 2;
+        break;
+
+      default:
+        a = slot[sp-2];
+        b = slot[sp-1];
+        d = bufs + (sp-2) * BLOCK;
+        switch (op) {
+        case FLAT_ADD: for (j = 0; j < n; j++) d[j] = a[j] + b[j]; break;
+        case FLAT_SUB: for (j = 0; j < n; j++) d[j] = a[j] - b[j]; break;
+        case FLAT_MUL: for (j = 0; j < n; j++) d[j] = a[j] * b[j]; break;
+        case FLAT_DIV:
+          if (div == FLAT_DIV_IEEE) {
+            for (j = 0; j < n; j++) d[j] = a[j] / b[j];
+          } else {
+            double z = (div == FLAT_DIV_PROTECTED) ? 1.0 : NAN;
+            for (j = 0; j < n; j++) 
+              d[j] = (b[j] == 0.0) ? z : a[j] / b[j];
+          }
+          break;
+        case FLAT_MIN: for (j = 0; j < n; j++) d[j] = jmin(a[j], b[j]); break;
+        case FLAT_MAX: for (j = 0; j < n; j++) d[j] = jmax(a[j], b[j]); break;
+        case FLAT_POW: for (j = 0; j < n; j++) d[j] = jpow(a[j], b[j]); break;
+        }
+        slot[sp-2] = d;
+        sp -= 1;
+        break;
+      }
+    }
+
+    memcpy(out + r0, slot[0], sizeof(double) * n);
+  }
+
+  free(bufs);
+  free(slot);
+
+  return FLAT_OK;
+}
@@ -0,0 +1,69 @@
+/**
+ * FILE: flateval.h
+ *
+ * author: matthew sottile (matt@cs.uoregon.edu)
+ *
+ * Licensed under the terms of the GNU Public Licence.  See LICENCE.GPL 
+ * for details.
+ */
+#ifndef __FLATEVAL_H__
+#define __FLATEVAL_H__
+
+/**
+ * opcodes of flat programs.  a program is an array of ints in postfix
+ * order.  a non-negative entry pushes the data column with that index,
+ * FLAT_CONST pushes the constant whose index is the next entry, and the
+ * remaining opcodes pop their arguments and push their result.  these
+ * must match jGEP.Program.
+ */
+#define FLAT_CONST  -1
+#define FLAT_ADD    -2
+#define FLAT_SUB    -3
+#define FLAT_MUL    -4
+#define FLAT_DIV    -5
+#define FLAT_SQRT   -6
+#define FLAT_SIN    -7
+#define FLAT_COS    -8
+#define FLAT_EXP    -9
+#define FLAT_LOG   -10
+#define FLAT_MIN   -11
+#define FLAT_MAX   -12
+#define FLAT_POW   -13
+#define FLAT_IF    -14
+
+/**
+ * division semantics for FLAT_DIV when the divisor is zero.
+ */
+#define FLAT_DIV_STRICT     0   /* NaN */
+#define FLAT_DIV_PROTECTED  1   /* 1.0 */
+#define FLAT_DIV_IEEE       2   /* +-inf or NaN */
+
+/**
+ * return codes of flat_eval.
+ */
+#define FLAT_OK          0
+#define FLAT_BADPROGRAM -1
+#define FLAT_NOMEM      -2
+
+#ifdef __cplusplus
+extern "C" {
+#endif
+
+  /**
+   * evaluate a flat program over every row of a data set.  consts holds
+   * the nconsts constants the program refers to.  data holds ncols
+   * columns of nrows doubles each, one column after the other.  depth is
+   * the largest number of values on the stack at once.  one output per
+   * row is written to out.
+   */
+  int flat_eval(const int *code, int len,
+                const double *consts, int nconsts,
+                int depth, int div,
+                const double *data, long nrows, int ncols,
+                double *out);
+
+#ifdef __cplusplus
+}
+#endif
+
+#endif /* __FLATEVAL_H__ */
@@ -0,0 +1,141 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+/**
+ * Stub worker program for jGEP.ProcessFitness.  Reads requests of the
+ * form "id TAB expression" from standard input, and answers each one
+ * with "id TAB fitness".  The expression is scored against x^2 at the
+ * test points of the regression example, by mean absolute error, and the
+ * fitness is 1/(1+error) as with FitnessMetrics.meanAbsoluteError().
+ * Genes separated by " ; " are added together.
+ *
+ * A real worker would run a simulator here instead.  With an argument,
+ * the stub sleeps that many milliseconds per request, to stand in for
+ * one.
+ *
+ * Usage: java fitnessworker [millis]
+ */
+public class fitnessworker {
+    private String s;   // expression being parsed
+    private int    pos;
+    private double a;   // value of the variable
+
+    public static void main(String args[]) throws Exception {
+        BufferedReader in = 
+            new BufferedReader(new InputStreamReader(System.in));
+        PrintStream out = System.out;
+        long sleep = (args.length > 0) ? Long.parseLong(args[0]) : 0;
+        String line;
+
+        while ((line = in.readLine()) != null) {
+            int tab = line.indexOf('\t');
+            String id = line.substring(0, tab);
+            String expr = line.substring(tab + 1);
+            double error = 0.0;
+
+            if (sleep > 0) {
+                Thread.sleep(sleep);
+            }
+            try {
+                for (int i = 0; i < 10; i++) {
+                    double x = -5.0 + i;
+                    error += Math.abs(evaluate(expr, x) - x*x);
+                }
+                out.println(id + "\t" + 1.0/(1.0 + error/10.0));
+            } catch (Exception e) {
+                out.println(id + "\tnan");
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Evaluate the sum of the genes of an expression at a point.
+     */
+    static double evaluate(String expr, double a) throws Exception {
+        String genes[] = expr.split(" ; ");
+        double v = 0.0;
+
+        for (int i = 0; i < genes.length; i++) {
+            fitnessworker p = new fitnessworker();
+            p.s = genes[i];
+            p.pos = 0;
+            p.a = a;
+            v += p.term();
+            if (p.pos != p.s.length()) {
+                throw new Exception("trailing input in "+genes[i]);
+            }
+        }
+        return v;
+    }
+
+    /**
+     * term := "(" term op term ")" | name "(" term {", " term} ")"
+     *       | name | number
+     */
+    private double term() throws Exception {
+        if (s.charAt(pos) == '(') {
+            pos++;
+            double l = term();
+            char op = s.charAt(pos + 1);
+            pos += 3;
+            double r = term();
+            expect(")");
+            switch (op) {
+            case '+': return l + r;
+            case '-': return l - r;
+            case '*': return l * r;
+            case '/': return l / r;
+            default:
+                throw new Exception("unknown operator "+op);
+            }
+        }
+
+        int start = pos;
+        while (pos < s.length() && "(), ".indexOf(s.charAt(pos)) < 0) {
+            pos++;
+        }
+        String name = s.substring(start, pos);
+        if (pos < s.length() && s.charAt(pos) == '(') {
+            pos++;
+            double x = term();
+            expect(")");
+            if (name.equals("sin")) return Math.sin(x);
+            if (name.equals("cos")) return Math.cos(x);
+            if (name.equals("exp")) return Math.exp(x);
+            if (name.equals("log")) return Math.log(x);
+            if (name.equals("sqrt")) return Math.sqrt(x);
+            throw new Exception("unknown function "+name);
+        }
+        if (name.equals("a")) {
+            return a;
+        }
+        return Double.parseDouble(name);
+    }
+
+    private void expect(String t) throws Exception {
+        if (!s.startsWith(t, pos)) {
+            throw new Exception("expected "+t+" at "+pos+" in "+s);
+        }
+        pos += t.length();
+    }
+}
@@ -34,7 +34,7 @@ public class regression {
 
         // sampler
         RouletteWheelSampler samp = 
-            new RouletteWheelSampler(rand);
+            new RouletteWheelSampler(rand, 0.00000001);
 
         // create a new population
         Population p = new Population(samp, 100, g);
@@ -61,11 +61,10 @@ public class regression {
             }
 
             String chromosome = new String(c);
-            ArithmeticIndividual ai = new ArithmeticIndividual(chromosome,g);
             System.err.println("Created individual: "+chromosome);
 
             try {
-                p.addIndividual(ai);
+                p.addIndividual(new ArithmeticIndividual(chromosome,g,1));
             } catch (Exception e) {
                 System.err.println("Exception seeding initial population.");
                 System.err.println(e.toString());
@@ -103,14 +102,33 @@ public class regression {
         Individual bestIndividual = null;
 
         //
-        // fitness test points and the expected results.
+        // fitness test points and the expected results, scored by
+        // mean absolute error.  a perfect individual has fitness 1.0.
         //
-        Hashtable testValues[] = new Hashtable[10];
-        double expected[] = new double[10];
+        Vector testValues = new Vector();
         for (int i = 0; i < 10; i++) {
-            testValues[i] = new Hashtable();
-            testValues[i].put("a",new Double((double)(0.0-5.0)+(double)i));
-            expected[i] = ((0.0-5.0)+(double)i)*((0.0-5.0)+(double)i); // x^2
+            double a = (0.0-5.0)+(double)i;
+            Hashtable ht = new Hashtable();
+            ht.put("a",new Double(a));
+            ht.put("Expected",new Double(a*a)); // x^2
+            testValues.addElement(ht);
+        }
+
+        Fitness fitness = new Fitness(testValues, 1.0);
+        fitness.setMetric(FitnessMetrics.meanAbsoluteError());
+
+        //
+        // per-generation metrics, written as CSV when run with
+        // -Djgep.metrics=<file>
+        //
+        String metricsFile = System.getProperty("jgep.metrics");
+        if (metricsFile != null) {
+            try {
+                Metrics.addSink(new CsvMetricsSink(metricsFile));
+                Metrics.setEnabled(true);
+            } catch (Exception e) {
+                System.err.println("Cannot write metrics: "+e.toString());
+            }
         }
 
         double score[] = new double[p.getSize()];
@@ -120,22 +138,8 @@ public class regression {
             for (int i = 0; i < p.getSize(); i++) {
                 Individual ind = (Individual)individuals.elementAt(i);
 
-                // step 1. express
-                ExpressionNode roots[] = ind.express();
-
-                // step 2. test
-                score[i] = -100000.0;
-                try {
-                    for (int j = 0; j < 10; j++) {
-                        // assume only roots[0] is meaningful
-                        double val = roots[0].evaluate(testValues[j]);
-                        if (val > -100000.0 && val < 100000.0) {
-                            score[i] += Math.abs(val - expected[j]);
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("EXCEPTION: "+e);
-                }
+                // steps 1 and 2. express and test
+                score[i] = fitness.evaluate(ind);
             }
 
             if (keepGoing) {
@@ -143,16 +147,18 @@ public class regression {
 
                 int bestIdx = 0;
                 int worstIdx = 0;
-                for (int idx = 1; idx < p.getSize(); idx++) {
-                    if (score[idx] > score[bestIdx]) {
+                double total = 0.0;
+                for (int idx = 0; idx < p.getSize(); idx++) {
+                    if (score[idx] < score[worstIdx]) {
                         worstIdx = idx;
                     }
-                    if (score[idx] < score[bestIdx]) {
+                    if (score[idx] > score[bestIdx]) {
                         bestIdx = idx;
                     }
+                    total += score[idx];
                 }
 
-                if (score[bestIdx] == 0.0) {
+                if (score[bestIdx] == 1.0) {
                     keepGoing = false;
                     Individual theBest = 
                         (Individual)individuals.elementAt(bestIdx);
@@ -163,10 +169,15 @@ public class regression {
                                    "  BEST="+score[bestIdx]);
 
                 // step 4. selection
-                p.select(score, bestIdx);
+                double weights[] = new double[p.getSize()];
+                for (int idx = 0; idx < p.getSize(); idx++) {
+                    weights[idx] = score[idx] / total;
+                }
+                p.select(weights, bestIdx);
                 
                 // step 5. genetic operators
                 
+                p.endGeneration(score[bestIdx]);
             }
         }
 
@@ -0,0 +1,163 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.io.File;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Native backend calling flat_eval() in cgep/flateval.c through the
+ * foreign function and memory API (java.lang.foreign).  Tables are copied
+ * once into a shared off-heap segment, column after column, and programs
+ * are run over it in place.  Only the program and the output column
+ * cross the boundary on each call.
+ *
+ * This class needs JDK 22 or later (or JDK 21 with --enable-preview), and
+ * is compiled separately from the rest of the library: see the native
+ * target in src/Makefile.  The JVM may need --enable-native-access for
+ * the unnamed module to avoid a warning.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class ForeignBackend implements NativeBackend {
+    private static final int FLAT_OK = 0;
+
+    private MethodHandle flatEval;   // int flat_eval(...)
+
+    /**
+     * Constructor.  Loads the shared library named by the property
+     * jgep.native.library, or libflateval.so from java.library.path.
+     */
+    public ForeignBackend() throws Exception {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup lib = SymbolLookup.libraryLookup(findLibrary().toPath(),
+                                                      Arena.global());
+        MemorySegment fn = lib.find("flat_eval").orElseThrow();
+
+        flatEval = linker.downcallHandle(fn,
+            FunctionDescriptor.of(ValueLayout.JAVA_INT,
+                                  ValueLayout.ADDRESS,      // code
+                                  ValueLayout.JAVA_INT,     // len
+                                  ValueLayout.ADDRESS,      // consts
+                                  ValueLayout.JAVA_INT,     // nconsts
+                                  ValueLayout.JAVA_INT,     // depth
+                                  ValueLayout.JAVA_INT,     // div
+                                  ValueLayout.ADDRESS,      // data
+                                  ValueLayout.JAVA_LONG,    // nrows
+                                  ValueLayout.JAVA_INT,     // ncols
+                                  ValueLayout.ADDRESS));    // out
+    }
+
+    private static File findLibrary() throws Exception {
+        String name = System.getProperty("jgep.native.library");
+        if (name != null) {
+            return new File(name);
+        }
+
+        String lib = System.mapLibraryName("flateval");
+        String path = System.getProperty("java.library.path", "");
+        String dirs[] = path.split(File.pathSeparator);
+        for (int i = 0; i < dirs.length; i++) {
+            File f = new File(dirs[i], lib);
+            if (f.isFile()) {
+                return f;
+            }
+        }
+        throw new Exception("Cannot find "+lib+" on java.library.path");
+    }
+
+    public Object open(DataTable data) throws Exception {
+        Arena arena = Arena.ofShared();
+        int ncols = data.getNumColumns();
+        int rows = data.getRows();
+        MemorySegment seg = arena.allocate(8L * rows * Math.max(ncols, 1), 8);
+
+        for (int c = 0; c < ncols; c++) {
+            MemorySegment.copy(data.getColumn(c), 0, seg, 
+                               ValueLayout.JAVA_DOUBLE, 8L * rows * c, rows);
+        }
+
+        return new Dataset(arena, seg, rows, ncols);
+    }
+
+    public void evaluate(Object dataset, Program p, double out[]) 
+        throws Exception {
+        Dataset d = (Dataset)dataset;
+        int code[] = p.getCode();
+        double consts[] = p.getConstants();
+        int rc;
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment cseg = arena.allocate(4L * Math.max(code.length, 1),
+                                                4);
+            MemorySegment kseg = arena.allocate(8L * Math.max(consts.length,
+                                                              1), 8);
+            MemorySegment oseg = arena.allocate(8L * Math.max(d.rows, 1), 8);
+
+            MemorySegment.copy(code, 0, cseg, ValueLayout.JAVA_INT, 0,
+                               code.length);
+            MemorySegment.copy(consts, 0, kseg, ValueLayout.JAVA_DOUBLE, 0,
+                               consts.length);
+
+            try {
+                rc = (int)flatEval.invokeExact(cseg, code.length, kseg,
+                                               consts.length, p.getDepth(),
+                                               p.getDivision(),
+                                               d.seg, (long)d.rows, d.ncols,
+                                               oseg);
+            } catch (Throwable t) {
+                throw new Exception("flat_eval failed: "+t);
+            }
+
+            if (rc != FLAT_OK) {
+                throw new Exception("flat_eval returned "+rc);
+            }
+            MemorySegment.copy(oseg, ValueLayout.JAVA_DOUBLE, 0, out, 0,
+                               d.rows);
+        }
+    }
+
+    public void close(Object dataset) {
+        ((Dataset)dataset).arena.close();
+    }
+
+    /**
+     * A table copied to native memory.
+     */
+    private static class Dataset {
+        Arena         arena;   // owns seg
+        MemorySegment seg;     // columns, one after the other
+        int           rows;
+        int           ncols;
+
+        Dataset(Arena arena, MemorySegment seg, int rows, int ncols) {
+            this.arena = arena;
+            this.seg = seg;
+            this.rows = rows;
+            this.ncols = ncols;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Ready-made real-valued functions for a FunctionSet.  Each factory
+ * method returns a new Function using the default symbol listed below;
+ * the symbol only has to be unique within a genome, so a different one
+ * can be used by wrapping the function (see rename()).
+ *
+ *   +  add          Q  sqrt         N  min
+ *   -  subtract     S  sin          X  max
+ *   *  multiply     C  cos          P  pow
+ *   /  divide       E  exp          I  if ($0 > 0) then $1 else $2
+ *                   L  natural log
+ *
+ * Functions return NaN where they are undefined (for example the square
+ * root of a negative number), which Fitness treats as a failed test
+ * case.  Division by zero is handled by the individual; see
+ * ArithmeticIndividual.setDivision().
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class ArithmeticFunctions {
+    private ArithmeticFunctions() {
+    }
+
+    public static Function add() {
+        return new Function('+', "+", 2, "($0 + $1)", "($0 + $1)") {
+            public double apply(double a[]) {
+                return a[0] + a[1];
+            }
+            public double apply2(double a, double b) {
+                return a + b;
+            }
+        };
+    }
+
+    public static Function subtract() {
+        return new Function('-', "-", 2, "($0 - $1)", "($0 - $1)") {
+            public double apply(double a[]) {
+                return a[0] - a[1];
+            }
+            public double apply2(double a, double b) {
+                return a - b;
+            }
+        };
+    }
+
+    public static Function multiply() {
+        return new Function('*', "*", 2, "($0 * $1)", "($0 * $1)") {
+            public double apply(double a[]) {
+                return a[0] * a[1];
+            }
+            public double apply2(double a, double b) {
+                return a * b;
+            }
+        };
+    }
+
+    public static Function divide() {
+        return new Function('/', "/", 2, "($0 / $1)", "($0 / $1)") {
+            public double apply(double a[]) {
+                return a[0] / a[1];
+            }
+            public double apply2(double a, double b) {
+                return a / b;
+            }
+        };
+    }
+
+    public static Function sqrt() {
+        return new Function('Q', "sqrt", 1, "Math.sqrt($0)", "sqrt($0)") {
+            public double apply(double a[]) {
+                return Math.sqrt(a[0]);
+            }
+            public double apply1(double a) {
+                return Math.sqrt(a);
+            }
+        };
+    }
+
+    public static Function sin() {
+        return new Function('S', "sin", 1, "Math.sin($0)", "sin($0)") {
+            public double apply(double a[]) {
+                return Math.sin(a[0]);
+            }
+            public double apply1(double a) {
+                return Math.sin(a);
+            }
+        };
+    }
+
+    public static Function cos() {
+        return new Function('C', "cos", 1, "Math.cos($0)", "cos($0)") {
+            public double apply(double a[]) {
+                return Math.cos(a[0]);
+            }
+            public double apply1(double a) {
+                return Math.cos(a);
+            }
+        };
+    }
+
+    public static Function exp() {
+        return new Function('E', "exp", 1, "Math.exp($0)", "exp($0)") {
+            public double apply(double a[]) {
+                return Math.exp(a[0]);
+            }
+            public double apply1(double a) {
+                return Math.exp(a);
+            }
+        };
+    }
+
+    public static Function log() {
+        return new Function('L', "log", 1, "Math.log($0)", "log($0)") {
+            public double apply(double a[]) {
+                return Math.log(a[0]);
+            }
+            public double apply1(double a) {
+                return Math.log(a);
+            }
+        };
+    }
+
+    public static Function min() {
+        return new Function('N', "min", 2, "Math.min($0, $1)", 
+                            "fmin($0, $1)") {
+            public double apply(double a[]) {
+                return Math.min(a[0], a[1]);
+            }
+            public double apply2(double a, double b) {
+                return Math.min(a, b);
+            }
+        };
+    }
+
+    public static Function max() {
+        return new Function('X', "max", 2, "Math.max($0, $1)", 
+                            "fmax($0, $1)") {
+            public double apply(double a[]) {
+                return Math.max(a[0], a[1]);
+            }
+            public double apply2(double a, double b) {
+                return Math.max(a, b);
+            }
+        };
+    }
+
+    public static Function pow() {
+        return new Function('P', "pow", 2, "Math.pow($0, $1)", 
+                            "pow($0, $1)") {
+            public double apply(double a[]) {
+                return Math.pow(a[0], a[1]);
+            }
+            public double apply2(double a, double b) {
+                return Math.pow(a, b);
+            }
+        };
+    }
+
+    public static Function ifPositive() {
+        return new Function('I', "if", 3, "(($0) > 0.0 ? ($1) : ($2))",
+                            "(($0) > 0.0 ? ($1) : ($2))") {
+            public double apply(double a[]) {
+                return (a[0] > 0.0) ? a[1] : a[2];
+            }
+            public double apply3(double a, double b, double c) {
+                return (a > 0.0) ? b : c;
+            }
+        };
+    }
+
+    /**
+     * Give a function a different symbol.
+     *
+     * @param  f   The function.
+     * @param  c   The new symbol.
+     * @return     A function identical to f but for its symbol.
+     */
+    public static Function rename(final Function f, char c) {
+        return new Function(c, f.getName(), f.getArity(), 
+                            f.getJavaTemplate(), f.getCTemplate()) {
+            public double apply(double a[]) {
+                return f.apply(a);
+            }
+            public double apply1(double a) {
+                return f.apply1(a);
+            }
+            public double apply2(double a, double b) {
+                return f.apply2(a, b);
+            }
+            public double apply3(double a, double b, double c) {
+                return f.apply3(a, b, c);
+            }
+        };
+    }
+}
@@ -29,6 +29,27 @@ import java.util.Vector;
  * @version   1.0
  */
 public class ArithmeticIndividual extends Individual {
+    /**
+     * Division by zero has no value.  The test case it occurs in is
+     * treated as failed (see Fitness.setPenaltyMode()).  This matches the
+     * original behaviour, and is the default.
+     */
+    public static final int DIVISION_STRICT = 0;
+
+    /**
+     * Protected division: division by zero yields 1.0, so every
+     * expression has a value everywhere.
+     */
+    public static final int DIVISION_PROTECTED = 1;
+
+    /**
+     * IEEE 754 division: division by zero yields an infinity (or NaN for
+     * 0/0), which propagates through the rest of the expression.
+     */
+    public static final int DIVISION_IEEE = 2;
+
+    private int division = DIVISION_STRICT; // semantics of '/'
+
     /**
      * Constructor.
      *
@@ -53,21 +74,64 @@ public class ArithmeticIndividual extends Individual {
      */
     public Individual replicate() {
         try {
-            return new ArithmeticIndividual(chromosome,genome,genes);
+            ArithmeticIndividual ai = 
+                new ArithmeticIndividual(chromosome,genome,genes);
+            ai.setDivision(division);
+            ai.constants = constants;
+            ai.shareExpression(this);
+            return ai;
         } catch (Exception e) {
             System.err.println("EXCEPTION (replicate) :: "+e.toString());
         }
         return null;
     }
 
+    /**
+     * Set the semantics of division by zero: DIVISION_STRICT,
+     * DIVISION_PROTECTED or DIVISION_IEEE.
+     *
+     * @param  mode   The division semantics.
+     */
+    public void setDivision(int mode) {
+        if (mode != division) {
+            invalidate();
+        }
+        division = mode;
+    }
+
+    /**
+     * Return the semantics of division by zero.
+     *
+     * @return   DIVISION_STRICT, DIVISION_PROTECTED or DIVISION_IEEE.
+     */
+    public int getDivision() {
+        return division;
+    }
+
+    /**
+     * The four arithmetic operators are evaluated directly rather than
+     * through the genome's function set, so that division follows the
+     * division semantics of this individual.
+     *
+     * @param  c   A function symbol.
+     * @return     True if c is one of the binary +, -, * and /.
+     */
+    private boolean isBuiltin(char c) {
+        return genome.getArity(c) == 2 &&
+            (c == '+' || c == '-' || c == '*' || c == '/');
+    }
+
     /**
      * Express this individual as an expression tree for basic
-     * arithmetic expressions (+,-,/,*,^,sqrt).
+     * arithmetic expressions (+,-,/,*), plus any other functions in the
+     * genome's function set.  With random constants, the n-th CONSTANT
+     * read from a gene becomes a node holding the constant named by the
+     * n-th symbol of the gene's Dc domain.
      *
      * @return    A forest of trees representing the expression
      *            trees generated by each gene for this individual.
      */
-    public ExpressionNode[] express() {
+    protected ExpressionNode[] buildExpression() {
         int numGenes = chromosome.length() / genome.getGeneLength();
         Vector stack;
         ExpressionNode roots[] = new ExpressionNode[numGenes];
@@ -76,7 +140,8 @@ public class ArithmeticIndividual extends Individual {
         for (int curGene = 0; curGene < numGenes; curGene++) {
             pos = curGene*genome.getGeneLength();
             stack = new Vector();
-            int geneEnd = pos+genome.getGeneLength();
+            int dc = pos+genome.getHeadLength()+genome.getTailLength();
+            int geneEnd = dc;
 
             boolean done = false;
             int need = 1;
@@ -85,26 +150,39 @@ public class ArithmeticIndividual extends Individual {
                 char c = chromosome.charAt(pos);
                 need--;
 
-                if (genome.isFunction(c)) {
-                    stack.addElement(new Character(c));
-                    need += 2;
+                if (c == Genome.CONSTANT && constants != null) {
+                    int k = genome.getDcIndex(chromosome.charAt(dc++));
+                    stack.addElement(new ArithmeticConstantNode(
+                        constants[curGene][k]));
                 } else {
                     stack.addElement(new Character(c));
-                } 
+                }
+                need += genome.getArity(c);
                 pos++;
                 if (need == 0) done = true;
             }
             
             for (int i = stack.size() - 1; i >= 0; i--) {
+                if (!(stack.elementAt(i) instanceof Character)) {
+                    continue; // constants are built already
+                }
                 Character c = (Character)stack.elementAt(i);
                 char ch = c.charValue();
                 ArithmeticExpressionNode n = new ArithmeticExpressionNode(ch);
                 stack.setElementAt(n,i);
-                if (genome.isFunction(ch)) {
-                    n.setRight((ArithmeticExpressionNode)stack.elementAt(stack.size()-1));
-                    n.setLeft((ArithmeticExpressionNode)stack.elementAt(stack.size()-2));
-                    stack.removeElementAt(stack.size()-1);
-                    stack.removeElementAt(stack.size()-1);
+
+                // the arguments of the rightmost function not yet built
+                // are always the last elements on the stack.
+                int arity = genome.getArity(ch);
+                if (arity > 0) {
+                    ArithmeticExpressionNode args[] = 
+                        new ArithmeticExpressionNode[arity];
+                    for (int j = arity - 1; j >= 0; j--) {
+                        args[j] = (ArithmeticExpressionNode)
+                            stack.elementAt(stack.size()-1);
+                        stack.removeElementAt(stack.size()-1);
+                    }
+                    n.setChildren(args);
                 }
             }
 
@@ -126,78 +204,205 @@ public class ArithmeticIndividual extends Individual {
      * @author   Matthew Sottile
      * @version  1.0
      */
-    class ArithmeticExpressionNode implements ExpressionNode {
+    class ArithmeticExpressionNode 
+        implements IndexedExpressionNode, SymbolNode {
+        private ArithmeticExpressionNode children[];
         private ArithmeticExpressionNode left, right;
         private char c;
+        private String key; // hashtable key (name) of a terminal
+        private int term;    // terminal index, -1 for functions
+        private Function fn; // implementation, for non-builtin functions
+        private int div;     // division semantics when built
 
         public ArithmeticExpressionNode(char c) {
             this.c = c;
+            key = genome.getSymbolName(c);
+            term = genome.getTerminalIndex(c);
+            div = division;
+            if (genome.getFunctionSet() != null && !isBuiltin(c)) {
+                fn = genome.getFunctionSet().get(c);
+            }
         }
 
+        /**
+         * Binary operators print infix, as "(a + b)".  Other functions
+         * print by name, as "sqrt(a)" or "if(a, b, c)".
+         */
         public String stringRepresentation() {
             String s = "";
-            if (genome.isFunction(c)) {
+            if (children == null) {
+                s = key;
+            } else if (children.length == 2 && fn == null) {
                 s = "("+left.stringRepresentation() + " " + c + " " 
                     + right.stringRepresentation() + ")";
             } else {
-                s = ""+c;
+                s = ((fn != null) ? fn.getName() : ""+c) + "(";
+                for (int i = 0; i < children.length; i++) {
+                    if (i > 0) s += ", ";
+                    s += children[i].stringRepresentation();
+                }
+                s += ")";
             }
 
             return s;
         }
         
+        /**
+         * Evaluate through the generic interface.  An expression with no
+         * value for these inputs throws an exception.
+         */
         public Object evaluate(java.util.Hashtable values) throws Exception {
-            Double lval = null;
-            Double rval = null;
-
-            if (genome.isFunction(c)) {
-                switch(c) {
-                case '+':
-                    lval = (Double)left.evaluate(values);
-                    rval = (Double)right.evaluate(values);
-
-                    return new Double(lval.doubleValue() + 
-                                      rval.doubleValue());
-
-                case '-':
-                    lval = (Double)left.evaluate(values);
-                    rval = (Double)right.evaluate(values);
-
-                    return new Double(lval.doubleValue() - 
-                                      rval.doubleValue());
-                case '/':
-                    rval = (Double)right.evaluate(values);
-                    if (rval.doubleValue() == 0.0) {
-                        throw new Exception("Division by zero in evaluate.");
+            double v = evaluateDouble(values);
+
+            if (Double.isNaN(v)) {
+                throw new Exception("Expression has no value at "+values);
+            }
+            return new Double(v);
+        }
+
+        public double evaluateDouble(java.util.Hashtable values) {
+            double lval, rval;
+
+            if (children == null) {
+                Double value = (Double)values.get(key);
+                if (value == null) {
+                    return Double.NaN;
+                } 
+                return value.doubleValue();
+            }
+
+            if (fn != null) {
+                switch (children.length) {
+                case 1:
+                    return fn.apply1(left.evaluateDouble(values));
+                case 2:
+                    return fn.apply2(left.evaluateDouble(values),
+                                     right.evaluateDouble(values));
+                case 3:
+                    return fn.apply3(left.evaluateDouble(values),
+                                     children[1].evaluateDouble(values),
+                                     right.evaluateDouble(values));
+                default:
+                    double args[] = new double[children.length];
+                    for (int i = 0; i < args.length; i++) {
+                        args[i] = children[i].evaluateDouble(values);
                     }
-                    lval = (Double)left.evaluate(values);
+                    return fn.apply(args);
+                }
+            }
 
-                    return new Double(lval.doubleValue() / 
-                                      rval.doubleValue());
-                case '*':
-                    lval = (Double)left.evaluate(values);
-                    rval = (Double)right.evaluate(values);
+            lval = left.evaluateDouble(values);
+            rval = right.evaluateDouble(values);
 
-                    return new Double(lval.doubleValue() * 
-                                      rval.doubleValue());
+            return combine(lval, rval);
+        }
+
+        /**
+         * Evaluate with the terminals read from an array, indexed as in
+         * Genome.getTerminalIndex().  Same results as evaluateDouble().
+         */
+        public double evaluateRow(double in[]) {
+            if (children == null) {
+                return (term >= 0) ? in[term] : Double.NaN;
+            }
+
+            if (fn != null) {
+                switch (children.length) {
+                case 1:
+                    return fn.apply1(left.evaluateRow(in));
+                case 2:
+                    return fn.apply2(left.evaluateRow(in),
+                                     right.evaluateRow(in));
+                case 3:
+                    return fn.apply3(left.evaluateRow(in),
+                                     children[1].evaluateRow(in),
+                                     right.evaluateRow(in));
                 default:
-                    throw new Exception("Unimplemented function : "+c);
+                    double args[] = new double[children.length];
+                    for (int i = 0; i < args.length; i++) {
+                        args[i] = children[i].evaluateRow(in);
+                    }
+                    return fn.apply(args);
                 }
-            } else {
-                Double value = (Double)values.get(""+c);
-                if (value == null) {
-                    throw new Exception("No value named "+c);
-                } 
-                return value;
             }
+
+            return combine(left.evaluateRow(in), right.evaluateRow(in));
+        }
+
+        /**
+         * Apply one of the builtin binary operators.
+         */
+        private double combine(double lval, double rval) {
+            switch(c) {
+            case '+':
+                return lval + rval;
+            case '-':
+                return lval - rval;
+            case '*':
+                return lval * rval;
+            case '/':
+                if (rval == 0.0) {
+                    if (div == DIVISION_PROTECTED) {
+                        return 1.0;
+                    } else if (div == DIVISION_STRICT) {
+                        return Double.NaN;
+                    }
+                }
+                return lval / rval;
+            default:
+                // unimplemented function
+                return Double.NaN;
+            }
+        }
+
+        public char getSymbol() {
+            return c;
+        }
+
+        public int getArity() {
+            return (children == null) ? 0 : children.length;
+        }
+
+        public SymbolNode getChild(int i) {
+            return children[i];
+        }
+
+        protected void setChildren(ArithmeticExpressionNode args[]) {
+            children = args;
+            left = args[0];
+            right = args[args.length - 1];
+        }
+    }
+
+    /**
+     * Leaf holding a random constant.
+     *
+     * @author   Matthew Sottile
+     * @version  1.0
+     */
+    class ArithmeticConstantNode extends ArithmeticExpressionNode
+        implements ConstantNode {
+        private double value;
+
+        public ArithmeticConstantNode(double v) {
+            super(Genome.CONSTANT);
+            value = v;
+        }
+
+        public String stringRepresentation() {
+            return Double.toString(value);
+        }
+
+        public double evaluateDouble(java.util.Hashtable values) {
+            return value;
         }
 
-        protected void setLeft(ArithmeticExpressionNode l) {
-            left = l;
+        public double evaluateRow(double in[]) {
+            return value;
         }
 
-        protected void setRight(ArithmeticExpressionNode r) {
-            right = r;
+        public double getValue() {
+            return value;
         }
     }
 }
@@ -0,0 +1,207 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.Vector;
+
+/**
+ * Results of a batch of runs (see BatchRunner): one line per run, and a
+ * summary of the best fitness over the batch.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class BatchReport {
+    private BatchRun runs[];
+    private long     wallNanos;  // elapsed time of the whole batch
+
+    BatchReport(Vector runs, long wallNanos) {
+        this.runs = new BatchRun[runs.size()];
+        runs.copyInto(this.runs);
+        this.wallNanos = wallNanos;
+    }
+
+    /**
+     * Return the runs, in the order they were added.
+     *
+     * @return   The runs.
+     */
+    public BatchRun[] getRuns() {
+        return runs;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Return the CPU time used by all the runs together.
+     *
+     * @return   Nanoseconds.
+     */
+    public long getCpuNanos() {
+        long n = 0;
+        for (int i = 0; i < runs.length; i++) {
+            n += runs[i].getCpuNanos();
+        }
+        return n;
+    }
+
+    /**
+     * Return the run that found the best individual.
+     *
+     * @return   The run, or null if no run evaluated a generation.
+     */
+    public BatchRun getBest() {
+        BatchRun best = null;
+        for (int i = 0; i < runs.length; i++) {
+            if (runs[i].getGenerations() > 0 &&
+                (best == null ||
+                 runs[i].getBestFitness() > best.getBestFitness())) {
+                best = runs[i];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Count the runs that ended with a given status.
+     *
+     * @param  status   One of the BatchRun status constants.
+     * @return          The number of runs.
+     */
+    public int count(int status) {
+        int n = 0;
+        for (int i = 0; i < runs.length; i++) {
+            if (runs[i].getStatus() == status) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Return the best fitness of each run that evaluated a generation,
+     * sorted in increasing order.
+     *
+     * @return   The fitnesses.
+     */
+    public double[] getBestFitnesses() {
+        int n = 0;
+        for (int i = 0; i < runs.length; i++) {
+            if (runs[i].getGenerations() > 0) n++;
+        }
+        double f[] = new double[n];
+        for (int i = 0, j = 0; i < runs.length; i++) {
+            if (runs[i].getGenerations() > 0) {
+                f[j++] = runs[i].getBestFitness();
+            }
+        }
+        java.util.Arrays.sort(f);
+        return f;
+    }
+
+    /**
+     * Return a summary followed by one line per run.
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        double f[] = getBestFitnesses();
+        BatchRun best = getBest();
+
+        sb.append("runs=" + runs.length);
+        for (int s = BatchRun.TARGET; s <= BatchRun.FAILED; s++) {
+            int n = count(s);
+            if (n > 0) {
+                sb.append(" " + BatchRun.getStatusName(s) + "=" + n);
+            }
+        }
+        sb.append(" wall_ms=" + wallNanos / 1000000L);
+        sb.append(" cpu_ms=" + getCpuNanos() / 1000000L + "\n");
+        if (f.length > 0) {
+            double mean = 0.0;
+            for (int i = 0; i < f.length; i++) {
+                mean += f[i];
+            }
+            mean /= f.length;
+            double median = (f.length % 2 == 1) ? f[f.length / 2]
+                : 0.5*(f[f.length/2 - 1] + f[f.length/2]);
+            sb.append("best fitness: max=" + f[f.length - 1] +
+                      " median=" + median + " mean=" + mean + 
+                      " min=" + f[0] + "\n");
+        }
+        if (best != null) {
+            sb.append("best run: " + best.getName() + " = " +
+                      expression(best) + "\n");
+        }
+
+        sb.append("name,seed,head,genes,population,generations,rung," +
+                  "cpu_ms,best,status\n");
+        for (int i = 0; i < runs.length; i++) {
+            sb.append(line(runs[i]) + "\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write one comma separated line per run, with a header line and the
+     * best expression of each run.
+     *
+     * @param  filename   The file to write.
+     */
+    public void writeCsv(String filename) throws Exception {
+        PrintWriter out = new PrintWriter(new FileWriter(filename));
+        try {
+            out.println("name,seed,head,genes,population,generations,rung,"+
+                        "cpu_ms,best,status,expression");
+            for (int i = 0; i < runs.length; i++) {
+                out.println(line(runs[i]) + ",\"" + expression(runs[i]) +
+                            "\"");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String line(BatchRun r) {
+        return r.getName() + "," + r.getSeed() + "," +
+            r.getGenome().getHeadLength() + "," + r.getGenes() + "," +
+            r.getPopulationSize() + "," + r.getGenerations() + "," +
+            r.getRung() + "," + r.getCpuNanos() / 1000000L + "," +
+            ((r.getGenerations() > 0) ? "" + r.getBestFitness() : "") + "," +
+            r.getStatusName();
+    }
+
+    /**
+     * The best expression of a run, its genes joined by "; ".
+     */
+    private static String expression(BatchRun r) {
+        Individual ind = r.getBestIndividual();
+        if (ind == null) {
+            return (r.getError() != null) ? r.getError() : "";
+        }
+        ExpressionNode roots[] = ind.express();
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < roots.length; i++) {
+            if (i > 0) sb.append("; ");
+            sb.append(roots[i].stringRepresentation());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,278 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * One evolution run of a batch (see BatchRunner).  A run has its own
+ * genome, population size and seed, and its own GeneticOperators, whose
+ * setters choose the operator rates of the run.  Everything a run
+ * changes belongs to it alone, so runs can be advanced concurrently.
+ *
+ * Each generation the population is evaluated, the best individual is
+ * recorded, individuals are selected with probability proportional to
+ * their fitness (the best one is always kept) and the operators are
+ * applied to the rest, as in tester.java.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class BatchRun {
+    public static final int PENDING    = 0; // not started
+    public static final int RUNNING    = 1; // still evolving
+    public static final int TARGET     = 2; // reached the target fitness
+    public static final int FINISHED   = 3; // ran every generation
+    public static final int OUT_OF_CPU = 4; // used up its CPU budget
+    public static final int CANCELLED  = 5; // dropped by successive halving
+    public static final int FAILED     = 6; // threw an exception
+
+    private static final String statusNames[] = {
+        "pending", "running", "target", "finished", "out_of_cpu",
+        "cancelled", "failed"
+    };
+
+    private String           name;
+    private Genome           genome;
+    private int              genes;       // genes per individual
+    private int              size;        // population size
+    private long             seed;
+    private GeneticOperators ops;         // configured by the caller
+    private Population       population;
+    private OperatorPipeline pipeline;
+    private int              status;
+    private int              generations; // generations evaluated
+    private int              rung;        // halving rounds survived
+    private long             cpuNanos;    // CPU time used so far
+    private double           best;        // best fitness seen
+    private Individual       bestIndividual;
+    private String           error;       // why the run failed
+
+    /**
+     * Constructor.
+     *
+     * @param  name    Name of the run in the report.
+     * @param  g       The genome; sweeps over head length use a genome
+     *                 per run.
+     * @param  genes   Number of genes per individual.
+     * @param  size    Population size.
+     * @param  seed    Seed of every random choice the run makes.
+     */
+    public BatchRun(String name, Genome g, int genes, int size, long seed) {
+        this.name = name;
+        genome = g;
+        this.genes = genes;
+        this.size = size;
+        this.seed = seed;
+        ops = new GeneticOperators(g, new Random(seed));
+        status = PENDING;
+        best = -Double.MAX_VALUE;
+    }
+
+    /**
+     * Return the operators of the run, to set their rates before the
+     * batch starts.
+     *
+     * @return   The operators.
+     */
+    public GeneticOperators getOperators() {
+        return ops;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Genome getGenome() {
+        return genome;
+    }
+
+    public int getGenes() {
+        return genes;
+    }
+
+    public int getPopulationSize() {
+        return size;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getStatusName() {
+        return statusNames[status];
+    }
+
+    /**
+     * Return the name of a status constant.
+     *
+     * @param  status   One of the status constants.
+     * @return          Its name.
+     */
+    public static String getStatusName(int status) {
+        return statusNames[status];
+    }
+
+    public int getGenerations() {
+        return generations;
+    }
+
+    /**
+     * Return the number of successive halving rounds the run survived.
+     *
+     * @return   The rung reached.
+     */
+    public int getRung() {
+        return rung;
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /**
+     * Return the best fitness found so far.
+     *
+     * @return   The fitness, or -Double.MAX_VALUE before the first
+     *           generation.
+     */
+    public double getBestFitness() {
+        return best;
+    }
+
+    /**
+     * Return a copy of the best individual found so far.
+     *
+     * @return   The individual, or null before the first generation.
+     */
+    public Individual getBestIndividual() {
+        return bestIndividual;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Whether the run can still evolve.
+     *
+     * @return   True if the run is pending or running.
+     */
+    public boolean isActive() {
+        return status == PENDING || status == RUNNING;
+    }
+
+    /**
+     * Create the random initial population and the operator pipeline
+     * from the current rates.
+     */
+    void start() throws Exception {
+        Random r = new Random(seed);
+        Sampler s = new RouletteWheelSampler(new Random(r.nextLong()),
+                                             0.00000001);
+        population = new Population(s, size, genome);
+
+        for (int i = 0; i < size; i++) {
+            ArithmeticIndividual ai = new ArithmeticIndividual(genome, genes);
+            ai.randomChromosome(r);
+            population.addIndividual(ai);
+        }
+        pipeline = OperatorPipeline.standard(ops, r.nextLong(), null);
+        status = RUNNING;
+    }
+
+    /**
+     * Evaluate one generation, and breed the next one unless the target
+     * fitness was reached.
+     *
+     * @param  eval     Evaluator over the shared data.
+     * @param  f        The shared fitness harness.
+     * @param  target   Fitness at which the run stops.
+     */
+    void step(ProgramEvaluator eval, Fitness f, double target) {
+        Vector inds = population.getIndividuals();
+        double fvals[] = eval.evaluate(inds, f);
+        int bestIndex = 0;
+        double min = Double.MAX_VALUE;
+
+        for (int i = 0; i < fvals.length; i++) {
+            if (Double.isNaN(fvals[i])) {
+                fvals[i] = -Double.MAX_VALUE;
+            }
+            if (fvals[i] > fvals[bestIndex]) {
+                bestIndex = i;
+            }
+            min = Math.min(min, fvals[i]);
+        }
+        generations++;
+
+        if (fvals[bestIndex] > best || bestIndividual == null) {
+            best = fvals[bestIndex];
+            bestIndividual = 
+                ((Individual)inds.elementAt(bestIndex)).replicate();
+        }
+        if (best >= target) {
+            status = TARGET;
+            return;
+        }
+
+        population.select(weights(fvals, min), bestIndex);
+        pipeline.apply(population.getIndividuals(), 1);
+    }
+
+    /**
+     * Selection weights proportional to fitness above the worst.
+     */
+    private static double[] weights(double fvals[], double min) {
+        double w[] = new double[fvals.length];
+        double total = 0.0;
+
+        for (int i = 0; i < w.length; i++) {
+            w[i] = (min == -Double.MAX_VALUE) 
+                ? ((fvals[i] > min) ? 1.0 : 0.0) : fvals[i] - min;
+            total += w[i];
+        }
+        for (int i = 0; i < w.length; i++) {
+            w[i] = (total > 0.0) ? w[i] / total : 1.0 / w.length;
+        }
+        return w;
+    }
+
+    void addCpuNanos(long n) {
+        cpuNanos += n;
+    }
+
+    void setStatus(int s) {
+        status = s;
+    }
+
+    void setRung(int r) {
+        rung = r;
+    }
+
+    void fail(Throwable t) {
+        status = FAILED;
+        error = t.toString();
+    }
+}
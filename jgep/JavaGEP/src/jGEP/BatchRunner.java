@@ -0,0 +1,315 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs many independent evolution runs (see BatchRun) concurrently in
+ * one JVM, for example over different seeds, head lengths and operator
+ * rates.  All runs share one fitness harness and one columnar copy of
+ * its test cases, evaluated as flat programs (see ProgramEvaluator), so
+ * the data is loaded once however many runs there are.
+ *
+ * Runs are scheduled on a fork/join pool in rounds: each round gives
+ * every active run a slice of a few generations, and the slices are
+ * spread over the threads by work stealing.  No run gets ahead of the
+ * others by more than one slice.  A run stops when it reaches the target
+ * fitness, the generation limit, or its CPU budget.
+ *
+ * With successive halving, runs are compared after a first rung of
+ * generations, and only the best 1/eta of them go on to a rung eta
+ * times as long; the rest are cancelled.  This repeats until one run is
+ * left or the generation limit is reached, so most of the time goes to
+ * the promising runs.
+ *
+ * The shared copy of the test cases may live in native memory (see
+ * ProgramEvaluator), so call close() once the runner is no longer
+ * needed.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class BatchRunner {
+    private Fitness          fitness;   // shared by every run
+    private ProgramEvaluator evaluator; // columnar test cases, shared
+    private ForkJoinPool     pool;
+    private Vector           runs;
+    private int              maxGenerations;
+    private double           target;    // fitness at which a run stops
+    private long             cpuBudget; // nanoseconds per run, 0 for none
+    private int              firstRung; // 0 disables successive halving
+    private int              eta;       // 1/eta of the runs survive a rung
+    private int              slice;     // generations per scheduling slice
+
+    private static final ThreadMXBean threads =
+        ManagementFactory.getThreadMXBean();
+
+    /**
+     * Constructor.
+     *
+     * @param  f      The fitness harness.  Its test values are copied
+     *                into columns once, and must not change afterwards.
+     * @param  pool   Threads to run on.
+     */
+    public BatchRunner(Fitness f, ForkJoinPool pool) throws Exception {
+        if (f.testValues == null) {
+            throw new Exception("BatchRunner needs a Fitness with test "+
+                                "values.");
+        }
+        fitness = f;
+        evaluator = new ProgramEvaluator(DataTable.fromRows(f.testValues));
+        this.pool = pool;
+        runs = new Vector();
+        maxGenerations = 100;
+        target = Double.POSITIVE_INFINITY;
+        cpuBudget = 0;
+        firstRung = 0;
+        eta = 3;
+        slice = 5;
+    }
+
+    /**
+     * Add a run to the batch.  Set its operator rates before calling
+     * run().
+     *
+     * @param  r   The run.
+     */
+    public void addRun(BatchRun r) {
+        runs.addElement(r);
+    }
+
+    public Vector getRuns() {
+        return runs;
+    }
+
+    public void setMaxGenerations(int n) {
+        maxGenerations = n;
+    }
+
+    /**
+     * Set the fitness at which a run stops.  By default runs only stop
+     * at the generation limit or when their budget runs out.
+     *
+     * @param  f   The target fitness.
+     */
+    public void setTargetFitness(double f) {
+        target = f;
+    }
+
+    /**
+     * Set the CPU time each run may use.  It is checked after every
+     * slice, so a run may overrun by one slice.
+     *
+     * @param  millis   CPU milliseconds per run, 0 for no limit.
+     */
+    public void setCpuBudget(long millis) {
+        cpuBudget = millis * 1000000L;
+    }
+
+    /**
+     * Turn on successive halving.
+     *
+     * @param  firstRung   Generations before the first comparison, or 0
+     *                     to turn halving off.
+     * @param  eta         Rungs grow by this factor, and 1/eta of the
+     *                     runs survive each one.  At least 2.
+     */
+    public void setHalving(int firstRung, int eta) {
+        this.firstRung = firstRung;
+        this.eta = Math.max(2, eta);
+    }
+
+    /**
+     * Set the number of generations a run is given at a time.  Smaller
+     * slices interleave runs more finely.
+     *
+     * @param  n   Generations per slice.
+     */
+    public void setSlice(int n) {
+        slice = Math.max(1, n);
+    }
+
+    /**
+     * Run the batch to completion.
+     *
+     * @return   A report on every run.
+     */
+    public BatchReport run() throws Exception {
+        long wall = System.nanoTime();
+        Vector alive = new Vector();
+
+        for (int i = 0; i < runs.size(); i++) {
+            BatchRun r = (BatchRun)runs.elementAt(i);
+            try {
+                r.start();
+                alive.addElement(r);
+            } catch (Exception e) {
+                r.fail(e);
+            }
+        }
+
+        int rungEnd = (firstRung > 0) ? firstRung : maxGenerations;
+        int rung = 0;
+
+        while (alive.size() > 0) {
+            int end = Math.min(rungEnd, maxGenerations);
+
+            //
+            // rounds of one slice per run, until every run has reached
+            // the end of the rung or stopped.
+            //
+            while (true) {
+                Vector busy = new Vector();
+                for (int i = 0; i < alive.size(); i++) {
+                    BatchRun r = (BatchRun)alive.elementAt(i);
+                    if (r.isActive() && r.getGenerations() < end) {
+                        busy.addElement(r);
+                    }
+                }
+                if (busy.size() == 0) {
+                    break;
+                }
+                BatchRun b[] = new BatchRun[busy.size()];
+                busy.copyInto(b);
+                pool.invoke(new Slice(b, 0, b.length, end));
+            }
+
+            for (int i = alive.size() - 1; i >= 0; i--) {
+                if (!((BatchRun)alive.elementAt(i)).isActive()) {
+                    alive.removeElementAt(i);
+                }
+            }
+
+            if (end >= maxGenerations) {
+                for (int i = 0; i < alive.size(); i++) {
+                    ((BatchRun)alive.elementAt(i)).setStatus(
+                        BatchRun.FINISHED);
+                }
+                break;
+            }
+
+            if (firstRung > 0 && alive.size() > 1) {
+                halve(alive);
+            }
+            rung++;
+            for (int i = 0; i < alive.size(); i++) {
+                ((BatchRun)alive.elementAt(i)).setRung(rung);
+            }
+            rungEnd = (int)Math.min((long)rungEnd * eta, Integer.MAX_VALUE);
+        }
+
+        return new BatchReport(runs, System.nanoTime() - wall);
+    }
+
+    /**
+     * Free the native copy of the test cases.  Runs made afterwards
+     * evaluate in Java.
+     */
+    public void close() {
+        evaluator.close();
+    }
+
+    /**
+     * Keep the best 1/eta of the runs, by best fitness so far, and
+     * cancel the rest.  Ties keep the earlier run.
+     */
+    private void halve(Vector alive) {
+        BatchRun b[] = new BatchRun[alive.size()];
+        alive.copyInto(b);
+
+        // insertion sort, best first; batches are small.
+        for (int i = 1; i < b.length; i++) {
+            BatchRun r = b[i];
+            int j = i - 1;
+            while (j >= 0 && b[j].getBestFitness() < r.getBestFitness()) {
+                b[j + 1] = b[j];
+                j--;
+            }
+            b[j + 1] = r;
+        }
+
+        int keep = Math.max(1, (b.length + eta - 1) / eta);
+        alive.removeAllElements();
+        for (int i = 0; i < b.length; i++) {
+            if (i < keep) {
+                alive.addElement(b[i]);
+            } else {
+                b[i].setStatus(BatchRun.CANCELLED);
+            }
+        }
+    }
+
+    private static long cpuTime() {
+        if (threads.isCurrentThreadCpuTimeSupported()) {
+            return threads.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Task giving one slice to each of a range of runs.  Ranges are
+     * split in half until a single run is left, so idle threads steal
+     * whole runs.
+     */
+    private class Slice extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private BatchRun runs[];
+        private int      lo, hi;
+        private int      end;   // end of the rung
+
+        Slice(BatchRun runs[], int lo, int hi, int end) {
+            this.runs = runs;
+            this.lo = lo;
+            this.hi = hi;
+            this.end = end;
+        }
+
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Slice(runs, lo, mid, end),
+                          new Slice(runs, mid, hi, end));
+                return;
+            }
+
+            BatchRun r = runs[lo];
+            long t = cpuTime();
+            try {
+                for (int g = 0; g < slice && r.isActive() &&
+                         r.getGenerations() < end; g++) {
+                    r.step(evaluator, fitness, target);
+                }
+            } catch (Throwable e) {
+                r.fail(e);
+            }
+            r.addCpuNanos(cpuTime() - t);
+
+            if (r.isActive() && cpuBudget > 0 && 
+                r.getCpuNanos() >= cpuBudget) {
+                r.setStatus(BatchRun.OUT_OF_CPU);
+            }
+        }
+    }
+}
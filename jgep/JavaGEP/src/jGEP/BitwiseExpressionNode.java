@@ -0,0 +1,39 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Interface for Boolean expression nodes that can evaluate 64 test
+ * cases at once.  Bit i of each word holds the value for test case i, so
+ * each node costs a single bitwise operation per 64 cases.
+ *
+ * @author   Matthew Sottile
+ * @version  1.0
+ * @see      jGEP.PackedTruthTable
+ */
+public interface BitwiseExpressionNode extends ExpressionNode {
+    /**
+     * Evaluate the expression on one word of packed test cases.
+     *
+     * @param   in   Packed values of the terminals, indexed by
+     *               Genome.getTerminalIndex().
+     * @return       Packed values of the expression.
+     */
+    public long evaluateWord(long in[]);
+}
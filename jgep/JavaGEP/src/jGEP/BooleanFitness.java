@@ -0,0 +1,117 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Fitness harness for Boolean individuals.  Test cases are held in a
+ * PackedTruthTable, and each word of 64 cases is evaluated in one pass
+ * over the expression tree.  The fitness is the number of test cases the
+ * individual gets right, counted with Long.bitCount().
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class BooleanFitness extends Fitness {
+    private PackedTruthTable table;
+
+    /**
+     * Constructor.  The maximum fitness is the number of test cases.
+     *
+     * @param  table   The packed test cases.
+     */
+    public BooleanFitness(PackedTruthTable table) {
+        super(null, (double)table.getRows());
+        this.table = table;
+    }
+
+    public PackedTruthTable getTable() {
+        return table;
+    }
+
+    /**
+     * Count the test cases the individual gets right.  The first gene is
+     * used, as in Fitness.
+     *
+     * @param  ind   The individual to evaluate.  Its expression nodes
+     *               must implement BitwiseExpressionNode.
+     * @return       The number of correct test cases.
+     */
+    protected double score(Individual ind) {
+        return score(ind, -Double.MAX_VALUE).getValue();
+    }
+
+    /**
+     * Count the test cases the individual gets right, stopping once it
+     * can no longer reach the cutoff even if every remaining test case
+     * were right.
+     *
+     * @param  ind      The individual to evaluate.
+     * @param  cutoff   Fitness the individual has to reach to matter.
+     * @return          The number of correct test cases, or an upper
+     *                  bound on it.
+     */
+    protected Score score(Individual ind, double cutoff) {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        try {
+            BitwiseExpressionNode root = 
+                (BitwiseExpressionNode)ind.express()[0];
+            int nt = table.getGenome().getNumTerminals();
+            int words = table.getWords();
+            long expected[] = table.getExpected();
+            long in[] = new long[nt];
+            long correct = 0;
+
+            for (int w = 0; w < words; w++) {
+                for (int k = 0; k < nt; k++) {
+                    in[k] = table.getColumn(k)[w];
+                }
+
+                long out = root.evaluateWord(in);
+                correct += Long.bitCount(~(out ^ expected[w]) & table.mask(w));
+
+                long remaining = (long)table.getRows() - 64L*(w + 1);
+                if (remaining > 0 && correct + remaining < cutoff) {
+                    return new Score((double)(correct + remaining), true);
+                }
+            }
+
+            return new Score((double)correct, false);
+        } finally {
+            Metrics.endEvaluation(t, 1);
+        }
+    }
+
+    /**
+     * Evaluate a vector of individuals one at a time; bit-parallel
+     * evaluation is already cheap enough that merging subtrees does not
+     * pay.
+     *
+     * @param  individuals   The individuals.
+     * @return               The fitness of each individual, in order.
+     */
+    public double[] evaluateAll(java.util.Vector individuals) {
+        FitnessBatchEvent ev = FitnessBatchEvent.start();
+        double fvals[] = new double[individuals.size()];
+        for (int i = 0; i < fvals.length; i++) {
+            fvals[i] = evaluate((Individual)individuals.elementAt(i));
+        }
+        ev.finish(this, fvals.length, table.getRows());
+        return fvals;
+    }
+}
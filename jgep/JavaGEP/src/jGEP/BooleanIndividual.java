@@ -0,0 +1,264 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+
+/**
+ * An individual that evolves Boolean expressions, for classifiers and
+ * circuits.  Terminals are Boolean inputs, and the functions are:
+ *
+ *   &  AND     ^  XOR      !  NOT
+ *   |  OR      ~  NAND     ?  MUX (if a then b else c)
+ *
+ * Use BooleanIndividual.genome() to build a genome with the right arity
+ * for each function.  Expressed nodes implement BitwiseExpressionNode,
+ * so BooleanFitness can evaluate them 64 test cases at a time.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class BooleanIndividual extends Individual {
+    public static final char AND  = '&';
+    public static final char OR   = '|';
+    public static final char NOT  = '!';
+    public static final char XOR  = '^';
+    public static final char NAND = '~';
+    public static final char MUX  = '?';
+
+    /**
+     * Constructor.
+     *
+     * @param  s  Chromosome containing symbols and functions in the given
+     *            genome.
+     * @param  g  The genome from which the chromosome for this individual
+     *            derives.
+     * @param  gc Gene count.
+     */
+    public BooleanIndividual(String s, Genome g, int gc) throws Exception {
+        super(s,g,gc);
+    }
+
+    public BooleanIndividual(Genome g, int gc) throws Exception {
+        super(g,gc);
+    }
+
+    /**
+     * Build a genome over the Boolean functions.
+     *
+     * @param  ts   Array of characters representing terminal symbols.
+     * @param  fs   Array of Boolean function characters (AND, OR, ...).
+     * @param  hl   Head length in a gene.
+     * @return      The genome.
+     */
+    public static Genome genome(char ts[], char fs[], int hl) 
+        throws Exception {
+        int as[] = new int[fs.length];
+
+        for (int i = 0; i < fs.length; i++) {
+            switch (fs[i]) {
+            case AND: case OR: case XOR: case NAND:
+                as[i] = 2;
+                break;
+            case NOT:
+                as[i] = 1;
+                break;
+            case MUX:
+                as[i] = 3;
+                break;
+            default:
+                throw new Exception("Not a Boolean function : "+fs[i]);
+            }
+        }
+
+        return new Genome(ts, fs, as, hl);
+    }
+
+    /**
+     * Clone this individual.
+     *
+     * @return    A new object instance identical to this one.
+     */
+    public Individual replicate() {
+        try {
+            BooleanIndividual bi = 
+                new BooleanIndividual(chromosome,genome,genes);
+            bi.shareExpression(this);
+            return bi;
+        } catch (Exception e) {
+            System.err.println("EXCEPTION (replicate) :: "+e.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Express this individual as a Boolean expression tree per gene.
+     *
+     * @return    A forest of trees representing the expression
+     *            trees generated by each gene for this individual.
+     */
+    protected ExpressionNode[] buildExpression() {
+        int numGenes = chromosome.length() / genome.getGeneLength();
+        ExpressionNode roots[] = new ExpressionNode[numGenes];
+
+        for (int curGene = 0; curGene < numGenes; curGene++) {
+            int pos = curGene*genome.getGeneLength();
+            Vector stack = new Vector();
+            int need = 1;
+
+            // read the open reading frame of the gene
+            while (need > 0) {
+                char c = chromosome.charAt(pos++);
+                stack.addElement(new BooleanExpressionNode(c));
+                need += genome.getArity(c) - 1;
+            }
+
+            // link it up, rightmost function first (see
+            // ArithmeticIndividual.buildExpression())
+            int top = stack.size();
+            for (int i = stack.size() - 1; i >= 0; i--) {
+                BooleanExpressionNode n = 
+                    (BooleanExpressionNode)stack.elementAt(i);
+                int arity = genome.getArity(n.c);
+                if (arity > 0) {
+                    n.children = new BooleanExpressionNode[arity];
+                    for (int j = 0; j < arity; j++) {
+                        n.children[j] = (BooleanExpressionNode)
+                            stack.elementAt(top - arity + j);
+                    }
+                    top -= arity;
+                }
+            }
+
+            roots[curGene] = (ExpressionNode)stack.elementAt(0);
+        }
+
+        return roots;
+    }
+
+    /**
+     * Inner class implementing the Boolean expression node.
+     *
+     * @author   Matthew Sottile
+     * @version  1.0
+     */
+    class BooleanExpressionNode implements BitwiseExpressionNode, SymbolNode {
+        private BooleanExpressionNode children[];
+        private char c;
+        private int  term;  // terminal index, -1 for functions
+        private Genome gen; // genome when built
+
+        public BooleanExpressionNode(char c) {
+            this.c = c;
+            gen = genome;
+            term = genome.getTerminalIndex(c);
+        }
+
+        public String stringRepresentation() {
+            if (children == null) {
+                return gen.getSymbolName(c);
+            }
+
+            switch (c) {
+            case NOT:
+                return "!"+children[0].stringRepresentation();
+            case MUX:
+                return "("+children[0].stringRepresentation()+" ? "+
+                    children[1].stringRepresentation()+" : "+
+                    children[2].stringRepresentation()+")";
+            case NAND:
+                return "!("+children[0].stringRepresentation()+" & "+
+                    children[1].stringRepresentation()+")";
+            default:
+                return "("+children[0].stringRepresentation()+" "+c+" "+
+                    children[1].stringRepresentation()+")";
+            }
+        }
+
+        /**
+         * Evaluate a single test case.  The hashtable maps terminal names
+         * to Boolean values.
+         */
+        public Object evaluate(java.util.Hashtable values) throws Exception {
+            long in[] = new long[gen.getNumTerminals()];
+
+            for (int i = 0; i < in.length; i++) {
+                String key = gen.getTerminalName(i);
+                Boolean b = (Boolean)values.get(key);
+                if (b != null && b.booleanValue()) {
+                    in[i] = 1L;
+                } else if (b == null && usesTerminal(i)) {
+                    throw new Exception("No value named "+key);
+                }
+            }
+
+            return Boolean.valueOf((evaluateWord(in) & 1L) != 0);
+        }
+
+        public long evaluateWord(long in[]) {
+            if (children == null) {
+                return in[term];
+            }
+
+            long a = children[0].evaluateWord(in);
+
+            switch (c) {
+            case AND:
+                return a & children[1].evaluateWord(in);
+            case OR:
+                return a | children[1].evaluateWord(in);
+            case XOR:
+                return a ^ children[1].evaluateWord(in);
+            case NAND:
+                return ~(a & children[1].evaluateWord(in));
+            case NOT:
+                return ~a;
+            case MUX:
+                return (a & children[1].evaluateWord(in)) | 
+                    (~a & children[2].evaluateWord(in));
+            default:
+                return 0L;
+            }
+        }
+
+        public char getSymbol() {
+            return c;
+        }
+
+        public int getArity() {
+            return (children == null) ? 0 : children.length;
+        }
+
+        public SymbolNode getChild(int i) {
+            return children[i];
+        }
+
+        private boolean usesTerminal(int i) {
+            if (children == null) {
+                return term == i;
+            }
+            for (int j = 0; j < children.length; j++) {
+                if (children[j].usesTerminal(i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Interface for samplers that can take into account which individuals
+ * were cut off during fitness evaluation (see Fitness.evaluate(Individual,
+ * double)).  Those individuals are known to fall below the selection
+ * cutoff and should not be selected unless nothing else is available.
+ * Population.select() uses this interface when the sampler provides it;
+ * otherwise it removes the bounded individuals by zeroing their weights,
+ * which only works for samplers that honour the weights.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public interface BoundedSampler extends Sampler {
+    /**
+     * Sampling function.  Identical to sample(double[]) except that the
+     * individuals flagged as bounded are excluded from selection.  If
+     * every individual is bounded, the flags are ignored.
+     *
+     * @param   weights  The array of weights.
+     * @param   bounded  True for each individual whose fitness is only an
+     *                   upper bound.
+     * @return           The array of indices that were selected in
+     *                   sampling.
+     */
+    public int[] sample(double weights[], boolean bounded[]);
+}
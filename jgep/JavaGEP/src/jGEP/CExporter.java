@@ -0,0 +1,115 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Generates a standalone C function from an arithmetic individual:
+ *
+ *     double name(double a, double b, ...);
+ *     double name_row(const double *x);
+ *
+ * The first takes one argument per non-constant terminal, the second the
+ * same arguments as an array.  The source includes math.h and must be
+ * linked with -lm.  Functions are emitted from their C templates; note
+ * that the C library differs from Java for some NaN arguments (fmin and
+ * fmax return the other argument, for example), and transcendental
+ * functions may differ from Java in the last bit.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class CExporter extends SourceExporter {
+    private String prefix;   // name of the function being generated
+
+    protected String template(Function f) {
+        return f.getCTemplate();
+    }
+
+    protected String literal(double v) {
+        if (Double.isNaN(v)) {
+            return "NAN";
+        } else if (v == Double.POSITIVE_INFINITY) {
+            return "INFINITY";
+        } else if (v == Double.NEGATIVE_INFINITY) {
+            return "(-INFINITY)";
+        } else if (v < 0.0 || (v == 0.0 && 1.0/v < 0.0)) {
+            return "(" + Double.toString(v) + ")";
+        }
+        // Double.toString() gives the shortest string that reads back
+        // as v, which is valid C.
+        return Double.toString(v);
+    }
+
+    protected String division(String a, String b, int div) {
+        if (div == ArithmeticIndividual.DIVISION_IEEE) {
+            return "(" + a + " / " + b + ")";
+        }
+        return prefix + "_div(" + a + ", " + b + ")";
+    }
+
+    public String export(ArithmeticIndividual ind, String name) 
+        throws Exception {
+        prefix = name;
+        return super.export(ind, name);
+    }
+
+    protected String generate(String name, String params[], String expr,
+                              int div, String description) {
+        StringBuffer sb = new StringBuffer();
+        StringBuffer args = new StringBuffer();
+        StringBuffer elems = new StringBuffer();
+
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                args.append(", ");
+                elems.append(", ");
+            }
+            args.append("double " + params[i]);
+            elems.append("x[" + i + "]");
+        }
+        if (params.length == 0) {
+            args.append("void");
+        }
+
+        sb.append("/*\n");
+        sb.append(" * Generated by jGEP from:\n");
+        sb.append(" *   " + description + "\n");
+        sb.append(" */\n");
+        sb.append("#include <math.h>\n\n");
+        if (expr.indexOf(name + "_div(") >= 0) {
+            String z = (div == ArithmeticIndividual.DIVISION_PROTECTED)
+                ? "1.0" : "NAN";
+            sb.append("static double " + name + 
+                      "_div(double a, double b) {\n");
+            sb.append("  return (b == 0.0) ? " + z + " : a / b;\n");
+            sb.append("}\n\n");
+        }
+        sb.append("double " + name + "(" + args + ") {\n");
+        sb.append("  return " + expr + ";\n");
+        sb.append("}\n\n");
+        sb.append("double " + name + "_row(const double *x) {\n");
+        if (params.length == 0) {
+            sb.append("  (void)x;\n");
+        }
+        sb.append("  return " + name + "(" + elems + ");\n");
+        sb.append("}\n");
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,80 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * A running sum with Neumaier compensation.  The rounding error of each
+ * addition is tracked separately and added back at the end, so summing
+ * many terms of very different magnitude does not lose precision, and
+ * the result does not depend on how the terms were split into blocks
+ * before the partial sums were merged (to within the compensated
+ * rounding error).
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class CompensatedSum {
+    private double sum;  // running sum
+    private double comp; // accumulated rounding error
+
+    /**
+     * Add a term.
+     *
+     * @param  x   The term.
+     */
+    public void add(double x) {
+        double t = sum + x;
+
+        if (Math.abs(sum) >= Math.abs(x)) {
+            comp += (sum - t) + x;
+        } else {
+            comp += (x - t) + sum;
+        }
+        sum = t;
+    }
+
+    /**
+     * Add the terms of another sum.
+     *
+     * @param  other   The sum to merge.
+     */
+    public void merge(CompensatedSum other) {
+        add(other.sum);
+        comp += other.comp;
+    }
+
+    /**
+     * Multiply the sum by a factor.
+     *
+     * @param  factor   The factor.
+     */
+    public void scale(double factor) {
+        sum *= factor;
+        comp *= factor;
+    }
+
+    /**
+     * Return the value of the sum.
+     *
+     * @return   The sum of all terms added.
+     */
+    public double value() {
+        return sum + comp;
+    }
+}
@@ -0,0 +1,331 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Local tuning of the random constants of individuals (see Genome), used
+ * to polish the elites of a generation.  Only the constants the expressed
+ * part of each gene actually refers to are tuned, with the Nelder-Mead
+ * simplex method maximizing Fitness.evaluate().  Each individual is tuned
+ * by its own task, so a vector of elites is tuned in parallel.
+ *
+ * Fitness.evaluate() must be safe to call from several threads, which is
+ * the case for Fitness and the harnesses derived from it that only read
+ * their test cases.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class ConstantOptimizer {
+    private ForkJoinPool pool;   // threads to tune on
+    private int          budget; // fitness evaluations per individual
+    private double       step;   // initial simplex size, fraction of range
+    private double       tol;    // stop when the simplex is this flat
+
+    /**
+     * Constructor.
+     *
+     * @param  pool     Pool of threads to tune on.
+     * @param  budget   Maximum number of fitness evaluations spent on
+     *                  each individual.
+     */
+    public ConstantOptimizer(ForkJoinPool pool, int budget) {
+        this.pool = pool;
+        this.budget = budget;
+        step = 0.1;
+        tol = 1e-9;
+    }
+
+    /**
+     * Set the size of the initial simplex, as a fraction of the range of
+     * the random constants.  The default is 0.1.
+     *
+     * @param  s   The fraction.
+     */
+    public void setStep(double s) {
+        step = s;
+    }
+
+    /**
+     * Set the convergence tolerance: tuning stops when the fitness values
+     * at the vertices of the simplex differ by less than this.
+     *
+     * @param  t   The tolerance.
+     */
+    public void setTolerance(double t) {
+        tol = t;
+    }
+
+    /**
+     * Tune the constants of several individuals in parallel.  Individuals
+     * whose fitness improves get their new constants; the others are
+     * left alone.
+     *
+     * @param  individuals   The individuals, usually the elites.
+     * @param  f             The fitness harness.
+     * @return               The fitness of each individual after tuning,
+     *                       in order.
+     */
+    public double[] optimize(Vector individuals, Fitness f) {
+        double fvals[] = new double[individuals.size()];
+        Task tasks[] = new Task[fvals.length];
+
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Task((Individual)individuals.elementAt(i), f,
+                                fvals, i);
+        }
+        pool.invoke(new RecursiveAction() {
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+
+        return fvals;
+    }
+
+    /**
+     * Tune the constants of one individual in the calling thread.
+     *
+     * @param  ind   The individual.  Its constants are replaced if the
+     *               fitness improves.
+     * @param  f     The fitness harness.
+     * @return       The fitness after tuning.
+     */
+    public double optimize(Individual ind, Fitness f) {
+        int refs[][] = referenced(ind);
+        double base = f.evaluate(ind);
+
+        if (refs.length == 0) {
+            return base;
+        }
+
+        Genome g = ind.getGenome();
+        double c[][] = ind.getConstants();
+        int n = refs.length;
+        double delta = step * (g.getConstantMax() - g.getConstantMin());
+        if (delta == 0.0) {
+            delta = step;
+        }
+
+        //
+        // initial simplex: the current constants, and one step along
+        // each axis.  values hold the negated fitness, to be minimized.
+        //
+        double x[][] = new double[n+1][n];
+        double y[] = new double[n+1];
+        for (int k = 0; k < n; k++) {
+            x[0][k] = c[refs[k][0]][refs[k][1]];
+        }
+        y[0] = -base;
+        int evals = 1;
+        for (int j = 1; j <= n; j++) {
+            x[j] = x[0].clone();
+            x[j][j-1] += delta;
+            y[j] = cost(ind, f, refs, x[j]);
+            evals++;
+        }
+
+        double centroid[] = new double[n];
+        while (evals < budget) {
+            sort(x, y);
+            if (Math.abs(y[n] - y[0]) < tol) {
+                break;
+            }
+
+            java.util.Arrays.fill(centroid, 0.0);
+            for (int j = 0; j < n; j++) {
+                for (int k = 0; k < n; k++) {
+                    centroid[k] += x[j][k] / n;
+                }
+            }
+
+            double xr[] = along(centroid, x[n], -1.0);
+            double yr = cost(ind, f, refs, xr);
+            evals++;
+
+            if (yr < y[0]) {
+                double xe[] = along(centroid, x[n], -2.0);
+                double ye = cost(ind, f, refs, xe);
+                evals++;
+                if (ye < yr) {
+                    x[n] = xe; y[n] = ye;
+                } else {
+                    x[n] = xr; y[n] = yr;
+                }
+            } else if (yr < y[n-1]) {
+                x[n] = xr; y[n] = yr;
+            } else {
+                double xc[] = (yr < y[n]) ? along(centroid, x[n], -0.5)
+                                          : along(centroid, x[n], 0.5);
+                double yc = cost(ind, f, refs, xc);
+                evals++;
+                if (yc < Math.min(yr, y[n])) {
+                    x[n] = xc; y[n] = yc;
+                } else {
+                    // shrink towards the best vertex
+                    for (int j = 1; j <= n && evals < budget; j++) {
+                        x[j] = along(x[0], x[j], 0.5);
+                        y[j] = cost(ind, f, refs, x[j]);
+                        evals++;
+                    }
+                }
+            }
+        }
+
+        sort(x, y);
+        if (-y[0] > base) {
+            ind.setConstants(apply(c, refs, x[0]));
+            return -y[0];
+        }
+        return base;
+    }
+
+    /**
+     * Return the constants the expressed part of each gene refers to, as
+     * distinct {gene, index} pairs.  The n-th CONSTANT in the expressed
+     * part of a gene refers to the constant named by the n-th symbol of
+     * its Dc domain.
+     *
+     * @param  ind   The individual.
+     * @return       The referenced constants.
+     */
+    public static int[][] referenced(Individual ind) {
+        Genome g = ind.getGenome();
+        Vector v = new Vector();
+
+        if (!g.hasConstants() || ind.getConstants() == null) {
+            return new int[0][];
+        }
+
+        String s = ind.getChromosome();
+        int gl = g.getGeneLength();
+        int ht = g.getHeadLength() + g.getTailLength();
+
+        for (int gene = 0; gene < s.length() / gl; gene++) {
+            int start = gene*gl;
+            int need = 1, count = 0;
+            for (int pos = start; need > 0 && pos < start + ht; pos++) {
+                char c = s.charAt(pos);
+                need += g.getArity(c) - 1;
+                if (c == Genome.CONSTANT) {
+                    count++;
+                }
+            }
+
+            boolean seen[] = new boolean[g.getNumConstants()];
+            for (int j = 0; j < count; j++) {
+                int k = g.getDcIndex(s.charAt(start + ht + j));
+                if (!seen[k]) {
+                    seen[k] = true;
+                    v.addElement(new int[] { gene, k });
+                }
+            }
+        }
+
+        int refs[][] = new int[v.size()][];
+        v.copyInto(refs);
+        return refs;
+    }
+
+    /**
+     * Negated fitness of the individual with the referenced constants
+     * set to x.  The individual itself is not changed.
+     */
+    private static double cost(Individual ind, Fitness f, int refs[][],
+                               double x[]) {
+        Individual trial = ind.replicate();
+        trial.setConstants(apply(ind.getConstants(), refs, x));
+        double v = f.evaluate(trial);
+        return Double.isNaN(v) ? Double.MAX_VALUE : -v;
+    }
+
+    /**
+     * Copy the constants with the referenced ones set to x.  Only the
+     * arrays of genes that change are copied.
+     */
+    private static double[][] apply(double c[][], int refs[][], 
+                                    double x[]) {
+        double out[][] = c.clone();
+        for (int k = 0; k < refs.length; k++) {
+            int gene = refs[k][0];
+            if (out[gene] == c[gene]) {
+                out[gene] = c[gene].clone();
+            }
+            out[gene][refs[k][1]] = x[k];
+        }
+        return out;
+    }
+
+    /**
+     * The point centroid + a*(p - centroid).
+     */
+    private static double[] along(double centroid[], double p[], double a) {
+        double q[] = new double[p.length];
+        for (int k = 0; k < q.length; k++) {
+            q[k] = centroid[k] + a*(p[k] - centroid[k]);
+        }
+        return q;
+    }
+
+    /**
+     * Sort the vertices of the simplex by value, best first.  The simplex
+     * is tiny, so insertion sort does.
+     */
+    private static void sort(double x[][], double y[]) {
+        for (int i = 1; i < y.length; i++) {
+            double yi = y[i];
+            double xi[] = x[i];
+            int j = i - 1;
+            while (j >= 0 && y[j] > yi) {
+                y[j+1] = y[j];
+                x[j+1] = x[j];
+                j--;
+            }
+            y[j+1] = yi;
+            x[j+1] = xi;
+        }
+    }
+
+    /**
+     * Task tuning one individual.
+     */
+    private class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Individual ind;
+        private Fitness    f;
+        private double     fvals[];
+        private int        index;
+
+        Task(Individual ind, Fitness f, double fvals[], int index) {
+            this.ind = ind;
+            this.f = f;
+            this.fvals = fvals;
+            this.index = index;
+        }
+
+        protected void compute() {
+            fvals[index] = optimize(ind, f);
+        }
+    }
+}
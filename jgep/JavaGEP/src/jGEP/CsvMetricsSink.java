@@ -0,0 +1,71 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+/**
+ * Writes the metrics of each generation as a row of a CSV file.  The
+ * first line holds the column names.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class CsvMetricsSink implements MetricsSink {
+    private PrintWriter out;
+    private boolean     header;   // header written yet?
+
+    /**
+     * Constructor.  Creates or truncates the file.
+     *
+     * @param  filename   The file to write.
+     */
+    public CsvMetricsSink(String filename) throws Exception {
+        out = new PrintWriter(new FileWriter(filename));
+        header = false;
+    }
+
+    public synchronized void publish(MetricsSnapshot s) {
+        String names[] = s.getNames();
+
+        if (!header) {
+            out.print("generation,timestamp");
+            for (int i = 0; i < names.length; i++) {
+                out.print("," + names[i]);
+            }
+            out.println();
+            header = true;
+        }
+
+        out.print(s.getGeneration() + "," + s.getTimestamp());
+        for (int i = 0; i < names.length; i++) {
+            out.print("," + s.get(i));
+        }
+        out.println();
+        out.flush();
+    }
+
+    /**
+     * Close the file.
+     */
+    public synchronized void close() {
+        out.close();
+    }
+}
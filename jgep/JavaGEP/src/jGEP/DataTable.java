@@ -0,0 +1,152 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Test cases stored by column.  Each named variable has an array of
+ * doubles holding its value in every test case, and the expected output
+ * is a column of its own.  Evaluators that work a column at a time read
+ * the arrays directly, with no hashtable lookups per test case.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class DataTable {
+    private String    names[];   // column names
+    private double    columns[][]; // [column][row]
+    private double    expected[];  // expected output per row
+    private Hashtable index;     // name -> Integer column index
+    private int       rows;      // number of test cases
+
+    /**
+     * Constructor.  The arrays are used as they are, not copied.
+     *
+     * @param  names      Column names.
+     * @param  columns    One array per name, each holding rows values.
+     * @param  expected   Expected output of each row.
+     */
+    public DataTable(String names[], double columns[][], double expected[]) {
+        this.names = names;
+        this.columns = columns;
+        this.expected = expected;
+        rows = expected.length;
+        index = new Hashtable();
+        for (int i = 0; i < names.length; i++) {
+            index.put(names[i], new Integer(i));
+        }
+    }
+
+    /**
+     * Convert a vector of test cases in the format Fitness uses (one
+     * hashtable per test case) into columns.  The columns are the keys
+     * of the first test case other than `Expected'; values missing from
+     * later test cases are stored as NaN.
+     *
+     * @param  tests   Vector of hashtables.
+     * @return         The table.
+     */
+    public static DataTable fromRows(Vector tests) {
+        int n = tests.size();
+        Vector keys = new Vector();
+
+        if (n > 0) {
+            Enumeration e = ((Hashtable)tests.elementAt(0)).keys();
+            while (e.hasMoreElements()) {
+                Object k = e.nextElement();
+                if (!k.equals("Expected")) {
+                    keys.addElement(k);
+                }
+            }
+        }
+
+        String names[] = new String[keys.size()];
+        double columns[][] = new double[names.length][n];
+        double expected[] = new double[n];
+        keys.copyInto(names);
+
+        for (int r = 0; r < n; r++) {
+            Hashtable vals = (Hashtable)tests.elementAt(r);
+            for (int c = 0; c < names.length; c++) {
+                Double v = (Double)vals.get(names[c]);
+                columns[c][r] = (v == null) ? Double.NaN : v.doubleValue();
+            }
+            Double e = (Double)vals.get("Expected");
+            expected[r] = (e == null) ? Double.NaN : e.doubleValue();
+        }
+
+        return new DataTable(names, columns, expected);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getNumColumns() {
+        return names.length;
+    }
+
+    public String getName(int c) {
+        return names[c];
+    }
+
+    /**
+     * Return the index of a named column.
+     *
+     * @param  name   The column name.
+     * @return        The index, or -1 if there is no such column.
+     */
+    public int getColumnIndex(String name) {
+        Integer i = (Integer)index.get(name);
+        return (i == null) ? -1 : i.intValue();
+    }
+
+    /**
+     * Return a column.  Not a copy.
+     *
+     * @param  c   The column index.
+     * @return     The values of the column.
+     */
+    public double[] getColumn(int c) {
+        return columns[c];
+    }
+
+    /**
+     * Return a column by name.  Not a copy.
+     *
+     * @param  name   The column name.
+     * @return        The values, or null if there is no such column.
+     */
+    public double[] getColumn(String name) {
+        int c = getColumnIndex(name);
+        return (c < 0) ? null : columns[c];
+    }
+
+    /**
+     * Return the expected outputs.  Not a copy.
+     *
+     * @return   The expected column.
+     */
+    public double[] getExpected() {
+        return expected;
+    }
+}
@@ -0,0 +1,137 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.Hashtable;
+import java.util.StringTokenizer;
+import java.util.Vector;
+
+/**
+ * Row source that streams test cases from a delimited text file.  The
+ * first line of the file names the columns, and each following line
+ * holds one test case.  One of the columns must be named `Expected'.
+ * For example:
+ *
+ *      a,b,Expected
+ *      1.0,2.0,3.0
+ *      2.0,2.0,4.0
+ *
+ * Only one block of rows is held in memory at a time, so the file can be
+ * much larger than the heap.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class DelimitedRowSource implements RowSource {
+    private String         filename;  // file to read rows from
+    private String         delims;    // column delimiter characters
+    private BufferedReader in;        // open reader, null between passes
+    private String         names[];   // column names from the header
+    private int            line;      // line number, for error messages
+
+    /**
+     * Constructor.
+     *
+     * @param  filename   Name of the file holding the test cases.
+     * @param  delims     Characters separating columns (for example ",").
+     */
+    public DelimitedRowSource(String filename, String delims) {
+        this.filename = filename;
+        this.delims = delims;
+        in = null;
+    }
+
+    public Vector nextBlock(int maxRows) throws Exception {
+        if (in == null) {
+            open();
+        }
+
+        Vector block = new Vector();
+        String s;
+
+        while (block.size() < maxRows && (s = in.readLine()) != null) {
+            line++;
+            if (s.trim().length() == 0) {
+                continue;
+            }
+
+            StringTokenizer st = new StringTokenizer(s, delims);
+            if (st.countTokens() != names.length) {
+                throw new Exception(filename+":"+line+": expected "+
+                                    names.length+" columns.");
+            }
+
+            Hashtable row = new Hashtable();
+            for (int i = 0; i < names.length; i++) {
+                row.put(names[i], Double.valueOf(st.nextToken().trim()));
+            }
+            block.addElement(row);
+        }
+
+        if (block.size() == 0) {
+            close();
+            return null;
+        }
+
+        return block;
+    }
+
+    public void rewind() throws Exception {
+        close();
+    }
+
+    /**
+     * Open the file and read the header line naming the columns.
+     */
+    private void open() throws Exception {
+        in = new BufferedReader(new FileReader(filename));
+        line = 1;
+
+        String header = in.readLine();
+        if (header == null) {
+            close();
+            throw new Exception(filename+": missing header line.");
+        }
+
+        StringTokenizer st = new StringTokenizer(header, delims);
+        names = new String[st.countTokens()];
+        boolean sawExpected = false;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = st.nextToken().trim();
+            if (names[i].equals("Expected")) {
+                sawExpected = true;
+            }
+        }
+
+        if (!sawExpected) {
+            close();
+            throw new Exception(filename+
+                                ": header missing `Expected' column.");
+        }
+    }
+
+    private void close() throws Exception {
+        if (in != null) {
+            in.close();
+            in = null;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Checks that exported source code computes the same values as the
+ * interpreter.  The generated code is compiled (Java with the system
+ * Java compiler, C with a C compiler found on the path), run over every
+ * row of a table, and compared with the interpreter's output for the
+ * same row.  Differences are reported on System.err.
+ *
+ * Two values agree if both are NaN, or if they differ by at most tol
+ * times the larger of 1 and the magnitude of the interpreter's value.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class ExportVerifier {
+    private static final int MAX_REPORTS = 10;   // differences printed
+
+    private ExportVerifier() {
+    }
+
+    /**
+     * Verify the Java export of an individual.
+     *
+     * @param  ind    The individual.
+     * @param  ex     The exporter, with its linking function and
+     *                constants set.
+     * @param  data   Input rows; columns are matched to terminals by
+     *                name.
+     * @param  tol    Relative tolerance.
+     * @return        The number of rows that differ.
+     */
+    public static int verifyJava(ArithmeticIndividual ind, JavaExporter ex,
+                                 DataTable data, double tol) 
+        throws Exception {
+        javax.tools.JavaCompiler jc = 
+            javax.tools.ToolProvider.getSystemJavaCompiler();
+        if (jc == null) {
+            throw new Exception("No Java compiler available");
+        }
+
+        String name = "Exported";
+        File dir = tempDir();
+        File src = new File(dir, name + ".java");
+        write(src, ex.export(ind, name));
+
+        if (jc.run(null, null, null, "-d", dir.getPath(), 
+                   src.getPath()) != 0) {
+            throw new Exception("Generated Java does not compile");
+        }
+        new File(dir, name + ".class").deleteOnExit();
+
+        URLClassLoader loader = 
+            new URLClassLoader(new URL[] { dir.toURI().toURL() });
+        Method eval = loader.loadClass(name).getMethod("eval", 
+                                                       double[].class);
+        double args[][] = arguments(ind, ex, data);
+        double out[] = new double[data.getRows()];
+
+        for (int r = 0; r < out.length; r++) {
+            out[r] = ((Double)eval.invoke(null, new Object[] { args[r] }))
+                .doubleValue();
+        }
+
+        return compare(ind, ex, data, out, tol);
+    }
+
+    /**
+     * Verify the C export of an individual.  The function is compiled
+     * together with a driver reading rows on standard input.
+     *
+     * @param  ind    The individual.
+     * @param  ex     The exporter.
+     * @param  data   Input rows.
+     * @param  tol    Relative tolerance.
+     * @param  cc     C compiler command, for example "cc".
+     * @return        The number of rows that differ.
+     */
+    public static int verifyC(ArithmeticIndividual ind, CExporter ex,
+                              DataTable data, double tol, String cc) 
+        throws Exception {
+        String name = "exported";
+        File dir = tempDir();
+        File src = new File(dir, name + ".c");
+        File exe = new File(dir, name);
+        File in = new File(dir, "rows.txt");
+        double args[][] = arguments(ind, ex, data);
+        int nvars = ex.getVariables(ind.getGenome()).size();
+
+        write(src, ex.export(ind, name) +
+              "\n#include <stdio.h>\n\n" +
+              "int main(void) {\n" +
+              "  double x[" + Math.max(nvars, 1) + "];\n" +
+              "  int i;\n\n" +
+              "  for (;;) {\n" +
+              "    for (i = 0; i < " + nvars + "; i++)\n" +
+              "      if (scanf(\"%lf\", &x[i]) != 1) return 0;\n" +
+              "    printf(\"%.17g\\n\", " + name + "_row(x));\n" +
+              "    if (" + nvars + " == 0 && scanf(\"%lf\", &x[0]) != 1)" +
+              " return 0;\n" +
+              "  }\n" +
+              "}\n");
+
+        in.deleteOnExit();
+        PrintWriter pw = new PrintWriter(new FileWriter(in));
+        for (int r = 0; r < args.length; r++) {
+            for (int i = 0; i < nvars; i++) {
+                pw.print(args[r][i] + " ");
+            }
+            pw.println(nvars == 0 ? "0" : "");
+        }
+        pw.close();
+
+        Process p = new ProcessBuilder(new String[] {
+                cc, "-O2", "-o", exe.getPath(), src.getPath(), "-lm" })
+            .redirectErrorStream(true).start();
+        drain(p);
+        if (p.waitFor() != 0) {
+            throw new Exception("Generated C does not compile");
+        }
+        exe.deleteOnExit();
+
+        p = new ProcessBuilder(new String[] { exe.getPath() })
+            .redirectInput(in).start();
+        BufferedReader br = 
+            new BufferedReader(new InputStreamReader(p.getInputStream()));
+        double out[] = new double[data.getRows()];
+        for (int r = 0; r < out.length; r++) {
+            String line = br.readLine();
+            out[r] = (line == null) ? Double.NaN : parseC(line.trim());
+        }
+        br.close();
+        p.waitFor();
+
+        return compare(ind, ex, data, out, tol);
+    }
+
+    /**
+     * The interpreter's value for a row: the genes the exporter exports
+     * evaluated separately and joined with its linking function.  Without
+     * a linking function this is the first gene's value, the one Fitness
+     * scores.
+     *
+     * @param  ind   The individual.
+     * @param  ex    The exporter.
+     * @param  row   Terminal values by name.
+     * @return       The value.
+     */
+    public static double interpret(ArithmeticIndividual ind, 
+                                   SourceExporter ex, Hashtable row) {
+        ExpressionNode roots[] = ind.express();
+        Function link = ex.getLinkingFunction();
+        double v = 0.0;
+
+        for (int i = 0; i < ex.getNumExported(roots); i++) {
+            double g = ((NumericExpressionNode)roots[i]).evaluateDouble(row);
+            v = (i == 0) ? g : link.apply2(v, g);
+        }
+        return v;
+    }
+
+    /**
+     * The arguments of the generated code for each row of a table.
+     */
+    private static double[][] arguments(ArithmeticIndividual ind, 
+                                        SourceExporter ex, DataTable data) {
+        Vector vars = ex.getVariables(ind.getGenome());
+        double args[][] = new double[data.getRows()][vars.size()];
+
+        for (int i = 0; i < vars.size(); i++) {
+            char c = ((Character)vars.elementAt(i)).charValue();
+            double col[] = data.getColumn(ind.getGenome().getSymbolName(c));
+            for (int r = 0; r < args.length; r++) {
+                args[r][i] = (col == null) ? Double.NaN : col[r];
+            }
+        }
+        return args;
+    }
+
+    private static int compare(ArithmeticIndividual ind, SourceExporter ex,
+                               DataTable data, double out[], double tol) {
+        int bad = 0;
+
+        for (int r = 0; r < out.length; r++) {
+            Hashtable row = new Hashtable();
+            for (int c = 0; c < data.getNumColumns(); c++) {
+                row.put(data.getName(c), new Double(data.getColumn(c)[r]));
+            }
+            row.putAll(ex.getConstants());
+
+            double v = interpret(ind, ex, row);
+            boolean same = (Double.isNaN(v) && Double.isNaN(out[r])) ||
+                v == out[r] ||
+                Math.abs(v - out[r]) <= tol * Math.max(1.0, Math.abs(v));
+
+            if (!same) {
+                if (bad < MAX_REPORTS) {
+                    System.err.println("row " + r + ": interpreter " + v + 
+                                       ", exported " + out[r]);
+                }
+                bad++;
+            }
+        }
+        return bad;
+    }
+
+    /**
+     * Parse a double printed by C's %g, which spells NaN and infinity
+     * differently from Java.
+     */
+    private static double parseC(String s) {
+        String l = s.toLowerCase();
+        if (l.indexOf("nan") >= 0) {
+            return Double.NaN;
+        } else if (l.indexOf("inf") >= 0) {
+            return l.startsWith("-") ? Double.NEGATIVE_INFINITY 
+                : Double.POSITIVE_INFINITY;
+        }
+        return Double.parseDouble(s);
+    }
+
+    private static File tempDir() throws Exception {
+        File dir = File.createTempFile("jgep", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new Exception("Cannot create "+dir);
+        }
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private static void write(File f, String s) throws Exception {
+        FileWriter w = new FileWriter(f);
+        w.write(s);
+        w.close();
+        f.deleteOnExit();
+    }
+
+    private static void drain(Process p) throws Exception {
+        BufferedReader br = 
+            new BufferedReader(new InputStreamReader(p.getInputStream()));
+        String line;
+        while ((line = br.readLine()) != null) {
+            System.err.println(line);
+        }
+        br.close();
+    }
+}
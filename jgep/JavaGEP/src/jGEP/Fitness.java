@@ -26,12 +26,49 @@ import java.util.Hashtable;
  * a set of test cases and individuals, it will manage testing and result
  * tracking.
  *
+ * The fitness of each individual is cached on the individual (see
+ * Individual.getFitness()).  Offspring whose coding regions are the same
+ * as their parent's keep the cache, so neutral changes are never
+ * evaluated again.  The cache is keyed on the configuration of the
+ * harness, and anything that changes the fitness of an individual, such
+ * as new test values or a new metric, starts a new key.
+ *
  * @author    Matthew Sottile
  * @version   1.0
  */
 public class Fitness {
-    protected Vector testValues;
-    private   double maxFitness;
+    /**
+     * Output substituted for a test case on which an individual fails to
+     * evaluate (for example, by dividing by zero), unless changed with
+     * setInvalidValue().
+     */
+    public static final double DEFAULT_INVALID_VALUE = -1000000000.0;
+
+    /**
+     * Penalty mode in which every test case an individual fails on (one
+     * with an undefined or infinite output) is scored as if the output
+     * had been the invalid value.  This is the default.
+     */
+    public static final int PENALTY_PER_CASE = 0;
+
+    /**
+     * Penalty mode in which the first test case an individual fails on
+     * ends its evaluation, and the individual gets the invalid fitness.
+     * The penalty is applied once, no matter how many cases would fail.
+     */
+    public static final int PENALTY_PER_INDIVIDUAL = 1;
+
+    protected Vector        testValues;
+    private   double        maxFitness;
+    private   FitnessMetric metric;         // how test cases become fitness
+    private   FitnessMetric baseMetric;     // metric before linear scaling
+    private   double        invalidValue;   // output used for failed cases
+    private   int           penaltyMode;    // PENALTY_PER_CASE or _INDIVIDUAL
+    private   double        invalidFitness; // fitness of failed individuals
+    private   long          subtreeBytes;   // subtree cache budget
+    private   SubtreeEvaluator subtrees;    // see evaluateAll()
+    private volatile Object  cacheKey;      // tags cached fitness values
+    private volatile Rows    rows;          // test cases by terminal index
 
     /**
      * Constructor
@@ -45,6 +82,165 @@ public class Fitness {
     public Fitness(Vector tests, double max) {
         testValues = tests;
         maxFitness = max;
+        metric = FitnessMetrics.absoluteError(max);
+        baseMetric = metric;
+        invalidValue = DEFAULT_INVALID_VALUE;
+        penaltyMode = PENALTY_PER_CASE;
+        invalidFitness = 0.0;
+        subtreeBytes = 32L*1024L*1024L;
+        subtrees = null;
+        cacheKey = new Object();
+    }
+
+    /**
+     * Set the metric used to turn outputs into fitness.  The default is
+     * FitnessMetrics.absoluteError() with the maximum fitness given to
+     * the constructor.  If linear scaling is on and the new metric does
+     * not support it, scaling is turned off.
+     *
+     * @param  m   The metric.
+     */
+    public void setMetric(FitnessMetric m) {
+        boolean scaled = isLinearScaling();
+        baseMetric = m;
+        metric = m;
+        changed();
+        if (scaled) {
+            try {
+                metric = FitnessMetrics.linearScaling(m);
+            } catch (Exception e) {
+                System.err.println("ERROR: linear scaling turned off, " +
+                                   "metric does not support it.");
+            }
+        }
+    }
+
+    /**
+     * Turn linear scaling of the outputs on or off.  With scaling, each
+     * individual is scored on a + b*f rather than its output f, with a
+     * and b fitted by least squares in the same pass that computes the
+     * error (see FitnessMetrics.linearScaling()).  The search then no
+     * longer has to discover offsets and scale factors.  Scaling works
+     * with every evaluation path, since they all go through the metric.
+     *
+     * @param  on   Whether to scale.
+     */
+    public void setLinearScaling(boolean on) throws Exception {
+        if (on) {
+            metric = FitnessMetrics.linearScaling(baseMetric);
+        } else {
+            metric = baseMetric;
+        }
+        changed();
+    }
+
+    /**
+     * Whether outputs are linearly scaled.
+     *
+     * @return   True if linear scaling is on.
+     */
+    public boolean isLinearScaling() {
+        return metric != baseMetric;
+    }
+
+    /**
+     * Return the scaling of an individual's output under linear scaling:
+     * its fitness is that of a + b*f.  Use this to report the final
+     * model.
+     *
+     * @param  ind   The individual.
+     * @return       Array of {a, b}, or null if linear scaling is off or
+     *               the individual fails under PENALTY_PER_INDIVIDUAL.
+     */
+    public double[] getScaling(Individual ind) {
+        if (!isLinearScaling()) {
+            return null;
+        }
+        ExpressionNode roots[] = ind.express();
+        Rows r = getRows(ind, roots);
+        MetricAccumulator acc = metric.newAccumulator();
+
+        for (int i = 0; i < testValues.size(); i++) {
+            if (!accumulate(roots, r, i, acc)) {
+                return null;
+            }
+        }
+        return FitnessMetrics.getScaling(acc);
+    }
+
+    /**
+     * Return the metric used to turn outputs into fitness.  Under linear
+     * scaling this is the scaled metric.
+     *
+     * @return   The metric.
+     */
+    public FitnessMetric getMetric() {
+        return metric;
+    }
+
+    /**
+     * Set the output recorded for a test case on which an individual
+     * fails to evaluate.
+     *
+     * @param  v   The substitute output.
+     */
+    public void setInvalidValue(double v) {
+        invalidValue = v;
+        changed();
+    }
+
+    /**
+     * Return the output recorded for a test case on which an individual
+     * fails to evaluate.
+     *
+     * @return   The substitute output.
+     */
+    public double getInvalidValue() {
+        return invalidValue;
+    }
+
+    /**
+     * Set how individuals that fail on some test cases are penalised:
+     * PENALTY_PER_CASE or PENALTY_PER_INDIVIDUAL.
+     *
+     * @param  mode   The penalty mode.
+     */
+    public void setPenaltyMode(int mode) {
+        penaltyMode = mode;
+        changed();
+    }
+
+    /**
+     * Return the penalty mode.
+     *
+     * @return   PENALTY_PER_CASE or PENALTY_PER_INDIVIDUAL.
+     */
+    public int getPenaltyMode() {
+        return penaltyMode;
+    }
+
+    /**
+     * Set the fitness given to an individual that fails on a test case
+     * under PENALTY_PER_INDIVIDUAL.  The default is 0.0, which is the
+     * worst fitness for every metric in FitnessMetrics except
+     * absoluteError() and rSquared(); those need a suitably negative
+     * value.
+     *
+     * @param  f   The fitness of a failed individual.
+     */
+    public void setInvalidFitness(double f) {
+        invalidFitness = f;
+        changed();
+    }
+
+    /**
+     * Return the fitness given to an individual that fails on a test case
+     * under PENALTY_PER_INDIVIDUAL.
+     *
+     * @return   The fitness of a failed individual.
+     */
+    public double getInvalidFitness() {
+        return invalidFitness;
     }
 
     /**
@@ -67,6 +263,9 @@ public class Fitness {
      */
     public void setTestValues(Vector tvs) {
         testValues = tvs;
+        subtrees = null;
+        rows = null;
+        changed();
         for (int i = 0; i < tvs.size(); i++) {
             Hashtable vs = (Hashtable)tvs.elementAt(i);
             Double e = (Double)vs.get("Expected");
@@ -76,27 +275,408 @@ public class Fitness {
         }
     }
 
+    /**
+     * Evaluate an individual, or return its cached fitness if it has
+     * already been evaluated under the current configuration.
+     *
+     * @param  ind   The individual to evaluate.
+     * @return       The fitness of the individual.
+     */
     public double evaluate(Individual ind) {
-        ExpressionNode roots[] = ind.express();
-        double fVals[] = new double[testValues.size()];
-        double fval = 0.0;
+        Object key = cacheKey;
+        Double f = ind.getFitness(key);
+
+        if (f != null) {
+            Metrics.count(Metrics.FITNESS_HITS);
+            return f.doubleValue();
+        }
+        Metrics.count(Metrics.FITNESS_MISSES);
+        double v = score(ind);
+        ind.setFitness(key, v);
+        return v;
+    }
+
+    /**
+     * Evaluate an individual over every test case, without looking at
+     * the fitness cache.  Subclasses that evaluate individuals in some
+     * other way override this rather than evaluate(Individual).
+     *
+     * @param  ind   The individual to evaluate.
+     * @return       The fitness of the individual.
+     */
+    protected double score(Individual ind) {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        try {
+            ExpressionNode roots[] = ind.express();
+            Rows r = getRows(ind, roots);
+            MetricAccumulator acc = metric.newAccumulator();
+
+            for (int i = 0; i < testValues.size(); i++) {
+                if (!accumulate(roots, r, i, acc)) {
+                    return invalidFitness;
+                }
+            }
+        
+            return metric.fitness(acc);
+        } finally {
+            Metrics.endEvaluation(t, 1);
+        }
+    }
+
+    /**
+     * Evaluate a whole population.  The expression trees of all the
+     * individuals are merged so that each distinct subtree is evaluated
+     * only once over the test cases, and frequently used subtree outputs
+     * are cached between generations (see SubtreeEvaluator).  The
+     * results are the same as calling evaluate() on each individual.
+     *
+     * @param  p   The population.
+     * @return     The fitness of each individual, in the order of
+     *             p.getIndividuals().
+     */
+    public double[] evaluateAll(Population p) {
+        return evaluateAll(p.getIndividuals());
+    }
+
+    /**
+     * Evaluate a vector of individuals together.  See
+     * evaluateAll(Population).  Individuals with a cached fitness are
+     * not evaluated again.
+     *
+     * @param  individuals   The individuals.
+     * @return               The fitness of each individual, in order.
+     */
+    public double[] evaluateAll(Vector individuals) {
+        Object key = cacheKey;
+        double fvals[] = new double[individuals.size()];
+        Vector todo = new Vector();
+        int index[] = new int[fvals.length];
+
+        for (int i = 0; i < fvals.length; i++) {
+            Individual ind = (Individual)individuals.elementAt(i);
+            Double f = ind.getFitness(key);
+            if (f != null) {
+                fvals[i] = f.doubleValue();
+            } else {
+                index[todo.size()] = i;
+                todo.addElement(ind);
+            }
+        }
+        Metrics.count(Metrics.FITNESS_HITS, fvals.length - todo.size());
+        Metrics.count(Metrics.FITNESS_MISSES, todo.size());
+        if (todo.size() == 0) {
+            return fvals;
+        }
+
+        long t = Metrics.begin(Metrics.EVALUATE);
+        FitnessBatchEvent ev = FitnessBatchEvent.start();
+        try {
+            if (subtrees == null) {
+                subtrees = new SubtreeEvaluator(DataTable.fromRows(testValues),
+                                                subtreeBytes);
+            }
+            double scored[] = subtrees.evaluate(todo, this);
+            for (int j = 0; j < scored.length; j++) {
+                fvals[index[j]] = scored[j];
+                ((Individual)todo.elementAt(j)).setFitness(key, scored[j]);
+            }
+            return fvals;
+        } finally {
+            Metrics.endEvaluation(t, todo.size());
+            ev.finish(this, todo.size(), testValues.size());
+        }
+    }
+
+    /**
+     * Set the number of bytes of subtree outputs evaluateAll() may keep
+     * from one generation to the next.  The default is 32MB.
+     *
+     * @param  bytes   The cache budget.
+     */
+    public void setSubtreeCacheSize(long bytes) {
+        subtreeBytes = bytes;
+        if (subtrees != null) {
+            subtrees.setBudget(bytes);
+        }
+    }
+
+    /**
+     * Return the evaluator used by evaluateAll(), for its statistics.
+     *
+     * @return   The evaluator, or null if evaluateAll() has not been
+     *           called since the test values were last set.
+     */
+    public SubtreeEvaluator getSubtreeEvaluator() {
+        return subtrees;
+    }
+
+    /**
+     * Evaluate an individual against a cutoff, such as the current
+     * selection threshold or the fitness of a tournament opponent.  After
+     * each test case the metric is asked for an upper bound on the final
+     * fitness, and as soon as that bound falls below the cutoff the
+     * individual cannot reach it and evaluation stops.  The returned
+     * score is then the bound rather than the exact fitness.  Individuals
+     * that reach the cutoff are always evaluated in full.  A cached
+     * fitness is returned as an exact score, and exact scores are cached.
+     *
+     * @param  ind      The individual to evaluate.
+     * @param  cutoff   Fitness the individual has to reach to matter.
+     * @return          The exact fitness, or an upper bound on it if the
+     *                  individual falls below the cutoff.
+     */
+    public Score evaluate(Individual ind, double cutoff) {
+        Object key = cacheKey;
+        Double f = ind.getFitness(key);
+
+        if (f != null) {
+            Metrics.count(Metrics.FITNESS_HITS);
+            return new Score(f.doubleValue(), false);
+        }
+        Metrics.count(Metrics.FITNESS_MISSES);
+        Score s = score(ind, cutoff);
+        if (!s.isBound()) {
+            ind.setFitness(key, s.getValue());
+        }
+        return s;
+    }
+
+    /**
+     * Evaluate an individual against a cutoff without looking at the
+     * fitness cache.  See evaluate(Individual, double).
+     *
+     * @param  ind      The individual to evaluate.
+     * @param  cutoff   Fitness the individual has to reach to matter.
+     * @return          The exact fitness, or an upper bound on it.
+     */
+    protected Score score(Individual ind, double cutoff) {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        try {
+            ExpressionNode roots[] = ind.express();
+            Rows r = getRows(ind, roots);
+            MetricAccumulator acc = metric.newAccumulator();
+            int n = testValues.size();
+
+            for (int i = 0; i < n; i++) {
+                if (!accumulate(roots, r, i, acc)) {
+                    return new Score(invalidFitness, false);
+                }
+
+                int remaining = n - i - 1;
+                if (remaining > 0) {
+                    double bound = metric.bound(acc, remaining);
+                    if (bound < cutoff) {
+                        return new Score(bound, true);
+                    }
+                }
+            }
+
+            return new Score(metric.fitness(acc), false);
+        } finally {
+            Metrics.endEvaluation(t, 1);
+        }
+    }
+
+    /**
+     * Return the key fitness values are currently cached under (see
+     * Individual.getFitness()), for evaluators that score individuals
+     * on the harness's behalf.
+     *
+     * @return   The key.
+     */
+    Object getCacheKey() {
+        return cacheKey;
+    }
+
+    /**
+     * Start a new cache key, so that fitness values cached under the old
+     * configuration are no longer used.  Subclasses call this when
+     * anything else the fitness depends on changes.
+     */
+    protected void changed() {
+        cacheKey = new Object();
+    }
+
+    /**
+     * Add a single test case to an accumulator.  Subclasses that obtain
+     * their test cases from somewhere other than the test value vector
+     * (see StreamingFitness) go through this method so that every
+     * evaluation mode agrees on the value of a test case.
+     *
+     * Expression nodes implementing NumericExpressionNode are evaluated
+     * without boxing and without exceptions; an undefined or infinite
+     * output marks the case as failed.  Other nodes are evaluated through
+     * ExpressionNode.evaluate(), and an exception marks the case failed.
+     *
+     * @param  roots  The expressed individual.
+     * @param  vals   The test case, including the `Expected' key.
+     * @param  acc    Accumulator created by the current metric.
+     * @return        False if the case failed and the penalty mode is
+     *                PENALTY_PER_INDIVIDUAL.  The caller should then stop
+     *                and give the individual the invalid fitness.
+     */
+    protected boolean accumulate(ExpressionNode roots[], Hashtable vals,
+                                 MetricAccumulator acc) {
+        double f;
 
         // for now we test the first node since we haven't dealt with
         // connectives for the forest of trees.
-        for (int i = 0; i < testValues.size(); i++) {
-            Hashtable vals = (Hashtable)testValues.elementAt(i);
-            
+        if (roots[0] instanceof NumericExpressionNode) {
+            f = ((NumericExpressionNode)roots[0]).evaluateDouble(vals);
+        } else {
             try {
-                fVals[i] = ((Double)roots[0].evaluate(vals)).doubleValue();
+                f = ((Double)roots[0].evaluate(vals)).doubleValue();
             } catch (Exception e) {
-                fVals[i] = -1000000000.0;
+                f = Double.NaN;
             }
-            
-            double expected = ((Double)(vals.get("Expected"))).doubleValue();
-            
-            fval += (maxFitness - Math.abs(fVals[i] - expected));
         }
-        
-        return fval;
+
+        double expected = ((Double)(vals.get("Expected"))).doubleValue();
+
+        return record(f, expected, acc);
+    }
+
+    /**
+     * Add test case i of the test values to an accumulator.  If rows is
+     * not null the terminals are read from it by index, with no
+     * hashtable lookups; otherwise this is the same as
+     * accumulate(roots, testValues.elementAt(i), acc).
+     *
+     * @param  roots  The expressed individual.
+     * @param  r      Test cases laid out by getRows(), or null.
+     * @param  i      Index of the test case.
+     * @param  acc    Accumulator created by the current metric.
+     * @return        False if the case failed and the penalty mode is
+     *                PENALTY_PER_INDIVIDUAL.
+     */
+    protected boolean accumulate(ExpressionNode roots[], Rows r, int i,
+                                 MetricAccumulator acc) {
+        if (r == null) {
+            return accumulate(roots, (Hashtable)testValues.elementAt(i),
+                              acc);
+        }
+        double f = ((IndexedExpressionNode)roots[0]).evaluateRow(r.in[i]);
+        return record(f, r.expected[i], acc);
+    }
+
+    /**
+     * Add an output to an accumulator, substituting the invalid value
+     * for a failed case.
+     */
+    private boolean record(double f, double expected, MetricAccumulator acc) {
+        if (Double.isNaN(f) || Double.isInfinite(f)) {
+            if (penaltyMode == PENALTY_PER_INDIVIDUAL) {
+                return false;
+            }
+            f = invalidValue;
+        }
+
+        acc.add(f, expected);
+        return true;
+    }
+
+    /**
+     * Return the test values laid out for the genome of an individual,
+     * one array per test case holding the value of each terminal at its
+     * index in the genome.  The layout is built on first use and kept
+     * until the test values or the genome change.
+     *
+     * @param  ind    The individual.
+     * @param  roots  Its expression.
+     * @return        The rows, or null if the expression cannot read
+     *                them (it does not implement IndexedExpressionNode).
+     */
+    protected Rows getRows(Individual ind, ExpressionNode roots[]) {
+        if (!(roots[0] instanceof IndexedExpressionNode) ||
+            testValues == null) {
+            return null;
+        }
+        Genome g = ind.getGenome();
+        Rows r = rows;
+        if (r == null || r.genome != g) {
+            r = new Rows(g, testValues);
+            rows = r;
+        }
+        return r;
+    }
+
+    /**
+     * Test values laid out by terminal index, see getRows().  Read-only
+     * once built.
+     */
+    protected static final class Rows {
+        final Genome genome;
+        final double in[][];      // [test case][terminal index]
+        final double expected[];  // expected output per test case
+
+        Rows(Genome g, Vector tests) {
+            int nt = g.getNumTerminals();
+            genome = g;
+            in = new double[tests.size()][nt];
+            expected = new double[tests.size()];
+
+            for (int i = 0; i < in.length; i++) {
+                Hashtable vals = (Hashtable)tests.elementAt(i);
+                for (int k = 0; k < nt; k++) {
+                    Object v = vals.get(g.getTerminalName(k));
+                    in[i][k] = (v instanceof Double)
+                        ? ((Double)v).doubleValue() : Double.NaN;
+                }
+                expected[i] = ((Double)vals.get("Expected")).doubleValue();
+            }
+        }
+    }
+
+    /**
+     * Score a column of outputs, one per test case, against the expected
+     * outputs.  Failed cases are treated as in accumulate().
+     *
+     * @param  out        Outputs of an individual.
+     * @param  expected   Expected outputs.
+     * @return            The fitness.
+     */
+    protected double evaluateColumn(double out[], double expected[]) {
+        MetricAccumulator acc = metric.newAccumulator();
+
+        if (!accumulateColumn(out, expected, 0, out.length, acc)) {
+            return invalidFitness;
+        }
+        return metric.fitness(acc);
+    }
+
+    /**
+     * Add a column of outputs to an accumulator.  Failed cases are
+     * treated as in accumulate().
+     *
+     * @param  out        Outputs of an individual, from out[0].
+     * @param  expected   Expected outputs.
+     * @param  eo         Index in expected of the first expected output.
+     * @param  n          Number of outputs.
+     * @param  acc        Accumulator created by the current metric.
+     * @return            False if a case failed and the penalty mode is
+     *                    PENALTY_PER_INDIVIDUAL.
+     */
+    protected boolean accumulateColumn(double out[], double expected[],
+                                       int eo, int n, MetricAccumulator acc) {
+        for (int i = 0; i < n; i++) {
+            if (!record(out[i], expected[eo + i], acc)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The fitness of an accumulator, where a null accumulator stands for
+     * an individual that failed under PENALTY_PER_INDIVIDUAL.
+     *
+     * @param  acc   Accumulator created by the current metric, or null.
+     * @return       The fitness.
+     */
+    protected double fitness(MetricAccumulator acc) {
+        if (acc == null) {
+            return invalidFitness;
+        }
+        return metric.fitness(acc);
     }
 }
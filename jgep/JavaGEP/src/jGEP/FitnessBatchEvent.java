@@ -0,0 +1,75 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for the evaluation of a batch of individuals,
+ * such as a whole population.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+@Name("jGEP.FitnessBatch")
+@Label("Fitness Batch")
+@Category({"jGEP"})
+@Description("Evaluation of a batch of individuals")
+public class FitnessBatchEvent extends Event {
+    @Label("Evaluator")
+    String evaluator;
+
+    @Label("Individuals")
+    int individuals;
+
+    @Label("Rows")
+    @Description("Test cases each individual was evaluated on")
+    long rows;
+
+    /**
+     * Start timing a batch.
+     *
+     * @return   The event.
+     */
+    static FitnessBatchEvent start() {
+        FitnessBatchEvent e = new FitnessBatchEvent();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Commit the event if it is being recorded.
+     *
+     * @param  evaluator     The object doing the evaluation.
+     * @param  individuals   Number of individuals evaluated.
+     * @param  rows          Number of test cases.
+     */
+    void finish(Object evaluator, int individuals, long rows) {
+        if (shouldCommit()) {
+            this.evaluator = evaluator.getClass().getName();
+            this.individuals = individuals;
+            this.rows = rows;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Interface for a fitness metric.  A metric turns the outputs of an
+ * individual over a set of test cases into a single fitness value, where
+ * larger is better.  Test cases are folded into an accumulator one at a
+ * time, and accumulators for disjoint subsets of the test cases can be
+ * merged, so the test cases can be split into blocks that are scored
+ * independently (for example on different threads) and combined at the
+ * end.  FitnessMetrics provides the standard metrics.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public interface FitnessMetric {
+    /**
+     * Create an empty accumulator for this metric.
+     *
+     * @return   A new accumulator holding no test cases.
+     */
+    public MetricAccumulator newAccumulator();
+
+    /**
+     * The value of the metric itself over the accumulated test cases,
+     * for example the mean absolute error or the number of hits.
+     *
+     * @param  acc   An accumulator created by this metric.
+     * @return       The metric value.
+     */
+    public double value(MetricAccumulator acc);
+
+    /**
+     * The fitness over the accumulated test cases.  Larger is better.
+     * For error metrics this is 1/(1+error), which lies in (0,1] and can
+     * be used directly as a selection weight.
+     *
+     * @param  acc   An accumulator created by this metric.
+     * @return       The fitness.
+     */
+    public double fitness(MetricAccumulator acc);
+
+    /**
+     * An upper bound on the fitness that can be reached once a number of
+     * further test cases have been accumulated.  This is what lets an
+     * evaluation against a cutoff stop early.  Metrics with no useful
+     * bound may return positive infinity.
+     *
+     * @param  acc         An accumulator created by this metric.
+     * @param  remaining   Number of test cases still to come.
+     * @return             Upper bound on the final fitness.
+     */
+    public double bound(MetricAccumulator acc, long remaining);
+}
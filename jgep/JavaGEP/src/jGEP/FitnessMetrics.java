@@ -0,0 +1,478 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * The standard fitness metrics.  Each is obtained from a static factory
+ * method; the implementations are private to this class.
+ *
+ *   absoluteError(max)       sum over test cases of max - |f - expected|.
+ *                            This is the original jGEP fitness, and the
+ *                            default used by Fitness.
+ *   meanAbsoluteError()      mean |f - expected|
+ *   rootMeanSquaredError()   sqrt(mean (f - expected)^2)
+ *   rSquared()               coefficient of determination
+ *   hits(tolerance)          number of cases with |f - expected| <= tol
+ *   relativeError()          mean |f - expected| / |expected|
+ *   logLoss()                mean cross-entropy, for 0/1 expected values,
+ *                            with f mapped to a probability by the
+ *                            logistic function
+ *   linearScaling(m)         m, which must be rootMeanSquaredError() or
+ *                            rSquared(), of a + b*f with a and b chosen
+ *                            by least squares for each individual
+ *
+ * Error metrics report 1/(1+error) as their fitness.  All sums use
+ * compensated summation, and every accumulator can be merged, so
+ * partial results from disjoint blocks of test cases combine into the
+ * same fitness as a single sequential pass.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class FitnessMetrics {
+    private FitnessMetrics() {
+    }
+
+    /**
+     * The original jGEP fitness: max - |f - expected| summed over the
+     * test cases.
+     *
+     * @param  max   Maximum fitness of a single test case.
+     * @return       The metric.
+     */
+    public static FitnessMetric absoluteError(final double max) {
+        return new SumMetric() {
+            double term(double p, double e) {
+                return max - Math.abs(p - e);
+            }
+            public double value(MetricAccumulator acc) {
+                return ((SumAccumulator)acc).sum.value();
+            }
+            public double fitness(MetricAccumulator acc) {
+                return value(acc);
+            }
+            public double bound(MetricAccumulator acc, long remaining) {
+                return value(acc) + (double)remaining * max;
+            }
+        };
+    }
+
+    /**
+     * Mean absolute error.
+     *
+     * @return   The metric.
+     */
+    public static FitnessMetric meanAbsoluteError() {
+        return new MeanErrorMetric() {
+            double term(double p, double e) {
+                return Math.abs(p - e);
+            }
+        };
+    }
+
+    /**
+     * Root mean squared error.
+     *
+     * @return   The metric.
+     */
+    public static FitnessMetric rootMeanSquaredError() {
+        return new RmseMetric();
+    }
+
+    /**
+     * Mean relative error.  Cases whose expected value is zero contribute
+     * their absolute error instead.
+     *
+     * @return   The metric.
+     */
+    public static FitnessMetric relativeError() {
+        return new MeanErrorMetric() {
+            double term(double p, double e) {
+                double d = Math.abs(p - e);
+                return (e == 0.0) ? d : d / Math.abs(e);
+            }
+        };
+    }
+
+    /**
+     * Mean logistic loss.  Expected values should be 0 or 1 (or class
+     * probabilities).  The output of the individual is mapped to a
+     * probability by the logistic function, and clamped away from 0 and
+     * 1 so a confidently wrong case costs a large but finite amount.
+     *
+     * @return   The metric.
+     */
+    public static FitnessMetric logLoss() {
+        return new MeanErrorMetric() {
+            double term(double p, double e) {
+                double q = 1.0 / (1.0 + Math.exp(-p));
+                if (q < 1.0e-15) q = 1.0e-15;
+                if (q > 1.0 - 1.0e-15) q = 1.0 - 1.0e-15;
+                return -(e * Math.log(q) + (1.0 - e) * Math.log(1.0 - q));
+            }
+        };
+    }
+
+    /**
+     * Number of hits: test cases where the output is within the given
+     * tolerance of the expected value.
+     *
+     * @param  tolerance   Largest absolute error that counts as a hit.
+     * @return             The metric.
+     */
+    public static FitnessMetric hits(final double tolerance) {
+        return new SumMetric() {
+            double term(double p, double e) {
+                return (Math.abs(p - e) <= tolerance) ? 1.0 : 0.0;
+            }
+            public double value(MetricAccumulator acc) {
+                return ((SumAccumulator)acc).sum.value();
+            }
+            public double fitness(MetricAccumulator acc) {
+                return value(acc);
+            }
+            public double bound(MetricAccumulator acc, long remaining) {
+                return value(acc) + (double)remaining;
+            }
+        };
+    }
+
+    /**
+     * Coefficient of determination, 1 - SSE/SST.  The fitness is R^2
+     * itself, which is at most 1.  The variance of the expected values
+     * is merged with the pairwise update of Chan et al., so it stays
+     * accurate for large offsets.  There is no useful early-termination
+     * bound short of the last test case.
+     *
+     * @return   The metric.
+     */
+    public static FitnessMetric rSquared() {
+        return new RSquaredMetric();
+    }
+
+    /**
+     * Linear scaling of a squared-error metric.  Instead of scoring the
+     * output f of an individual directly, the metric scores a + b*f,
+     * where a and b minimise the squared error over the test cases.  The
+     * accumulator keeps running co-moments of f and the expected values,
+     * merged with the pairwise update of Chan et al., and the error of
+     * the scaled output follows from them in closed form:
+     *
+     *   b = Cfy / Cff,  a = mean(y) - b*mean(f),
+     *   SSE = Cyy - Cfy^2 / Cff
+     *
+     * so scoring costs a few operations per test case and a single pass.
+     * An individual with constant output is scaled to the mean of the
+     * expected values.
+     *
+     * @param  m   rootMeanSquaredError() or rSquared().
+     * @return     The scaled metric.
+     */
+    public static FitnessMetric linearScaling(FitnessMetric m) 
+        throws Exception {
+        if (m instanceof ScaledMetric) {
+            return m;
+        }
+        if (!isScalable(m)) {
+            throw new Exception("Linear scaling needs a squared-error " +
+                                "metric.");
+        }
+        return new ScaledMetric(m);
+    }
+
+    /**
+     * Whether linearScaling() supports a metric.  The error of the
+     * scaled output is only known in closed form for the squared-error
+     * metrics.
+     *
+     * @param  m   The metric.
+     * @return     True for rootMeanSquaredError(), rSquared() and metrics
+     *             that are already scaled.
+     */
+    public static boolean isScalable(FitnessMetric m) {
+        return m instanceof RmseMetric || m instanceof RSquaredMetric ||
+            m instanceof ScaledMetric;
+    }
+
+    /**
+     * Return the scaling coefficients held by an accumulator of a scaled
+     * metric.
+     *
+     * @param  acc   An accumulator created by a linearScaling() metric.
+     * @return       Array of {a, b}: the scaled output is a + b*f.
+     */
+    public static double[] getScaling(MetricAccumulator acc) {
+        ScaledAccumulator s = (ScaledAccumulator)acc;
+        double b = (s.cff > 0.0) ? s.cfy / s.cff : 0.0;
+        return new double[] { s.my - b * s.mf, b };
+    }
+
+    /**
+     * A metric whose state is a sum of per-case terms.
+     */
+    private static abstract class SumMetric implements FitnessMetric {
+        abstract double term(double predicted, double expected);
+
+        public MetricAccumulator newAccumulator() {
+            return new SumAccumulator(this);
+        }
+    }
+
+    /**
+     * A metric that is a function of the mean of its per-case terms, and
+     * that reports 1/(1+error) as fitness.  Terms are non-negative, so
+     * the error over the full set is at least the current sum divided by
+     * the final count; that gives the early-termination bound.
+     */
+    private static abstract class MeanErrorMetric extends SumMetric {
+        double finish(double mean) {
+            return mean;
+        }
+
+        public double value(MetricAccumulator acc) {
+            SumAccumulator s = (SumAccumulator)acc;
+            if (s.count == 0.0) {
+                return 0.0;
+            }
+            return finish(s.sum.value() / s.count);
+        }
+
+        public double fitness(MetricAccumulator acc) {
+            return 1.0 / (1.0 + value(acc));
+        }
+
+        public double bound(MetricAccumulator acc, long remaining) {
+            SumAccumulator s = (SumAccumulator)acc;
+            double n = s.count + (double)remaining;
+            if (n == 0.0) {
+                return 1.0;
+            }
+            return 1.0 / (1.0 + finish(s.sum.value() / n));
+        }
+    }
+
+    private static class RmseMetric extends MeanErrorMetric {
+        double term(double p, double e) {
+            return (p - e) * (p - e);
+        }
+        double finish(double mean) {
+            return Math.sqrt(mean);
+        }
+    }
+
+    private static class RSquaredMetric implements FitnessMetric {
+        public MetricAccumulator newAccumulator() {
+            return new MomentAccumulator();
+        }
+        public double value(MetricAccumulator acc) {
+            MomentAccumulator m = (MomentAccumulator)acc;
+            if (m.n == 0.0 || m.m2 == 0.0) {
+                return 0.0;
+            }
+            return 1.0 - m.sse.value() / m.m2;
+        }
+        public double fitness(MetricAccumulator acc) {
+            return value(acc);
+        }
+        public double bound(MetricAccumulator acc, long remaining) {
+            return (remaining == 0) ? value(acc) : 1.0;
+        }
+    }
+
+    /**
+     * Linear scaling of RMSE or R^2.  The least-squares error over the
+     * test cases seen so far never exceeds that over all of them, which
+     * gives the early-termination bound for RMSE.
+     */
+    private static class ScaledMetric implements FitnessMetric {
+        private boolean rmse; // RMSE rather than R^2
+
+        ScaledMetric(FitnessMetric m) {
+            rmse = (m instanceof RmseMetric);
+        }
+
+        public MetricAccumulator newAccumulator() {
+            return new ScaledAccumulator();
+        }
+
+        public double value(MetricAccumulator acc) {
+            ScaledAccumulator s = (ScaledAccumulator)acc;
+            if (s.n == 0.0) {
+                return 0.0;
+            }
+            if (rmse) {
+                return Math.sqrt(s.sse() / s.n);
+            }
+            if (s.cyy == 0.0) {
+                return 0.0;
+            }
+            return 1.0 - s.sse() / s.cyy;
+        }
+
+        public double fitness(MetricAccumulator acc) {
+            return rmse ? 1.0 / (1.0 + value(acc)) : value(acc);
+        }
+
+        public double bound(MetricAccumulator acc, long remaining) {
+            ScaledAccumulator s = (ScaledAccumulator)acc;
+            if (!rmse) {
+                return (remaining == 0) ? value(acc) : 1.0;
+            }
+            double n = s.n + (double)remaining;
+            if (n == 0.0) {
+                return 1.0;
+            }
+            return 1.0 / (1.0 + Math.sqrt(s.sse() / n));
+        }
+    }
+
+    /**
+     * Running means and co-moments of the outputs f and the expected
+     * values y.
+     */
+    private static class ScaledAccumulator implements MetricAccumulator {
+        private double n;            // number of cases
+        private double mf, my;       // means of f and y
+        private double cff, cyy, cfy; // sums of deviation products
+
+        public void add(double predicted, double expected) {
+            n += 1.0;
+            double df = predicted - mf;
+            double dy = expected - my;
+            mf += df / n;
+            my += dy / n;
+            cff += df * (predicted - mf);
+            cyy += dy * (expected - my);
+            cfy += df * (expected - my);
+        }
+
+        public void merge(MetricAccumulator other) {
+            ScaledAccumulator o = (ScaledAccumulator)other;
+            if (o.n == 0.0) {
+                return;
+            }
+            double total = n + o.n;
+            double df = o.mf - mf;
+            double dy = o.my - my;
+            double w = n * o.n / total;
+            cff += o.cff + df * df * w;
+            cyy += o.cyy + dy * dy * w;
+            cfy += o.cfy + df * dy * w;
+            mf += df * o.n / total;
+            my += dy * o.n / total;
+            n = total;
+        }
+
+        public void scale(double factor) {
+            n *= factor;
+            cff *= factor;
+            cyy *= factor;
+            cfy *= factor;
+        }
+
+        public double getCount() {
+            return n;
+        }
+
+        /**
+         * Squared error of the least-squares scaled output.
+         */
+        double sse() {
+            if (cff <= 0.0) {
+                return cyy;
+            }
+            double e = cyy - cfy * cfy / cff;
+            return (e < 0.0) ? 0.0 : e;
+        }
+    }
+
+    private static class SumAccumulator implements MetricAccumulator {
+        private SumMetric      metric;
+        private CompensatedSum sum;
+        private double         count;
+
+        SumAccumulator(SumMetric metric) {
+            this.metric = metric;
+            sum = new CompensatedSum();
+            count = 0.0;
+        }
+
+        public void add(double predicted, double expected) {
+            sum.add(metric.term(predicted, expected));
+            count += 1.0;
+        }
+
+        public void merge(MetricAccumulator other) {
+            SumAccumulator o = (SumAccumulator)other;
+            sum.merge(o.sum);
+            count += o.count;
+        }
+
+        public void scale(double factor) {
+            sum.scale(factor);
+            count *= factor;
+        }
+
+        public double getCount() {
+            return count;
+        }
+    }
+
+    private static class MomentAccumulator implements MetricAccumulator {
+        private double         n;    // number of cases
+        private double         mean; // mean of the expected values
+        private double         m2;   // sum of squared deviations (SST)
+        private CompensatedSum sse;  // sum of squared errors
+
+        MomentAccumulator() {
+            sse = new CompensatedSum();
+        }
+
+        public void add(double predicted, double expected) {
+            n += 1.0;
+            double d = expected - mean;
+            mean += d / n;
+            m2 += d * (expected - mean);
+            sse.add((predicted - expected) * (predicted - expected));
+        }
+
+        public void merge(MetricAccumulator other) {
+            MomentAccumulator o = (MomentAccumulator)other;
+            if (o.n == 0.0) {
+                return;
+            }
+            double total = n + o.n;
+            double d = o.mean - mean;
+            m2 += o.m2 + d * d * n * o.n / total;
+            mean += d * o.n / total;
+            n = total;
+            sse.merge(o.sse);
+        }
+
+        public void scale(double factor) {
+            n *= factor;
+            m2 *= factor;
+            sse.scale(factor);
+        }
+
+        public double getCount() {
+            return n;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * A function symbol that can appear in the head of a gene, together with
+ * its arity and a primitive implementation.  Functions are collected in a
+ * FunctionSet, which a Genome is built from.
+ *
+ * Subclasses implement apply(double[]), and should also override the
+ * fixed-arity method matching their arity (apply1, apply2 or apply3);
+ * evaluators call those directly so that no argument array is created.
+ * applyColumns() evaluates the function over whole columns of values at
+ * once, for evaluators that work a column at a time.
+ *
+ * The source templates describe the function as a Java and a C
+ * expression, with $0, $1, ... standing for the arguments.  They let
+ * evaluators and code generators that produce source code handle the
+ * function without calling back into this object.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public abstract class Function {
+    private char   symbol;        // symbol in the chromosome
+    private String name;          // readable name
+    private int    arity;         // number of arguments
+    private String javaTemplate;  // Java source, $n for argument n
+    private String cTemplate;     // C source, $n for argument n
+
+    /**
+     * Constructor.
+     *
+     * @param  symbol         Character representing the function in
+     *                        chromosomes.
+     * @param  name           Readable name, used when printing.
+     * @param  arity          Number of arguments (at least 1).
+     * @param  javaTemplate   Java expression for the function, or null.
+     * @param  cTemplate      C expression for the function, or null.
+     */
+    public Function(char symbol, String name, int arity,
+                    String javaTemplate, String cTemplate) {
+        this.symbol = symbol;
+        this.name = name;
+        this.arity = arity;
+        this.javaTemplate = javaTemplate;
+        this.cTemplate = cTemplate;
+    }
+
+    public char getSymbol() {
+        return symbol;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * Java expression for the function, with $0, $1, ... for the
+     * arguments.  For example "Math.sqrt($0)".
+     *
+     * @return   The template, or null if there is none.
+     */
+    public String getJavaTemplate() {
+        return javaTemplate;
+    }
+
+    /**
+     * C expression for the function, with $0, $1, ... for the arguments.
+     * For example "sqrt($0)".
+     *
+     * @return   The template, or null if there is none.
+     */
+    public String getCTemplate() {
+        return cTemplate;
+    }
+
+    /**
+     * Apply the function to an array of arguments.  Must not throw;
+     * return NaN where the function is undefined.
+     *
+     * @param  args   The arguments, args.length == getArity().
+     * @return        The value of the function.
+     */
+    public abstract double apply(double args[]);
+
+    public double apply1(double a) {
+        double args[] = { a };
+        return apply(args);
+    }
+
+    public double apply2(double a, double b) {
+        double args[] = { a, b };
+        return apply(args);
+    }
+
+    public double apply3(double a, double b, double c) {
+        double args[] = { a, b, c };
+        return apply(args);
+    }
+
+    /**
+     * Apply the function element-wise over columns of arguments.
+     *
+     * @param  args   One column per argument, each at least n long.
+     * @param  out    Column receiving the results.
+     * @param  n      Number of elements.
+     */
+    public void applyColumns(double args[][], double out[], int n) {
+        switch (arity) {
+        case 1:
+            for (int i = 0; i < n; i++) {
+                out[i] = apply1(args[0][i]);
+            }
+            break;
+        case 2:
+            for (int i = 0; i < n; i++) {
+                out[i] = apply2(args[0][i], args[1][i]);
+            }
+            break;
+        case 3:
+            for (int i = 0; i < n; i++) {
+                out[i] = apply3(args[0][i], args[1][i], args[2][i]);
+            }
+            break;
+        default:
+            double a[] = new double[arity];
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < arity; j++) {
+                    a[j] = args[j][i];
+                }
+                out[i] = apply(a);
+            }
+        }
+    }
+}
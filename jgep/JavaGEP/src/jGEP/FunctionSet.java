@@ -0,0 +1,177 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+
+/**
+ * A registry of the functions available to a genome.  Each function is
+ * given an opcode, its position in the order of registration, which
+ * evaluators can use to index tables instead of looking up symbols.
+ * ArithmeticFunctions provides ready-made functions to register.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class FunctionSet {
+    private Vector     functions;  // registered functions, by opcode
+    private Function   bySymbol[]; // lookup table indexed by symbol
+    private int        opcodes[];  // opcode table indexed by symbol
+    private int        maxArity;   // largest arity registered
+
+    /**
+     * Constructor.  Creates an empty set.
+     */
+    public FunctionSet() {
+        functions = new Vector();
+        bySymbol = new Function[128];
+        opcodes = new int[128];
+        maxArity = 0;
+    }
+
+    /**
+     * The four basic arithmetic operators, +, -, * and /.
+     *
+     * @return   A new function set.
+     */
+    public static FunctionSet arithmetic() {
+        FunctionSet fs = new FunctionSet();
+        try {
+            fs.register(ArithmeticFunctions.add());
+            fs.register(ArithmeticFunctions.subtract());
+            fs.register(ArithmeticFunctions.multiply());
+            fs.register(ArithmeticFunctions.divide());
+        } catch (Exception e) {
+            System.err.println("EXCEPTION (arithmetic) :: "+e.toString());
+        }
+        return fs;
+    }
+
+    /**
+     * Add a function to the set.
+     *
+     * @param  f   The function.
+     */
+    public void register(Function f) throws Exception {
+        char c = f.getSymbol();
+
+        if (f.getArity() < 1) {
+            throw new Exception("Function "+c+" must take an argument.");
+        }
+        if (get(c) != null) {
+            throw new Exception("Function "+c+" already registered.");
+        }
+
+        if (c >= bySymbol.length) {
+            Function t[] = new Function[c + 1];
+            int o[] = new int[c + 1];
+            System.arraycopy(bySymbol, 0, t, 0, bySymbol.length);
+            System.arraycopy(opcodes, 0, o, 0, opcodes.length);
+            bySymbol = t;
+            opcodes = o;
+        }
+        bySymbol[c] = f;
+        opcodes[c] = functions.size();
+        functions.addElement(f);
+
+        if (f.getArity() > maxArity) {
+            maxArity = f.getArity();
+        }
+    }
+
+    /**
+     * Look up a function by its symbol.
+     *
+     * @param  c   The symbol.
+     * @return     The function, or null if c is not in the set.
+     */
+    public Function get(char c) {
+        if (c < bySymbol.length) {
+            return bySymbol[c];
+        }
+        return null;
+    }
+
+    /**
+     * Return the function with the given opcode.
+     *
+     * @param  op  The opcode, 0 <= op < size().
+     * @return     The function.
+     */
+    public Function getFunction(int op) {
+        return (Function)functions.elementAt(op);
+    }
+
+    /**
+     * Return the opcode of a symbol.
+     *
+     * @param  c   The symbol.
+     * @return     The opcode, or -1 if c is not in the set.
+     */
+    public int getOpcode(char c) {
+        if (get(c) == null) {
+            return -1;
+        }
+        return opcodes[c];
+    }
+
+    /**
+     * Number of functions in the set.
+     *
+     * @return   The number of functions.
+     */
+    public int size() {
+        return functions.size();
+    }
+
+    /**
+     * Largest arity of any function in the set.
+     *
+     * @return   The maximum arity.
+     */
+    public int getMaxArity() {
+        return maxArity;
+    }
+
+    /**
+     * The symbols of all functions, in opcode order.
+     *
+     * @return   Array of symbols.
+     */
+    public char[] getSymbols() {
+        char s[] = new char[size()];
+        for (int i = 0; i < s.length; i++) {
+            s[i] = getFunction(i).getSymbol();
+        }
+        return s;
+    }
+
+    /**
+     * The arities of all functions, in opcode order.
+     *
+     * @return   Array of arities.
+     */
+    public int[] getArities() {
+        int a[] = new int[size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = getFunction(i).getArity();
+        }
+        return a;
+    }
+}
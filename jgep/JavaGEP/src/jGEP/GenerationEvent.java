@@ -0,0 +1,48 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning one generation of a population, from the
+ * end of the previous generation (or Population.beginGeneration()) to
+ * Population.endGeneration().
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+@Name("jGEP.Generation")
+@Label("Generation")
+@Category({"jGEP"})
+@Description("One generation of the evolutionary loop")
+public class GenerationEvent extends Event {
+    @Label("Generation")
+    long generation;
+
+    @Label("Population Size")
+    int populationSize;
+
+    @Label("Best Fitness")
+    double bestFitness;
+}
@@ -28,6 +28,13 @@ package jGEP;
  * also exist in this object instead of elsewhere.  This allows other 
  * operators to be created and their probabilities will accompany them.
  *
+ * With random numerical constants (see Genome), the operators on
+ * chromosome strings move Dc symbols along with the rest of the genes,
+ * while the constants themselves stay with the individual; they are
+ * changed with mutateConstants().  Gene transposition and the
+ * recombinations move whole genes, so they have variants that move the
+ * genes' constant arrays with them.
+ *
  * @author   Matthew Sottile
  * @version  1.0
  */
@@ -42,6 +49,7 @@ public class GeneticOperators {
     private double pMutate;                      // mutation
     private double p1Point, p2Point, pGRecomb;   // recombination
     private double pGTrans, pISTrans, pRISTrans; // transposition
+    private double pDcMutate, pDcTrans, pRncMutate; // random constants
 
     /**
      * Constructor.
@@ -137,6 +145,60 @@ public class GeneticOperators {
         return pRISTrans;
     }
 
+    /**
+     * Set the probability of mutation in the Dc domain.
+     *
+     * @param  p  The probability.
+     */
+    public void setPDcMutate(double p) {
+        pDcMutate = p;
+    }
+
+    /**
+     * Get the probability of mutation in the Dc domain.
+     *
+     * @return   The probability.
+     */
+    public double getPDcMutate() {
+        return pDcMutate;
+    }
+
+    /**
+     * Set the probability of transposition within the Dc domain.
+     *
+     * @param  p  The probability.
+     */
+    public void setPDcTrans(double p) {
+        pDcTrans = p;
+    }
+
+    /**
+     * Get the probability of transposition within the Dc domain.
+     *
+     * @return   The probability.
+     */
+    public double getPDcTrans() {
+        return pDcTrans;
+    }
+
+    /**
+     * Set the probability of mutating a random constant.
+     *
+     * @param  p  The probability.
+     */
+    public void setPRncMutate(double p) {
+        pRncMutate = p;
+    }
+
+    /**
+     * Get the probability of mutating a random constant.
+     *
+     * @return   The probability.
+     */
+    public double getPRncMutate() {
+        return pRncMutate;
+    }
+
     /**
      * Setter for the mutation probability.
      *
@@ -216,82 +278,97 @@ public class GeneticOperators {
     }
 
     /**
-     * Insertion-sequence transposition.
+     * Insertion-sequence transposition.  A sequence from the head or
+     * tail of a gene is copied into the head of a gene, after its root.
+     * The rest of the head moves downstream, and the symbols pushed past
+     * the end of the head are lost, so the tail is never touched.
      *
      * @param  s      The string to perform IS transposition on.
      * @return        The string after transposition.
      */
     public String IStranspose(String s) {
-        // step 1, pick the insertion sequence
-        int isLength = r.nextInt(g.getHeadLength()-1) + 1;
-        int isStart = r.nextInt(s.length()-isLength);
+        long t = Metrics.start();
+        OperatorEvent ev = begin(Metrics.OP_IS_TRANSPOSE, "is_transpose");
+
+        int h = g.getHeadLength();
+        int ht = h + g.getTailLength();
+        int numGenes = s.length() / g.getGeneLength();
+
+        // a head of one symbol has nowhere to insert to.
+        if (h < 2) {
+            end(ev, t, s.length());
+            return s;
+        }
+
+        // step 1, pick the insertion sequence within the head and tail of
+        // one gene.  With random constants it must not come from a Dc
+        // domain, whose symbols mean nothing in a head.
+        int isLength = r.nextInt(h-1) + 1;
+        int isStart = r.nextInt(numGenes) * g.getGeneLength() +
+            r.nextInt(ht - isLength + 1);
         String is_string = s.substring(isStart,isStart+isLength);
 
         // pick where the insertion sequence is going to go.  It MUST
         // go in the head of a gene, and must not start at the root element
         // of a gene.
-        int targetGene = r.nextInt(s.length() / g.getGeneLength());
-        int genePosition = r.nextInt(g.getHeadLength() - 1) + 1;
+        int targetGene = r.nextInt(numGenes);
+        int genePosition = r.nextInt(h - 1) + 1;
 
-        // now pull the chromosome apart and paste the transposition element
-        // in.
-        String cHead = 
-            s.substring(0,targetGene*g.getGeneLength()+genePosition);
-        String cTail =
-            s.substring(targetGene*g.getGeneLength()+genePosition+isLength);
+        // now pull the head apart and paste the transposition element
+        // in, cutting the head back to length.
+        int base = targetGene*g.getGeneLength();
+        String head = s.substring(base, base+h);
+        head = (head.substring(0,genePosition) + is_string + 
+                head.substring(genePosition)).substring(0,h);
 
         // return the chromosome reassembled with transposition complete
         //
-        return cHead+is_string+cTail;
+        end(ev, t, s.length());
+        return s.substring(0,base) + head + s.substring(base+h);
     }
 
     /** 
-     * Root-insertion-sequence transposition.
+     * Root-insertion-sequence transposition.  A sequence starting with a
+     * function is copied from a gene to the root of its head; as in IS
+     * transposition, the head moves downstream and keeps its length.
      *
      * @param s     The string to perform RIS transposition on.
      * @return      The string after transposition.
      */
     public String RIStranspose(String s) {
+        long t = Metrics.start();
+        OperatorEvent ev = begin(Metrics.OP_RIS_TRANSPOSE, "ris_transpose");
+
+        int h = g.getHeadLength();
+        int ht = h + g.getTailLength();
+
         // pick a gene
         int gene = r.nextInt(s.length() / g.getGeneLength());
-        String sgene = s.substring(gene*g.getGeneLength(),g.getGeneLength());
+        int base = gene*g.getGeneLength();
+        String sgene = s.substring(base,base+g.getGeneLength());
 
         // pick the RIS - find a function and pick sequence downstream from 
         // there.
-        int pos = r.nextInt(g.getHeadLength());
-        while ((pos < g.getHeadLength()) && !(g.isFunction(s.charAt(pos)))) {
+        int pos = r.nextInt(h);
+        while ((pos < h) && !(g.isFunction(sgene.charAt(pos)))) {
             pos++;
         }
 
         // no sequence found - do nothing.
-        if (pos == g.getHeadLength()) {
+        if (pos == h || h < 2) {
+            end(ev, t, s.length());
             return new String(s);
         }
         
-        // sequence found - get it.
-        int ris_length = r.nextInt(g.getGeneLength()-(pos-1))+1;
+        // sequence found - get it, staying out of any Dc domain.
+        int ris_length = r.nextInt(Math.min(h-1, ht-pos))+1;
         String ris = sgene.substring(pos,pos+ris_length);
-        String leftover = sgene.substring(ris.length());
-        sgene = ris+leftover;
-
-        String cHead, cTail;
-
-        // chop the gene out of the chromosome.
-        if (gene != 0) {
-            cHead = s.substring(0,gene*g.getGeneLength());
-            if ((gene+1)*g.getGeneLength() == s.length()) {
-                cTail = "";
-            } else {
-                cTail = s.substring((gene+1)*g.getGeneLength());
-            }
-        } else {
-            cHead = "";
-            cTail = s.substring(g.getGeneLength());
-        }
+        String head = (ris+sgene.substring(0,h)).substring(0,h);
 
         // reassemble the chromosome
 
-        return cHead+sgene+cTail;
+        end(ev, t, s.length());
+        return s.substring(0,base) + head + s.substring(base+h);
     }
 
     /**
@@ -301,11 +378,29 @@ public class GeneticOperators {
      * @return     The string after transposition.
      */
     public String GeneTranspose(String s) {
+        return GeneTranspose(s, null);
+    }
+
+    /**
+     * Gene transposition, moving the random constants of the genes
+     * along with them.
+     *
+     * @param  s   The string to perform gene transposition on.
+     * @param  c   The constants of the chromosome, indexed
+     *             [gene][constant], or null.  The gene arrays are
+     *             swapped in place, so pass a copy of an individual's.
+     * @return     The string after transposition.
+     */
+    public String GeneTranspose(String s, double c[][]) {
+        long t = Metrics.start();
+        OperatorEvent ev = begin(Metrics.OP_GENE_TRANSPOSE, "gene_transpose");
+
         // find number of genes in chromosome
         int numGenes = s.length() / g.getGeneLength();
 
         // mono-genic is a NOP
         if (numGenes == 1) {
+            end(ev, t, s.length());
             return new String(s);
         }
 
@@ -315,6 +410,7 @@ public class GeneticOperators {
 
         // transposing same gene is a NOP
         if (g1 == g2) {
+            end(ev, t, s.length());
             return new String(s);
         }
         
@@ -326,13 +422,15 @@ public class GeneticOperators {
         if (g1 == numGenes-1) {
             gs1 = s.substring(g1 * g.getGeneLength());
         } else {
-            gs1 = s.substring(g1 * g.getGeneLength(), g.getGeneLength());
+            gs1 = s.substring(g1 * g.getGeneLength(),
+                              (g1+1) * g.getGeneLength());
         }
 
         if (g2 == numGenes-1) {
             gs2 = s.substring(g2 * g.getGeneLength());
         } else {
-            gs2 = s.substring(g2 * g.getGeneLength(), g.getGeneLength());
+            gs2 = s.substring(g2 * g.getGeneLength(),
+                              (g2+1) * g.getGeneLength());
         }
 
         // this part below is to extract the material around the genes from
@@ -372,6 +470,12 @@ public class GeneticOperators {
 
         // low gene moves to high position, high to low.  very basic.
         //
+        if (c != null) {
+            double tmp[] = c[g1];
+            c[g1] = c[g2];
+            c[g2] = tmp;
+        }
+        end(ev, t, s.length());
         return before+shi+middle+slo+after;
     }
 
@@ -384,6 +488,26 @@ public class GeneticOperators {
      * @return     Array of two chromosome strings after recombination.
      */
     public String[] GeneRecombination(String s[]) {
+        return GeneRecombination(s, null);
+    }
+
+    /**
+     * Gene recombination, moving the random constants of the swapped
+     * genes along with them.
+     *
+     * @param s    Array of two chromosome strings to perform gene
+     *             recombination on.
+     * @param c    The constants of the two chromosomes, indexed
+     *             [chromosome][gene][constant], or null.  The gene
+     *             arrays are swapped in place, so pass copies of the
+     *             individuals'.
+     * @return     Array of two chromosome strings after recombination.
+     */
+    public String[] GeneRecombination(String s[], double c[][][]) {
+        long t = Metrics.start();
+        OperatorEvent ev = 
+            begin(Metrics.OP_GENE_RECOMBINATION, "gene_recombination");
+
         String rets[] = new String[2];
 
         // figure out how many genes are in a chromosome
@@ -394,6 +518,11 @@ public class GeneticOperators {
             // the chromosomes - no real effect.
             rets[0] = s[1];
             rets[1] = s[0];
+            if (c != null) {
+                double tmp[] = c[0][0];
+                c[0][0] = c[1][0];
+                c[1][0] = tmp;
+            }
         } else {
             int g1 = r.nextInt(numGenes); // gene from chromosome 1
             int g2 = r.nextInt(numGenes); // gene from chromosome 2
@@ -402,13 +531,15 @@ public class GeneticOperators {
 
             // extract the genes to swap
             if (g1 != numGenes-1) { 
-                gs1 = s[0].substring((g1*g.getGeneLength()),g.getGeneLength());
+                gs1 = s[0].substring((g1*g.getGeneLength()),
+                                     (g1+1)*g.getGeneLength());
             } else {
                 gs1 = s[0].substring((g1*g.getGeneLength()));
             }
 
             if (g2 != numGenes-1) {
-                gs2 = s[1].substring((g2*g.getGeneLength()),g.getGeneLength());
+                gs2 = s[1].substring((g2*g.getGeneLength()),
+                                     (g2+1)*g.getGeneLength());
             } else {
                 gs2 = s[1].substring((g2*g.getGeneLength()));
             }
@@ -430,8 +561,14 @@ public class GeneticOperators {
             // paste the new chromosomes together
             rets[0] = h1+gs2+t1;
             rets[1] = h2+gs1+t2;
+            if (c != null) {
+                double tmp[] = c[0][g1];
+                c[0][g1] = c[1][g2];
+                c[1][g2] = tmp;
+            }
         }
             
+        end(ev, t, s[0].length());
         return rets;
     }
 
@@ -446,6 +583,9 @@ public class GeneticOperators {
      * @return                The chromosome with mutations.
      */
     public String mutate(String s, int numMutations) {
+        long t = Metrics.start();
+        OperatorEvent ev = begin(Metrics.OP_MUTATE, "mutate");
+
         String src = new String(s);
 
         for (int i = 0; i < numMutations; i++) {
@@ -464,9 +604,237 @@ public class GeneticOperators {
             src = new String(schars);
         }
 
+        end(ev, t, s.length());
         return src;
     }
 
+    /**
+     * Mutate a whole population at a per-position rate.  The heads and
+     * tails of every gene of every individual are treated as one long
+     * sequence of positions, each mutated independently with probability
+     * rate.  Rather than drawing a random number per position, the
+     * distance to the next mutated position is drawn from the geometric
+     * distribution, so the number of random draws grows with the number
+     * of mutations and not with the size of the population.  A mutated
+     * head position gets any symbol; a tail position gets a terminal, so
+     * the genes stay valid.  Dc domains are left to DcMutate().
+     *
+     * Only the individuals that are hit are changed, each with a single
+     * setChromosome().  An individual that occurs more than once in the
+     * vector (selection can pick it twice) is replicated before any
+     * occurrence but its last is changed, so the copies mutate
+     * independently and occurrences that are not hit keep the original
+     * chromosome.
+     *
+     * @param  individuals   The individuals, changed in place.
+     * @param  first         Index of the first individual to mutate, for
+     *                       example 1 to spare the elite at index 0.
+     * @param  rate          Probability of mutating each position.
+     * @return               The number of positions mutated.
+     */
+    public int mutatePopulation(java.util.Vector individuals, int first,
+                                double rate) {
+        if (!(rate > 0.0) || first >= individuals.size()) {
+            return 0;
+        }
+        long t = Metrics.start();
+        OperatorEvent ev = OperatorEvent.start("mutate_population");
+
+        int h = g.getHeadLength();
+        int ht = h + g.getTailLength();
+        int gl = g.getGeneLength();
+        int nf = g.getNumFunctions();
+        int nt = g.getNumTerminals();
+        double logq = Math.log1p(-Math.min(rate, 1.0));
+
+        // positions per individual, and in total
+        int count = individuals.size() - first;
+        long perInd[] = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            Individual ind = (Individual)individuals.elementAt(first + i);
+            perInd[i + 1] = perInd[i] +
+                (long)(ind.getChromosome().length() / gl) * ht;
+        }
+        long total = perInd[count];
+
+        // occurrences of each individual, as in OperatorPipeline
+        java.util.IdentityHashMap occurrences = 
+            new java.util.IdentityHashMap();
+        for (int i = 0; i < individuals.size(); i++) {
+            Object ind = individuals.elementAt(i);
+            Integer c = (Integer)occurrences.get(ind);
+            occurrences.put(ind, new Integer((c == null) ? 1 
+                                             : c.intValue() + 1));
+        }
+
+        int mutations = 0;
+        int cur = -1;          // individual being edited
+        char edit[] = null;    // its chromosome
+        long pos = skip(logq);
+        int i = 0;
+
+        while (pos < total) {
+            while (perInd[i + 1] <= pos) {
+                i++;
+            }
+            if (i != cur) {
+                flush(individuals, first + cur, edit);
+                cur = i;
+                Individual ind = 
+                    (Individual)individuals.elementAt(first + cur);
+                int c = ((Integer)occurrences.get(ind)).intValue();
+                if (c > 1) {
+                    // the original is only changed at its last
+                    // occurrence, so the copy has the old chromosome
+                    occurrences.put(ind, new Integer(c - 1));
+                    ind = ind.replicate();
+                    individuals.setElementAt(ind, first + cur);
+                }
+                edit = ind.getChromosome().toCharArray();
+            }
+
+            long local = pos - perInd[i];
+            int at = (int)(local / ht) * gl + (int)(local % ht);
+            if (at % gl < h) {
+                int v = r.nextInt(nf + nt);
+                edit[at] = (v < nf) ? g.getFunction(v)
+                                    : g.getTerminal(v - nf);
+            } else {
+                edit[at] = g.getTerminal(r.nextInt(nt));
+            }
+            mutations++;
+
+            pos += 1 + skip(logq);
+        }
+        flush(individuals, first + cur, edit);
+
+        Metrics.count(Metrics.OP_MUTATE, mutations);
+        Metrics.stop(Metrics.BREED, t);
+        ev.finish((int)Math.min(total, Integer.MAX_VALUE));
+        return mutations;
+    }
+
+    /**
+     * Number of positions to skip before the next mutation: geometric,
+     * with log(1 - rate) given.
+     */
+    private long skip(double logq) {
+        if (logq == Double.NEGATIVE_INFINITY) {
+            return 0; // rate 1, every position
+        }
+        double s = Math.floor(Math.log(1.0 - r.nextDouble()) / logq);
+        return (s >= (double)Long.MAX_VALUE / 2) ? Long.MAX_VALUE / 2
+                                                 : (long)s;
+    }
+
+    private static void flush(java.util.Vector individuals, int i,
+                              char edit[]) {
+        if (edit != null) {
+            ((Individual)individuals.elementAt(i))
+                .setChromosome(new String(edit));
+        }
+    }
+
+    /**
+     * Mutate the Dc domains of a chromosome: each mutation replaces one
+     * Dc symbol with a random constant index.  Chromosomes of genomes
+     * without random constants are returned unchanged.
+     *
+     * @param  s              The chromosome to mutate.
+     * @param  numMutations   The number of mutations.
+     * @return                The chromosome with mutations.
+     */
+    public String DcMutate(String s, int numMutations) {
+        if (!g.hasConstants()) {
+            return s;
+        }
+        long t = Metrics.start();
+        OperatorEvent ev = begin(Metrics.OP_DC_MUTATE, "dc_mutate");
+
+        char schars[] = s.toCharArray();
+        int dcStart = g.getHeadLength() + g.getTailLength();
+
+        for (int i = 0; i < numMutations; i++) {
+            int gene = r.nextInt(s.length() / g.getGeneLength());
+            int pos = gene*g.getGeneLength() + dcStart + 
+                r.nextInt(g.getDcLength());
+            schars[pos] = g.getDcSymbol(r.nextInt(g.getNumConstants()));
+        }
+
+        end(ev, t, s.length());
+        return new String(schars);
+    }
+
+    /**
+     * Dc-specific transposition: a sequence of Dc symbols is copied to
+     * another place in the same Dc domain, shifting the symbols after
+     * it downstream.  Symbols pushed past the end of the domain are
+     * lost, so the gene keeps its length.
+     *
+     * @param  s   The chromosome.
+     * @return     The chromosome after transposition.
+     */
+    public String DcTranspose(String s) {
+        if (!g.hasConstants() || g.getDcLength() < 2) {
+            return s;
+        }
+        long t = Metrics.start();
+        OperatorEvent ev = begin(Metrics.OP_DC_TRANSPOSE, "dc_transpose");
+
+        int dc = g.getDcLength();
+        int gene = r.nextInt(s.length() / g.getGeneLength());
+        int base = gene*g.getGeneLength() + g.getHeadLength() + 
+            g.getTailLength();
+        String domain = s.substring(base, base + dc);
+
+        int len = r.nextInt(dc - 1) + 1;
+        int from = r.nextInt(dc - len + 1);
+        int to = r.nextInt(dc);
+        String moved = domain.substring(from, from + len);
+        domain = (domain.substring(0, to) + moved + 
+                  domain.substring(to)).substring(0, dc);
+
+        end(ev, t, s.length());
+        return s.substring(0, base) + domain + s.substring(base + dc);
+    }
+
+    /**
+     * Mutate random constants.  Each mutation replaces one constant of
+     * one gene with a new value drawn uniformly from the genome's range.
+     * The arrays passed in are not modified.
+     *
+     * @param  c              The constants, indexed [gene][constant].
+     * @param  numMutations   The number of mutations.
+     * @return                New arrays holding the mutated constants.
+     *                        Genes that did not change share their
+     *                        array with c.
+     */
+    public double[][] mutateConstants(double c[][], int numMutations) {
+        if (c == null || !g.hasConstants()) {
+            return c;
+        }
+        long t = Metrics.start();
+        OperatorEvent ev = begin(Metrics.OP_RNC_MUTATE, "rnc_mutate");
+
+        double out[][] = c.clone();
+        boolean copied[] = new boolean[c.length];
+        double lo = g.getConstantMin();
+        double hi = g.getConstantMax();
+
+        for (int i = 0; i < numMutations; i++) {
+            int gene = r.nextInt(c.length);
+            if (!copied[gene]) {
+                out[gene] = c[gene].clone();
+                copied[gene] = true;
+            }
+            out[gene][r.nextInt(out[gene].length)] = 
+                lo + (hi - lo)*r.nextDouble();
+        }
+
+        end(ev, t, c.length);
+        return out;
+    }
+
     /**
      * Given a two-element array containing two string chromosomes, 
      * perform a one point recombination between them and return a new
@@ -481,6 +849,26 @@ public class GeneticOperators {
      * @return        The two new chromosomes after recombination.
      */
     public String[] OnePointRecombination(String s[]) {
+        return OnePointRecombination(s, null);
+    }
+
+    /**
+     * One point recombination, moving the random constants of the genes
+     * that lie wholly past the crossover point along with them.  A gene
+     * cut by the point keeps the constants of the chromosome it stays
+     * in.
+     *
+     * @param    s    The array of two chromosomes.
+     * @param    c    The constants of the two chromosomes, indexed
+     *                [chromosome][gene][constant], or null.  The gene
+     *                arrays are swapped in place, so pass copies of the
+     *                individuals'.
+     * @return        The two new chromosomes after recombination.
+     */
+    public String[] OnePointRecombination(String s[], double c[][][]) {
+        long t = Metrics.start();
+        OperatorEvent ev = begin(Metrics.OP_ONE_POINT, "one_point");
+
         String front1, back1;
         String front2, back2;
         String outStrings[] = new String[2];
@@ -499,7 +887,9 @@ public class GeneticOperators {
 
         outStrings[0] = front1+back2;
         outStrings[1] = front2+back1;
+        swapConstants(c, pos, s[0].length());
 
+        end(ev, t, s[0].length());
         return outStrings;
     }
 
@@ -517,6 +907,26 @@ public class GeneticOperators {
      * @return        The two new chromosomes after recombination.
      */
     public String[] TwoPointRecombination(String s[]) {
+        return TwoPointRecombination(s, null);
+    }
+
+    /**
+     * Two point recombination, moving the random constants of the genes
+     * that lie wholly between the crossover points along with them.
+     * A gene cut by a point keeps the constants of the chromosome it
+     * stays in.
+     *
+     * @param    s    The array of two chromosomes.
+     * @param    c    The constants of the two chromosomes, indexed
+     *                [chromosome][gene][constant], or null.  The gene
+     *                arrays are swapped in place, so pass copies of the
+     *                individuals'.
+     * @return        The two new chromosomes after recombination.
+     */
+    public String[] TwoPointRecombination(String s[], double c[][][]) {
+        long t = Metrics.start();
+        OperatorEvent ev = begin(Metrics.OP_TWO_POINT, "two_point");
+
         int pos1 = r.nextInt(s[0].length());
         int pos2 = r.nextInt(s[0].length());
         int hi, lo;
@@ -544,7 +954,79 @@ public class GeneticOperators {
 
         outGenes[0] = front1+mid2+back1;
         outGenes[1] = front2+mid1+back2;
+        swapConstants(c, lo, hi);
 
+        end(ev, t, s[0].length());
         return outGenes;
     }
+
+    /**
+     * Swap the constant arrays of the genes lying wholly between
+     * positions from (inclusive) and to (exclusive) of two chromosomes.
+     */
+    private void swapConstants(double c[][][], int from, int to) {
+        if (c == null) {
+            return;
+        }
+        int gl = g.getGeneLength();
+        for (int k = (from + gl - 1) / gl; (k+1)*gl <= to; k++) {
+            double tmp[] = c[0][k];
+            c[0][k] = c[1][k];
+            c[1][k] = tmp;
+        }
+    }
+
+    /**
+     * Return the genome these operators act upon.
+     *
+     * @return   The genome.
+     */
+    public Genome getGenome() {
+        return g;
+    }
+
+    /**
+     * Return the open reading frame of every gene of a chromosome, so
+     * that the caller can tell whether an operator changed a coding
+     * region.  See Genome.getOrfLength().
+     *
+     * @param  s   The chromosome.
+     * @return     The coding length of each gene, from its start.
+     */
+    public int[] orfLengths(String s) {
+        int orf[] = new int[s.length() / g.getGeneLength()];
+        for (int i = 0; i < orf.length; i++) {
+            orf[i] = g.getOrfLength(s, i);
+        }
+        return orf;
+    }
+
+    /**
+     * Whether an offspring expresses the same trees as its parent, in
+     * which case it can inherit the parent's fitness.  Individuals check
+     * this themselves in setChromosome().
+     *
+     * @param  parent   Chromosome of the parent.
+     * @param  child    Chromosome of the offspring.
+     * @return          True if no coding region changed.
+     */
+    public boolean isNeutral(String parent, String child) {
+        return g.sameCoding(parent, child);
+    }
+
+    /**
+     * Count an operator application and start its flight recorder event.
+     */
+    private static OperatorEvent begin(int counter, String name) {
+        Metrics.count(counter);
+        return OperatorEvent.start(name);
+    }
+
+    /**
+     * Record the time taken by an operator.
+     */
+    private static void end(OperatorEvent ev, long t, int length) {
+        Metrics.stop(Metrics.BREED, t);
+        ev.finish(length);
+    }
 }
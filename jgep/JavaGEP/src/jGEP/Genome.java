@@ -18,12 +18,34 @@
  */
 package jGEP;
 
+import java.util.Hashtable;
+
 /**
  * This class represents the characters that make up the genes
  * as functions and terminals.  Very basic, but allows us to
  * hide the terminals/functions arrays and do anything fancy
  * behind the scenes later that might be of interest.
  *
+ * A genome may also provide random numerical constants (GEP-RNC).  The
+ * terminal CONSTANT then stands for a constant, and every gene is
+ * followed by a Dc domain as long as its tail.  Each gene has its own
+ * array of constants, held by the individual; the n-th CONSTANT in the
+ * expressed part of a gene takes the constant indexed by the n-th
+ * symbol of the Dc domain.  Dc symbols are characters counting up from
+ * '0' (see getDcSymbol()).
+ *
+ * Each terminal also has a name, under which its value is found in a
+ * test case.  Genomes built from terminal characters name each terminal
+ * by its character.  For more variables than there are characters to
+ * spare, a genome can be built from a table of names instead: terminal
+ * i is then the symbol WIDE_BASE + i, so a chromosome still takes one
+ * char per symbol however many variables there are, and the terminal
+ * index of a symbol is a subtraction and an array lookup.
+ *
+ * For forecasting, the named terminals can be lagged values of a few
+ * time series, such as x[t-1] and x[t-2] (see TimeSeriesFitness).  The
+ * genome records the series and lag of each such terminal.
+ *
  * @author  Matthew Sottile
  * @version 1.0
  */
@@ -33,9 +55,39 @@ public class Genome {
     private int  nt, nf;      // terminal and function counts
     private int  maxArity;    // maximum arity of any function
     private int  h, t;        // head and tail lengths
+    private int  arityOf[];   // arity indexed by character, 0 if terminal
+    private int  termIndex[]; // terminal index by character, -1 if none
+    private int  termBase;    // character of termIndex[0]
+    private String names[];   // name of each terminal
+    private Hashtable nameIndex; // name -> Integer terminal index
+    private String series[];  // names of the time series, or null
+    private int  seriesOf[];  // series of each terminal, -1 if none
+    private int  lagOf[];     // lag of each terminal
+    private FunctionSet fset; // function implementations, if any
+    private int  nc;          // random constants per gene, 0 if none
+    private double cmin, cmax; // range of random constants
+
+    /**
+     * Terminal symbol standing for a random constant.
+     */
+    public static final char CONSTANT = '?';
+
+    /**
+     * Symbol of the first terminal of a genome built from a table of
+     * names.  Symbols from here up to (but not including) the surrogate
+     * range are free for terminals, which allows for MAX_NAMED
+     * terminals.
+     */
+    public static final char WIDE_BASE = '\u0100';
+
+    /**
+     * Largest number of named terminals in a genome.
+     */
+    public static final int MAX_NAMED = 0xD800 - WIDE_BASE;
     
     /**
-     * Constructor.
+     * Constructor.  Every function is taken to be binary, like the
+     * basic arithmetic operators.
      *
      * @param  ts   Array of characters representing terminal symbols.
      * @param  fs   Array of characters representing functions.
@@ -44,15 +96,301 @@ public class Genome {
      * @param  hl   Head length in a gene. 
      */
     public Genome(char ts[], char fs[], int ma, int hl) {
+        this(ts, fs, binary(fs.length), hl);
+        maxArity = ma;
+        this.t = h*(maxArity-1) + 1;
+    }
+
+    /**
+     * Constructor for function sets of mixed arity.
+     *
+     * @param  ts   Array of characters representing terminal symbols.
+     * @param  fs   Array of characters representing functions.
+     * @param  as   Arity of each function in fs.
+     * @param  hl   Head length in a gene. 
+     */
+    public Genome(char ts[], char fs[], int as[], int hl) {
 	terminals = ts;
 	functions = fs;
 	nt = ts.length;
 	nf = fs.length;
-        maxArity = ma;
+        maxArity = 0;
+        int top = 0;
+        for (int i = 0; i < nf; i++) {
+            if (as[i] > maxArity) maxArity = as[i];
+            if (fs[i] > top) top = fs[i];
+        }
+        arityOf = new int[top + 1];
+        for (int i = 0; i < nf; i++) {
+            arityOf[fs[i]] = as[i];
+        }
+        top = 0;
+        termBase = Character.MAX_VALUE;
+        for (int i = 0; i < nt; i++) {
+            if (ts[i] > top) top = ts[i];
+            if (ts[i] < termBase) termBase = ts[i];
+        }
+        if (nt == 0) {
+            termBase = 0;
+        }
+        termIndex = new int[top - termBase + 1];
+        java.util.Arrays.fill(termIndex, -1);
+        for (int i = 0; i < nt; i++) {
+            termIndex[ts[i] - termBase] = i;
+        }
+        String n[] = new String[nt];
+        for (int i = 0; i < nt; i++) {
+            n[i] = String.valueOf(ts[i]);
+        }
+        setNames(n);
         this.h = hl;
         this.t = h*(maxArity-1) + 1;
     }
 
+    /**
+     * Constructor taking the functions from a registry.  The arity of
+     * each function, and the implementations used by individuals to
+     * evaluate them, come from the function set.
+     *
+     * @param  ts   Array of characters representing terminal symbols.
+     * @param  fs   The function set.
+     * @param  hl   Head length in a gene. 
+     */
+    public Genome(char ts[], FunctionSet fs, int hl) {
+        this(ts, fs.getSymbols(), fs.getArities(), hl);
+        fset = fs;
+    }
+
+    /**
+     * Constructor for a genome with random numerical constants.  The
+     * terminal CONSTANT is added to the terminals.
+     *
+     * @param  ts    Array of characters representing terminal symbols.
+     * @param  fs    The function set.
+     * @param  hl    Head length in a gene.
+     * @param  nc    Number of random constants per gene.
+     * @param  min   Smallest random constant.
+     * @param  max   Largest random constant.
+     */
+    public Genome(char ts[], FunctionSet fs, int hl, int nc,
+                  double min, double max) {
+        this(withConstant(ts), fs, hl);
+        setConstants(nc, min, max);
+    }
+
+    /**
+     * Constructor for a genome of binary functions with random numerical
+     * constants.  The terminal CONSTANT is added to the terminals.
+     *
+     * @param  ts    Array of characters representing terminal symbols.
+     * @param  fs    Array of characters representing functions.
+     * @param  ma    Maximum arity of the functions.
+     * @param  hl    Head length in a gene.
+     * @param  nc    Number of random constants per gene.
+     * @param  min   Smallest random constant.
+     * @param  max   Largest random constant.
+     */
+    public Genome(char ts[], char fs[], int ma, int hl, int nc,
+                  double min, double max) {
+        this(withConstant(ts), fs, ma, hl);
+        setConstants(nc, min, max);
+    }
+
+    /**
+     * Constructor for a genome whose terminals are named variables, for
+     * data sets with more variables than single characters can stand
+     * for.  Terminal i is the symbol WIDE_BASE + i.
+     *
+     * @param  names Name of each terminal, as used in the test cases.
+     * @param  fs    The function set.
+     * @param  hl    Head length in a gene.
+     */
+    public Genome(String names[], FunctionSet fs, int hl) throws Exception {
+        this(wideSymbols(names.length, fs), fs, hl);
+        setNames(names);
+    }
+
+    /**
+     * Constructor for a genome of named variables with random numerical
+     * constants.  The terminal CONSTANT, named "?", is added after the
+     * named terminals.
+     *
+     * @param  names Name of each terminal, as used in the test cases.
+     * @param  fs    The function set.
+     * @param  hl    Head length in a gene.
+     * @param  nc    Number of random constants per gene.
+     * @param  min   Smallest random constant.
+     * @param  max   Largest random constant.
+     */
+    public Genome(String names[], FunctionSet fs, int hl, int nc,
+                  double min, double max) throws Exception {
+        this(wideSymbols(names.length, fs), fs, hl, nc, min, max);
+        setNames(names);
+    }
+
+    /**
+     * Constructor for a genome of lagged time series values.  For every
+     * lag k in lags[s], series s contributes a terminal named
+     * "x[t-k]" (or "x[t]" for lag 0), where x is the series name.  The
+     * terminals are numbered series by series, in the order given.
+     *
+     * @param  series  Names of the series.
+     * @param  lags    Lags of each series.
+     * @param  fs      The function set.
+     * @param  hl      Head length in a gene.
+     */
+    public Genome(String series[], int lags[][], FunctionSet fs, int hl)
+        throws Exception {
+        this(lagNames(series, lags), fs, hl);
+        setLags(series, lags);
+    }
+
+    /**
+     * Constructor for a genome of lagged time series values with random
+     * numerical constants.  See Genome(String[], int[][], FunctionSet,
+     * int).
+     *
+     * @param  series  Names of the series.
+     * @param  lags    Lags of each series.
+     * @param  fs      The function set.
+     * @param  hl      Head length in a gene.
+     * @param  nc      Number of random constants per gene.
+     * @param  min     Smallest random constant.
+     * @param  max     Largest random constant.
+     */
+    public Genome(String series[], int lags[][], FunctionSet fs, int hl,
+                  int nc, double min, double max) throws Exception {
+        this(lagNames(series, lags), fs, hl, nc, min, max);
+        setLags(series, lags);
+    }
+
+    /**
+     * Build the lags argument for n series that all have lags first to
+     * last inclusive.
+     *
+     * @param  n      Number of series.
+     * @param  first  Smallest lag, usually 1 for forecasting.
+     * @param  last   Largest lag.
+     * @return        The lags of each series.
+     */
+    public static int[][] lags(int n, int first, int last) {
+        int l[][] = new int[n][last - first + 1];
+        for (int s = 0; s < n; s++) {
+            for (int k = first; k <= last; k++) {
+                l[s][k - first] = k;
+            }
+        }
+        return l;
+    }
+
+    private static String[] lagNames(String series[], int lags[][])
+        throws Exception {
+        if (series.length != lags.length) {
+            throw new Exception("Need the lags of every series.");
+        }
+        java.util.Vector v = new java.util.Vector();
+        for (int s = 0; s < series.length; s++) {
+            for (int j = 0; j < lags[s].length; j++) {
+                if (lags[s][j] < 0) {
+                    throw new Exception("Negative lag for "+series[s]);
+                }
+                v.addElement(lagName(series[s], lags[s][j]));
+            }
+        }
+        String n[] = new String[v.size()];
+        v.copyInto(n);
+        return n;
+    }
+
+    /**
+     * Return the name of a lagged value of a series, as used for the
+     * terminals of a time series genome.
+     *
+     * @param  series  The series name.
+     * @param  lag     The lag.
+     * @return         "series[t-lag]", or "series[t]" for lag 0.
+     */
+    public static String lagName(String series, int lag) {
+        return series + ((lag == 0) ? "[t]" : "[t-" + lag + "]");
+    }
+
+    private void setLags(String s[], int lags[][]) {
+        series = s;
+        seriesOf = new int[nt];
+        lagOf = new int[nt];
+        java.util.Arrays.fill(seriesOf, -1);
+        int i = 0;
+        for (int k = 0; k < s.length; k++) {
+            for (int j = 0; j < lags[k].length; j++) {
+                seriesOf[i] = k;
+                lagOf[i++] = lags[k][j];
+            }
+        }
+    }
+
+    /**
+     * Name the terminals.  Terminals past the end of n keep their
+     * current names.
+     */
+    private void setNames(String n[]) {
+        if (names == null) {
+            names = new String[nt];
+        }
+        for (int i = 0; i < nt && i < n.length; i++) {
+            names[i] = n[i];
+        }
+        nameIndex = new Hashtable();
+        for (int i = nt - 1; i >= 0; i--) {
+            nameIndex.put(names[i], new Integer(i));
+        }
+    }
+
+    private static char[] wideSymbols(int n, FunctionSet fs)
+        throws Exception {
+        if (n > MAX_NAMED) {
+            throw new Exception("Too many terminals: "+n+" (at most "+
+                                MAX_NAMED+")");
+        }
+        char ts[] = new char[n];
+        for (int i = 0; i < n; i++) {
+            ts[i] = (char)(WIDE_BASE + i);
+            if (fs.get(ts[i]) != null) {
+                throw new Exception("Function symbol "+(int)ts[i]+
+                                    " clashes with a terminal");
+            }
+        }
+        return ts;
+    }
+
+    private void setConstants(int n, double min, double max) {
+        if (n < 1) {
+            n = 1;
+        }
+        nc = n;
+        cmin = min;
+        cmax = max;
+    }
+
+    private static char[] withConstant(char ts[]) {
+        for (int i = 0; i < ts.length; i++) {
+            if (ts[i] == CONSTANT) {
+                return ts;
+            }
+        }
+        char t2[] = new char[ts.length + 1];
+        System.arraycopy(ts, 0, t2, 0, ts.length);
+        t2[ts.length] = CONSTANT;
+        return t2;
+    }
+
+    private static int[] binary(int n) {
+        int as[] = new int[n];
+        for (int i = 0; i < n; i++) {
+            as[i] = 2;
+        }
+        return as;
+    }
+
     /**
      * Length of a head in a gene.  The head can contain both terminal and
      * function characters.
@@ -76,12 +414,71 @@ public class Genome {
     }
 
     /**
-     * Return the length of a gene (tail + head).
+     * Return the length of a gene (tail + head, plus the Dc domain if the
+     * genome has random constants).
      *
      * @return   The length of a gene.
      */
     public int getGeneLength() {
-        return t+h;
+        return t+h+getDcLength();
+    }
+
+    /**
+     * Return the length of the Dc domain of a gene, which follows the
+     * tail.
+     *
+     * @return   The tail length if the genome has random constants, and
+     *           0 otherwise.
+     */
+    public int getDcLength() {
+        return (nc > 0) ? t : 0;
+    }
+
+    /**
+     * Whether genes carry random numerical constants.
+     *
+     * @return   True if the genome has a Dc domain.
+     */
+    public boolean hasConstants() {
+        return nc > 0;
+    }
+
+    /**
+     * Return the number of random constants per gene.
+     *
+     * @return   The number of constants, 0 if there are none.
+     */
+    public int getNumConstants() {
+        return nc;
+    }
+
+    public double getConstantMin() {
+        return cmin;
+    }
+
+    public double getConstantMax() {
+        return cmax;
+    }
+
+    /**
+     * Return the Dc symbol referring to a constant.
+     *
+     * @param  i   Index of the constant in its gene's array.
+     * @return     The symbol.
+     */
+    public char getDcSymbol(int i) {
+        return (char)('0' + i);
+    }
+
+    /**
+     * Return the index of the constant a Dc symbol refers to, the
+     * inverse of getDcSymbol().
+     *
+     * @param  c   The Dc symbol.
+     * @return     The index.
+     */
+    public int getDcIndex(char c) {
+        return c - '0';
     }
 
     /**
@@ -136,6 +533,114 @@ public class Genome {
 	return terminals[n];
     }
 
+    /**
+     * Return the index of a terminal symbol, the inverse of
+     * getTerminal().  Evaluators use this to keep the values of the
+     * terminals in an array instead of a hashtable.
+     *
+     * @param  c  The terminal character.
+     * @return    Its index, or -1 if c is not a terminal.
+     */
+    public int getTerminalIndex(char c) {
+        int i = c - termBase;
+        if (i >= 0 && i < termIndex.length) {
+            return termIndex[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Return the index of the terminal with the given name.
+     *
+     * @param  name  The name.
+     * @return       Its index, or -1 if no terminal has that name.
+     */
+    public int getTerminalIndex(String name) {
+        Integer i = (Integer)nameIndex.get(name);
+        return (i == null) ? -1 : i.intValue();
+    }
+
+    /**
+     * Return the name of the terminal at index n, under which its value
+     * is found in a test case.
+     *
+     * @param  n  The index into the terminal array.
+     * @return    The name.
+     */
+    public String getTerminalName(int n) {
+        return names[n];
+    }
+
+    /**
+     * Whether the terminals are lagged values of time series.
+     *
+     * @return   True for genomes built from series and lags.
+     */
+    public boolean isTimeSeries() {
+        return series != null;
+    }
+
+    /**
+     * Return the number of time series the terminals are drawn from.
+     *
+     * @return   The number of series, 0 if this is not a time series
+     *           genome.
+     */
+    public int getNumSeries() {
+        return (series == null) ? 0 : series.length;
+    }
+
+    public String getSeriesName(int s) {
+        return series[s];
+    }
+
+    /**
+     * Return the series a terminal is a lagged value of.
+     *
+     * @param  n  The terminal index.
+     * @return    The series index, or -1 for terminals that belong to no
+     *            series (such as CONSTANT).
+     */
+    public int getSeries(int n) {
+        return (seriesOf == null) ? -1 : seriesOf[n];
+    }
+
+    /**
+     * Return the lag of a terminal.
+     *
+     * @param  n  The terminal index.
+     * @return    The lag, 0 if the terminal belongs to no series.
+     */
+    public int getLag(int n) {
+        return (lagOf == null) ? 0 : lagOf[n];
+    }
+
+    /**
+     * Return the largest lag of any terminal.  Forecasts can only be
+     * made from this many observations on.
+     *
+     * @return   The largest lag.
+     */
+    public int getMaxLag() {
+        int max = 0;
+        for (int i = 0; lagOf != null && i < nt; i++) {
+            if (lagOf[i] > max) max = lagOf[i];
+        }
+        return max;
+    }
+
+    /**
+     * Return the name of a symbol: the name of a terminal, or the
+     * character itself for a function.
+     *
+     * @param  c  The symbol.
+     * @return    Its name.
+     */
+    public String getSymbolName(char c) {
+        int i = getTerminalIndex(c);
+        return (i >= 0) ? names[i] : String.valueOf(c);
+    }
+
     /**
      * Return the function symbol at index n.  For details on what this 
      * means, look at getTerminal().
@@ -156,12 +661,95 @@ public class Genome {
      * @return     Boolean if it is a function.
      */
     public boolean isFunction(char c) {
-        for (int i = 0; i < nf; i++) {
-            if (functions[i] == c) {
-                return true;
+        return c < arityOf.length && arityOf[c] > 0;
+    }
+
+    /**
+     * Return the arity of a symbol.
+     *
+     * @param   c  The character.
+     * @return     The number of arguments the function c takes, or 0 if
+     *             c is not a function.
+     */
+    public int getArity(char c) {
+        if (c < arityOf.length) {
+            return arityOf[c];
+        }
+        return 0;
+    }
+
+    /**
+     * Return the length of the open reading frame of a gene: the part
+     * from the start of the gene up to the last symbol the expression
+     * tree uses.  It is found by a prefix scan over the arities, keeping
+     * count of the arguments still needed.
+     *
+     * @param  c      The chromosome.
+     * @param  gene   Index of the gene.
+     * @return        The number of coding symbols in the gene.
+     */
+    public int getOrfLength(String c, int gene) {
+        int start = gene*getGeneLength();
+        int pos = start;
+        int need = 1;
+
+        while (need > 0) {
+            need += getArity(c.charAt(pos++)) - 1;
+        }
+        return pos - start;
+    }
+
+    /**
+     * Whether two chromosomes express the same trees.  Every gene must
+     * have the same open reading frame and, with random constants, refer
+     * to the same constants through its Dc domain.  Symbols outside the
+     * coding regions are ignored; the constants themselves are held by
+     * the individual and are not compared.
+     *
+     * @param  a   A chromosome.
+     * @param  b   Another chromosome.
+     * @return     True if every coding region of a and b is identical.
+     */
+    public boolean sameCoding(String a, String b) {
+        if (a.length() != b.length()) {
+            return false;
+        }
+        int gl = getGeneLength();
+
+        for (int g = 0; g < a.length() / gl; g++) {
+            int orf = getOrfLength(a, g);
+            if (orf != getOrfLength(b, g)) {
+                return false;
+            }
+
+            int start = g*gl;
+            int refs = 0;
+            for (int i = start; i < start + orf; i++) {
+                if (a.charAt(i) != b.charAt(i)) {
+                    return false;
+                }
+                if (a.charAt(i) == CONSTANT) {
+                    refs++;
+                }
+            }
+
+            if (nc > 0) {
+                int dc = start + h + t;
+                if (!a.regionMatches(dc, b, dc, refs)) {
+                    return false;
+                }
             }
         }
+        return true;
+    }
 
-        return false;
+    /**
+     * Return the function set this genome was built from.
+     *
+     * @return   The function set, or null if the genome was built from
+     *           an array of function characters.
+     */
+    public FunctionSet getFunctionSet() {
+        return fset;
     }
 }
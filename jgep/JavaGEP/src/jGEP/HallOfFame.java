@@ -0,0 +1,360 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Archive of the best distinct individuals seen so far, for any number
+ * of populations or islands evolving at once.  Two individuals are the
+ * same if they express the same trees: the open reading frames of their
+ * genes, and with random constants the values of the constants those
+ * genes use, are equal.  Of two such individuals only the fitter is
+ * kept.
+ *
+ * Members are kept in a concurrent skip list ordered by fitness, so
+ * reading the archive never waits.  The fitness of the worst member is
+ * kept in a volatile field once the archive is full, and individuals no
+ * fitter than that are turned away without taking a lock; that is what
+ * happens to nearly every individual once a run is under way.  Only the
+ * individuals that might enter take the lock.
+ *
+ * Individuals are replicated on entry, since populations change their
+ * individuals in place.  The members returned must not be changed.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class HallOfFame {
+    private int                   capacity; // maximum number of members
+    private ConcurrentSkipListSet members;  // Entries, best first
+    private Hashtable             keys;     // coding key -> Entry
+    private int                   size;
+    private long                  sequence; // orders equal fitness
+    private volatile double       minimum;  // to enter, once full
+
+    /**
+     * Constructor.
+     *
+     * @param  capacity   Maximum number of members.
+     */
+    public HallOfFame(int capacity) {
+        this.capacity = capacity;
+        members = new ConcurrentSkipListSet(new Comparator() {
+                public int compare(Object x, Object y) {
+                    Entry a = (Entry)x;
+                    Entry b = (Entry)y;
+                    if (a.fitness != b.fitness) {
+                        return (a.fitness > b.fitness) ? -1 : 1;
+                    }
+                    return (a.sequence < b.sequence) ? -1 
+                        : ((a.sequence > b.sequence) ? 1 : 0);
+                }
+            });
+        keys = new Hashtable();
+        size = 0;
+        sequence = 0;
+        minimum = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Offer individuals to the archive, such as a population after
+     * evaluation.
+     *
+     * @param  individuals   The individuals.
+     * @param  fitness       Their fitness, in order.
+     * @return               The number of individuals that entered.
+     */
+    public int update(Vector individuals, double fitness[]) {
+        int added = 0;
+
+        for (int i = 0; i < fitness.length; i++) {
+            if (add((Individual)individuals.elementAt(i), fitness[i])) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Offer one individual to the archive.  Safe to call from any
+     * thread.
+     *
+     * @param  ind       The individual.
+     * @param  fitness   Its fitness.
+     * @return           True if it entered the archive.
+     */
+    public boolean add(Individual ind, double fitness) {
+        if (!(fitness > minimum)) {
+            return false;  // also turns away NaN
+        }
+        String key = key(ind);
+
+        synchronized (this) {
+            if (!(fitness > minimum)) {
+                return false;
+            }
+            Entry old = (Entry)keys.get(key);
+            if (old != null) {
+                if (old.fitness >= fitness) {
+                    return false;
+                }
+                members.remove(old);
+                size--;
+            }
+
+            Entry e = new Entry(ind.replicate(), fitness, key, sequence++);
+            members.add(e);
+            keys.put(key, e);
+            size++;
+            if (size > capacity) {
+                Entry last = (Entry)members.pollLast();
+                keys.remove(last.key);
+                size--;
+            }
+            if (size >= capacity) {
+                minimum = ((Entry)members.last()).fitness;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Return the fitness an individual has to beat to enter.
+     *
+     * @return   The fitness of the worst member if the archive is full,
+     *           and negative infinity otherwise.
+     */
+    public double getMinimum() {
+        return minimum;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Return the best member.
+     *
+     * @return   The individual, or null if the archive is empty.
+     */
+    public Individual getBest() {
+        Entry e = first();
+        return (e == null) ? null : e.individual;
+    }
+
+    /**
+     * Return the fitness of the best member.
+     *
+     * @return   The fitness, or NaN if the archive is empty.
+     */
+    public double getBestFitness() {
+        Entry e = first();
+        return (e == null) ? Double.NaN : e.fitness;
+    }
+
+    /**
+     * Return the best members, best first.  Does not wait for
+     * individuals being added; they may or may not be included.
+     *
+     * @param  k   The most members to return.
+     * @return     A new vector holding the members.
+     */
+    public Vector getIndividuals(int k) {
+        Entry e[] = top(k);
+        Vector v = new Vector();
+
+        for (int i = 0; i < e.length; i++) {
+            v.addElement(e[i].individual);
+        }
+        return v;
+    }
+
+    /**
+     * Return the fitness of the best members, in the order of
+     * getIndividuals(k).
+     *
+     * @param  k   The most members to return.
+     * @return     Their fitness.
+     */
+    public double[] getFitness(int k) {
+        Entry e[] = top(k);
+        double f[] = new double[e.length];
+
+        for (int i = 0; i < e.length; i++) {
+            f[i] = e[i].fitness;
+        }
+        return f;
+    }
+
+    /**
+     * Put the best members back into a population in place of its worst
+     * individuals.  Members already in the population are skipped, and
+     * the individuals at the given indices are never replaced.
+     *
+     * @param  individuals   The population's individuals.
+     * @param  fitness       Their fitness, in order; the entries of
+     *                       replaced individuals are set to the fitness
+     *                       of the members that replace them.
+     * @param  count         The most individuals to replace.
+     * @param  keep          Indices not to replace, such as the elite
+     *                       slot 0; may be null.
+     * @return               The number of individuals replaced.
+     */
+    public int reseed(Vector individuals, double fitness[], int count,
+                      int keep[]) {
+        Hashtable present = new Hashtable();
+        for (int i = 0; i < fitness.length; i++) {
+            present.put(key((Individual)individuals.elementAt(i)), 
+                        Boolean.TRUE);
+        }
+
+        // the population's indices, worst first
+        boolean fixed[] = new boolean[fitness.length];
+        for (int i = 0; keep != null && i < keep.length; i++) {
+            fixed[keep[i]] = true;
+        }
+        Integer worst[] = new Integer[fitness.length];
+        for (int i = 0; i < worst.length; i++) {
+            worst[i] = new Integer(i);
+        }
+        final double f[] = fitness;
+        java.util.Arrays.sort(worst, new Comparator() {
+                public int compare(Object x, Object y) {
+                    double a = f[((Integer)x).intValue()];
+                    double b = f[((Integer)y).intValue()];
+                    if (Double.isNaN(a) || Double.isNaN(b)) {
+                        return Double.isNaN(a) ? (Double.isNaN(b) ? 0 : -1)
+                            : 1;
+                    }
+                    return Double.compare(a, b);
+                }
+            });
+
+        int replaced = 0;
+        int w = 0;
+        Iterator it = members.iterator();
+        while (replaced < count && it.hasNext()) {
+            Entry e = (Entry)it.next();
+            if (present.containsKey(e.key)) {
+                continue;
+            }
+            while (w < worst.length && fixed[worst[w].intValue()]) {
+                w++;
+            }
+            if (w == worst.length) {
+                break;
+            }
+            int i = worst[w++].intValue();
+            if (!(e.fitness > fitness[i]) && !Double.isNaN(fitness[i])) {
+                break;  // the rest of the population is as good
+            }
+            individuals.setElementAt(e.individual.replicate(), i);
+            fitness[i] = e.fitness;
+            replaced++;
+        }
+        return replaced;
+    }
+
+    /**
+     * Empty the archive.
+     */
+    public synchronized void clear() {
+        members.clear();
+        keys.clear();
+        size = 0;
+        minimum = Double.NEGATIVE_INFINITY;
+    }
+
+    private Entry first() {
+        try {
+            return (Entry)members.first();
+        } catch (java.util.NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    private Entry[] top(int k) {
+        Vector v = new Vector();
+        Iterator it = members.iterator();
+
+        while (v.size() < k && it.hasNext()) {
+            v.addElement(it.next());
+        }
+        Entry e[] = new Entry[v.size()];
+        v.copyInto(e);
+        return e;
+    }
+
+    /**
+     * The coding regions of an individual, and the values of the random
+     * constants they use.  Open reading frames end where the arities say
+     * they do, so the regions of consecutive genes need no separator;
+     * each constant value is followed by a character that is not a
+     * genome symbol.
+     */
+    static String key(Individual ind) {
+        Genome g = ind.getGenome();
+        String c = ind.getChromosome();
+        double k[][] = ind.getConstants();
+        int gl = g.getGeneLength();
+        StringBuffer sb = new StringBuffer();
+
+        for (int gene = 0; gene < c.length() / gl; gene++) {
+            int start = gene*gl;
+            int end = start + g.getOrfLength(c, gene);
+            int dc = start + g.getHeadLength() + g.getTailLength();
+
+            sb.append(c, start, end);
+            for (int i = start; k != null && i < end; i++) {
+                if (c.charAt(i) == Genome.CONSTANT) {
+                    sb.append(k[gene][g.getDcIndex(c.charAt(dc++))]);
+                    sb.append('\uFFFF');
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A member and its fitness.
+     */
+    private static final class Entry {
+        final Individual individual;
+        final double     fitness;
+        final String     key;
+        final long       sequence;
+
+        Entry(Individual individual, double fitness, String key,
+              long sequence) {
+            this.individual = individual;
+            this.fitness = fitness;
+            this.key = key;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Interface for numeric expression nodes that can read the values of the
+ * terminals from an array instead of a hashtable.  Terminals are looked
+ * up by their index in the genome (see Genome.getTerminalIndex()), so a
+ * leaf costs one array access however many variables there are.
+ *
+ * @author   Matthew Sottile
+ * @version  1.0
+ */
+public interface IndexedExpressionNode extends NumericExpressionNode {
+    /**
+     * Evaluate the expression for one test case.  Never throws.
+     *
+     * @param   in   Value of each terminal, indexed as in
+     *               Genome.getTerminalIndex().
+     * @return       The value of the expression, or NaN if it has no
+     *               value for these inputs.
+     */
+    public double evaluateRow(double in[]);
+}
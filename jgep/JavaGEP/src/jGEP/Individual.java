@@ -19,6 +19,7 @@
 package jGEP;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class representing a single individual.
@@ -33,6 +34,18 @@ abstract public class Individual {
     protected Genome genome;     /* the genome is the space from which
                                     chromosomes are derived.  */
     protected int    genes;      /* number of genes in the chromosome */
+    protected double constants[][]; /* random constants of each gene, or
+                                       null if the genome has none.
+                                       never modified in place, since
+                                       replicas share them. */
+
+    private volatile ExpressionNode expressed[]; /* cached result of
+                                                    express() */
+    private volatile CachedForm compiled;         /* see getCompiled() */
+    private volatile CachedFitness fitness;       /* see getFitness() */
+    private long id;                              /* see getId() */
+
+    private static final AtomicLong ids = new AtomicLong();
     
     /**
      * Constructor.  An individual is created with a chromosome containing
@@ -66,6 +79,8 @@ abstract public class Individual {
         this.chromosome = new String(c);
         genome = g;
         genes = gc;
+        constants = zeroConstants();
+        id = ids.incrementAndGet();
     }
     
     /**
@@ -86,6 +101,15 @@ abstract public class Individual {
         chromosome = null;
         genome = g;
         genes = gc;
+        constants = zeroConstants();
+        id = ids.incrementAndGet();
+    }
+
+    private double[][] zeroConstants() {
+        if (!genome.hasConstants()) {
+            return null;
+        }
+        return new double[genes][genome.getNumConstants()];
     }
     
     /**
@@ -96,7 +120,10 @@ abstract public class Individual {
     abstract public Individual replicate();
 
     /**
-     * Set the chromosome for this individual to a random setting.
+     * Set the chromosome for this individual to a random setting.  If the
+     * genome has random constants, the Dc domain of each gene is filled
+     * with random constant indices and the constants themselves are drawn
+     * uniformly from the genome's range.
      */
     public void randomChromosome(Random r) {
         if (genome == null) {
@@ -109,7 +136,9 @@ abstract public class Individual {
             return;
         }
         
-        chromosome = new String("");
+        invalidate();
+        id = ids.incrementAndGet();
+        StringBuffer sb = new StringBuffer(genes*genome.getGeneLength());
         int nf = genome.getNumFunctions();
         int nt = genome.getNumTerminals();
         
@@ -118,33 +147,117 @@ abstract public class Individual {
                 // flip for function or terminal
                 int f = r.nextInt(2);
                 if (f == 0) {
-                    chromosome += genome.getFunction(r.nextInt(nf));
+                    sb.append(genome.getFunction(r.nextInt(nf)));
                 } else {
-                    chromosome += genome.getTerminal(r.nextInt(nt));
+                    sb.append(genome.getTerminal(r.nextInt(nt)));
                 }
             } 
             for (int j = 0; j < genome.getTailLength(); j++) {
-                chromosome += genome.getTerminal(r.nextInt(nt));
+                sb.append(genome.getTerminal(r.nextInt(nt)));
+            }
+            for (int j = 0; j < genome.getDcLength(); j++) {
+                sb.append(genome.getDcSymbol(
+                    r.nextInt(genome.getNumConstants())));
+            }
+        }
+        chromosome = sb.toString();
+
+        if (genome.hasConstants()) {
+            double lo = genome.getConstantMin();
+            double hi = genome.getConstantMax();
+            constants = new double[genes][genome.getNumConstants()];
+            for (int i = 0; i < genes; i++) {
+                for (int k = 0; k < constants[i].length; k++) {
+                    constants[i][k] = lo + (hi - lo)*r.nextDouble();
+                }
             }
         }
     }
     
+    /**
+     * Return the random constants of every gene.  Not a copy, and must
+     * not be modified: replicas share the arrays.
+     *
+     * @return   The constants, indexed [gene][constant], or null if the
+     *           genome has no random constants.
+     */
+    public double[][] getConstants() {
+        return constants;
+    }
+
+    /**
+     * Replace the random constants.  The arrays are used as they are and
+     * must not be modified afterwards; build new ones to change them.
+     * The individual gets a new identifier.
+     *
+     * @param  c   The constants, indexed [gene][constant].
+     */
+    public void setConstants(double c[][]) {
+        invalidate();
+        constants = c;
+        id = ids.incrementAndGet();
+    }
+
+    /**
+     * Return one random constant.
+     *
+     * @param  gene   The gene.
+     * @param  k      Index of the constant in the gene's array.
+     * @return        The constant.
+     */
+    public double getConstant(int gene, int k) {
+        return constants[gene][k];
+    }
+
     /**
      * Set the genome.
      *
      * @param  g   The genome object.
      */
     public void setGenome(Genome g) {
+        invalidate();
         genome = g;
     }
 
     /**
-     * Set the chromosome.
+     * Return the genome.
+     *
+     * @return  The genome object.
+     */
+    public Genome getGenome() {
+        return genome;
+    }
+
+    /**
+     * Set the chromosome.  If the new chromosome differs from the old
+     * one only outside the coding regions (see Genome.sameCoding()), the
+     * change is neutral: the cached expression, compiled form and
+     * fitness stay valid and are kept.  Either way the individual gets
+     * a new identifier.
      *
      * @param  c   The string containing the chromosome.
      */
     public void setChromosome(String c) {
+        if (chromosome != null && genome.sameCoding(chromosome, c)) {
+            Metrics.count(Metrics.OP_NEUTRAL);
+        } else {
+            invalidate();
+        }
         chromosome = new String(c);
+        id = ids.incrementAndGet();
+    }
+
+    /**
+     * Return the identifier of this individual, for lineage records
+     * (see LineageTracer).  Identifiers are unique within the virtual
+     * machine.  An individual gets a new one whenever it is given a new
+     * chromosome or new constants; replicas share the identifier of the
+     * original.
+     *
+     * @return   The identifier.
+     */
+    public long getId() {
+        return id;
     }
 
     /**
@@ -164,13 +277,169 @@ abstract public class Individual {
      * explicit relation between genes and their expressed structures is
      * encoded in the chromosomes.
      *
+     * The expression is built by buildExpression() the first time it is
+     * needed and cached until the chromosome or genome changes, so an
+     * individual that survives several generations unchanged is only
+     * expressed once.  The trees must therefore be treated as read-only.
+     *
+     * @return   Array of ExpressionNode objects, one per gene.
+     */
+    public ExpressionNode[] express() {
+        ExpressionNode e[] = expressed;
+
+        if (e == null) {
+            long t = Metrics.start();
+            e = buildExpression();
+            expressed = e;
+            Metrics.stop(Metrics.EXPRESS, t);
+            Metrics.count(Metrics.EXPRESS_MISSES);
+        } else {
+            Metrics.count(Metrics.EXPRESS_HITS);
+        }
+
+        return e;
+    }
+
+    /**
+     * Build the expression trees for the current chromosome.  Called by
+     * express() when there is no cached expression.
+     *
      * @return   Array of ExpressionNode objects.  The individual is
      *           expected to provide a derived class from ExpressionNode
      *           that represents the structures specific to that class
      *           of individual.  This is easily achieved through the
      *           use of inner classes (which also provide a means to logically
      *           bind the expression node subclass to the individual 
-     *           subclass.)
+     *           subclass.)  Nodes must not depend on state of the
+     *           individual that can change without invalidate() being
+     *           called, since they are shared with replicas.  Nor may
+     *           they depend on symbols outside the coding regions, since
+     *           setChromosome() keeps them when only those change.
      */
-    abstract public ExpressionNode[] express();
+    abstract protected ExpressionNode[] buildExpression();
+
+    /**
+     * Return a compiled form of this individual cached by an evaluator,
+     * such as a flat program.  Only one compiled form is kept; it is
+     * tagged with a key identifying the evaluator that stored it, and
+     * is discarded along with the expression when the chromosome or
+     * genome changes.
+     *
+     * @param  key   Object identifying the evaluator.
+     * @return       The compiled form stored under key, or null.
+     */
+    public Object getCompiled(Object key) {
+        CachedForm c = compiled;
+
+        if (c != null && c.key == key) {
+            return c.value;
+        }
+        return null;
+    }
+
+    /**
+     * Cache a compiled form of this individual.  The compiled form must
+     * be derived from the current chromosome only, and be read-only.
+     *
+     * @param  key   Object identifying the evaluator.
+     * @param  c     The compiled form.
+     */
+    public void setCompiled(Object key, Object c) {
+        compiled = new CachedForm(key, c);
+    }
+
+    /**
+     * Return the fitness cached by a fitness harness, so that offspring
+     * whose coding regions are unchanged are not evaluated again.  Like
+     * the compiled form, the fitness is tagged with a key; the harness
+     * changes its key whenever its configuration changes.
+     *
+     * @param  key   Object identifying the harness and its configuration.
+     * @return       The fitness stored under key, or null.
+     */
+    public Double getFitness(Object key) {
+        CachedFitness f = fitness;
+
+        if (f != null && f.key == key) {
+            return new Double(f.value);
+        }
+        return null;
+    }
+
+    /**
+     * Return the last fitness cached by any harness.
+     *
+     * @return   The fitness, or NaN if none is cached.
+     */
+    double getLastFitness() {
+        CachedFitness f = fitness;
+        return (f == null) ? Double.NaN : f.value;
+    }
+
+    /**
+     * Cache the fitness of this individual.  It must be the exact
+     * fitness of the current expression.
+     *
+     * @param  key   Object identifying the harness and its configuration.
+     * @param  f     The fitness.
+     */
+    public void setFitness(Object key, double f) {
+        fitness = new CachedFitness(key, f);
+    }
+
+    /**
+     * Discard the cached expression, compiled form and fitness.
+     * Subclasses must call this when they change anything the expression
+     * depends on.
+     */
+    protected void invalidate() {
+        expressed = null;
+        compiled = null;
+        fitness = null;
+    }
+
+    /**
+     * Share the cached expression, compiled form and fitness of another
+     * individual with the same chromosome and genome, and its
+     * identifier.  Used by replicate(), so that copies of an individual
+     * are not expressed again.  The cached structures are read-only, so
+     * sharing is safe.
+     *
+     * @param  other   The individual this one is a copy of.
+     */
+    protected void shareExpression(Individual other) {
+        id = other.id;
+        expressed = other.expressed;
+        compiled = other.compiled;
+        fitness = other.fitness;
+    }
+
+    /**
+     * A compiled form and the key it was stored under, replaced as a
+     * whole so that readers never see a key with another evaluator's
+     * form.
+     */
+    private static final class CachedForm {
+        final Object key;
+        final Object value;
+
+        CachedForm(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A fitness and the key it was stored under, replaced as a whole so
+     * that readers never see a key with the wrong value.
+     */
+    private static final class CachedFitness {
+        final Object key;
+        final double value;
+
+        CachedFitness(Object key, double value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
 }
@@ -0,0 +1,100 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Generates a standalone Java class from an arithmetic individual.  The
+ * class has no dependency on jGEP: it has a static method
+ *
+ *     public static double eval(double a, double b, ...)
+ *
+ * taking one argument per non-constant terminal, and an overload taking
+ * the arguments as an array, in the same order.  Functions are emitted
+ * from their Java templates, so the generated code gives exactly the
+ * same results as the interpreter.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class JavaExporter extends SourceExporter {
+    protected String template(Function f) {
+        return f.getJavaTemplate();
+    }
+
+    protected String literal(double v) {
+        if (Double.isNaN(v)) {
+            return "Double.NaN";
+        } else if (v == Double.POSITIVE_INFINITY) {
+            return "Double.POSITIVE_INFINITY";
+        } else if (v == Double.NEGATIVE_INFINITY) {
+            return "Double.NEGATIVE_INFINITY";
+        } else if (v < 0.0 || (v == 0.0 && 1.0/v < 0.0)) {
+            return "(" + Double.toString(v) + ")";
+        }
+        return Double.toString(v);
+    }
+
+    protected String division(String a, String b, int div) {
+        if (div == ArithmeticIndividual.DIVISION_IEEE) {
+            return "(" + a + " / " + b + ")";
+        }
+        return "div(" + a + ", " + b + ")";
+    }
+
+    protected String generate(String name, String params[], String expr,
+                              int div, String description) {
+        StringBuffer sb = new StringBuffer();
+        StringBuffer args = new StringBuffer();
+        StringBuffer elems = new StringBuffer();
+
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                args.append(", ");
+                elems.append(", ");
+            }
+            args.append("double " + params[i]);
+            elems.append("x[" + i + "]");
+        }
+
+        sb.append("/*\n");
+        sb.append(" * Generated by jGEP from:\n");
+        sb.append(" *   " + description + "\n");
+        sb.append(" */\n");
+        sb.append("public final class " + name + " {\n");
+        sb.append("    private " + name + "() {\n");
+        sb.append("    }\n\n");
+        sb.append("    public static double eval(" + args + ") {\n");
+        sb.append("        return " + expr + ";\n");
+        sb.append("    }\n\n");
+        sb.append("    public static double eval(double x[]) {\n");
+        sb.append("        return eval(" + elems + ");\n");
+        sb.append("    }\n");
+        if (expr.indexOf("div(") >= 0) {
+            String z = (div == ArithmeticIndividual.DIVISION_PROTECTED)
+                ? "1.0" : "Double.NaN";
+            sb.append("\n");
+            sb.append("    private static double div(double a, double b) {\n");
+            sb.append("        return (b == 0.0) ? " + z + " : a / b;\n");
+            sb.append("    }\n");
+        }
+        sb.append("}\n");
+
+        return sb.toString();
+    }
+}
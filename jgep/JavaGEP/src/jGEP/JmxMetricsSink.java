@@ -0,0 +1,142 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.lang.management.ManagementFactory;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Exposes the metrics of the last generation as the attributes of an
+ * MBean, for jconsole and other JMX clients.  Each metric is a read-only
+ * attribute of type double, as is the generation number.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class JmxMetricsSink implements MetricsSink, DynamicMBean {
+    private ObjectName      name;
+    private MetricsSnapshot last;   // null until the first publish
+
+    /**
+     * Constructor.  Registers the MBean with the platform MBean server
+     * under jGEP:type=Metrics.
+     */
+    public JmxMetricsSink() throws Exception {
+        this("jGEP:type=Metrics");
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param  objectName   Name to register the MBean under.
+     */
+    public JmxMetricsSink(String objectName) throws Exception {
+        name = new ObjectName(objectName);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    }
+
+    /**
+     * Unregister the MBean.
+     */
+    public void close() throws Exception {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    public synchronized void publish(MetricsSnapshot s) {
+        last = s;
+    }
+
+    public synchronized Object getAttribute(String attribute) 
+        throws AttributeNotFoundException {
+        MetricsSnapshot s = (last != null) ? last : Metrics.snapshot();
+
+        if (attribute.equals("generation")) {
+            return new Double(s.getGeneration());
+        }
+        double v = s.get(attribute);
+        if (Double.isNaN(v) && !contains(s.getNames(), attribute)) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return new Double(v);
+    }
+
+    public AttributeList getAttributes(String attributes[]) {
+        AttributeList l = new AttributeList();
+
+        for (int i = 0; i < attributes.length; i++) {
+            try {
+                l.add(new Attribute(attributes[i], 
+                                    getAttribute(attributes[i])));
+            } catch (AttributeNotFoundException e) {
+                // left out, as the interface specifies
+            }
+        }
+        return l;
+    }
+
+    public void setAttribute(Attribute attribute) 
+        throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    public Object invoke(String action, Object params[], String sig[])
+        throws MBeanException, ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(action));
+    }
+
+    public synchronized MBeanInfo getMBeanInfo() {
+        MetricsSnapshot s = (last != null) ? last : Metrics.snapshot();
+        String names[] = s.getNames();
+        MBeanAttributeInfo attrs[] = new MBeanAttributeInfo[names.length+1];
+
+        attrs[0] = new MBeanAttributeInfo("generation", "double",
+                                          "Generation number", 
+                                          true, false, false);
+        for (int i = 0; i < names.length; i++) {
+            attrs[i+1] = new MBeanAttributeInfo(names[i], "double", 
+                                                names[i], true, false, false);
+        }
+
+        return new MBeanInfo(getClass().getName(), 
+                             "jGEP metrics of the last generation", attrs,
+                             null, new MBeanOperationInfo[0], null);
+    }
+
+    private static boolean contains(String a[], String s) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i].equals(s)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
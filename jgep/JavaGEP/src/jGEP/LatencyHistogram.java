@@ -0,0 +1,117 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of durations in nanoseconds, with one bucket per
+ * power of two.  Recording is a few instructions and never blocks, so it
+ * can be used on hot paths from many threads; percentiles are accurate to
+ * within a factor of two, which is enough to see where time goes.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class LatencyHistogram {
+    private static final int BUCKETS = 64;
+
+    private LongAdder counts[];   // counts[i]: durations in [2^i, 2^(i+1))
+    private LongAdder total;      // sum of durations
+    private LongAdder n;          // number of durations
+
+    public LatencyHistogram() {
+        counts = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+        total = new LongAdder();
+        n = new LongAdder();
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param  nanos   The duration.
+     */
+    public void record(long nanos) {
+        if (nanos < 1) {
+            nanos = 1;
+        }
+        counts[63 - Long.numberOfLeadingZeros(nanos)].increment();
+        total.add(nanos);
+        n.increment();
+    }
+
+    public long getCount() {
+        return n.sum();
+    }
+
+    /**
+     * Return the mean duration.
+     *
+     * @return   The mean, or 0 if nothing has been recorded.
+     */
+    public double getMean() {
+        long c = n.sum();
+        return (c == 0) ? 0.0 : (double)total.sum() / c;
+    }
+
+    /**
+     * Return an upper bound on a percentile: the top of the bucket that
+     * holds it.
+     *
+     * @param  p   The percentile, between 0 and 100.
+     * @return     The bound in nanoseconds, or 0 if nothing has been
+     *             recorded.
+     */
+    public double getPercentile(double p) {
+        long c[] = new long[BUCKETS];
+        long sum = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts[i].sum();
+            sum += c[i];
+        }
+        if (sum == 0) {
+            return 0.0;
+        }
+
+        long rank = (long)Math.ceil(p / 100.0 * sum);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += c[i];
+            if (seen >= rank && c[i] > 0) {
+                return Math.pow(2.0, i + 1);
+            }
+        }
+        return Math.pow(2.0, BUCKETS);
+    }
+
+    /**
+     * Clear the histogram.  Durations recorded concurrently may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i].reset();
+        }
+        total.reset();
+        n.reset();
+    }
+}
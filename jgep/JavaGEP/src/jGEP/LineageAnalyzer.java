@@ -0,0 +1,303 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Reads a lineage file written by LineageTracer, and reports how often
+ * each operator improved on the parent, and the ancestry of the winner.
+ * An offspring changed by several stages in one generation counts for
+ * each of them.  Offspring whose own or parent fitness is unknown count
+ * as applications but not towards the success rates.
+ *
+ * Run from the command line as
+ *
+ *     java jGEP.LineageAnalyzer lineage-file
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class LineageAnalyzer {
+    private static final int KINDS = OperatorPipeline.RNC_MUTATION + 1;
+
+    private Hashtable offspring;   // Long id -> Record
+    private int       records;
+    private long      winner;      // -1 if none
+    private double    winnerFitness;
+    private int       applications[];
+    private int       scored[];      // with both fitness values known
+    private int       improvements[];
+    private int       worse[];
+    private double    delta[];       // sum of fitness changes
+
+    /**
+     * Constructor.  Reads the whole file.
+     *
+     * @param  filename   The lineage file.
+     */
+    public LineageAnalyzer(String filename) throws Exception {
+        offspring = new Hashtable();
+        winner = -1;
+        winnerFitness = Double.NaN;
+        applications = new int[KINDS];
+        scored = new int[KINDS];
+        improvements = new int[KINDS];
+        worse = new int[KINDS];
+        delta = new double[KINDS];
+
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(filename)));
+        try {
+            if (in.readLong() != LineageTracer.MAGIC) {
+                throw new Exception(filename+" is not a lineage file.");
+            }
+            int size = in.readInt();
+            if (size < LineageTracer.RECORD_SIZE) {
+                throw new Exception("Bad record size "+size);
+            }
+
+            while (true) {
+                Record r = new Record();
+                int type;
+                try {
+                    type = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                r.operators = in.readInt();
+                r.generation = in.readLong();
+                r.id = in.readLong();
+                r.parent = in.readLong();
+                r.partner = in.readLong();
+                r.first = in.readInt();
+                r.last = in.readInt();
+                r.parentFitness = in.readDouble();
+                r.fitness = in.readDouble();
+                in.skipBytes(size - LineageTracer.RECORD_SIZE);
+                records++;
+
+                if (type == LineageTracer.WINNER) {
+                    winner = r.id;
+                    winnerFitness = r.fitness;
+                } else {
+                    add(r);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void add(Record r) {
+        offspring.put(new Long(r.id), r);
+        boolean known = !Double.isNaN(r.fitness) && 
+            !Double.isNaN(r.parentFitness);
+        double d = r.fitness - r.parentFitness;
+
+        for (int k = 0; k < KINDS; k++) {
+            if ((r.operators & (1 << k)) == 0) {
+                continue;
+            }
+            applications[k]++;
+            if (known) {
+                scored[k]++;
+                delta[k] += d;
+                if (d > 0.0) {
+                    improvements[k]++;
+                } else if (d < 0.0) {
+                    worse[k]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the number of records read.
+     *
+     * @return   The count.
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    /**
+     * Return the number of recorded offspring a stage kind changed.
+     *
+     * @param  kind   OperatorPipeline.MUTATION to RNC_MUTATION.
+     * @return        The count.
+     */
+    public int getApplications(int kind) {
+        return applications[kind];
+    }
+
+    /**
+     * Return the number of recorded offspring a stage kind changed that
+     * were fitter than their parent.
+     *
+     * @param  kind   The stage kind.
+     * @return        The count.
+     */
+    public int getImprovements(int kind) {
+        return improvements[kind];
+    }
+
+    /**
+     * Return the fraction of the offspring with known fitness that a
+     * stage kind changed and that were fitter than their parent.
+     *
+     * @param  kind   The stage kind.
+     * @return        The rate, or NaN if there were none.
+     */
+    public double getSuccessRate(int kind) {
+        return (scored[kind] == 0) ? Double.NaN
+            : (double)improvements[kind] / scored[kind];
+    }
+
+    /**
+     * Return the mean change in fitness from parent to offspring.
+     *
+     * @param  kind   The stage kind.
+     * @return        The mean, or NaN if there were no offspring with
+     *                known fitness.
+     */
+    public double getMeanDelta(int kind) {
+        return (scored[kind] == 0) ? Double.NaN : delta[kind] / scored[kind];
+    }
+
+    /**
+     * Return the identifier of the last winner recorded.
+     *
+     * @return   The identifier, or -1 if there is none.
+     */
+    public long getWinner() {
+        return winner;
+    }
+
+    /**
+     * Return the ancestry of an individual: it, its parent, that
+     * parent's parent and so on, as far as the offspring were recorded.
+     * The walk stops at an identifier it has already visited, so a
+     * damaged trace cannot make it loop.
+     *
+     * @param  id   The individual.
+     * @return      Identifiers, youngest first.
+     */
+    public long[] getAncestry(long id) {
+        Vector v = new Vector();
+        Hashtable seen = new Hashtable();
+        Record r = (Record)offspring.get(new Long(id));
+
+        v.addElement(new Long(id));
+        seen.put(new Long(id), Boolean.TRUE);
+        while (r != null && !seen.containsKey(new Long(r.parent))) {
+            v.addElement(new Long(r.parent));
+            seen.put(new Long(r.parent), Boolean.TRUE);
+            r = (Record)offspring.get(new Long(r.parent));
+        }
+
+        long a[] = new long[v.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = ((Long)v.elementAt(i)).longValue();
+        }
+        return a;
+    }
+
+    /**
+     * Return the operator success rates and the winner's ancestry as
+     * text.
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+
+        sb.append("records=" + records + " offspring=" + offspring.size() +
+                  "\n");
+        sb.append("operator,applications,improved,worse,success_rate," +
+                  "mean_delta\n");
+        for (int k = 0; k < KINDS; k++) {
+            if (applications[k] > 0) {
+                sb.append(OperatorPipeline.getStageName(k) + "," +
+                          applications[k] + "," + improvements[k] + "," +
+                          worse[k] + "," + getSuccessRate(k) + "," + 
+                          getMeanDelta(k) + "\n");
+            }
+        }
+
+        if (winner >= 0) {
+            sb.append("winner " + winner + " fitness=" + winnerFitness + 
+                      "\n");
+            sb.append("generation,id,parent,partner,operators,positions," +
+                      "delta\n");
+            long a[] = getAncestry(winner);
+            for (int i = 0; i < a.length; i++) {
+                Record r = (Record)offspring.get(new Long(a[i]));
+                if (r != null) {
+                    sb.append(r.generation + "," + r.id + "," + r.parent +
+                              "," + r.partner + "," + 
+                              names(r.operators) + "," + r.first + "-" + 
+                              r.last + "," + 
+                              (r.fitness - r.parentFitness) + "\n");
+                } else {
+                    sb.append("," + a[i] + ",,,,,\n");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String names(int operators) {
+        String s = "";
+        for (int k = 0; k < KINDS; k++) {
+            if ((operators & (1 << k)) != 0) {
+                s += (s.length() > 0 ? "+" : "") + 
+                    OperatorPipeline.getStageName(k);
+            }
+        }
+        return s;
+    }
+
+    public static void main(String args[]) {
+        if (args.length != 1) {
+            System.err.println("usage: java jGEP.LineageAnalyzer file");
+            System.exit(1);
+        }
+        try {
+            System.out.print(new LineageAnalyzer(args[0]));
+        } catch (Exception e) {
+            System.err.println("EXCEPTION (LineageAnalyzer) :: "+e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * One offspring record.
+     */
+    private static class Record {
+        int    operators;
+        long   generation;
+        long   id, parent, partner;
+        int    first, last;
+        double parentFitness, fitness;
+    }
+}
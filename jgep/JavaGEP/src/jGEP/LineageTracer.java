@@ -0,0 +1,274 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records the lineage of offspring to a binary file, to see which
+ * operators produce the improvements in a run.  Give a tracer to an
+ * OperatorPipeline with setTracer(); for a sample of the individuals the
+ * pipeline changes, the tracer records their parents, the operators
+ * applied to them, the span of positions changed, and their fitness and
+ * that of the first parent.  Analyse the file with LineageAnalyzer.
+ *
+ * Records are written into a ring buffer allocated outside the heap when
+ * the tracer is created, and a daemon thread writes them to the file.
+ * Recording never waits for the disk: if the ring is full, the record is
+ * dropped and counted (see getDropped()).  Whether an offspring is
+ * sampled depends only on a hash of its identifier, so sampling costs
+ * no random numbers and no locking.
+ *
+ * The file starts with the 8 byte magic number "jGEPLIN1" and the record
+ * size as an int, followed by records of RECORD_SIZE bytes, in big
+ * endian order:
+ *
+ *     int    type            OFFSPRING or WINNER
+ *     int    operators       bit k set if pipeline stage kind k
+ *                            changed the offspring
+ *     long   generation      pipeline generation
+ *     long   id              the offspring
+ *     long   parent          individual it was made from
+ *     long   partner         first recombination partner, or -1
+ *     int    first, last     span of positions changed, inclusive
+ *     double parentFitness   NaN if unknown
+ *     double fitness         NaN if unknown
+ *
+ * A WINNER record, written by winner(), names an individual and its
+ * fitness; the analyzer traces the ancestry of the last one.  Ancestry
+ * is only complete at sampling rate 1.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class LineageTracer {
+    public static final int  OFFSPRING   = 0;
+    public static final int  WINNER      = 1;
+    public static final int  RECORD_SIZE = 64;
+    public static final long MAGIC       = 0x6A4745504C494E31L;
+
+    private ByteBuffer  ring;      // slots records, allocated once
+    private int         slots;
+    private long        head;      // records added
+    private long        tail;      // records written to the file
+    private long        dropped;
+    private FileChannel out;
+    private Thread      flusher;
+    private boolean     closed;
+    private long        threshold; // hashes below this are sampled
+    private double      rate;
+
+    /**
+     * Constructor.  Opens the file and starts the flusher.
+     *
+     * @param  filename   The file to write.
+     * @param  slots      Number of records the ring holds.
+     * @param  rate       Fraction of offspring to record, 0 to 1.
+     */
+    public LineageTracer(String filename, int slots, double rate)
+        throws Exception {
+        if (slots < 1) {
+            throw new Exception("Ring must hold at least one record.");
+        }
+        this.slots = slots;
+        this.rate = Math.max(0.0, Math.min(rate, 1.0));
+        threshold = (this.rate >= 1.0) ? Long.MAX_VALUE 
+            : (long)(this.rate * Long.MAX_VALUE);
+        ring = ByteBuffer.allocateDirect(slots * RECORD_SIZE);
+        out = new FileOutputStream(filename).getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putLong(MAGIC);
+        header.putInt(RECORD_SIZE);
+        header.flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+
+        flusher = new Thread(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, "LineageTracer");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public double getSamplingRate() {
+        return rate;
+    }
+
+    /**
+     * Whether the offspring with a given identifier is sampled.
+     *
+     * @param  id   The identifier.
+     * @return      True if it should be recorded.
+     */
+    public boolean isSampled(long id) {
+        long z = id * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = (z ^ (z >>> 31)) >>> 1;
+        return z < threshold || threshold == Long.MAX_VALUE;
+    }
+
+    /**
+     * Record an offspring.
+     *
+     * @param  generation      Pipeline generation.
+     * @param  id              The offspring.
+     * @param  parent          The individual it was made from.
+     * @param  partner         Its first recombination partner, or -1.
+     * @param  operators       Bit k set if stage kind k changed it.
+     * @param  first           First position changed.
+     * @param  last            Last position changed.
+     * @param  parentFitness   Fitness of the parent, or NaN.
+     * @param  fitness         Fitness of the offspring, or NaN.
+     */
+    public void offspring(long generation, long id, long parent,
+                          long partner, int operators, int first, int last,
+                          double parentFitness, double fitness) {
+        put(OFFSPRING, operators, generation, id, parent, partner, first,
+            last, parentFitness, fitness);
+    }
+
+    /**
+     * Record the best individual of a run, whose ancestry the analyzer
+     * reports.
+     *
+     * @param  ind       The individual.
+     * @param  fitness   Its fitness.
+     */
+    public void winner(Individual ind, double fitness) {
+        put(WINNER, 0, -1, ind.getId(), -1, -1, -1, -1, Double.NaN, 
+            fitness);
+    }
+
+    /**
+     * Return the number of records dropped because the ring was full.
+     *
+     * @return   The count.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Return the number of records written to the ring.
+     *
+     * @return   The count.
+     */
+    public synchronized long getRecorded() {
+        return head;
+    }
+
+    /**
+     * Write out the remaining records and close the file.
+     */
+    public void close() throws Exception {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        flusher.join();
+        out.close();
+    }
+
+    private synchronized void put(int type, int operators, long generation,
+                                  long id, long parent, long partner,
+                                  int first, int last, double parentFitness,
+                                  double fitness) {
+        if (closed || head - tail == slots) {
+            dropped++;
+            return;
+        }
+        int p = (int)(head % slots) * RECORD_SIZE;
+        ring.putInt(p, type);
+        ring.putInt(p + 4, operators);
+        ring.putLong(p + 8, generation);
+        ring.putLong(p + 16, id);
+        ring.putLong(p + 24, parent);
+        ring.putLong(p + 32, partner);
+        ring.putInt(p + 40, first);
+        ring.putInt(p + 44, last);
+        ring.putDouble(p + 48, parentFitness);
+        ring.putDouble(p + 56, fitness);
+        head++;
+        if (head - tail == slots / 2) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Body of the flusher thread: write out records as they build up,
+     * and at least every 100ms.  Records between tail and head are not
+     * touched by put() until tail moves past them, so they are written
+     * without holding the lock.
+     */
+    private void flush() {
+        while (true) {
+            long from, to;
+            boolean last;
+            synchronized (this) {
+                if (head == tail && !closed) {
+                    try {
+                        wait(100);
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                from = tail;
+                to = head;
+                last = closed;
+            }
+
+            try {
+                while (from < to) {
+                    int p = (int)(from % slots);
+                    int n = (int)Math.min(to - from, slots - p);
+                    ByteBuffer b = ring.duplicate();
+                    b.position(p * RECORD_SIZE);
+                    b.limit((p + n) * RECORD_SIZE);
+                    while (b.hasRemaining()) {
+                        out.write(b);
+                    }
+                    from += n;
+                }
+            } catch (IOException e) {
+                System.err.println("EXCEPTION (LineageTracer) :: "+e);
+                synchronized (this) {
+                    closed = true;
+                    dropped += head - tail;
+                    tail = head;
+                }
+                return;
+            }
+
+            synchronized (this) {
+                tail = to;
+            }
+            if (last) {
+                return;
+            }
+        }
+    }
+}
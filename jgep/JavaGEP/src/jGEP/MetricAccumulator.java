@@ -0,0 +1,63 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Running state of a fitness metric over some set of test cases.  An
+ * accumulator is not thread safe; each thread should fill its own and
+ * merge them once all are complete.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ * @see       jGEP.FitnessMetric
+ */
+public interface MetricAccumulator {
+    /**
+     * Add a single test case.
+     *
+     * @param  predicted   The output of the individual.
+     * @param  expected    The expected output.
+     */
+    public void add(double predicted, double expected);
+
+    /**
+     * Fold in the test cases of another accumulator created by the same
+     * metric.  The other accumulator is left unchanged.
+     *
+     * @param  other   The accumulator to merge.
+     */
+    public void merge(MetricAccumulator other);
+
+    /**
+     * Scale the accumulated state as if every test case had been added
+     * the given number of times.  Used to extrapolate a fitness measured
+     * on a sample of the test cases to the whole set.  Averages are left
+     * unchanged; sums and counts grow by the factor.
+     *
+     * @param  factor   The scale factor.
+     */
+    public void scale(double factor);
+
+    /**
+     * The number of test cases accumulated (after any scaling).
+     *
+     * @return   The count.
+     */
+    public double getCount();
+}
@@ -0,0 +1,404 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Low-overhead instrumentation of the library.  The library times its
+ * phases (expressing chromosomes, evaluating fitness, selection and the
+ * genetic operators), counts operator applications and cache hits, and
+ * records the latency of each fitness evaluation.  A driver calls
+ * endGeneration() once per generation; that publishes the metrics of the
+ * generation to the registered sinks and starts the next generation.
+ *
+ * Metrics are disabled by default, and then cost one read of a volatile
+ * flag at each instrumented point.  When enabled, counters and timers
+ * are LongAdders, so threads evaluating in parallel do not contend.
+ *
+ * Phases are timed in the thread that runs them; time spent in a phase
+ * that is already running in the same thread (an evaluation made from
+ * inside a population-wide evaluation, for example) is not counted
+ * twice.  Phase times from several threads add up, so they can exceed
+ * the wall-clock time of a generation, and phases overlap: expressing a
+ * chromosome during an evaluation counts towards both.
+ *
+ * Metric names in snapshots:
+ *
+ *   generation.nanos          wall-clock time of the generation
+ *   express.nanos, evaluate.nanos, select.nanos, breed.nanos
+ *                             time spent in each phase
+ *   evaluations               individuals evaluated
+ *   evaluations.per_second    evaluations / generation.nanos
+ *   evaluate.latency.mean, .p50, .p90, .p99
+ *                             latency of single evaluations
+ *   op.mutate, op.is_transpose, op.ris_transpose, op.gene_transpose,
+ *   op.gene_recombination, op.one_point, op.two_point, op.dc_mutate,
+ *   op.dc_transpose, op.rnc_mutate
+ *                             operator applications
+ *   op.neutral                chromosome changes that left every coding
+ *                             region as it was
+ *   express.hit_rate, subtree.hit_rate, program.hit_rate,
+ *   fitness.hit_rate          hit rates of the expression cache, the
+ *                             subtree cache, the compiled program cache
+ *                             and the fitness cache (NaN when unused)
+ *   surrogate.reject_rate     fraction of new individuals kept from
+ *                             exact evaluation by SurrogateFitness
+ *   surrogate.false_reject_rate
+ *                             fraction of the audited rejects that
+ *                             should have been kept
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class Metrics {
+    //
+    // phases
+    //
+    public static final int EXPRESS  = 0;
+    public static final int EVALUATE = 1;
+    public static final int SELECT   = 2;
+    public static final int BREED    = 3;
+    private static final int PHASES  = 4;
+    private static final String phaseNames[] = {
+        "express", "evaluate", "select", "breed"
+    };
+
+    //
+    // counters
+    //
+    public static final int EVALUATIONS           = 0;
+    public static final int OP_MUTATE             = 1;
+    public static final int OP_IS_TRANSPOSE       = 2;
+    public static final int OP_RIS_TRANSPOSE      = 3;
+    public static final int OP_GENE_TRANSPOSE     = 4;
+    public static final int OP_GENE_RECOMBINATION = 5;
+    public static final int OP_ONE_POINT          = 6;
+    public static final int OP_TWO_POINT          = 7;
+    public static final int EXPRESS_HITS          = 8;
+    public static final int EXPRESS_MISSES        = 9;
+    public static final int SUBTREE_HITS          = 10;
+    public static final int SUBTREE_MISSES        = 11;
+    public static final int PROGRAM_HITS          = 12;
+    public static final int PROGRAM_MISSES        = 13;
+    public static final int OP_DC_MUTATE          = 14;
+    public static final int OP_DC_TRANSPOSE       = 15;
+    public static final int OP_RNC_MUTATE         = 16;
+    public static final int FITNESS_HITS          = 17;
+    public static final int FITNESS_MISSES        = 18;
+    public static final int OP_NEUTRAL            = 19;
+    public static final int SURROGATE_ACCEPTS     = 20;
+    public static final int SURROGATE_REJECTS     = 21;
+    public static final int SURROGATE_FALSE       = 22;
+    public static final int SURROGATE_TRUE        = 23;
+    private static final int COUNTERS             = 24;
+    private static final String counterNames[] = {
+        "evaluations", "op.mutate", "op.is_transpose", "op.ris_transpose",
+        "op.gene_transpose", "op.gene_recombination", "op.one_point",
+        "op.two_point"
+    };
+
+    private static volatile boolean enabled = false;
+
+    private static LongAdder        phases[] = adders(PHASES);
+    private static LongAdder        counters[] = adders(COUNTERS);
+    private static LatencyHistogram latency = new LatencyHistogram();
+    private static Vector           sinks = new Vector();
+    private static long             generation = 0;
+    private static long             generationStart = System.nanoTime();
+    private static MetricsSnapshot  last = null;
+
+    // phases running in the current thread, one bit per phase
+    private static final ThreadLocal active = new ThreadLocal() {
+            protected Object initialValue() {
+                return new int[1];
+            }
+        };
+
+    private Metrics() {
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder a[] = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            a[i] = new LongAdder();
+        }
+        return a;
+    }
+
+    /**
+     * Turn instrumentation on or off.  Turning it on starts a new
+     * generation.
+     *
+     * @param  on   Whether to record metrics.
+     */
+    public static synchronized void setEnabled(boolean on) {
+        if (on && !enabled) {
+            reset();
+        }
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add a sink that endGeneration() publishes to.
+     *
+     * @param  s   The sink.
+     */
+    public static void addSink(MetricsSink s) {
+        sinks.addElement(s);
+    }
+
+    public static void removeSink(MetricsSink s) {
+        sinks.removeElement(s);
+    }
+
+    /**
+     * Start timing a phase in the current thread.  Phases that can nest,
+     * such as evaluation, are timed with begin() and end(), and end()
+     * must be called in a finally block.
+     *
+     * @param  phase   One of the phase constants.
+     * @return         A token for end(): 0 if metrics are disabled or the
+     *                 phase is already being timed in this thread.
+     */
+    public static long begin(int phase) {
+        if (!enabled) {
+            return 0;
+        }
+        int a[] = (int[])active.get();
+        if ((a[0] & (1 << phase)) != 0) {
+            return 0;
+        }
+        a[0] |= (1 << phase);
+        long t = System.nanoTime();
+        return (t == 0) ? 1 : t;
+    }
+
+    /**
+     * Stop timing a phase.
+     *
+     * @param  phase   The phase passed to begin().
+     * @param  token   The value begin() returned.
+     * @return         The elapsed time in nanoseconds, or 0 if the phase
+     *                 was not being timed.
+     */
+    public static long end(int phase, long token) {
+        if (token == 0) {
+            return 0;
+        }
+        long dt = System.nanoTime() - token;
+        ((int[])active.get())[0] &= ~(1 << phase);
+        phases[phase].add(dt);
+        return dt;
+    }
+
+    /**
+     * Stop timing a phase started with begin(), and count the individuals
+     * evaluated.  The latency of single evaluations is also recorded.
+     *
+     * @param  token   The value begin(EVALUATE) returned.
+     * @param  n       Number of individuals evaluated.
+     */
+    public static void endEvaluation(long token, int n) {
+        long dt = end(EVALUATE, token);
+
+        if (dt > 0) {
+            counters[EVALUATIONS].add(n);
+            if (n == 1) {
+                latency.record(dt);
+            }
+        }
+    }
+
+    /**
+     * Start timing a phase that cannot be running already in this thread.
+     * Unlike begin(), nothing needs to be undone if the phase fails.
+     *
+     * @return   A token for stop(), 0 if metrics are disabled.
+     */
+    public static long start() {
+        if (!enabled) {
+            return 0;
+        }
+        long t = System.nanoTime();
+        return (t == 0) ? 1 : t;
+    }
+
+    /**
+     * Stop timing a phase started with start().
+     *
+     * @param  phase   One of the phase constants.
+     * @param  token   The value start() returned.
+     */
+    public static void stop(int phase, long token) {
+        if (token != 0) {
+            phases[phase].add(System.nanoTime() - token);
+        }
+    }
+
+    /**
+     * Count an event.
+     *
+     * @param  counter   One of the counter constants.
+     */
+    public static void count(int counter) {
+        if (enabled) {
+            counters[counter].increment();
+        }
+    }
+
+    /**
+     * Count several events.
+     *
+     * @param  counter   One of the counter constants.
+     * @param  n         Number of events.
+     */
+    public static void count(int counter, long n) {
+        if (enabled) {
+            counters[counter].add(n);
+        }
+    }
+
+    /**
+     * Record the latency of one fitness evaluation.
+     *
+     * @param  nanos   The latency.
+     */
+    public static void recordEvaluation(long nanos) {
+        if (enabled) {
+            latency.record(nanos);
+        }
+    }
+
+    /**
+     * Return the metrics of the current generation so far.
+     *
+     * @return   The snapshot.
+     */
+    public static synchronized MetricsSnapshot snapshot() {
+        Vector names = new Vector();
+        Vector values = new Vector();
+        double elapsed = System.nanoTime() - generationStart;
+
+        add(names, values, "generation.nanos", elapsed);
+        for (int i = 0; i < PHASES; i++) {
+            add(names, values, phaseNames[i] + ".nanos", phases[i].sum());
+        }
+        long evals = counters[EVALUATIONS].sum();
+        for (int i = 0; i < counterNames.length; i++) {
+            add(names, values, counterNames[i], counters[i].sum());
+        }
+        add(names, values, "op.dc_mutate", counters[OP_DC_MUTATE].sum());
+        add(names, values, "op.dc_transpose",
+            counters[OP_DC_TRANSPOSE].sum());
+        add(names, values, "op.rnc_mutate", counters[OP_RNC_MUTATE].sum());
+        add(names, values, "op.neutral", counters[OP_NEUTRAL].sum());
+        add(names, values, "evaluations.per_second",
+            (elapsed > 0) ? evals / (elapsed / 1e9) : 0.0);
+        add(names, values, "evaluate.latency.mean", latency.getMean());
+        add(names, values, "evaluate.latency.p50", latency.getPercentile(50));
+        add(names, values, "evaluate.latency.p90", latency.getPercentile(90));
+        add(names, values, "evaluate.latency.p99", latency.getPercentile(99));
+        add(names, values, "express.hit_rate",
+            rate(EXPRESS_HITS, EXPRESS_MISSES));
+        add(names, values, "subtree.hit_rate", 
+            rate(SUBTREE_HITS, SUBTREE_MISSES));
+        add(names, values, "program.hit_rate",
+            rate(PROGRAM_HITS, PROGRAM_MISSES));
+        add(names, values, "fitness.hit_rate",
+            rate(FITNESS_HITS, FITNESS_MISSES));
+        add(names, values, "surrogate.reject_rate",
+            rate(SURROGATE_REJECTS, SURROGATE_ACCEPTS));
+        add(names, values, "surrogate.false_reject_rate",
+            rate(SURROGATE_FALSE, SURROGATE_TRUE));
+
+        String n[] = new String[names.size()];
+        double v[] = new double[n.length];
+        names.copyInto(n);
+        for (int i = 0; i < v.length; i++) {
+            v[i] = ((Double)values.elementAt(i)).doubleValue();
+        }
+        return new MetricsSnapshot(generation, System.currentTimeMillis(),
+                                   n, v);
+    }
+
+    private static void add(Vector names, Vector values, String name,
+                            double v) {
+        names.addElement(name);
+        values.addElement(new Double(v));
+    }
+
+    private static double rate(int hits, int misses) {
+        double h = counters[hits].sum();
+        double m = counters[misses].sum();
+        return (h + m == 0) ? Double.NaN : h / (h + m);
+    }
+
+    /**
+     * End a generation: publish its metrics to every sink and start
+     * counting the next one.  Does nothing while metrics are disabled.
+     *
+     * @return   The metrics of the generation, or null if disabled.
+     */
+    public static synchronized MetricsSnapshot endGeneration() {
+        if (!enabled) {
+            return null;
+        }
+
+        MetricsSnapshot s = snapshot();
+        last = s;
+        generation++;
+        reset();
+
+        for (int i = 0; i < sinks.size(); i++) {
+            try {
+                ((MetricsSink)sinks.elementAt(i)).publish(s);
+            } catch (Exception e) {
+                System.err.println("EXCEPTION (endGeneration) :: "+
+                                   e.toString());
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Return the metrics of the last generation ended.
+     *
+     * @return   The snapshot, or null if no generation has ended.
+     */
+    public static MetricsSnapshot getLastSnapshot() {
+        return last;
+    }
+
+    private static void reset() {
+        for (int i = 0; i < PHASES; i++) {
+            phases[i].reset();
+        }
+        for (int i = 0; i < COUNTERS; i++) {
+            counters[i].reset();
+        }
+        latency.reset();
+        generationStart = System.nanoTime();
+    }
+}
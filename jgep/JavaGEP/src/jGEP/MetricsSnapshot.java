@@ -0,0 +1,103 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Hashtable;
+
+/**
+ * The values of all metrics at one point in time, by name.  Names are
+ * listed in Metrics.  Durations are in nanoseconds.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class MetricsSnapshot {
+    private long      generation;   // generations ended before this one
+    private long      timestamp;    // System.currentTimeMillis()
+    private String    names[];      // in a fixed order
+    private double    values[];
+    private Hashtable index;        // name -> Integer
+
+    /**
+     * Constructor.  The arrays are not copied.
+     *
+     * @param  generation   Generation number.
+     * @param  timestamp    Time the snapshot was taken, in milliseconds.
+     * @param  names        Metric names.
+     * @param  values       Metric values.
+     */
+    public MetricsSnapshot(long generation, long timestamp, 
+                           String names[], double values[]) {
+        this.generation = generation;
+        this.timestamp = timestamp;
+        this.names = names;
+        this.values = values;
+        index = new Hashtable();
+        for (int i = 0; i < names.length; i++) {
+            index.put(names[i], new Integer(i));
+        }
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Return the metric names, in the same order for every snapshot.
+     *
+     * @return   The names.  Not a copy.
+     */
+    public String[] getNames() {
+        return names;
+    }
+
+    /**
+     * Return the value of a metric.
+     *
+     * @param  name   The metric name.
+     * @return        The value, or NaN if there is no such metric.
+     */
+    public double get(String name) {
+        Integer i = (Integer)index.get(name);
+        return (i == null) ? Double.NaN : values[i.intValue()];
+    }
+
+    /**
+     * Return a value by position in getNames().
+     *
+     * @param  i   The position.
+     * @return     The value.
+     */
+    public double get(int i) {
+        return values[i];
+    }
+
+    public String toString() {
+        StringBuffer sb = new StringBuffer();
+        sb.append("generation=" + generation);
+        for (int i = 0; i < names.length; i++) {
+            sb.append(" " + names[i] + "=" + values[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,61 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * A native implementation of Program evaluation.  A backend copies a
+ * DataTable into memory it manages once, and then runs any number of
+ * programs over it without copying the data again.
+ *
+ * The library includes one backend, ForeignBackend, which calls the C
+ * evaluator in cgep/flateval.c through the foreign function and memory
+ * API.  It is built separately (see src/Makefile), since it needs a newer
+ * JDK than the rest of the library; ProgramEvaluator loads it when it is
+ * present.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public interface NativeBackend {
+    /**
+     * Copy a table into native memory.
+     *
+     * @param  data   The table.
+     * @return        A handle for the copy, passed to evaluate().
+     */
+    public Object open(DataTable data) throws Exception;
+
+    /**
+     * Run a program over every row of an opened table.  May be called by
+     * several threads at once with the same handle.
+     *
+     * @param  dataset   Handle returned by open().
+     * @param  p         The program.
+     * @param  out       Receives one output per row.
+     */
+    public void evaluate(Object dataset, Program p, double out[]) 
+        throws Exception;
+
+    /**
+     * Free the native copy of a table.
+     *
+     * @param  dataset   Handle returned by open().
+     */
+    public void close(Object dataset);
+}
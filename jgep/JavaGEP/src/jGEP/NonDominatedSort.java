@@ -0,0 +1,475 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Non-dominated sorting and crowding distance, the ranking steps of
+ * NSGA-II.  Objectives are minimized.  A point dominates another if it is
+ * no worse in every objective and better in at least one; front 0 holds
+ * the points no other point dominates, front 1 those dominated only by
+ * front 0, and so on.
+ *
+ * The textbook fast non-dominated sort compares every pair of points,
+ * which is far too slow for populations of 10^5.  Ranks are computed
+ * instead with the divide-and-conquer algorithm of Jensen, in the form
+ * generalized by Fortin, Grenier and Parizeau (GECCO 2013) to handle
+ * points that share objective values.  Its worst case is
+ * O(N log^(M-1) N) for N points and M objectives, and the two objective
+ * case is a single O(N log N) sweep.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class NonDominatedSort {
+    private double obj[][]; // distinct points, in lexicographic order
+    private int    rank[];  // front of each distinct point
+    private double pivot;   // median chosen by splitRule()
+
+    private NonDominatedSort(double obj[][]) {
+        this.obj = obj;
+        rank = new int[obj.length];
+    }
+
+    /**
+     * Compute the front of every point.  NaN objectives count as
+     * positive infinity.  Equal points share a front.
+     *
+     * @param  objectives   Objective values, indexed [point][objective].
+     *                      Every point must have the same number of
+     *                      objectives.
+     * @return              The front of each point, 0 for the
+     *                      non-dominated points.
+     */
+    public static int[] rank(double objectives[][]) {
+        int n = objectives.length;
+        int front[] = new int[n];
+
+        if (n == 0) {
+            return front;
+        }
+
+        int m = objectives[0].length;
+        final double pts[][] = new double[n][];
+        Integer order[] = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            pts[i] = objectives[i].clone();
+            for (int j = 0; j < m; j++) {
+                if (Double.isNaN(pts[i][j])) {
+                    pts[i][j] = Double.POSITIVE_INFINITY;
+                }
+            }
+            order[i] = new Integer(i);
+        }
+
+        Arrays.sort(order, new Comparator() {
+                public int compare(Object a, Object b) {
+                    return lexCompare(pts[((Integer)a).intValue()],
+                                      pts[((Integer)b).intValue()]);
+                }
+            });
+
+        //
+        // merge equal points, so the recursion only sees distinct ones.
+        //
+        int distinct[] = new int[n]; // point -> index of distinct point
+        double unique[][] = new double[n][];
+        int u = 0;
+        for (int i = 0; i < n; i++) {
+            int p = order[i].intValue();
+            if (u == 0 || lexCompare(unique[u-1], pts[p]) != 0) {
+                unique[u++] = pts[p];
+            }
+            distinct[p] = u - 1;
+        }
+
+        NonDominatedSort s = 
+            new NonDominatedSort(Arrays.copyOf(unique, u));
+        if (m == 1) {
+            for (int i = 0; i < u; i++) {
+                s.rank[i] = i;
+            }
+        } else {
+            int all[] = new int[u];
+            for (int i = 0; i < u; i++) {
+                all[i] = i;
+            }
+            s.helperA(all, m);
+        }
+
+        for (int i = 0; i < n; i++) {
+            front[i] = s.rank[distinct[i]];
+        }
+        return front;
+    }
+
+    /**
+     * Compute the crowding distance of every point within its front: the
+     * sum over objectives of the gap between its neighbours in that
+     * objective, relative to the spread of the front.  The extreme points
+     * of each objective get an infinite distance, so they are always
+     * preferred.
+     *
+     * @param  objectives   Objective values, indexed [point][objective].
+     * @param  front        The front of each point, from rank().
+     * @return              The crowding distance of each point.
+     */
+    public static double[] crowding(final double objectives[][],
+                                    int front[]) {
+        int n = objectives.length;
+        double dist[] = new double[n];
+
+        if (n == 0) {
+            return dist;
+        }
+
+        int m = objectives[0].length;
+        int fronts = 0;
+        for (int i = 0; i < n; i++) {
+            fronts = Math.max(fronts, front[i] + 1);
+        }
+
+        // group the points by front.
+        int start[] = new int[fronts + 1];
+        for (int i = 0; i < n; i++) {
+            start[front[i] + 1]++;
+        }
+        for (int f = 0; f < fronts; f++) {
+            start[f + 1] += start[f];
+        }
+        int fill[] = start.clone();
+        Integer members[] = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            members[fill[front[i]]++] = new Integer(i);
+        }
+
+        for (int f = 0; f < fronts; f++) {
+            int lo = start[f], hi = start[f + 1];
+            for (int j = 0; j < m; j++) {
+                final int k = j;
+                Arrays.sort(members, lo, hi, new Comparator() {
+                        public int compare(Object a, Object b) {
+                            return Double.compare(
+                                objectives[((Integer)a).intValue()][k],
+                                objectives[((Integer)b).intValue()][k]);
+                        }
+                    });
+
+                int first = members[lo].intValue();
+                int last = members[hi - 1].intValue();
+                dist[first] = Double.POSITIVE_INFINITY;
+                dist[last] = Double.POSITIVE_INFINITY;
+                double range = objectives[last][k] - objectives[first][k];
+                if (!(range > 0.0) || Double.isInfinite(range)) {
+                    continue;
+                }
+                for (int i = lo + 1; i < hi - 1; i++) {
+                    int p = members[i].intValue();
+                    dist[p] += (objectives[members[i+1].intValue()][k] -
+                                objectives[members[i-1].intValue()][k])
+                        / range;
+                }
+            }
+        }
+
+        return dist;
+    }
+
+    /**
+     * Lexicographic comparison of two points over all objectives.
+     */
+    private static int lexCompare(double a[], double b[]) {
+        for (int j = 0; j < a.length; j++) {
+            int c = Double.compare(a[j], b[j]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Points are distinct and indexed in lexicographic order, so a
+     * earlier than b is no worse in objective 0, and a dominates b if it
+     * is also no worse in objectives 1 to k-1.
+     */
+    private boolean dominates(int a, int b, int k) {
+        if (a >= b) {
+            return false;
+        }
+        for (int j = 1; j < k; j++) {
+            if (obj[a][j] > obj[b][j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void raise(int p, int dominatorRank) {
+        if (rank[p] <= dominatorRank) {
+            rank[p] = dominatorRank + 1;
+        }
+    }
+
+    /**
+     * Rank the points of s among themselves, on objectives 0 to k-1.
+     * Points outside s that dominate points in s have been accounted
+     * for already.
+     */
+    private void helperA(int s[], int k) {
+        if (s.length < 2) {
+            return;
+        }
+        if (s.length == 2) {
+            if (dominates(s[0], s[1], k)) {
+                raise(s[1], rank[s[0]]);
+            }
+            return;
+        }
+        if (k == 2) {
+            sweepA(s);
+            return;
+        }
+
+        int j = k - 1;
+        double lo = min(s, j), hi = max(s, j);
+        if (lo == hi) {
+            helperA(s, j);
+            return;
+        }
+
+        boolean inclusive = splitRule(s, null, j);
+        double p = pivot;
+        int l[] = part(s, j, p, inclusive, true);
+        int h[] = part(s, j, p, inclusive, false);
+
+        helperA(l, k);
+        helperB(l, h, j);
+        helperA(h, k);
+    }
+
+    /**
+     * Raise the ranks of the points in h dominated by points in l, on
+     * objectives 0 to k-1.  The ranks of l are final.
+     */
+    private void helperB(int l[], int h[], int k) {
+        if (l.length == 0 || h.length == 0) {
+            return;
+        }
+        if (l.length == 1 || h.length == 1) {
+            for (int b = 0; b < h.length; b++) {
+                for (int a = 0; a < l.length; a++) {
+                    if (dominates(l[a], h[b], k)) {
+                        raise(h[b], rank[l[a]]);
+                    }
+                }
+            }
+            return;
+        }
+        if (k == 2) {
+            sweepB(l, h);
+            return;
+        }
+
+        int j = k - 1;
+        double lmin = min(l, j), lmax = max(l, j);
+        double hmin = min(h, j), hmax = max(h, j);
+        if (lmax <= hmin) {
+            // every l is no worse than every h in objective j
+            helperB(l, h, j);
+            return;
+        }
+        if (lmin > hmax) {
+            // no l is as good as any h in objective j
+            return;
+        }
+
+        boolean inclusive = splitRule(l, h, j);
+        double p = pivot;
+        int l1[] = part(l, j, p, inclusive, true);
+        int l2[] = part(l, j, p, inclusive, false);
+        int h1[] = part(h, j, p, inclusive, true);
+        int h2[] = part(h, j, p, inclusive, false);
+
+        helperB(l1, h1, k);
+        helperB(l1, h2, j);
+        helperB(l2, h2, k);
+    }
+
+    /**
+     * Two objective ranking: a sweep in lexicographic order, keeping the
+     * best rank seen for each value of objective 1 as a staircase.
+     */
+    private void sweepA(int s[]) {
+        TreeMap stair = new TreeMap();
+
+        for (int i = 0; i < s.length; i++) {
+            Map.Entry e = stair.floorEntry(new Double(obj[s[i]][1]));
+            if (e != null) {
+                raise(s[i], ((Integer)e.getValue()).intValue());
+            }
+            insert(stair, obj[s[i]][1], rank[s[i]]);
+        }
+    }
+
+    /**
+     * Two objective update of h from l: each point of h sees every point
+     * of l before it in lexicographic order.
+     */
+    private void sweepB(int l[], int h[]) {
+        TreeMap stair = new TreeMap();
+        int a = 0;
+
+        for (int b = 0; b < h.length; b++) {
+            while (a < l.length && l[a] < h[b]) {
+                insert(stair, obj[l[a]][1], rank[l[a]]);
+                a++;
+            }
+            Map.Entry e = stair.floorEntry(new Double(obj[h[b]][1]));
+            if (e != null) {
+                raise(h[b], ((Integer)e.getValue()).intValue());
+            }
+        }
+    }
+
+    /**
+     * Add a point to a staircase mapping objective 1 to the highest rank
+     * of any point with that value or less.  Ranks rise strictly with
+     * the key, so floorEntry() answers "highest rank at or below".
+     */
+    private static void insert(TreeMap stair, double v, int r) {
+        Double key = new Double(v);
+        Map.Entry e = stair.floorEntry(key);
+        if (e != null && ((Integer)e.getValue()).intValue() >= r) {
+            return;
+        }
+        while (true) {
+            Map.Entry next = stair.ceilingEntry(key);
+            if (next == null || ((Integer)next.getValue()).intValue() > r) {
+                break;
+            }
+            stair.remove(next.getKey());
+        }
+        stair.put(key, new Integer(r));
+    }
+
+    /**
+     * Choose the median of objective j over a (and b) as the pivot, and
+     * whether points equal to it go to the lower part.  Equal points
+     * always go to the same part, and the rule that splits more evenly
+     * without leaving a part empty is chosen.
+     *
+     * @return   True if points equal to the pivot go to the lower part.
+     */
+    private boolean splitRule(int a[], int b[], int j) {
+        int n = a.length + ((b == null) ? 0 : b.length);
+        double v[] = new double[n];
+        for (int i = 0; i < a.length; i++) {
+            v[i] = obj[a[i]][j];
+        }
+        for (int i = a.length; i < n; i++) {
+            v[i] = obj[b[i - a.length]][j];
+        }
+        pivot = select(v, n / 2);
+
+        int less = 0, equal = 0;
+        for (int i = 0; i < n; i++) {
+            if (v[i] < pivot) {
+                less++;
+            } else if (v[i] == pivot) {
+                equal++;
+            }
+        }
+
+        if (less == 0) {
+            return true;
+        }
+        if (less + equal == n) {
+            return false;
+        }
+        return Math.abs(less + equal - n / 2) < Math.abs(less - n / 2);
+    }
+
+    /**
+     * The points of s below the pivot in objective j (or above it if
+     * lower is false), in their original order.
+     */
+    private int[] part(int s[], int j, double p, boolean inclusive,
+                       boolean lower) {
+        int out[] = new int[s.length];
+        int n = 0;
+        for (int i = 0; i < s.length; i++) {
+            double v = obj[s[i]][j];
+            boolean below = inclusive ? (v <= p) : (v < p);
+            if (below == lower) {
+                out[n++] = s[i];
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private double min(int s[], int j) {
+        double m = obj[s[0]][j];
+        for (int i = 1; i < s.length; i++) {
+            m = Math.min(m, obj[s[i]][j]);
+        }
+        return m;
+    }
+
+    private double max(int s[], int j) {
+        double m = obj[s[0]][j];
+        for (int i = 1; i < s.length; i++) {
+            m = Math.max(m, obj[s[i]][j]);
+        }
+        return m;
+    }
+
+    /**
+     * The k-th smallest value of v, by quickselect.  v is reordered.
+     */
+    private static double select(double v[], int k) {
+        int lo = 0, hi = v.length - 1;
+
+        while (lo < hi) {
+            double p = v[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (v[i] < p) i++;
+                while (v[j] > p) j--;
+                if (i <= j) {
+                    double t = v[i]; v[i] = v[j]; v[j] = t;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+        return v[k];
+    }
+}
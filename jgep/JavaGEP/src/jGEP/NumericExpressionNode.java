@@ -0,0 +1,40 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Interface for expression nodes that evaluate to a real number.  This
+ * is the fast path used by Fitness: the value comes back as a primitive
+ * double, and failures such as a division by zero are reported as an
+ * undefined (NaN) or infinite result instead of an exception, so no
+ * objects are created while evaluating.
+ *
+ * @author   Matthew Sottile
+ * @version  1.0
+ */
+public interface NumericExpressionNode extends ExpressionNode {
+    /**
+     * Evaluate the expression for the given values.  Never throws.
+     *
+     * @param   values  The key/value pair of values being passed in.
+     * @return          The value of the expression, or NaN if it has no
+     *                  value for these inputs.
+     */
+    public double evaluateDouble(java.util.Hashtable values);
+}
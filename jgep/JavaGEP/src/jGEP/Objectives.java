@@ -0,0 +1,124 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+
+/**
+ * Objective vectors for multi-objective selection (see ParetoSampler and
+ * ParetoArchive).  Every objective is minimized:
+ *
+ *   error     the negated fitness, so higher fitness is better
+ *   size      the number of nodes in the expressed trees, which is what
+ *             evaluation time grows with
+ *   latency   the measured time to evaluate the individual, in
+ *             nanoseconds
+ *
+ * Size is a cheap and exact stand-in for evaluation cost; latency also
+ * captures the cost of expensive functions, but is noisy and needs every
+ * individual to be evaluated on its own.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class Objectives {
+    private Objectives() {
+    }
+
+    /**
+     * Count the nodes of the expressed trees of an individual, over all
+     * genes.  Trees that do not implement SymbolNode count one node per
+     * gene.
+     *
+     * @param  ind   The individual.
+     * @return       The number of nodes.
+     */
+    public static int nodeCount(Individual ind) {
+        ExpressionNode roots[] = ind.express();
+        int n = 0;
+
+        for (int i = 0; i < roots.length; i++) {
+            if (roots[i] instanceof SymbolNode) {
+                n += count((SymbolNode)roots[i]);
+            } else {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static int count(SymbolNode e) {
+        int n = 1;
+        for (int i = 0; i < e.getArity(); i++) {
+            n += count(e.getChild(i));
+        }
+        return n;
+    }
+
+    /**
+     * Build {error, size} objectives from fitness values already
+     * computed, for example by Fitness.evaluateAll().
+     *
+     * @param  fitness       Fitness of each individual.
+     * @param  individuals   The individuals, in the same order.
+     * @return               The objectives, indexed [individual][0..1].
+     */
+    public static double[][] errorAndSize(double fitness[],
+                                          Vector individuals) {
+        double obj[][] = new double[fitness.length][2];
+
+        for (int i = 0; i < fitness.length; i++) {
+            obj[i][0] = -fitness[i];
+            obj[i][1] = nodeCount((Individual)individuals.elementAt(i));
+        }
+        return obj;
+    }
+
+    /**
+     * Evaluate each individual on its own and build {error, size,
+     * latency} objectives.
+     *
+     * @param  individuals   The individuals.
+     * @param  f             The fitness harness.
+     * @param  fitness       Filled with the fitness of each individual,
+     *                       if not null.
+     * @return               The objectives, indexed [individual][0..2].
+     */
+    public static double[][] errorSizeAndLatency(Vector individuals,
+                                                 Fitness f,
+                                                 double fitness[]) {
+        int n = individuals.size();
+        double obj[][] = new double[n][3];
+
+        for (int i = 0; i < n; i++) {
+            Individual ind = (Individual)individuals.elementAt(i);
+            obj[i][1] = nodeCount(ind); // expresses, outside the timing
+
+            long t = System.nanoTime();
+            double v = f.evaluate(ind);
+            obj[i][2] = (double)(System.nanoTime() - t);
+
+            obj[i][0] = -v;
+            if (fitness != null) {
+                fitness[i] = v;
+            }
+        }
+        return obj;
+    }
+}
@@ -0,0 +1,71 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one application of a genetic operator.
+ * Disabled by default in the standard JFR settings, since operators are
+ * applied very often; enable jGEP.Operator to record it.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+@Name("jGEP.Operator")
+@Label("Genetic Operator")
+@Category({"jGEP"})
+@Description("Application of a genetic operator to a chromosome")
+@jdk.jfr.Enabled(false)
+public class OperatorEvent extends Event {
+    @Label("Operator")
+    String operator;
+
+    @Label("Chromosome Length")
+    int length;
+
+    /**
+     * Start timing an operator.
+     *
+     * @param  operator   Name of the operator.
+     * @return            The event.
+     */
+    static OperatorEvent start(String operator) {
+        OperatorEvent e = new OperatorEvent();
+        e.operator = operator;
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Commit the event if it is being recorded.
+     *
+     * @param  length   Length of the chromosome operated on.
+     */
+    void finish(int length) {
+        if (shouldCommit()) {
+            this.length = length;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,599 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An ordered list of genetic operator stages applied to a whole
+ * generation at once.  Each stage is a GeneticOperators operation with a
+ * probability: mutation, transposition, Dc and RNC operators are applied
+ * to each individual with that probability, and recombination to each
+ * individual with that probability, paired with another participant.
+ *
+ * A stage first draws its participants from a single PRNG, skipping
+ * between them with geometric distances, and shuffles and pairs the
+ * recombination participants so that no individual is in two pairs.
+ * The stage then runs over disjoint ranges of participants, in parallel
+ * if a pool is given.  Each range has its own PRNG seeded from the
+ * pipeline seed, the generation, the stage and the range, so the result
+ * does not depend on the number of threads.
+ *
+ * The stages work on a buffer of chromosome strings, and of random
+ * constant arrays if the genome has them; gene transposition and the
+ * recombinations move the constants of a gene along with it.
+ * Individuals are only changed once all stages are done, and an
+ * individual that occurs more than once in the generation (selection
+ * can pick it twice) is replicated before it is changed, so that each
+ * occurrence evolves on its own.
+ *
+ * With a LineageTracer set, the pipeline notes which stages changed each
+ * individual and records a sample of the offspring.  Their fitness is
+ * not known until they have been evaluated, so each generation's records
+ * are completed and written at the start of the next apply(), or when
+ * the tracer is replaced.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class OperatorPipeline {
+    public static final int MUTATION           = 0;
+    public static final int IS_TRANSPOSITION   = 1;
+    public static final int RIS_TRANSPOSITION  = 2;
+    public static final int GENE_TRANSPOSITION = 3;
+    public static final int ONE_POINT          = 4;
+    public static final int TWO_POINT          = 5;
+    public static final int GENE_RECOMBINATION = 6;
+    public static final int DC_MUTATION        = 7;
+    public static final int DC_TRANSPOSITION   = 8;
+    public static final int RNC_MUTATION       = 9;
+
+    private static final int CHUNK = 256; // participants per task
+
+    private static final String stageNames[] = {
+        "mutation", "is_transposition", "ris_transposition",
+        "gene_transposition", "one_point", "two_point",
+        "gene_recombination", "dc_mutation", "dc_transposition",
+        "rnc_mutation"
+    };
+
+    private Genome        g;       // genome of the individuals
+    private ForkJoinPool  pool;    // threads, or null to run sequentially
+    private long          seed;    // seed of the per-range PRNGs
+    private Random        r;       // draws the participants
+    private long          batch;   // generations processed so far
+    private Vector        stages;  // Stage objects, in order
+    private LineageTracer tracer;  // or null
+    private Vector        pending; // Traces of the last generation
+
+    /**
+     * Constructor for an empty pipeline.
+     *
+     * @param  g      The genome of the individuals.
+     * @param  seed   Seed for all random choices of the pipeline.
+     * @param  pool   Pool of threads to run stages on, or null.
+     */
+    public OperatorPipeline(Genome g, long seed, ForkJoinPool pool) {
+        this.g = g;
+        this.seed = seed;
+        this.pool = pool;
+        r = new Random(seed);
+        batch = 0;
+        stages = new Vector();
+        pending = new Vector();
+    }
+
+    /**
+     * Build the usual GEP pipeline from the probabilities held by a set
+     * of operators: mutation, IS, RIS and gene transposition, the Dc
+     * operators and constant mutation if the genome has random
+     * constants, then one-point, two-point and gene recombination.
+     * Stages with probability zero are left out.
+     *
+     * @param  ops    The operators, for their genome and probabilities.
+     * @param  seed   Seed for all random choices of the pipeline.
+     * @param  pool   Pool of threads to run stages on, or null.
+     * @return        The pipeline.
+     */
+    public static OperatorPipeline standard(GeneticOperators ops, long seed,
+                                            ForkJoinPool pool) {
+        OperatorPipeline p = new OperatorPipeline(ops.getGenome(), seed, 
+                                                  pool);
+        p.addStage(MUTATION, ops.getPMutate());
+        p.addStage(IS_TRANSPOSITION, ops.getPISTrans());
+        p.addStage(RIS_TRANSPOSITION, ops.getPRISTrans());
+        p.addStage(GENE_TRANSPOSITION, ops.getPGTrans());
+        if (ops.getGenome().hasConstants()) {
+            p.addStage(DC_MUTATION, ops.getPDcMutate());
+            p.addStage(DC_TRANSPOSITION, ops.getPDcTrans());
+            p.addStage(RNC_MUTATION, ops.getPRncMutate());
+        }
+        p.addStage(ONE_POINT, ops.getP1Point());
+        p.addStage(TWO_POINT, ops.getP2Point());
+        p.addStage(GENE_RECOMBINATION, ops.getPGRecomb());
+        return p;
+    }
+
+    /**
+     * Append a stage.  Stages with probability zero or less are ignored,
+     * as is RNC_MUTATION if the genome has no random constants.
+     *
+     * @param  kind   The operator, MUTATION to RNC_MUTATION.
+     * @param  p      Probability that an individual takes part.
+     */
+    public void addStage(int kind, double p) {
+        if (p > 0.0 && (kind != RNC_MUTATION || g.hasConstants())) {
+            stages.addElement(new Stage(kind, p));
+        }
+    }
+
+    public int getNumStages() {
+        return stages.size();
+    }
+
+    /**
+     * Return the name of a stage kind.
+     *
+     * @param  kind   MUTATION to RNC_MUTATION.
+     * @return        The name, such as "mutation".
+     */
+    public static String getStageName(int kind) {
+        return stageNames[kind];
+    }
+
+    /**
+     * Record the lineage of a sample of the offspring.  The records of
+     * the last generation are completed and written to the old tracer
+     * first, so set the tracer to null before closing it.
+     *
+     * @param  t   The tracer, or null to stop tracing.
+     */
+    public void setTracer(LineageTracer t) {
+        resolve();
+        tracer = t;
+    }
+
+    public LineageTracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Run every stage over a generation.
+     *
+     * @param  individuals   The generation, changed in place.
+     * @param  first         Index of the first individual the operators
+     *                       may change, for example 1 to keep the elite
+     *                       at index 0 as it is.
+     * @return               Number of individuals changed.
+     */
+    public int apply(Vector individuals, int first) {
+        int n = individuals.size();
+        String orig[] = new String[n];
+        String buf[] = new String[n];
+        double corig[][][] = null;  // constants, if the genome has them
+        double cbuf[][][] = null;
+        if (g.hasConstants()) {
+            corig = new double[n][][];
+            cbuf = new double[n][][];
+        }
+
+        for (int i = 0; i < n; i++) {
+            Individual ind = (Individual)individuals.elementAt(i);
+            orig[i] = ind.getChromosome();
+            buf[i] = orig[i];
+            if (cbuf != null) {
+                corig[i] = ind.getConstants();
+                cbuf[i] = corig[i];
+            }
+        }
+
+        int kinds[] = null;    // stages that changed each individual
+        int partner[] = null;  // its first recombination partner
+        if (tracer != null) {
+            resolve();
+            kinds = new int[n];
+            partner = new int[n];
+            Arrays.fill(partner, -1);
+        }
+
+        for (int k = 0; k < stages.size(); k++) {
+            Stage s = (Stage)stages.elementAt(k);
+            int picked[] = participants(first, n, s.p);
+            int units = picked.length;
+
+            if (s.isRecombination()) {
+                shuffle(picked);
+                units = picked.length / 2;
+            }
+            run(s, picked, units, buf, cbuf, mix(seed, batch, k), kinds,
+                partner);
+        }
+        batch++;
+
+        if (kinds == null) {
+            return writeBack(individuals, orig, buf, corig, cbuf);
+        }
+
+        long ids[] = new long[n];
+        double fitness[] = new double[n];
+        for (int i = 0; i < n; i++) {
+            Individual ind = (Individual)individuals.elementAt(i);
+            ids[i] = ind.getId();
+            fitness[i] = ind.getLastFitness();
+        }
+        int changed = writeBack(individuals, orig, buf, corig, cbuf);
+        for (int i = first; i < n; i++) {
+            if (buf[i] == orig[i] && (cbuf == null || cbuf[i] == corig[i])) {
+                continue;
+            }
+            Individual child = (Individual)individuals.elementAt(i);
+            if (tracer.isSampled(child.getId())) {
+                pending.addElement(new Trace(child, batch - 1, ids[i],
+                    (partner[i] < 0) ? -1 : ids[partner[i]], kinds[i],
+                    orig[i], buf[i], fitness[i]));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Complete the records of the last generation's offspring with
+     * their fitness, now that they have been evaluated, and write them.
+     * An offspring changed since has no fitness to report.
+     */
+    private void resolve() {
+        for (int i = 0; i < pending.size(); i++) {
+            Trace t = (Trace)pending.elementAt(i);
+            double f = (t.child.getId() == t.id) 
+                ? t.child.getLastFitness() : Double.NaN;
+            tracer.offspring(t.generation, t.id, t.parent, t.partner,
+                             t.operators, t.first, t.last, t.parentFitness,
+                             f);
+        }
+        pending.removeAllElements();
+    }
+
+    /**
+     * Run a stage over its participants, in ranges of CHUNK.
+     */
+    private void run(final Stage s, final int picked[], int units,
+                     final String buf[], double cbuf[][][],
+                     final long stageSeed, int kinds[], int partner[]) {
+        int chunks = (units + CHUNK - 1) / CHUNK;
+        final Range tasks[] = new Range[chunks];
+
+        for (int c = 0; c < chunks; c++) {
+            tasks[c] = new Range(s, picked, buf, cbuf, c*CHUNK,
+                                 Math.min(units, (c+1)*CHUNK),
+                                 mix(stageSeed, c, 0), kinds, partner);
+        }
+
+        if (pool == null || chunks < 2) {
+            for (int c = 0; c < chunks; c++) {
+                tasks[c].compute();
+            }
+        } else {
+            pool.invoke(new RecursiveAction() {
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+        }
+    }
+
+    /**
+     * Indices from first to n-1, each included with probability p.
+     * Geometric skips between them keep the draws proportional to the
+     * number of participants.
+     */
+    private int[] participants(int first, int n, double p) {
+        int out[] = new int[Math.max(n - first, 0)];
+        int count = 0;
+        double logq = Math.log1p(-Math.min(p, 1.0));
+        long i = first;
+
+        while (true) {
+            if (logq != Double.NEGATIVE_INFINITY) {
+                i += (long)Math.min(Math.floor(Math.log(1.0 - r.nextDouble())
+                                               / logq), (double)n);
+            }
+            if (i >= n) {
+                break;
+            }
+            out[count++] = (int)i;
+            i++;
+        }
+
+        int p2[] = new int[count];
+        System.arraycopy(out, 0, p2, 0, count);
+        return p2;
+    }
+
+    private void shuffle(int a[]) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /**
+     * Give the changed chromosomes and constants to their individuals.
+     */
+    private static int writeBack(Vector individuals, String orig[],
+                                 String buf[], double corig[][][],
+                                 double cbuf[][][]) {
+        IdentityHashMap occurrences = new IdentityHashMap();
+        for (int i = 0; i < buf.length; i++) {
+            Object ind = individuals.elementAt(i);
+            Integer c = (Integer)occurrences.get(ind);
+            occurrences.put(ind, new Integer((c == null) ? 1 
+                                             : c.intValue() + 1));
+        }
+
+        int changed = 0;
+        for (int i = 0; i < buf.length; i++) {
+            boolean rnc = (cbuf != null && cbuf[i] != corig[i]);
+            if (buf[i] == orig[i] && !rnc) {
+                continue;
+            }
+            Individual ind = (Individual)individuals.elementAt(i);
+            int c = ((Integer)occurrences.get(ind)).intValue();
+            if (c > 1) {
+                occurrences.put(ind, new Integer(c - 1));
+                ind = ind.replicate();
+                individuals.setElementAt(ind, i);
+            }
+            if (buf[i] != orig[i]) {
+                ind.setChromosome(buf[i]);
+            }
+            if (rnc) {
+                ind.setConstants(cbuf[i]);
+            }
+            changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * Mix several values into a PRNG seed (the SplitMix64 finalizer).
+     */
+    private static long mix(long a, long b, long c) {
+        long z = a;
+        z = finish(z + 0x9E3779B97F4A7C15L * (b + 1));
+        z = finish(z + 0x9E3779B97F4A7C15L * (c + 1));
+        return z;
+    }
+
+    private static long finish(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * A sampled offspring, waiting for its fitness.
+     */
+    private static class Trace {
+        Individual child;
+        long       id;
+        long       generation;
+        long       parent, partner;
+        int        operators;
+        int        first, last;   // span of positions changed
+        double     parentFitness;
+
+        Trace(Individual child, long generation, long parent, long partner,
+              int operators, String before, String after,
+              double parentFitness) {
+            this.child = child;
+            id = child.getId();
+            this.generation = generation;
+            this.parent = parent;
+            this.partner = partner;
+            this.operators = operators;
+            this.parentFitness = parentFitness;
+
+            int n = Math.min(before.length(), after.length());
+            first = 0;
+            while (first < n && before.charAt(first) == after.charAt(first)) {
+                first++;
+            }
+            last = n - 1;
+            while (last >= first && 
+                   before.charAt(last) == after.charAt(last)) {
+                last--;
+            }
+            if (first > last) {
+                first = last = -1;
+            }
+        }
+    }
+
+    private static class Stage {
+        int    kind; // operator
+        double p;    // probability of taking part
+
+        Stage(int kind, double p) {
+            this.kind = kind;
+            this.p = p;
+        }
+
+        boolean isRecombination() {
+            return kind == ONE_POINT || kind == TWO_POINT ||
+                kind == GENE_RECOMBINATION;
+        }
+    }
+
+    /**
+     * Task applying a stage to a range of participants (or of pairs of
+     * participants, for recombination).  Ranges touch disjoint entries
+     * of the buffer.
+     */
+    private class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Stage  s;
+        private int    picked[];
+        private String buf[];
+        private double cbuf[][][]; // null without random constants
+        private int    lo, hi;
+        private long   seed;
+        private int    kinds[];    // null unless tracing
+        private int    partner[];
+
+        Range(Stage s, int picked[], String buf[], double cbuf[][][],
+              int lo, int hi, long seed, int kinds[], int partner[]) {
+            this.s = s;
+            this.picked = picked;
+            this.buf = buf;
+            this.cbuf = cbuf;
+            this.lo = lo;
+            this.hi = hi;
+            this.seed = seed;
+            this.kinds = kinds;
+            this.partner = partner;
+        }
+
+        protected void compute() {
+            GeneticOperators ops = new GeneticOperators(g, new Random(seed));
+
+            for (int u = lo; u < hi; u++) {
+                if (s.isRecombination()) {
+                    int a = picked[2*u], b = picked[2*u + 1];
+                    String pair[] = { buf[a], buf[b] };
+                    double ca[][] = constants(a), cb[][] = constants(b);
+                    pair = recombine(ops, a, b, pair);
+                    if (kinds != null) {
+                        note(a, b, pair[0], ca);
+                        note(b, a, pair[1], cb);
+                    }
+                    buf[a] = pair[0];
+                    buf[b] = pair[1];
+                    continue;
+                }
+
+                int i = picked[u];
+                String before = buf[i];
+                double cbefore[][] = constants(i);
+                switch (s.kind) {
+                case MUTATION:
+                    buf[i] = ops.mutate(buf[i], 1);
+                    break;
+                case IS_TRANSPOSITION:
+                    buf[i] = ops.IStranspose(buf[i]);
+                    break;
+                case RIS_TRANSPOSITION:
+                    buf[i] = ops.RIStranspose(buf[i]);
+                    break;
+                case GENE_TRANSPOSITION:
+                    buf[i] = geneTranspose(ops, i);
+                    break;
+                case DC_MUTATION:
+                    buf[i] = ops.DcMutate(buf[i], 1);
+                    break;
+                case DC_TRANSPOSITION:
+                    buf[i] = ops.DcTranspose(buf[i]);
+                    break;
+                case RNC_MUTATION:
+                    cbuf[i] = ops.mutateConstants(cbuf[i], 1);
+                    break;
+                default:
+                    break;
+                }
+                if (kinds != null && (!buf[i].equals(before) ||
+                                      constants(i) != cbefore)) {
+                    kinds[i] |= 1 << s.kind;
+                }
+            }
+        }
+
+        private double[][] constants(int i) {
+            return (cbuf == null) ? null : cbuf[i];
+        }
+
+        /**
+         * Gene transposition of the individual at index i, moving its
+         * constants along with the genes.
+         */
+        private String geneTranspose(GeneticOperators ops, int i) {
+            if (cbuf == null) {
+                return ops.GeneTranspose(buf[i]);
+            }
+            double c[][] = cbuf[i].clone();
+            String out = ops.GeneTranspose(buf[i], c);
+            if (!Arrays.equals(c, cbuf[i])) {
+                cbuf[i] = c;
+            }
+            return out;
+        }
+
+        /**
+         * Recombination of the individuals at indices a and b, moving
+         * their constants along with the genes that change hands.
+         */
+        private String[] recombine(GeneticOperators ops, int a, int b,
+                                   String pair[]) {
+            double c[][][] = null;
+            if (cbuf != null) {
+                c = new double[][][] { cbuf[a].clone(), cbuf[b].clone() };
+            }
+            switch (s.kind) {
+            case ONE_POINT:
+                pair = ops.OnePointRecombination(pair, c);
+                break;
+            case TWO_POINT:
+                pair = ops.TwoPointRecombination(pair, c);
+                break;
+            default:
+                pair = ops.GeneRecombination(pair, c);
+            }
+            if (c == null) {
+                return pair;
+            }
+            if (!Arrays.equals(c[0], cbuf[a])) {
+                cbuf[a] = c[0];
+            }
+            if (!Arrays.equals(c[1], cbuf[b])) {
+                cbuf[b] = c[1];
+            }
+            return pair;
+        }
+
+        /**
+         * Note a change made by recombination with the individual at
+         * index other.
+         */
+        private void note(int i, int other, String after,
+                          double cbefore[][]) {
+            if (!after.equals(buf[i]) || constants(i) != cbefore) {
+                kinds[i] |= 1 << s.kind;
+                if (partner[i] < 0) {
+                    partner[i] = other;
+                }
+            }
+        }
+    }
+}
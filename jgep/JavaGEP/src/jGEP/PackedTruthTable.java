@@ -0,0 +1,189 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Boolean test cases packed 64 to a word.  Each terminal has a column of
+ * longs in which bit (i % 64) of word (i / 64) is its value in test case
+ * i, and the expected outputs are packed the same way.  Bits past the
+ * last test case are zero.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class PackedTruthTable {
+    private Genome genome;     // gives the terminal order of the columns
+    private long   columns[][]; // [terminal][word]
+    private long   expected[];  // [word]
+    private int    rows;        // number of test cases
+
+    /**
+     * Constructor.  Creates a table of the given number of test cases,
+     * with every input and expected output false.
+     *
+     * @param  g      The genome whose terminals are the inputs.
+     * @param  rows   Number of test cases.
+     */
+    public PackedTruthTable(Genome g, int rows) {
+        int words = (rows + 63) >>> 6;
+
+        genome = g;
+        this.rows = rows;
+        columns = new long[g.getNumTerminals()][words];
+        expected = new long[words];
+    }
+
+    /**
+     * Create the complete truth table over the terminals of a genome:
+     * 2^n test cases for n terminals, where in test case i terminal k has
+     * the value of bit k of i.  Expected outputs are all false; fill them
+     * in with setExpected().
+     *
+     * @param  g   The genome whose terminals are the inputs.
+     * @return     The table.
+     */
+    public static PackedTruthTable complete(Genome g) {
+        int n = g.getNumTerminals();
+        PackedTruthTable t = new PackedTruthTable(g, 1 << n);
+
+        for (int i = 0; i < t.rows; i++) {
+            for (int k = 0; k < n; k++) {
+                if (((i >>> k) & 1) != 0) {
+                    t.columns[k][i >>> 6] |= 1L << (i & 63);
+                }
+            }
+        }
+
+        return t;
+    }
+
+    /**
+     * Pack a vector of test cases.  Each element is a hashtable mapping
+     * the terminal names to Boolean values, with the output under the
+     * key `Expected'.  Missing values are taken as false.
+     *
+     * @param  g      The genome whose terminals are the inputs.
+     * @param  tests  Vector of hashtables.
+     * @return        The table.
+     */
+    public static PackedTruthTable fromRows(Genome g, Vector tests) {
+        PackedTruthTable t = new PackedTruthTable(g, tests.size());
+
+        for (int i = 0; i < tests.size(); i++) {
+            Hashtable vals = (Hashtable)tests.elementAt(i);
+            for (int k = 0; k < g.getNumTerminals(); k++) {
+                String key = g.getTerminalName(k);
+                Boolean b = (Boolean)vals.get(key);
+                t.set(i, k, b != null && b.booleanValue());
+            }
+            Boolean e = (Boolean)vals.get("Expected");
+            t.setExpected(i, e != null && e.booleanValue());
+        }
+
+        return t;
+    }
+
+    /**
+     * Set an input value.
+     *
+     * @param  row    The test case.
+     * @param  term   Index of the terminal.
+     * @param  v      The value.
+     */
+    public void set(int row, int term, boolean v) {
+        if (v) {
+            columns[term][row >>> 6] |= 1L << (row & 63);
+        } else {
+            columns[term][row >>> 6] &= ~(1L << (row & 63));
+        }
+    }
+
+    /**
+     * Set an expected output.
+     *
+     * @param  row    The test case.
+     * @param  v      The expected value.
+     */
+    public void setExpected(int row, boolean v) {
+        if (v) {
+            expected[row >>> 6] |= 1L << (row & 63);
+        } else {
+            expected[row >>> 6] &= ~(1L << (row & 63));
+        }
+    }
+
+    /**
+     * Return an input value.
+     *
+     * @param  row    The test case.
+     * @param  term   Index of the terminal.
+     * @return        The value.
+     */
+    public boolean get(int row, int term) {
+        return (columns[term][row >>> 6] & (1L << (row & 63))) != 0;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getWords() {
+        return expected.length;
+    }
+
+    public Genome getGenome() {
+        return genome;
+    }
+
+    /**
+     * Return the packed column of a terminal.  Not a copy.
+     *
+     * @param  term   Index of the terminal.
+     * @return        The column.
+     */
+    public long[] getColumn(int term) {
+        return columns[term];
+    }
+
+    /**
+     * Return the packed expected outputs.  Not a copy.
+     *
+     * @return   The expected column.
+     */
+    public long[] getExpected() {
+        return expected;
+    }
+
+    /**
+     * Mask of the bits of a word that hold test cases.  All ones except
+     * for a partly filled last word.
+     *
+     * @param  w   The word index.
+     * @return     The mask.
+     */
+    public long mask(int w) {
+        if (w < expected.length - 1 || (rows & 63) == 0) {
+            return -1L;
+        }
+        return (1L << (rows & 63)) - 1L;
+    }
+}
@@ -0,0 +1,124 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fitness harness that evaluates each individual on several threads.  The
+ * test cases are split into blocks, every block is scored into its own
+ * metric accumulator, and the accumulators are merged pairwise in a fixed
+ * order.  No thread ever writes to a shared sum, and the fitness is the
+ * same no matter how the blocks were scheduled.
+ *
+ * Evaluation against a cutoff is left to the sequential implementation
+ * inherited from Fitness, since stopping early depends on the order in
+ * which test cases are seen.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class ParallelFitness extends Fitness {
+    private ForkJoinPool pool;      // threads to evaluate on
+    private int          blockSize; // test cases per task
+
+    /**
+     * Constructor.
+     *
+     * @param  tests      Vector of test value sets, as for Fitness.
+     * @param  max        Maximum possible fitness value.
+     * @param  blockSize  Number of test cases scored by a single task.
+     * @param  pool       Pool of threads to evaluate on.
+     */
+    public ParallelFitness(Vector tests, double max, int blockSize,
+                           ForkJoinPool pool) {
+        super(tests, max);
+        this.blockSize = (blockSize < 1) ? 1 : blockSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Evaluate an individual over every test case in parallel.
+     *
+     * @param  ind   The individual to evaluate.
+     * @return       The fitness of the individual.
+     */
+    protected double score(Individual ind) {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        try {
+            ExpressionNode roots[] = ind.express();
+            Rows r = getRows(ind, roots);
+            MetricAccumulator acc = 
+                (MetricAccumulator)pool.invoke(new Block(roots, r, 0, 
+                                                         testValues.size()));
+
+            return fitness(acc);
+        } finally {
+            Metrics.endEvaluation(t, 1);
+        }
+    }
+
+    /**
+     * Task scoring a contiguous range of test cases.  Ranges larger than
+     * the block size are split in half and the halves merged left to
+     * right.  A null result means the individual failed under
+     * PENALTY_PER_INDIVIDUAL.
+     */
+    private class Block extends RecursiveTask {
+        private static final long serialVersionUID = 1L;
+
+        private ExpressionNode roots[];
+        private Rows           rows;
+        private int            lo, hi;
+
+        Block(ExpressionNode roots[], Rows rows, int lo, int hi) {
+            this.roots = roots;
+            this.rows = rows;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected Object compute() {
+            if (hi - lo <= blockSize) {
+                MetricAccumulator acc = getMetric().newAccumulator();
+                for (int i = lo; i < hi; i++) {
+                    if (!accumulate(roots, rows, i, acc)) {
+                        return null;
+                    }
+                }
+                return acc;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            Block left = new Block(roots, rows, lo, mid);
+            Block right = new Block(roots, rows, mid, hi);
+            right.fork();
+
+            MetricAccumulator acc = (MetricAccumulator)left.compute();
+            MetricAccumulator racc = (MetricAccumulator)right.join();
+            if (acc == null || racc == null) {
+                return null;
+            }
+            acc.merge(racc);
+            return acc;
+        }
+    }
+}
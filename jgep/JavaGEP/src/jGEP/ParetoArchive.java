@@ -0,0 +1,154 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+
+/**
+ * Archive of the non-dominated individuals seen so far, with their
+ * objectives (see Objectives).  An individual enters the archive only if
+ * no member dominates or equals it, and members it dominates leave.  When
+ * the archive is over capacity, the member in the most crowded region is
+ * dropped, so the archive keeps a spread-out sample of the trade-off
+ * front, such as the most accurate model of every size.
+ *
+ * Individuals are replicated on entry, since the population changes its
+ * individuals in place.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class ParetoArchive {
+    private int    capacity; // maximum number of members
+    private Vector members;  // replicated individuals
+    private Vector points;   // double[] objectives of each member
+
+    /**
+     * Constructor.
+     *
+     * @param  capacity   Maximum number of members.
+     */
+    public ParetoArchive(int capacity) {
+        this.capacity = capacity;
+        members = new Vector();
+        points = new Vector();
+    }
+
+    /**
+     * Offer the front 0 individuals of a population to the archive.  The
+     * population is ranked first, so only its non-dominated individuals
+     * are compared with the archive.
+     *
+     * @param  individuals   The individuals.
+     * @param  obj           Their objectives, in order.
+     * @return               The number of individuals that entered.
+     */
+    public synchronized int update(Vector individuals, double obj[][]) {
+        int front[] = NonDominatedSort.rank(obj);
+        int added = 0;
+
+        for (int i = 0; i < front.length; i++) {
+            if (front[i] == 0 &&
+                add((Individual)individuals.elementAt(i), obj[i])) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Offer one individual to the archive.
+     *
+     * @param  ind   The individual.
+     * @param  obj   Its objectives.
+     * @return       True if it entered the archive.
+     */
+    public synchronized boolean add(Individual ind, double obj[]) {
+        for (int i = 0; i < points.size(); i++) {
+            if (noWorse((double[])points.elementAt(i), obj)) {
+                return false;
+            }
+        }
+
+        for (int i = points.size() - 1; i >= 0; i--) {
+            if (noWorse(obj, (double[])points.elementAt(i))) {
+                points.removeElementAt(i);
+                members.removeElementAt(i);
+            }
+        }
+
+        members.addElement(ind.replicate());
+        points.addElement(obj.clone());
+
+        boolean kept = true;
+        if (members.size() > capacity) {
+            double d[] = NonDominatedSort.crowding(getObjectives(),
+                                                   new int[members.size()]);
+            int worst = 0;
+            for (int i = 1; i < d.length; i++) {
+                if (d[i] < d[worst]) {
+                    worst = i;
+                }
+            }
+            kept = (worst != members.size() - 1);
+            points.removeElementAt(worst);
+            members.removeElementAt(worst);
+        }
+
+        return kept;
+    }
+
+    /**
+     * Return the members of the archive.
+     *
+     * @return   A new vector holding the members.
+     */
+    public synchronized Vector getIndividuals() {
+        return (Vector)members.clone();
+    }
+
+    /**
+     * Return the objectives of the members, in the order of
+     * getIndividuals().
+     *
+     * @return   The objectives, indexed [member][objective].
+     */
+    public synchronized double[][] getObjectives() {
+        double o[][] = new double[points.size()][];
+        points.copyInto(o);
+        return o;
+    }
+
+    public synchronized int size() {
+        return members.size();
+    }
+
+    /**
+     * Whether a is no worse than b in every objective; with a and b
+     * distinct, a then dominates b.
+     */
+    private static boolean noWorse(double a[], double b[]) {
+        for (int j = 0; j < a.length; j++) {
+            if (!(a[j] <= b[j])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,125 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Random;
+
+/**
+ * NSGA-II selection: crowded binary tournaments over a vector of
+ * objectives per individual, all minimized (see Objectives).  Of two
+ * individuals drawn at random, the one on the better front wins, and on
+ * the same front the one in the less crowded region wins, which keeps the
+ * population spread along the trade-off between, say, error and size.
+ *
+ * The objectives of the current population are given with
+ * setObjectives() before Population.select() calls sample().  Without
+ * them, the sampler falls back to binary tournaments on the weights.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class ParetoSampler implements Sampler {
+    private Random   r;            // PRNG
+    private double   objectives[][]; // objectives of the population
+    private int      front[];      // front of each individual
+    private double   crowding[];   // crowding distance of each individual
+
+    /**
+     * Constructor.
+     *
+     * @param  r   PRNG object.
+     */
+    public ParetoSampler(Random r) {
+        this.r = r;
+    }
+
+    /**
+     * Set the objectives of the individuals about to be sampled, and
+     * rank them.
+     *
+     * @param  obj   Objective values, indexed [individual][objective], in
+     *               the order of the population.  Smaller is better.
+     */
+    public void setObjectives(double obj[][]) {
+        objectives = obj;
+        front = NonDominatedSort.rank(obj);
+        crowding = NonDominatedSort.crowding(obj, front);
+    }
+
+    /**
+     * Return the front of each individual from the last call to
+     * setObjectives().
+     *
+     * @return   The fronts, 0 for non-dominated individuals.
+     */
+    public int[] getFronts() {
+        return front;
+    }
+
+    /**
+     * Return the crowding distance of each individual from the last call
+     * to setObjectives().
+     *
+     * @return   The crowding distances.
+     */
+    public double[] getCrowding() {
+        return crowding;
+    }
+
+    /**
+     * Sample by crowded tournaments.  The weights are only used when no
+     * objectives of the right length have been set.
+     *
+     * @param  weights  Array of individual weights
+     * @return          Array of indices indicating sampled individuals.
+     */
+    public int[] sample(double weights[]) {
+        SelectionEvent e = SelectionEvent.start();
+        int n = weights.length;
+        int selected[] = new int[n];
+        boolean ranked = (objectives != null && objectives.length == n);
+
+        for (int i = 0; i < n; i++) {
+            int a = r.nextInt(n);
+            int b = r.nextInt(n);
+
+            if (ranked) {
+                selected[i] = better(a, b) ? a : b;
+            } else {
+                selected[i] = (weights[a] >= weights[b]) ? a : b;
+            }
+        }
+
+        e.finish(this, n, n);
+        return selected;
+    }
+
+    /**
+     * The crowded comparison of NSGA-II.
+     */
+    private boolean better(int a, int b) {
+        if (front[a] != front[b]) {
+            return front[a] < front[b];
+        }
+        if (crowding[a] != crowding[b]) {
+            return crowding[a] > crowding[b];
+        }
+        return r.nextBoolean();
+    }
+}
@@ -18,6 +18,10 @@
  */
 package jGEP;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.PrintWriter;
 import java.util.Vector;
 
 /**
@@ -32,6 +36,8 @@ public class Population {
     private Vector  individuals; // Vector of individuals in the population
     private Genome  genome;      // The genome that makes up each individual
     private int     size;        // Size of the population
+    private long    generation;  // Generations ended so far
+    private GenerationEvent event; // JFR event for this generation
 
     /**
      * Constructor.
@@ -47,6 +53,102 @@ public class Population {
         this.size = size;
         individuals = new Vector();
         this.genome = genome;
+        generation = 0;
+        beginGeneration();
+    }
+
+    /**
+     * Mark the start of a generation.  Generations otherwise start when
+     * the previous one ends, or when the population is created.
+     */
+    public void beginGeneration() {
+        event = new GenerationEvent();
+        event.begin();
+    }
+
+    /**
+     * Mark the end of a generation: record it for the flight recorder,
+     * publish its metrics (see Metrics.endGeneration()) and start the
+     * next one.
+     *
+     * @param  bestFitness   Fitness of the best individual.
+     */
+    public void endGeneration(double bestFitness) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.generation = generation;
+            event.populationSize = individuals.size();
+            event.bestFitness = bestFitness;
+            event.commit();
+        }
+        generation++;
+        Metrics.endGeneration();
+        beginGeneration();
+    }
+
+    /**
+     * Return the number of generations ended so far.
+     *
+     * @return  The generation number.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Write the chromosomes of the population to a file, one per line,
+     * after a comment line giving the generation number.
+     *
+     * @param  filename   The checkpoint file.
+     */
+    public void writeCheckpoint(String filename) throws Exception {
+        CheckpointEvent e = new CheckpointEvent();
+        e.begin();
+
+        PrintWriter out = new PrintWriter(new FileWriter(filename));
+        long bytes = 0;
+        String line = "# jGEP checkpoint, generation "+generation;
+        out.println(line);
+        bytes += line.length() + 1;
+        for (int i = 0; i < individuals.size(); i++) {
+            line = ((Individual)individuals.elementAt(i)).getChromosome();
+            out.println(line);
+            bytes += line.length() + 1;
+        }
+        out.close();
+        if (out.checkError()) {
+            throw new Exception("Error writing checkpoint "+filename);
+        }
+
+        e.end();
+        if (e.shouldCommit()) {
+            e.file = filename;
+            e.individuals = individuals.size();
+            e.bytes = bytes;
+            e.commit();
+        }
+    }
+
+    /**
+     * Read the chromosomes from a checkpoint written by
+     * writeCheckpoint().
+     *
+     * @param  filename   The checkpoint file.
+     * @return            Vector of chromosome strings.
+     */
+    public static Vector readCheckpoint(String filename) throws Exception {
+        Vector v = new Vector();
+        BufferedReader in = new BufferedReader(new FileReader(filename));
+        String line;
+
+        while ((line = in.readLine()) != null) {
+            if (line.length() > 0 && !line.startsWith("#")) {
+                v.addElement(line);
+            }
+        }
+        in.close();
+
+        return v;
     }
 
     /**
@@ -86,6 +188,7 @@ public class Population {
      * @param  bestIndex  The index of the best ("most fit") individual.
      */
     public void select(double weights[], int bestIndex) {
+        long t = Metrics.start();
         Vector newIndividuals = new Vector();
 
         // sample.
@@ -101,6 +204,104 @@ public class Population {
         }
 
         individuals = newIndividuals;
+
+        Metrics.stop(Metrics.SELECT, t);
+    }
+
+    /**
+     * Selection phase for a population evaluated against a cutoff (see
+     * Fitness.evaluate(Individual, double)).  Individuals whose fitness
+     * is only an upper bound are known to fall below the cutoff, so they
+     * are excluded from sampling, and they can never be carried over as
+     * the best individual.  If bestIndex is bounded (for example because
+     * the cutoff was set above every exact fitness), the exact individual
+     * with the highest weight is kept instead.
+     *
+     * @param  weights    The weights of the individuals, as for
+     *                    select(double[], int).  Weights of bounded
+     *                    individuals may be computed from their bounds.
+     * @param  bestIndex  The index of the best ("most fit") individual.
+     * @param  bounded    True for each individual whose fitness is only
+     *                    an upper bound.
+     */
+    public void select(double weights[], int bestIndex, boolean bounded[]) {
+        long t = Metrics.start();
+        Vector newIndividuals = new Vector();
+        int indices[];
+        int exact = 0;
+
+        for (int i = 0; i < bounded.length; i++) {
+            if (!bounded[i]) {
+                exact++;
+            }
+        }
+
+        // the elite must have an exact fitness, if there is one.
+        if (bounded[bestIndex] && exact > 0) {
+            int best = -1;
+            for (int i = 0; i < weights.length; i++) {
+                if (!bounded[i] && (best < 0 || weights[i] > weights[best])) {
+                    best = i;
+                }
+            }
+            bestIndex = best;
+        }
+
+        // sample, leaving out the bounded individuals.
+        if (exact == 0 || exact == bounded.length) {
+            indices = sampler.sample(weights);
+        } else if (sampler instanceof BoundedSampler) {
+            indices = ((BoundedSampler)sampler).sample(weights, bounded);
+        } else {
+            indices = sampler.sample(excludeBounded(weights, bounded));
+        }
+
+        // as in select(double[], int), the best individual takes the
+        // place of the last one sampled.
+        newIndividuals.addElement(individuals.elementAt(bestIndex));
+
+        for (int i = 0; i < indices.length - 1; i++) {
+            newIndividuals.addElement(individuals.elementAt(indices[i]));
+        }
+
+        individuals = newIndividuals;
+
+        Metrics.stop(Metrics.SELECT, t);
+    }
+
+    /**
+     * Zero the weights of the bounded individuals and rescale the rest
+     * so they sum to 1.0 again.  If the remaining weights are all zero,
+     * the remaining individuals are weighted equally.
+     *
+     * @param  weights   The weights of the individuals.
+     * @param  bounded   True for each individual to exclude.  At least
+     *                   one element must be false.
+     * @return           The new weights.
+     */
+    static double[] excludeBounded(double weights[], boolean bounded[]) {
+        double w[] = new double[weights.length];
+        double total = 0.0;
+        int exact = 0;
+
+        for (int i = 0; i < weights.length; i++) {
+            if (!bounded[i]) {
+                total += weights[i];
+                exact++;
+            }
+        }
+
+        for (int i = 0; i < weights.length; i++) {
+            if (bounded[i]) {
+                w[i] = 0.0;
+            } else if (total > 0.0) {
+                w[i] = weights[i] / total;
+            } else {
+                w[i] = 1.0 / (double)exact;
+            }
+        }
+
+        return w;
     }
 
     /**
@@ -0,0 +1,504 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fitness harness for fitness functions that run as separate programs,
+ * such as simulators.  A fixed number of worker processes is started
+ * once and kept running.  Individuals are sent to them one per line on
+ * standard input, as
+ *
+ *     id TAB expression
+ *
+ * where the expression is the infix form of each gene (see
+ * ExpressionNode.stringRepresentation()), joined by " ; ".  For every
+ * request a worker must answer on standard output with
+ *
+ *     id TAB fitness
+ *
+ * in the order the requests were sent.  A fitness that is not a finite
+ * number counts as invalid (see setInvalidFitness()).  The test cases
+ * belong to the worker program; the harness has none.
+ *
+ * evaluateAll() splits the individuals into batches, and each batch is
+ * written to a free worker in one go and waited on by its own thread.
+ * Virtual threads are used when the Java runtime has them.  A worker
+ * that does not answer a request within the timeout is killed and
+ * restarted, and the request scores as invalid.  A worker that exits is
+ * restarted and the request it was working on is sent once more, since
+ * the crash may have had nothing to do with that individual.  The rest
+ * of the batch goes to the new process.  A newly started worker gets
+ * extra time for its first answer, to start up in.
+ *
+ * Call close() to stop the workers.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class ProcessFitness extends Fitness {
+    private String              command[];
+    private LinkedBlockingQueue idle;        // workers not in use
+    private Worker              workers[];
+    private ExecutorService     threads;     // one per batch in flight
+    private long                timeout;     // millis per evaluation
+    private long                startup;     // extra millis for the first
+    private int                 batchSize;
+    private AtomicLong          ids;
+    private AtomicLong          restarts, timeouts, crashes;
+
+    // put on a worker's line queue when its output ends
+    private static final String EOF = new String("EOF");
+
+    /**
+     * Constructor.  Starts the workers.
+     *
+     * @param  command   Program and arguments of a worker.
+     * @param  workers   Number of worker processes.
+     * @param  max       Maximum possible fitness value.
+     */
+    public ProcessFitness(String command[], int workers, double max)
+        throws Exception {
+        super(new Vector(), max);
+        if (workers < 1) {
+            throw new Exception("ProcessFitness needs at least one worker.");
+        }
+        this.command = command;
+        timeout = 10000;
+        startup = 10000;
+        batchSize = 16;
+        ids = new AtomicLong();
+        restarts = new AtomicLong();
+        timeouts = new AtomicLong();
+        crashes = new AtomicLong();
+        threads = newThreads();
+        idle = new LinkedBlockingQueue();
+        this.workers = new Worker[workers];
+        try {
+            for (int i = 0; i < workers; i++) {
+                this.workers[i] = new Worker();
+                this.workers[i].start();
+                idle.add(this.workers[i]);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Set how long a worker may take over one evaluation.  The default
+     * is ten seconds.
+     *
+     * @param  millis   The timeout.
+     */
+    public void setTimeout(long millis) {
+        timeout = millis;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Set the extra time a newly started worker has for its first
+     * answer.  The default is ten seconds.
+     *
+     * @param  millis   The time to start up in.
+     */
+    public void setStartupTimeout(long millis) {
+        startup = millis;
+    }
+
+    public long getStartupTimeout() {
+        return startup;
+    }
+
+    /**
+     * Set the number of individuals sent to a worker at a time by
+     * evaluateAll().  The default is 16.
+     *
+     * @param  n   The batch size.
+     */
+    public void setBatchSize(int n) {
+        batchSize = (n < 1) ? 1 : n;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Return the number of times a worker was restarted.
+     *
+     * @return   The count.
+     */
+    public long getRestarts() {
+        return restarts.get();
+    }
+
+    /**
+     * Return the number of evaluations that timed out.
+     *
+     * @return   The count.
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Return the number of times a worker exited while evaluating.
+     *
+     * @return   The count.
+     */
+    public long getCrashes() {
+        return crashes.get();
+    }
+
+    /**
+     * Stop the workers.  The harness cannot be used afterwards.
+     */
+    public void close() {
+        threads.shutdownNow();
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i] != null) {
+                workers[i].stop();
+            }
+        }
+    }
+
+    /**
+     * Return the text sent to a worker for an individual.  Subclasses
+     * may override this to send another form, such as exported source.
+     * The text must not contain a newline.
+     *
+     * @param  ind   The individual.
+     * @return       The request text.
+     */
+    protected String encode(Individual ind) {
+        ExpressionNode roots[] = ind.express();
+        StringBuffer sb = new StringBuffer();
+
+        for (int i = 0; i < roots.length; i++) {
+            if (i > 0) sb.append(" ; ");
+            sb.append(roots[i].stringRepresentation());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Evaluate one individual on a worker, on the calling thread.
+     *
+     * @param  ind   The individual to evaluate.
+     * @return       The fitness of the individual.
+     */
+    protected double score(Individual ind) {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        try {
+            double out[] = new double[1];
+            run(new String[] { encode(ind) }, out, 0, 1);
+            return out[0];
+        } finally {
+            Metrics.endEvaluation(t, 1);
+        }
+    }
+
+    /**
+     * The worker's answer is all there is, so evaluation never stops
+     * early.
+     */
+    protected Score score(Individual ind, double cutoff) {
+        return new Score(score(ind), false);
+    }
+
+    /**
+     * Evaluate a vector of individuals, batched over the workers.
+     * Individuals with a cached fitness are not sent.
+     *
+     * @param  individuals   The individuals.
+     * @return               The fitness of each individual, in order.
+     */
+    public double[] evaluateAll(Vector individuals) {
+        Object key = getCacheKey();
+        double fvals[] = new double[individuals.size()];
+        Vector todo = new Vector();
+        int index[] = new int[fvals.length];
+
+        for (int i = 0; i < fvals.length; i++) {
+            Individual ind = (Individual)individuals.elementAt(i);
+            Double f = ind.getFitness(key);
+            if (f != null) {
+                fvals[i] = f.doubleValue();
+            } else {
+                index[todo.size()] = i;
+                todo.addElement(ind);
+            }
+        }
+        Metrics.count(Metrics.FITNESS_HITS, fvals.length - todo.size());
+        Metrics.count(Metrics.FITNESS_MISSES, todo.size());
+        if (todo.size() == 0) {
+            return fvals;
+        }
+
+        long t = Metrics.begin(Metrics.EVALUATE);
+        try {
+            final String lines[] = new String[todo.size()];
+            final double scored[] = new double[lines.length];
+            Vector futures = new Vector();
+
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = encode((Individual)todo.elementAt(i));
+            }
+            for (int lo = 0; lo < lines.length; lo += batchSize) {
+                final int from = lo;
+                final int to = Math.min(lo + batchSize, lines.length);
+                futures.addElement(threads.submit(new Runnable() {
+                        public void run() {
+                            ProcessFitness.this.run(lines, scored, from, to);
+                        }
+                    }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    ((Future)futures.elementAt(i)).get();
+                } catch (Exception e) {
+                    System.err.println("EXCEPTION (ProcessFitness) :: "+e);
+                }
+            }
+
+            for (int j = 0; j < scored.length; j++) {
+                fvals[index[j]] = scored[j];
+                ((Individual)todo.elementAt(j)).setFitness(key, scored[j]);
+            }
+            return fvals;
+        } finally {
+            Metrics.endEvaluation(t, todo.size());
+        }
+    }
+
+    /**
+     * Evaluate lines[from..to) on one worker, restarting it on timeouts
+     * and crashes.
+     */
+    private void run(String lines[], double out[], int from, int to) {
+        Worker w;
+        try {
+            w = (Worker)idle.take();
+        } catch (InterruptedException e) {
+            for (int i = from; i < to; i++) {
+                out[i] = getInvalidFitness();
+            }
+            return;
+        }
+
+        try {
+            int i = from;
+            boolean retried = false;
+
+            while (i < to) {
+                if (!w.isRunning() && !restart(w)) {
+                    for (; i < to; i++) {
+                        out[i] = getInvalidFitness();
+                    }
+                    break;
+                }
+
+                long first = ids.getAndAdd(to - i);
+                int start = i;
+                try {
+                    StringBuffer sb = new StringBuffer();
+                    for (int j = i; j < to; j++) {
+                        sb.append((first + j - start) + "\t" + lines[j] +
+                                  "\n");
+                    }
+                    w.send(sb.toString());
+
+                    for (; i < to; i++) {
+                        out[i] = w.receive(first + i - start, timeout);
+                        retried = false;
+                    }
+                } catch (TimeoutException e) {
+                    timeouts.incrementAndGet();
+                    out[i++] = getInvalidFitness();
+                    retried = false;
+                    restart(w);
+                } catch (IOException e) {
+                    crashes.incrementAndGet();
+                    if (retried) {
+                        out[i++] = getInvalidFitness();
+                        retried = false;
+                    } else {
+                        retried = true;
+                    }
+                    restart(w);
+                }
+            }
+        } catch (InterruptedException e) {
+            w.stop();
+        } finally {
+            idle.add(w);
+        }
+    }
+
+    private boolean restart(Worker w) {
+        w.stop();
+        restarts.incrementAndGet();
+        try {
+            w.start();
+            return true;
+        } catch (IOException e) {
+            System.err.println("EXCEPTION (ProcessFitness) :: "+e);
+            return false;
+        }
+    }
+
+    /**
+     * Threads to wait on batches with: virtual threads if the runtime
+     * has them, and otherwise a pool of daemon threads.
+     */
+    private static ExecutorService newThreads() {
+        try {
+            Method m = Executors.class.getMethod(
+                "newVirtualThreadPerTaskExecutor", new Class[0]);
+            return (ExecutorService)m.invoke(null, new Object[0]);
+        } catch (Exception e) {
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ProcessFitness");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        }
+    }
+
+    /**
+     * A worker did not answer in time.
+     */
+    private static class TimeoutException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        TimeoutException() {
+            super("worker timed out");
+        }
+    }
+
+    /**
+     * One worker process.  A daemon thread copies its output lines into
+     * a queue, so that waiting for an answer can time out.
+     */
+    private class Worker {
+        private Process             process;
+        private Writer              in;
+        private LinkedBlockingQueue lines;
+        private boolean             warm;   // has answered since starting
+
+        void start() throws IOException {
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectError(ProcessBuilder.Redirect.INHERIT);
+            process = pb.start();
+            in = new BufferedWriter(
+                new OutputStreamWriter(process.getOutputStream()));
+            final LinkedBlockingQueue q = new LinkedBlockingQueue();
+            final BufferedReader r = new BufferedReader(
+                new InputStreamReader(process.getInputStream()));
+            lines = q;
+            warm = false;
+
+            Thread t = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            String s;
+                            while ((s = r.readLine()) != null) {
+                                q.add(s);
+                            }
+                        } catch (IOException e) {
+                            // the process is gone
+                        }
+                        q.add(EOF);
+                    }
+                }, "ProcessFitness reader");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        boolean isRunning() {
+            return process != null;
+        }
+
+        void stop() {
+            if (process != null) {
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+
+        void send(String s) throws IOException {
+            in.write(s);
+            in.flush();
+        }
+
+        /**
+         * Wait for the answer to a request.
+         */
+        double receive(long id, long millis)
+            throws IOException, TimeoutException, InterruptedException {
+            String s = (String)lines.poll(warm ? millis : millis + startup,
+                                          TimeUnit.MILLISECONDS);
+
+            if (s == null) {
+                throw new TimeoutException();
+            }
+            if (s == EOF) {
+                lines.add(EOF);
+                throw new IOException("worker exited");
+            }
+
+            int tab = s.indexOf('\t');
+            if (tab < 0 || !s.substring(0, tab).trim().equals(""+id)) {
+                throw new IOException("unexpected answer: "+s);
+            }
+            warm = true;
+            try {
+                double v = Double.parseDouble(s.substring(tab + 1).trim());
+                if (Double.isNaN(v) || Double.isInfinite(v)) {
+                    return getInvalidFitness();
+                }
+                return v;
+            } catch (NumberFormatException e) {
+                return getInvalidFitness();
+            }
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * An expression tree flattened into a postfix program over the columns
+ * of a DataTable.  Each entry of the code array is either a column index
+ * (non-negative), which pushes that column, OP_CONST followed by an index
+ * into the constant pool, or an operator, which pops its arguments and
+ * pushes its result.  The same program can be run by the Java evaluator
+ * here or handed to a native backend (see ProgramEvaluator); the opcodes
+ * match cgep/flateval.h.
+ *
+ * Programs are run a block of rows at a time, so that every instruction
+ * is a short loop over an array rather than a virtual call per node and
+ * per test case.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class Program {
+    public static final int OP_CONST = -1;
+    public static final int OP_ADD   = -2;
+    public static final int OP_SUB   = -3;
+    public static final int OP_MUL   = -4;
+    public static final int OP_DIV   = -5;
+    public static final int OP_SQRT  = -6;
+    public static final int OP_SIN   = -7;
+    public static final int OP_COS   = -8;
+    public static final int OP_EXP   = -9;
+    public static final int OP_LOG   = -10;
+    public static final int OP_MIN   = -11;
+    public static final int OP_MAX   = -12;
+    public static final int OP_POW   = -13;
+    public static final int OP_IF    = -14;
+
+    /**
+     * Number of rows evaluated at a time.
+     */
+    public static final int BLOCK = 256;
+
+    /**
+     * C templates of the functions that have opcodes (see
+     * ArithmeticFunctions), and their opcodes.
+     */
+    private static final String templates[] = {
+        "sqrt($0)", "sin($0)", "cos($0)", "exp($0)", "log($0)",
+        "fmin($0, $1)", "fmax($0, $1)", "pow($0, $1)",
+        "(($0) > 0.0 ? ($1) : ($2))"
+    };
+    private static final int templateOps[] = {
+        OP_SQRT, OP_SIN, OP_COS, OP_EXP, OP_LOG,
+        OP_MIN, OP_MAX, OP_POW, OP_IF
+    };
+
+    private int    code[];     // postfix code
+    private double consts[];   // constant pool
+    private int    depth;      // largest stack depth
+    private int    div;        // division semantics
+
+    /**
+     * Constructor.
+     *
+     * @param  code     The postfix code.
+     * @param  consts   Constant pool.
+     * @param  depth    Largest number of values on the stack at once.
+     * @param  div      Division semantics, one of the
+     *                  ArithmeticIndividual.DIVISION_ constants.
+     */
+    public Program(int code[], double consts[], int depth, int div) {
+        this.code = code;
+        this.consts = consts;
+        this.depth = depth;
+        this.div = div;
+    }
+
+    /**
+     * Flatten the expression of an arithmetic individual into a program
+     * over the columns of a table.  Terminals name columns; a terminal
+     * with no column becomes a NaN constant.  Registered functions are
+     * recognised by their C template, so functions renamed with
+     * ArithmeticFunctions.rename() still compile.
+     *
+     * @param  ind    The individual.
+     * @param  data   The table whose column indices the program uses.
+     * @return        The program, or null if the expression uses a
+     *                function that has no opcode.
+     */
+    public static Program compile(ArithmeticIndividual ind, DataTable data) {
+        return compile(ind, data, ind.getGenome());
+    }
+
+    /**
+     * Flatten the expression of an arithmetic individual into a program
+     * whose column indices are the indices of the terminals in the
+     * genome (see Genome.getTerminalIndex()).  Such a program is run
+     * with evaluate(double[][], int[], int, int, double[]).
+     *
+     * @param  ind    The individual.
+     * @return        The program, or null if the expression uses a
+     *                function that has no opcode.
+     */
+    public static Program compile(ArithmeticIndividual ind) {
+        return compile(ind, null, ind.getGenome());
+    }
+
+    private static Program compile(ArithmeticIndividual ind, DataTable data,
+                                   Genome g) {
+        ExpressionNode e = ind.express()[0];
+
+        if (!(e instanceof SymbolNode)) {
+            return null;
+        }
+
+        IntBuffer code = new IntBuffer();
+        java.util.Vector consts = new java.util.Vector();
+        if (!emit((SymbolNode)e, g, data, code, consts)) {
+            return null;
+        }
+
+        double k[] = new double[consts.size()];
+        for (int i = 0; i < k.length; i++) {
+            k[i] = ((Double)consts.elementAt(i)).doubleValue();
+        }
+        int c[] = code.toArray();
+
+        return new Program(c, k, stackDepth(c), ind.getDivision());
+    }
+
+    private static boolean emit(SymbolNode e, Genome g, DataTable data,
+                                IntBuffer code, java.util.Vector consts) {
+        char c = e.getSymbol();
+        int arity = e.getArity();
+
+        if (e instanceof ConstantNode) {
+            code.add(OP_CONST);
+            code.add(consts.size());
+            consts.addElement(new Double(((ConstantNode)e).getValue()));
+            return true;
+        }
+
+        if (arity == 0) {
+            int col = (data == null) ? g.getTerminalIndex(c)
+                : data.getColumnIndex(g.getSymbolName(c));
+            if (col >= 0) {
+                code.add(col);
+            } else {
+                code.add(OP_CONST);
+                code.add(consts.size());
+                consts.addElement(new Double(Double.NaN));
+            }
+            return true;
+        }
+
+        int op = opcode(c, arity, g.getFunctionSet());
+        if (op == 0) {
+            return false;
+        }
+        for (int i = 0; i < arity; i++) {
+            if (!emit(e.getChild(i), g, data, code, consts)) {
+                return false;
+            }
+        }
+        code.add(op);
+        return true;
+    }
+
+    /**
+     * Opcode of a function symbol, or 0 if it has none.
+     */
+    private static int opcode(char c, int arity, FunctionSet fs) {
+        if (arity == 2) {
+            switch (c) {
+            case '+': return OP_ADD;
+            case '-': return OP_SUB;
+            case '*': return OP_MUL;
+            case '/': return OP_DIV;
+            }
+        }
+
+        Function f = (fs == null) ? null : fs.get(c);
+        if (f == null || f.getCTemplate() == null) {
+            return 0;
+        }
+        for (int i = 0; i < templates.length; i++) {
+            if (templates[i].equals(f.getCTemplate())) {
+                return (arity(templateOps[i]) == arity) ? templateOps[i] : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Number of arguments an operator pops.
+     */
+    private static int arity(int op) {
+        switch (op) {
+        case OP_SQRT: case OP_SIN: case OP_COS: case OP_EXP: case OP_LOG:
+            return 1;
+        case OP_IF:
+            return 3;
+        default:
+            return 2;
+        }
+    }
+
+    private static int stackDepth(int code[]) {
+        int sp = 0, max = 0;
+
+        for (int i = 0; i < code.length; i++) {
+            if (code[i] >= 0) {
+                sp++;
+            } else if (code[i] == OP_CONST) {
+                i++;
+                sp++;
+            } else {
+                sp -= arity(code[i]) - 1;
+            }
+            max = Math.max(max, sp);
+        }
+
+        return max;
+    }
+
+    public int[] getCode() {
+        return code;
+    }
+
+    public double[] getConstants() {
+        return consts;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getDivision() {
+        return div;
+    }
+
+    /**
+     * Run the program over every row of a table.
+     *
+     * @param  data   The table the program was compiled for.
+     * @param  out    Receives one output per row.
+     */
+    public void evaluate(DataTable data, double out[]) {
+        double cols[][] = new double[data.getNumColumns()][];
+        for (int c = 0; c < cols.length; c++) {
+            cols[c] = data.getColumn(c);
+        }
+        evaluate(cols, null, 0, data.getRows(), out);
+    }
+
+    /**
+     * Run the program over a range of rows of a set of columns, each of
+     * which may be shifted by its own offset.  Row r of column c is
+     * read from cols[c][offsets[c] + start + r].  The columns are read
+     * in place, so shifted views of the same array (such as lags of a
+     * time series) cost nothing.
+     *
+     * @param  cols      The columns, indexed as in the code.
+     * @param  offsets   Shift of each column, or null for none.
+     * @param  start     First row.
+     * @param  rows      Number of rows.
+     * @param  out       Receives one output per row, from out[0].
+     */
+    public void evaluate(double cols[][], int offsets[], int start, int rows,
+                         double out[]) {
+        double bufs[][] = new double[depth][BLOCK];
+        double slot[][] = new double[depth][];   // array on the stack
+        int    off[] = new int[depth];           // offset into it
+
+        for (int r0 = 0; r0 < rows; r0 += BLOCK) {
+            int n = Math.min(BLOCK, rows - r0);
+            int sp = 0;
+
+            for (int i = 0; i < code.length; i++) {
+                int op = code[i];
+
+                //
+                // columns are pushed without copying; results always go
+                // to the buffer owned by the slot.
+                //
+                if (op >= 0) {
+                    slot[sp] = cols[op];
+                    off[sp++] = start + r0 +
+                        ((offsets == null) ? 0 : offsets[op]);
+                    continue;
+                }
+                if (op == OP_CONST) {
+                    double d[] = bufs[sp];
+                    java.util.Arrays.fill(d, 0, n, consts[code[++i]]);
+                    slot[sp] = d;
+                    off[sp++] = 0;
+                    continue;
+                }
+
+                int ar = arity(op);
+                int s = sp - ar;
+                double d[] = bufs[s];
+                double a[] = slot[s];
+                int ao = off[s];
+
+                if (ar == 1) {
+                    unary(op, a, ao, d, n);
+                } else if (ar == 2) {
+                    binary(op, a, ao, slot[s+1], off[s+1], d, n);
+                } else {
+                    double b[] = slot[s+1], c[] = slot[s+2];
+                    int bo = off[s+1], co = off[s+2];
+                    for (int j = 0; j < n; j++) {
+                        d[j] = (a[ao+j] > 0.0) ? b[bo+j] : c[co+j];
+                    }
+                }
+
+                slot[s] = d;
+                off[s] = 0;
+                sp = s + 1;
+            }
+
+            System.arraycopy(slot[0], off[0], out, r0, n);
+        }
+    }
+
+    private static void unary(int op, double a[], int ao, double d[], int n) {
+        switch (op) {
+        case OP_SQRT:
+            for (int j = 0; j < n; j++) d[j] = Math.sqrt(a[ao+j]);
+            break;
+        case OP_SIN:
+            for (int j = 0; j < n; j++) d[j] = Math.sin(a[ao+j]);
+            break;
+        case OP_COS:
+            for (int j = 0; j < n; j++) d[j] = Math.cos(a[ao+j]);
+            break;
+        case OP_EXP:
+            for (int j = 0; j < n; j++) d[j] = Math.exp(a[ao+j]);
+            break;
+        case OP_LOG:
+            for (int j = 0; j < n; j++) d[j] = Math.log(a[ao+j]);
+            break;
+        }
+    }
+
+    private void binary(int op, double a[], int ao, double b[], int bo,
+                        double d[], int n) {
+        switch (op) {
+        case OP_ADD:
+            for (int j = 0; j < n; j++) d[j] = a[ao+j] + b[bo+j];
+            break;
+        case OP_SUB:
+            for (int j = 0; j < n; j++) d[j] = a[ao+j] - b[bo+j];
+            break;
+        case OP_MUL:
+            for (int j = 0; j < n; j++) d[j] = a[ao+j] * b[bo+j];
+            break;
+        case OP_DIV:
+            if (div == ArithmeticIndividual.DIVISION_IEEE) {
+                for (int j = 0; j < n; j++) d[j] = a[ao+j] / b[bo+j];
+            } else {
+                double z = (div == ArithmeticIndividual.DIVISION_PROTECTED)
+                    ? 1.0 : Double.NaN;
+                for (int j = 0; j < n; j++) {
+                    d[j] = (b[bo+j] == 0.0) ? z : a[ao+j] / b[bo+j];
+                }
+            }
+            break;
+        case OP_MIN:
+            for (int j = 0; j < n; j++) d[j] = Math.min(a[ao+j], b[bo+j]);
+            break;
+        case OP_MAX:
+            for (int j = 0; j < n; j++) d[j] = Math.max(a[ao+j], b[bo+j]);
+            break;
+        case OP_POW:
+            for (int j = 0; j < n; j++) d[j] = Math.pow(a[ao+j], b[bo+j]);
+            break;
+        }
+    }
+
+    /**
+     * Growable array of ints.
+     */
+    private static class IntBuffer {
+        int a[] = new int[16];
+        int n = 0;
+
+        void add(int v) {
+            if (n == a.length) {
+                int b[] = new int[2*n];
+                System.arraycopy(a, 0, b, 0, n);
+                a = b;
+            }
+            a[n++] = v;
+        }
+
+        int[] toArray() {
+            int b[] = new int[n];
+            System.arraycopy(a, 0, b, 0, n);
+            return b;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+
+/**
+ * Evaluates individuals as flat programs (see Program) over a DataTable,
+ * using a native backend when one can be loaded and the Java evaluator
+ * in Program otherwise.  Both give the same results, except that the C
+ * library functions may differ from Java's in the last bit for the
+ * transcendental functions.
+ *
+ * The native backend is the class jGEP.ForeignBackend, loaded by name so
+ * that the library builds and runs without it.  It looks for the shared
+ * library named by the system property jgep.native.library, or for
+ * libflateval.so on java.library.path.  Setting jgep.native to false
+ * disables it.
+ *
+ * Compiled programs are cached on the individuals, keyed by the table.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class ProgramEvaluator {
+    private static NativeBackend backend;   // shared, null if unavailable
+    private static boolean       loaded;    // tried to load it yet?
+
+    private DataTable data;      // test cases
+    private Object    dataset;   // native copy of data, or null
+
+    /**
+     * Constructor.  Copies the table to native memory if a backend is
+     * available; call close() to free it.
+     *
+     * @param  data   The test cases.
+     */
+    public ProgramEvaluator(DataTable data) {
+        this.data = data;
+        NativeBackend b = getBackend();
+        if (b != null) {
+            try {
+                dataset = b.open(data);
+            } catch (Exception e) {
+                System.err.println("EXCEPTION (ProgramEvaluator) :: "+
+                                   e.toString());
+                dataset = null;
+            }
+        }
+    }
+
+    /**
+     * Return the native backend, loading it on first use.
+     *
+     * @return   The backend, or null if none could be loaded.
+     */
+    public static synchronized NativeBackend getBackend() {
+        if (!loaded) {
+            loaded = true;
+            if (!"false".equals(System.getProperty("jgep.native"))) {
+                try {
+                    backend = (NativeBackend)
+                        Class.forName("jGEP.ForeignBackend")
+                        .getDeclaredConstructor().newInstance();
+                } catch (Throwable t) {
+                    // not built, JDK too old, or no shared library.
+                    backend = null;
+                }
+            }
+        }
+        return backend;
+    }
+
+    /**
+     * Whether programs are run natively.
+     *
+     * @return   True if the table was copied to a native backend.
+     */
+    public boolean isNative() {
+        return dataset != null;
+    }
+
+    public DataTable getDataTable() {
+        return data;
+    }
+
+    /**
+     * Run a program over every row.
+     *
+     * @param  p     A program compiled for this evaluator's table.
+     * @param  out   Receives one output per row.
+     */
+    public void evaluate(Program p, double out[]) {
+        if (dataset != null) {
+            try {
+                backend.evaluate(dataset, p, out);
+                return;
+            } catch (Exception e) {
+                System.err.println("EXCEPTION (evaluate) :: "+e.toString());
+            }
+        }
+        p.evaluate(data, out);
+    }
+
+    /**
+     * Return the program for an individual, compiling it if it is not
+     * cached.
+     *
+     * @param  ind   The individual.
+     * @return       The program, or null if it cannot be flattened.
+     */
+    public Program getProgram(ArithmeticIndividual ind) {
+        Object p = ind.getCompiled(data);
+
+        if (p == null) {
+            Metrics.count(Metrics.PROGRAM_MISSES);
+            p = Program.compile(ind, data);
+            if (p != null) {
+                ind.setCompiled(data, p);
+            }
+        } else {
+            Metrics.count(Metrics.PROGRAM_HITS);
+        }
+        return (Program)p;
+    }
+
+    /**
+     * Evaluate a vector of individuals.  Individuals that cannot be
+     * flattened are passed to Fitness.evaluate().  The results are
+     * cached on the individuals as if Fitness had computed them, and
+     * individuals with a cached fitness are not evaluated again.  This
+     * method may be called from several threads at once.
+     *
+     * @param  individuals   The individuals.
+     * @param  fitness       Scores the output columns; its test values
+     *                       should be the rows of the table.
+     * @return               The fitness of each individual, in order.
+     */
+    public double[] evaluate(Vector individuals, Fitness fitness) {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        FitnessBatchEvent ev = FitnessBatchEvent.start();
+        try {
+            double fvals[] = new double[individuals.size()];
+            double out[] = new double[data.getRows()];
+            Object key = fitness.getCacheKey();
+
+            for (int i = 0; i < fvals.length; i++) {
+                Individual ind = (Individual)individuals.elementAt(i);
+                Double cached = ind.getFitness(key);
+                Program p = null;
+
+                if (cached != null) {
+                    Metrics.count(Metrics.FITNESS_HITS);
+                    fvals[i] = cached.doubleValue();
+                    continue;
+                }
+                if (ind instanceof ArithmeticIndividual) {
+                    p = getProgram((ArithmeticIndividual)ind);
+                }
+                if (p == null) {
+                    fvals[i] = fitness.evaluate(ind);
+                } else {
+                    Metrics.count(Metrics.FITNESS_MISSES);
+                    evaluate(p, out);
+                    fvals[i] = fitness.evaluateColumn(out, data.getExpected());
+                    ind.setFitness(key, fvals[i]);
+                }
+            }
+
+            return fvals;
+        } finally {
+            Metrics.endEvaluation(t, individuals.size());
+            ev.finish(this, individuals.size(), data.getRows());
+        }
+    }
+
+    /**
+     * Free the native copy of the table.  The evaluator falls back to
+     * Java afterwards.
+     */
+    public void close() {
+        if (dataset != null) {
+            backend.close(dataset);
+            dataset = null;
+        }
+    }
+}
@@ -27,7 +27,7 @@ import java.util.*;
  * @author   Matthew Sottile
  * @version  1.0
  */
-public class RouletteWheelSampler implements Sampler {
+public class RouletteWheelSampler implements BoundedSampler {
     private Random r; // PRNG
     private double epsilon; // epsilon of tolerance for weight sum
 
@@ -57,6 +57,7 @@ public class RouletteWheelSampler implements Sampler {
      * @return          Array of indices indicating sampled individuals.
      */
     public int[] sample(double weights[]) {
+        SelectionEvent e = SelectionEvent.start();
         int selected[] = new int[weights.length];
         
         //
@@ -94,6 +95,27 @@ public class RouletteWheelSampler implements Sampler {
         }
         
         // return array of selected indices.
+        e.finish(this, weights.length, weights.length);
         return selected;
     }
+
+    /**
+     * Sample from a population, leaving out the bounded individuals.
+     * Their weights are removed from the wheel and the remaining weights
+     * are rescaled, so the exact individuals are chosen in the same
+     * proportions to one another as by sample(double[]).
+     *
+     * @param  weights  Array of individual weights
+     * @param  bounded  True for each individual to leave out.
+     * @return          Array of indices indicating sampled individuals.
+     */
+    public int[] sample(double weights[], boolean bounded[]) {
+        for (int i = 0; i < bounded.length; i++) {
+            if (!bounded[i]) {
+                return sample(Population.excludeBounded(weights, bounded));
+            }
+        }
+
+        return sample(weights);
+    }
 }
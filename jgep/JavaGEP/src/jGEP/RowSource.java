@@ -0,0 +1,48 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+
+/**
+ * Interface for a sequential source of test cases.  Rows are handed out
+ * in blocks so that a consumer never needs more than one block in memory
+ * at a time, regardless of how many rows the source holds.  Each row is
+ * a hashtable in the same format Fitness expects for its test value
+ * vector (terminal names mapped to values, plus the `Expected' key).
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public interface RowSource {
+    /**
+     * Read the next block of rows.
+     *
+     * @param   maxRows   Largest number of rows to return.
+     * @return            Vector of at most maxRows hashtables, or null
+     *                    when the end of the source has been reached.
+     */
+    public Vector nextBlock(int maxRows) throws Exception;
+
+    /**
+     * Reposition the source so that the next call to nextBlock() starts
+     * again from the first row.
+     */
+    public void rewind() throws Exception;
+}
@@ -0,0 +1,79 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * The result of a fitness evaluation made against a cutoff.  If the
+ * individual was evaluated in full, the value is its exact fitness.  If
+ * the evaluation stopped early because the individual could no longer
+ * reach the cutoff, the value is only an upper bound on its fitness, and
+ * the true fitness is known to be below the cutoff.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class Score {
+    private double  value; // fitness, or an upper bound on it
+    private boolean bound; // true if value is a bound
+
+    /**
+     * Constructor.
+     *
+     * @param  value   The fitness value or bound.
+     * @param  bound   True if the value is an upper bound.
+     */
+    public Score(double value, boolean bound) {
+        this.value = value;
+        this.bound = bound;
+    }
+
+    /**
+     * Return the fitness value.  If isBound() is true, this is an upper
+     * bound on the fitness rather than the fitness itself.
+     *
+     * @return   The fitness value or bound.
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Whether evaluation stopped early.
+     *
+     * @return   True if getValue() is an upper bound.
+     */
+    public boolean isBound() {
+        return bound;
+    }
+
+    /**
+     * Collect the bound flags of an array of scores, in the form
+     * Population.select() expects.
+     *
+     * @param  scores   Array of scores.
+     * @return          Array with true wherever the score is a bound.
+     */
+    public static boolean[] boundFlags(Score scores[]) {
+        boolean flags[] = new boolean[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            flags[i] = scores[i].isBound();
+        }
+        return flags;
+    }
+}
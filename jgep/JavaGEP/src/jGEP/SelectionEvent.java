@@ -0,0 +1,74 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one sampling step of selection.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+@Name("jGEP.Selection")
+@Label("Selection")
+@Category({"jGEP"})
+@Description("Sampling of the individuals for the next generation")
+public class SelectionEvent extends Event {
+    @Label("Sampler")
+    String sampler;
+
+    @Label("Population Size")
+    int populationSize;
+
+    @Label("Candidates")
+    @Description("Individuals that could be selected")
+    int candidates;
+
+    /**
+     * Start timing a selection.
+     *
+     * @return   The event, to be passed sampler details by finish().
+     */
+    static SelectionEvent start() {
+        SelectionEvent e = new SelectionEvent();
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Commit the event if it is being recorded.
+     *
+     * @param  s            The sampler.
+     * @param  size         Number of individuals sampled.
+     * @param  candidates   Number of individuals sampled from.
+     */
+    void finish(Sampler s, int size, int candidates) {
+        if (shouldCommit()) {
+            sampler = s.getClass().getName();
+            populationSize = size;
+            this.candidates = candidates;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Base class of the code generators that turn an arithmetic individual
+ * into standalone source code (see JavaExporter and CExporter).  By
+ * default only the first gene is exported, since that is the one Fitness
+ * scores; with a linking function set, all the genes are linked into one
+ * expression with it.  The generated code takes one argument per
+ * terminal of the genome, in genome order.
+ *
+ * Terminals may be given fixed values with setConstants().  Subtrees
+ * whose leaves are all constants are folded into a single literal,
+ * computed the way the interpreter computes them, so folding never
+ * changes the result.
+ *
+ * Registered functions are emitted from their source templates (see
+ * Function), so every function used must have a template for the target
+ * language.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public abstract class SourceExporter {
+    private Function  link;        // joins the genes, or null
+    private Hashtable constants;   // terminal name -> Double
+
+    /**
+     * Constructor.
+     */
+    public SourceExporter() {
+        link = null;
+        constants = new Hashtable();
+    }
+
+    /**
+     * Set the function used to join the expressions of the genes.
+     *
+     * @param  f   A function of two arguments, or null to export only
+     *             the first gene.
+     */
+    public void setLinkingFunction(Function f) throws Exception {
+        if (f != null && f.getArity() != 2) {
+            throw new Exception("Linking function must take two arguments");
+        }
+        link = f;
+    }
+
+    public Function getLinkingFunction() {
+        return link;
+    }
+
+    /**
+     * Return the number of genes exported: all of them with a linking
+     * function, otherwise only the first.
+     *
+     * @param  roots   The expressed individual.
+     * @return         The number of genes, from the first.
+     */
+    public int getNumExported(ExpressionNode roots[]) {
+        return (link == null) ? Math.min(1, roots.length) : roots.length;
+    }
+
+    /**
+     * Give terminals fixed values.  Constant terminals are not arguments
+     * of the generated code.
+     *
+     * @param  values   Maps terminal names (as strings) to Doubles.
+     */
+    public void setConstants(Hashtable values) {
+        constants = values;
+    }
+
+    public Hashtable getConstants() {
+        return constants;
+    }
+
+    /**
+     * Generate source code for an individual.
+     *
+     * @param  ind    The individual.
+     * @param  name   Name of the generated class or function.
+     * @return        The source.
+     */
+    public String export(ArithmeticIndividual ind, String name) 
+        throws Exception {
+        Vector vars = getVariables(ind.getGenome());
+        String params[] = new String[vars.size()];
+
+        for (int i = 0; i < params.length; i++) {
+            params[i] = identifier(((Character)vars.elementAt(i)).charValue(),
+                                   i);
+        }
+
+        return generate(name, params, expression(ind, vars, params),
+                        ind.getDivision(), describe(ind));
+    }
+
+    /**
+     * Return the terminals that become arguments of the generated code,
+     * in order.
+     *
+     * @param  g   The genome.
+     * @return     Vector of Characters.
+     */
+    public Vector getVariables(Genome g) {
+        Vector v = new Vector();
+
+        for (int i = 0; i < g.getNumTerminals(); i++) {
+            char c = g.getTerminal(i);
+            if (c != Genome.CONSTANT &&
+                !constants.containsKey(g.getTerminalName(i))) {
+                v.addElement(new Character(c));
+            }
+        }
+        return v;
+    }
+
+    /**
+     * Build the folded expression for an individual, linking the genes
+     * if there is a linking function.
+     */
+    private String expression(ArithmeticIndividual ind, Vector vars,
+                              String params[]) throws Exception {
+        ExpressionNode roots[] = ind.express();
+        FunctionSet fs = ind.getGenome().getFunctionSet();
+        Hashtable names = new Hashtable();
+        Object e = null;
+
+        for (int i = 0; i < params.length; i++) {
+            names.put(vars.elementAt(i), params[i]);
+        }
+        Genome gen = ind.getGenome();
+        for (int i = 0; i < gen.getNumTerminals(); i++) {
+            Object k = constants.get(gen.getTerminalName(i));
+            if (k != null) {
+                names.put(new Character(gen.getTerminal(i)), k);
+            }
+        }
+
+        for (int i = 0; i < getNumExported(roots); i++) {
+            if (!(roots[i] instanceof SymbolNode)) {
+                throw new Exception("Cannot export "+
+                                    roots[i].getClass().getName());
+            }
+            Object g = fold((SymbolNode)roots[i], fs, ind.getDivision(),
+                            names);
+            e = (e == null) ? g : combine(link, new Object[] { e, g });
+        }
+
+        return source(e);
+    }
+
+    /**
+     * Fold a subtree.  The result is a Double if the subtree is
+     * constant, and otherwise a String holding its source.
+     */
+    private Object fold(SymbolNode n, FunctionSet fs, int div,
+                        Hashtable names) throws Exception {
+        char c = n.getSymbol();
+        int arity = n.getArity();
+
+        if (n instanceof ConstantNode) {
+            return new Double(((ConstantNode)n).getValue());
+        }
+
+        if (arity == 0) {
+            // a parameter name, or the Double of a constant terminal
+            return names.get(new Character(c));
+        }
+
+        Object args[] = new Object[arity];
+        for (int i = 0; i < arity; i++) {
+            args[i] = fold(n.getChild(i), fs, div, names);
+        }
+
+        if (arity == 2 && isBuiltin(c)) {
+            if (allConstant(args)) {
+                return new Double(builtin(c, div, value(args[0]),
+                                          value(args[1])));
+            }
+            if (c == '/') {
+                return division(source(args[0]), source(args[1]), div);
+            }
+            return "(" + source(args[0]) + " " + c + " " + 
+                source(args[1]) + ")";
+        }
+
+        Function f = (fs == null) ? null : fs.get(c);
+        if (f == null) {
+            throw new Exception("Unknown function "+c);
+        }
+        return combine(f, args);
+    }
+
+    /**
+     * Apply a function to folded arguments.
+     */
+    private Object combine(Function f, Object args[]) throws Exception {
+        if (allConstant(args)) {
+            double a[] = new double[args.length];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = value(args[i]);
+            }
+            return new Double(f.apply(a));
+        }
+
+        String t = template(f);
+        if (t == null) {
+            throw new Exception("No template for function "+f.getName());
+        }
+        String a[] = new String[args.length];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = source(args[i]);
+        }
+        return substitute(t, a);
+    }
+
+    private static boolean isBuiltin(char c) {
+        return c == '+' || c == '-' || c == '*' || c == '/';
+    }
+
+    /**
+     * The interpreter's semantics for the builtin operators.
+     */
+    private static double builtin(char c, int div, double a, double b) {
+        switch (c) {
+        case '+':
+            return a + b;
+        case '-':
+            return a - b;
+        case '*':
+            return a * b;
+        default:
+            if (b == 0.0) {
+                if (div == ArithmeticIndividual.DIVISION_PROTECTED) {
+                    return 1.0;
+                } else if (div == ArithmeticIndividual.DIVISION_STRICT) {
+                    return Double.NaN;
+                }
+            }
+            return a / b;
+        }
+    }
+
+    private static boolean allConstant(Object args[]) {
+        for (int i = 0; i < args.length; i++) {
+            if (!(args[i] instanceof Double)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double value(Object o) {
+        return ((Double)o).doubleValue();
+    }
+
+    private String source(Object o) {
+        return (o instanceof Double) ? literal(value(o)) : (String)o;
+    }
+
+    /**
+     * Replace $0, $1, ... in a template with arguments.
+     */
+    protected static String substitute(String t, String args[]) {
+        StringBuffer sb = new StringBuffer();
+        int i = 0;
+
+        while (i < t.length()) {
+            char c = t.charAt(i);
+            int j = i + 1;
+            while (c == '$' && j < t.length() && 
+                   Character.isDigit(t.charAt(j))) {
+                j++;
+            }
+            if (j > i + 1) {
+                sb.append(args[Integer.parseInt(t.substring(i+1, j))]);
+                i = j;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Name of the argument for a terminal: the terminal itself if it is
+     * a letter, otherwise x followed by its position.
+     */
+    protected String identifier(char c, int i) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return String.valueOf(c);
+        }
+        return "x" + i;
+    }
+
+    /**
+     * A comment line describing the exported genes of the individual.
+     */
+    private String describe(ArithmeticIndividual ind) {
+        ExpressionNode roots[] = ind.express();
+        StringBuffer sb = new StringBuffer();
+
+        for (int i = 0; i < getNumExported(roots); i++) {
+            if (i > 0) sb.append(" ; ");
+            sb.append(roots[i].stringRepresentation());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The source template of a function in the target language.
+     *
+     * @param  f   The function.
+     * @return     Its template, or null if it has none.
+     */
+    protected abstract String template(Function f);
+
+    /**
+     * The source of a literal.
+     *
+     * @param  v   The value.
+     * @return     An expression whose value is exactly v.
+     */
+    protected abstract String literal(double v);
+
+    /**
+     * The source of a division with the given semantics.
+     *
+     * @param  a     Dividend.
+     * @param  b     Divisor.
+     * @param  div   One of the ArithmeticIndividual.DIVISION_ constants.
+     * @return       The expression.
+     */
+    protected abstract String division(String a, String b, int div);
+
+    /**
+     * Wrap an expression in a complete source file.
+     *
+     * @param  name         Class or function name.
+     * @param  params       Argument names.
+     * @param  expr         The expression.
+     * @param  div          Division semantics.
+     * @param  description   Infix form of the individual, for a comment.
+     * @return              The source.
+     */
+    protected abstract String generate(String name, String params[], 
+                                       String expr, int div, 
+                                       String description);
+}
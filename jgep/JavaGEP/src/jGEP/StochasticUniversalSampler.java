@@ -27,7 +27,7 @@ import java.util.*;
  * @author   Matthew Sottile
  * @version  1.0
  */
-public class StochasticUniversalSampler implements Sampler {
+public class StochasticUniversalSampler implements BoundedSampler {
     private Random r; // PRNG
 
     /**
@@ -48,6 +48,7 @@ public class StochasticUniversalSampler implements Sampler {
      * @return          Array of indices indicating sampled individuals.
      */
     public int[] sample(double weights[]) {
+        SelectionEvent e = SelectionEvent.start();
         int selected[] = new int[weights.length];
         
         //
@@ -61,6 +62,42 @@ public class StochasticUniversalSampler implements Sampler {
         }
         
         // return array of selected indices.
+        e.finish(this, weights.length, weights.length);
+        return selected;
+    }
+
+    /**
+     * Sample from a population, leaving out the bounded individuals.
+     * Weights are IGNORED; the individuals that are not bounded are
+     * equally likely to be selected.
+     *
+     * @param  weights  Array of individual weights
+     * @param  bounded  True for each individual to leave out.
+     * @return          Array of indices indicating sampled individuals.
+     */
+    public int[] sample(double weights[], boolean bounded[]) {
+        int exact[] = new int[bounded.length];
+        int n = 0;
+
+        for (int i = 0; i < bounded.length; i++) {
+            if (!bounded[i]) {
+                exact[n++] = i;
+            }
+        }
+
+        if (n == 0) {
+            return sample(weights);
+        }
+
+        SelectionEvent e = SelectionEvent.start();
+        int selected[] = new int[weights.length];
+        for (int i = 0; i < selected.length; i++) {
+            double samp = r.nextDouble();
+
+            selected[i] = exact[(int)java.lang.Math.floor(samp*(double)n)];
+        }
+        e.finish(this, selected.length, n);
+
         return selected;
     }
 }
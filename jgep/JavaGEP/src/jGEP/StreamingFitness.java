@@ -0,0 +1,404 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Hashtable;
+import java.util.Vector;
+
+/**
+ * Fitness harness for data sets too large to hold in memory.  Test cases
+ * are pulled from a RowSource one block at a time and the fitness of each
+ * individual is accumulated as the blocks go by, so memory use depends on
+ * the block size and not on the number of rows.
+ *
+ * When a population is evaluated as a whole, every individual is scored
+ * against each block before the next one is read, so the data is read at
+ * most once per generation.  Optionally only a mini-batch of blocks is
+ * scored per generation.  Successive mini-batches rotate through the
+ * source, and their scores are scaled up to the full row count so they
+ * are comparable with a full pass.  The elites of a generation can then
+ * be re-scored exactly with rescoreElites().
+ *
+ * Fitness values are not cached on the individuals (see Fitness), since
+ * a mini-batch score is only good for the generation it was made in.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class StreamingFitness extends Fitness {
+    private RowSource source;        // where the test cases come from
+    private int       blockSize;     // rows per block
+    private int       batchBlocks;   // blocks per mini-batch, 0 for full
+    private int       blockIndex;    // index of the next block in a pass
+    private int       blocksPerPass; // blocks in a full pass, 0 if unknown
+    private long      rowCount;      // rows in a full pass, -1 if unknown
+    private long      passRows;      // rows read so far in this pass
+
+    /**
+     * Constructor.  By default every evaluation is a full pass over the
+     * source; see setBatchBlocks() to enable mini-batches.
+     *
+     * @param  source     The source of test cases.
+     * @param  blockSize  Number of rows to read at a time.
+     * @param  max        Maximum possible fitness value of a single test
+     *                    case.
+     */
+    public StreamingFitness(RowSource source, int blockSize, double max) {
+        super(null, max);
+        this.source = source;
+        this.blockSize = blockSize;
+        batchBlocks = 0;
+        blockIndex = 0;
+        blocksPerPass = 0;
+        rowCount = -1;
+        passRows = 0;
+    }
+
+    /**
+     * Set the number of blocks scored per call to evaluate(Vector).  Each
+     * call continues from where the previous one stopped, wrapping around
+     * at the end of the source, so over several generations every row
+     * is used.  Zero (the default) means every call is a full pass.
+     *
+     * @param  n   Blocks per mini-batch.
+     */
+    public void setBatchBlocks(int n) {
+        batchBlocks = (n < 0) ? 0 : n;
+    }
+
+    /**
+     * Get the number of blocks scored per call to evaluate(Vector).
+     *
+     * @return   Blocks per mini-batch, 0 for full passes.
+     */
+    public int getBatchBlocks() {
+        return batchBlocks;
+    }
+
+    /**
+     * Return the number of rows in the source.  If no full pass has been
+     * made yet, the source is read once (without evaluating anything) to
+     * count them.
+     *
+     * @return   The number of rows in a full pass.
+     */
+    public long getRowCount() throws Exception {
+        if (rowCount < 0) {
+            scan(new ExpressionNode[0][], new MetricAccumulator[0], true);
+        }
+        return rowCount;
+    }
+
+    /**
+     * Evaluate a single individual with a full pass over the source.
+     * Errors reading the source are reported and yield the lowest
+     * possible fitness.
+     *
+     * @param  ind   The individual to evaluate.
+     * @return       The fitness of the individual.
+     */
+    public double evaluate(Individual ind) {
+        try {
+            return rescore(ind);
+        } catch (Exception e) {
+            System.err.println("EXCEPTION (evaluate) :: "+e.toString());
+        }
+        return -Double.MAX_VALUE;
+    }
+
+    /**
+     * Evaluate a single individual against a cutoff with a full pass over
+     * the source.  After each row the metric is asked for an upper bound
+     * on the final fitness given the rows still to come (see
+     * Fitness.evaluate(Individual, double)); the bound only depends on
+     * how many rows remain, not on which, so it holds whatever block the
+     * pass starts at.  Once the bound falls below the cutoff the
+     * individual is no longer evaluated, and the bound is returned.  The
+     * rest of the pass is still read, so the source is left where it
+     * started.  Errors reading the source are reported and yield the
+     * lowest possible fitness.
+     *
+     * @param  ind      The individual to evaluate.
+     * @param  cutoff   Fitness the individual has to reach to matter.
+     * @return          The exact fitness, or an upper bound on it if the
+     *                  individual falls below the cutoff.
+     */
+    public Score evaluate(Individual ind, double cutoff) {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        try {
+            ExpressionNode roots[][] = { ind.express() };
+            MetricAccumulator acc[] = newAccumulators(1);
+            double bound[] = { cutoff };
+
+            getRowCount();
+            scan(roots, acc, true, bound);
+
+            if (bound[0] < cutoff) {
+                return new Score(bound[0], true);
+            }
+            return new Score(fitness(acc[0]), false);
+        } catch (Exception e) {
+            System.err.println("EXCEPTION (evaluate) :: "+e.toString());
+        } finally {
+            Metrics.endEvaluation(t, 1);
+        }
+        return new Score(-Double.MAX_VALUE, false);
+    }
+
+    /**
+     * Evaluate a single individual exactly, with a full pass over the
+     * source.  Any mini-batch in progress is not disturbed.
+     *
+     * @param  ind   The individual to evaluate.
+     * @return       The exact fitness of the individual.
+     */
+    public double rescore(Individual ind) throws Exception {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        try {
+            ExpressionNode roots[][] = { ind.express() };
+            MetricAccumulator acc[] = newAccumulators(1);
+
+            scan(roots, acc, true);
+
+            return fitness(acc[0]);
+        } finally {
+            Metrics.endEvaluation(t, 1);
+        }
+    }
+
+    /**
+     * Evaluate a vector of individuals (usually a whole population) on
+     * the next mini-batch, or on the full source if mini-batches are
+     * disabled.  Each individual is expressed once and every block is
+     * read once for all of them.
+     *
+     * @param  individuals   Vector of individuals.
+     * @return               The fitness of each individual, in order.
+     *                       Mini-batch fitnesses are estimates scaled to
+     *                       the full row count.
+     */
+    public double[] evaluate(Vector individuals) throws Exception {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        FitnessBatchEvent ev = FitnessBatchEvent.start();
+        long rows = 0;
+        try {
+            int n = individuals.size();
+            ExpressionNode roots[][] = new ExpressionNode[n][];
+            MetricAccumulator acc[] = newAccumulators(n);
+            double fvals[] = new double[n];
+
+            for (int i = 0; i < n; i++) {
+                roots[i] = ((Individual)individuals.elementAt(i)).express();
+            }
+
+            if (batchBlocks == 0) {
+                rows = scan(roots, acc, true);
+            } else {
+                // make sure we know how far to scale the batch up
+                long total = getRowCount();
+                rows = scan(roots, acc, false);
+
+                if (rows > 0 && rows < total) {
+                    double scale = (double)total / (double)rows;
+                    for (int i = 0; i < n; i++) {
+                        if (acc[i] != null) {
+                            acc[i].scale(scale);
+                        }
+                    }
+                }
+            }
+
+            for (int i = 0; i < n; i++) {
+                fvals[i] = fitness(acc[i]);
+            }
+
+            return fvals;
+        } finally {
+            Metrics.endEvaluation(t, individuals.size());
+            ev.finish(this, individuals.size(), rows);
+        }
+    }
+
+    /**
+     * Evaluate a vector of individuals with evaluate(Vector).  Errors
+     * reading the source are reported and yield the lowest possible
+     * fitness for everyone.
+     *
+     * @param  individuals   The individuals.
+     * @return               The fitness of each individual, in order.
+     */
+    public double[] evaluateAll(Vector individuals) {
+        try {
+            return evaluate(individuals);
+        } catch (Exception e) {
+            System.err.println("EXCEPTION (evaluateAll) :: "+e.toString());
+        }
+        double fvals[] = new double[individuals.size()];
+        java.util.Arrays.fill(fvals, -Double.MAX_VALUE);
+        return fvals;
+    }
+
+    /**
+     * Replace the estimated scores of the k best individuals with their
+     * exact fitness.  All k are re-scored together in a single full pass.
+     * Call this after evaluate(Vector) when mini-batches are enabled, so
+     * that elitism works on exact values.
+     *
+     * @param  individuals   Vector of individuals.
+     * @param  scores        Scores from evaluate(Vector), updated in place.
+     * @param  k             Number of elites to re-score.
+     */
+    public void rescoreElites(Vector individuals, double scores[], int k)
+        throws Exception {
+        k = Math.min(k, scores.length);
+        if (k <= 0) {
+            return;
+        }
+
+        //
+        // pick the k best by partial selection - k is expected to be
+        // tiny compared with the population.
+        //
+        int elite[] = new int[k];
+        boolean taken[] = new boolean[scores.length];
+        for (int e = 0; e < k; e++) {
+            int best = -1;
+            for (int i = 0; i < scores.length; i++) {
+                if (!taken[i] && (best < 0 || scores[i] > scores[best])) {
+                    best = i;
+                }
+            }
+            taken[best] = true;
+            elite[e] = best;
+        }
+
+        ExpressionNode roots[][] = new ExpressionNode[k][];
+        MetricAccumulator acc[] = newAccumulators(k);
+        for (int e = 0; e < k; e++) {
+            roots[e] = ((Individual)individuals.elementAt(elite[e])).express();
+        }
+
+        scan(roots, acc, true);
+
+        for (int e = 0; e < k; e++) {
+            scores[elite[e]] = fitness(acc[e]);
+        }
+    }
+
+    /**
+     * Read blocks from the current position, wrapping at the end of the
+     * source, and accumulate every row into acc for every
+     * expressed individual.  A full scan reads each block exactly once
+     * and leaves the source positioned where it started, so mini-batch
+     * rotation carries on undisturbed.
+     *
+     * @param  roots     Expressed individuals.
+     * @param  acc       Accumulators, one per individual.  Individuals
+     *                   that fail under PENALTY_PER_INDIVIDUAL have their
+     *                   accumulator replaced by null.
+     * @param  fullPass  Read every block, rather than one mini-batch.
+     * @return           Number of rows read.
+     */
+    private long scan(ExpressionNode roots[][], MetricAccumulator acc[],
+                      boolean fullPass) throws Exception {
+        return scan(roots, acc, fullPass, null);
+    }
+
+    /**
+     * Scan as above, but stop evaluating an individual once the metric's
+     * bound on its final fitness falls below its cutoff.  Only for full
+     * passes, with the row count known.
+     *
+     * @param  cutoff   Cutoff of each individual, or null.  The entry of
+     *                  an individual that was stopped is replaced by its
+     *                  bound.
+     */
+    private long scan(ExpressionNode roots[][], MetricAccumulator acc[],
+                      boolean fullPass, double cutoff[]) throws Exception {
+        boolean stopped[] = new boolean[roots.length];
+        int start = blockIndex;
+        int read = 0;
+        long rows = 0;
+        boolean wrapped = false;
+
+        while (true) {
+            if (fullPass) {
+                if (wrapped && blockIndex == start) break;
+            } else {
+                int limit = batchBlocks;
+                if (blocksPerPass > 0 && blocksPerPass < limit) {
+                    limit = blocksPerPass;
+                }
+                if (read >= limit) break;
+            }
+
+            Vector block = source.nextBlock(blockSize);
+
+            if (block == null) {
+                // end of the source - remember its size, and go around.
+                if (blockIndex == 0) break; // empty source
+                blocksPerPass = blockIndex;
+                rowCount = passRows;
+                source.rewind();
+                blockIndex = 0;
+                passRows = 0;
+                wrapped = true;
+                continue;
+            }
+
+            for (int r = 0; r < block.size(); r++) {
+                Hashtable vals = (Hashtable)block.elementAt(r);
+                for (int i = 0; i < roots.length; i++) {
+                    if (acc[i] == null || stopped[i]) {
+                        continue;
+                    }
+                    if (!accumulate(roots[i], vals, acc[i])) {
+                        acc[i] = null;
+                        continue;
+                    }
+                    if (cutoff != null) {
+                        long remaining = rowCount - (rows + r + 1);
+                        if (remaining > 0) {
+                            double b = getMetric().bound(acc[i], remaining);
+                            if (b < cutoff[i]) {
+                                cutoff[i] = b;
+                                stopped[i] = true;
+                            }
+                        }
+                    }
+                }
+            }
+
+            blockIndex++;
+            read++;
+            rows += block.size();
+            passRows += block.size();
+        }
+
+        return rows;
+    }
+
+    private MetricAccumulator[] newAccumulators(int n) {
+        MetricAccumulator acc[] = new MetricAccumulator[n];
+        for (int i = 0; i < n; i++) {
+            acc[i] = getMetric().newAccumulator();
+        }
+        return acc;
+    }
+}
@@ -0,0 +1,409 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Evaluates a whole population at once, computing each distinct subtree
+ * only once.  The expression trees of all individuals are hash-consed
+ * into a single directed acyclic graph, in which structurally identical
+ * subtrees share one node.  Each node is then evaluated over every test
+ * case in one go, producing a column of outputs from the columns of its
+ * children, and each root column is scored by the Fitness.
+ *
+ * Columns are released as soon as their last parent has been computed,
+ * so only the frontier of the graph is held in memory.  Columns of
+ * subtrees that were shared, and of whole trees, are also offered to a
+ * cache that survives from one generation to the next, since converged
+ * populations keep producing the same subtrees.  The cache holds at most
+ * a given number of bytes and evicts the least recently used columns
+ * first.  The cache is consulted from the roots down before anything is
+ * computed, so the subtrees below a cached column are not evaluated
+ * unless some other parent needs them.
+ *
+ * Only arithmetic individuals whose trees implement SymbolNode are
+ * evaluated this way; any others are passed to Fitness.score().
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class SubtreeEvaluator {
+    private DataTable     data;     // test cases, by column
+    private long          budget;   // bytes of columns to keep cached
+    private long          cached;   // bytes currently cached
+    private LinkedHashMap cache;    // subtree key -> double[], LRU order
+    private long          hits;     // subtree columns found in the cache
+    private long          misses;   // subtree columns computed
+    private boolean       counted;  // report hits and misses to Metrics
+    private double        missing[]; // column of a variable not in data
+
+    /**
+     * Constructor.
+     *
+     * @param  data     The test cases.
+     * @param  budget   Largest number of bytes of subtree columns kept
+     *                  between generations.
+     */
+    public SubtreeEvaluator(DataTable data, long budget) {
+        this.data = data;
+        this.budget = budget;
+        cached = 0;
+        cache = new LinkedHashMap(16, 0.75f, true);
+        counted = true;
+        missing = new double[data.getRows()];
+        java.util.Arrays.fill(missing, Double.NaN);
+    }
+
+    /**
+     * Set the cache budget, evicting columns if it has shrunk.
+     *
+     * @param  bytes   Largest number of bytes kept between generations.
+     */
+    public void setBudget(long bytes) {
+        budget = bytes;
+        evict();
+    }
+
+    /**
+     * Set whether hits and misses are also counted in Metrics, as they
+     * are by default.  Turn this off for throwaway evaluators, so that
+     * they do not skew the hit rate reported for the real one.
+     *
+     * @param  b   True to count them in Metrics.
+     */
+    public void setCounted(boolean b) {
+        counted = b;
+    }
+
+    /**
+     * Number of subtree columns that were found in the cache.
+     *
+     * @return   The number of hits since the evaluator was created.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of subtree columns that had to be computed.
+     *
+     * @return   The number of misses since the evaluator was created.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Empty the cache.
+     */
+    public void clear() {
+        cache.clear();
+        cached = 0;
+    }
+
+    /**
+     * Evaluate a vector of individuals.
+     *
+     * @param  individuals   The individuals.
+     * @param  fitness       Scores root columns, and evaluates any
+     *                       individuals that cannot be hash-consed.
+     * @return               The fitness of each individual, in order.
+     */
+    public double[] evaluate(Vector individuals, Fitness fitness) {
+        int n = individuals.size();
+        double fvals[] = new double[n];
+        Node roots[] = new Node[n];
+        Hashtable nodes = new Hashtable();
+        Vector order = new Vector();
+
+        //
+        // build the graph.  nodes are appended to order after their
+        // children, so order is a valid evaluation order.
+        //
+        for (int i = 0; i < n; i++) {
+            Individual ind = (Individual)individuals.elementAt(i);
+            ExpressionNode e = ind.express()[0];
+
+            if (ind instanceof ArithmeticIndividual && 
+                e instanceof SymbolNode) {
+                roots[i] = intern((SymbolNode)e, (ArithmeticIndividual)ind,
+                                  nodes, order);
+                roots[i].root = true;
+            } else {
+                fvals[i] = fitness.score(ind);
+            }
+        }
+
+        //
+        // find the nodes that have to be computed, parents first: a
+        // node is needed by a root or by a parent that was not in the
+        // cache.  cached columns are looked up here, so that the
+        // subtrees below them are left alone.
+        //
+        for (int k = order.size() - 1; k >= 0; k--) {
+            Node node = (Node)order.elementAt(k);
+
+            if (!node.root && node.remaining == 0) {
+                continue;
+            }
+            node.needed = true;
+            if (node.kids == null) {
+                continue;
+            }
+            node.col = (double[])cache.get(node.key);
+            if (node.col != null) {
+                hits++;
+                if (counted) {
+                    Metrics.count(Metrics.SUBTREE_HITS);
+                }
+                continue;
+            }
+            for (int j = 0; j < node.kids.length; j++) {
+                node.kids[j].remaining++;
+            }
+        }
+
+        //
+        // evaluate the needed nodes, children first
+        //
+        for (int k = 0; k < order.size(); k++) {
+            Node node = (Node)order.elementAt(k);
+
+            if (!node.needed) {
+                continue;
+            }
+            if (node.constant) {
+                node.col = new double[data.getRows()];
+                java.util.Arrays.fill(node.col, node.value);
+            } else if (node.kids == null) {
+                int c = data.getColumnIndex(node.name);
+                node.col = (c < 0) ? missing : data.getColumn(c);
+            } else if (node.col == null) {
+                misses++;
+                if (counted) {
+                    Metrics.count(Metrics.SUBTREE_MISSES);
+                }
+                node.col = compute(node);
+                if (node.root || node.uses > 1) {
+                    store(node.key, node.col);
+                }
+
+                // children no longer needed by anyone can go.
+                for (int j = 0; j < node.kids.length; j++) {
+                    if (--node.kids[j].remaining == 0) {
+                        node.kids[j].col = null;
+                    }
+                }
+            }
+
+            if (node.root) {
+                node.fitness = fitness.evaluateColumn(node.col, 
+                                                      data.getExpected());
+                if (node.remaining == 0) {
+                    node.col = null;
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (roots[i] != null) {
+                fvals[i] = roots[i].fitness;
+            }
+        }
+
+        return fvals;
+    }
+
+    /**
+     * Find or create the graph node for a subtree.  The key of a node is
+     * its symbol followed by the keys of its children, which identifies
+     * the subtree uniquely.  Division also records the division
+     * semantics of the individual, since they change its value.
+     */
+    private Node intern(SymbolNode e, ArithmeticIndividual ind, 
+                        Hashtable nodes, Vector order) {
+        char c = e.getSymbol();
+        int arity = e.getArity();
+
+        if (arity == 0) {
+            String key = String.valueOf(c);
+            if (e instanceof ConstantNode) {
+                double v = ((ConstantNode)e).getValue();
+                key = "#" + Long.toHexString(Double.doubleToLongBits(v));
+            }
+            Node node = (Node)nodes.get(key);
+            if (node == null) {
+                node = new Node(key, c, null);
+                node.name = ind.getGenome().getSymbolName(c);
+                if (e instanceof ConstantNode) {
+                    node.constant = true;
+                    node.value = ((ConstantNode)e).getValue();
+                }
+                nodes.put(key, node);
+                order.addElement(node);
+            }
+            return node;
+        }
+
+        Node kids[] = new Node[arity];
+        StringBuffer sb = new StringBuffer();
+        sb.append(c);
+        if (c == '/') {
+            sb.append(ind.getDivision());
+        }
+        sb.append('(');
+        for (int i = 0; i < arity; i++) {
+            kids[i] = intern(e.getChild(i), ind, nodes, order);
+            if (i > 0) sb.append(',');
+            sb.append(kids[i].key);
+        }
+        sb.append(')');
+
+        String key = sb.toString();
+        Node node = (Node)nodes.get(key);
+        if (node == null) {
+            node = new Node(key, c, kids);
+            node.div = ind.getDivision();
+            FunctionSet fs = ind.getGenome().getFunctionSet();
+            if (fs != null && !(arity == 2 && isBuiltin(c))) {
+                node.fn = fs.get(c);
+            }
+            for (int i = 0; i < arity; i++) {
+                kids[i].uses++;
+            }
+            nodes.put(key, node);
+            order.addElement(node);
+        }
+        return node;
+    }
+
+    private static boolean isBuiltin(char c) {
+        return c == '+' || c == '-' || c == '*' || c == '/';
+    }
+
+    /**
+     * Compute the output column of a function node from the columns of
+     * its children.
+     */
+    private double[] compute(Node node) {
+        int rows = data.getRows();
+        double out[] = new double[rows];
+
+        if (node.fn != null) {
+            double args[][] = new double[node.kids.length][];
+            for (int j = 0; j < args.length; j++) {
+                args[j] = node.kids[j].col;
+            }
+            node.fn.applyColumns(args, out, rows);
+            return out;
+        }
+
+        if (node.kids.length != 2) {
+            java.util.Arrays.fill(out, Double.NaN);
+            return out;
+        }
+
+        double a[] = node.kids[0].col;
+        double b[] = node.kids[1].col;
+
+        switch (node.sym) {
+        case '+':
+            for (int r = 0; r < rows; r++) out[r] = a[r] + b[r];
+            break;
+        case '-':
+            for (int r = 0; r < rows; r++) out[r] = a[r] - b[r];
+            break;
+        case '*':
+            for (int r = 0; r < rows; r++) out[r] = a[r] * b[r];
+            break;
+        case '/':
+            for (int r = 0; r < rows; r++) {
+                if (b[r] == 0.0 && 
+                    node.div != ArithmeticIndividual.DIVISION_IEEE) {
+                    out[r] = 
+                        (node.div == ArithmeticIndividual.DIVISION_PROTECTED)
+                        ? 1.0 : Double.NaN;
+                } else {
+                    out[r] = a[r] / b[r];
+                }
+            }
+            break;
+        default:
+            java.util.Arrays.fill(out, Double.NaN);
+        }
+
+        return out;
+    }
+
+    /**
+     * Offer a column to the cache, evicting older columns to make room.
+     */
+    private void store(String key, double col[]) {
+        long size = 8L * col.length;
+
+        if (size > budget) {
+            return;
+        }
+        if (cache.put(key, col) == null) {
+            cached += size;
+        }
+        evict();
+    }
+
+    private void evict() {
+        Iterator it = cache.entrySet().iterator();
+
+        while (cached > budget && it.hasNext()) {
+            Map.Entry e = (Map.Entry)it.next();
+            cached -= 8L * ((double[])e.getValue()).length;
+            it.remove();
+        }
+    }
+
+    /**
+     * A node of the hash-consed graph.
+     */
+    private static class Node {
+        String   key;       // canonical form of the subtree
+        char     sym;       // symbol
+        String   name;      // column name, for terminals
+        Node     kids[];    // children, null for terminals
+        Function fn;        // implementation of a registered function
+        int      div;       // division semantics, for '/'
+        int      uses;      // number of distinct parents
+        int      remaining; // parents to compute, not yet computed
+        boolean  needed;    // computed or looked up this generation
+        boolean  root;      // some individual's tree is this subtree
+        double   col[];     // output column, while it is needed
+        double   fitness;   // fitness, for roots
+        boolean  constant;  // leaf holding a random constant
+        double   value;     // value of a constant
+
+        Node(String key, char sym, Node kids[]) {
+            this.key = key;
+            this.sym = sym;
+            this.kids = kids;
+        }
+    }
+}
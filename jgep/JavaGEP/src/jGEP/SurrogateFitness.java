@@ -0,0 +1,410 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Hashtable;
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * Fitness harness that screens new individuals on a small sample of the
+ * test cases before paying for an exact evaluation.  Most offspring are
+ * worse than their parents, and a sample is usually enough to tell.
+ *
+ * On every call, evaluateAll() draws a stratified sample: the test cases
+ * are sorted by expected value, cut into equal strata, and one case is
+ * drawn from each.  Individuals without a cached fitness are scored on
+ * the sample, and the best fraction of them by that score is evaluated
+ * exactly.  The rest are rejected.  A rejected individual gets an
+ * estimate of its fitness instead: the sample score mapped through a
+ * least squares line fitted to the exactly evaluated individuals of the
+ * same call, and capped below the worst of them so that no rejected
+ * individual outranks an accepted one.  Estimates are not cached, and
+ * neither are sample scores; screening does not count as evaluations or
+ * as subtree cache hits and misses in Metrics.
+ *
+ * A few rejected individuals, chosen at random, are evaluated exactly
+ * as well.  A rejection was false if the individual's fitness reached
+ * the reference, a quantile (the median by default) of the fitness of
+ * the individuals that already had one, which are normally the parents
+ * carried over from the previous generation.  The fraction accepted is
+ * raised while the false reject rate is above its target and slowly
+ * lowered otherwise.  The counts go to Metrics.
+ *
+ * evaluate(Individual) is always exact.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class SurrogateFitness extends Fitness {
+    private Random  random;
+    private int     sampleSize;  // strata in the sample
+    private double  keep;        // fraction accepted
+    private double  minKeep;
+    private double  target;      // target false reject rate
+    private double  auditRate;   // fraction of rejects evaluated anyway
+    private double  quantile;    // of the reference fitness
+    private double  falseRate;   // moving average over audits
+    private double  reference;   // from the last call, NaN if none
+    private Vector  sorted;      // test values order was computed for
+    private int     order[];     // test cases by expected value
+
+    /**
+     * Constructor.
+     *
+     * @param  tests   Vector of test value sets, as for Fitness.
+     * @param  max     Maximum possible fitness value.
+     * @param  r       Random numbers for samples and audits.
+     */
+    public SurrogateFitness(Vector tests, double max, Random r) {
+        super(tests, max);
+        random = r;
+        sampleSize = 32;
+        keep = 0.5;
+        minKeep = 0.1;
+        target = 0.05;
+        auditRate = 0.05;
+        quantile = 0.5;
+        falseRate = 0.0;
+        reference = Double.NaN;
+    }
+
+    /**
+     * Set the number of test cases in a sample.  The default is 32.
+     *
+     * @param  n   The sample size.
+     */
+    public void setSampleSize(int n) {
+        sampleSize = (n < 1) ? 1 : n;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Set the false reject rate the fraction accepted is adapted to.
+     * The default is 0.05.
+     *
+     * @param  rate   The target rate.
+     */
+    public void setTargetFalseRejectRate(double rate) {
+        target = rate;
+    }
+
+    public double getTargetFalseRejectRate() {
+        return target;
+    }
+
+    /**
+     * Set the fraction of rejected individuals evaluated exactly to
+     * measure the false reject rate.  The default is 0.05.
+     *
+     * @param  rate   The audit rate.
+     */
+    public void setAuditRate(double rate) {
+        auditRate = rate;
+    }
+
+    public double getAuditRate() {
+        return auditRate;
+    }
+
+    /**
+     * Set the lowest fraction of new individuals that is accepted.  The
+     * default is 0.1.
+     *
+     * @param  f   The fraction.
+     */
+    public void setMinimumKeep(double f) {
+        minKeep = f;
+        keep = Math.max(keep, f);
+    }
+
+    /**
+     * Set the quantile of the known fitness values that a rejected
+     * individual must reach for the rejection to count as false.  The
+     * default is 0.5.
+     *
+     * @param  q   The quantile, between 0 and 1.
+     */
+    public void setReferenceQuantile(double q) {
+        quantile = q;
+    }
+
+    /**
+     * Return the fraction of new individuals currently accepted.
+     *
+     * @return   The fraction.
+     */
+    public double getKeepFraction() {
+        return keep;
+    }
+
+    /**
+     * Return the moving average of the false reject rate.
+     *
+     * @return   The rate.
+     */
+    public double getFalseRejectRate() {
+        return falseRate;
+    }
+
+    /**
+     * Evaluate a vector of individuals, screening those without a cached
+     * fitness on a sample first.  The values of rejected individuals are
+     * estimates.
+     *
+     * @param  individuals   The individuals.
+     * @return               The fitness of each individual, in order.
+     */
+    public double[] evaluateAll(Vector individuals) {
+        Object key = getCacheKey();
+        double fvals[] = new double[individuals.size()];
+        Vector known = new Vector();
+        Vector todo = new Vector();
+        int index[] = new int[fvals.length];
+
+        for (int i = 0; i < fvals.length; i++) {
+            Individual ind = (Individual)individuals.elementAt(i);
+            Double f = ind.getFitness(key);
+            if (f != null) {
+                fvals[i] = f.doubleValue();
+                known.addElement(f);
+            } else {
+                index[todo.size()] = i;
+                todo.addElement(ind);
+            }
+        }
+
+        double ref = (known.size() > 0) ? quantile(known) : reference;
+        if (todo.size() < 2 || Double.isNaN(ref) ||
+            testValues.size() <= sampleSize || !arithmetic(todo)) {
+            // nothing to compare against yet, or nothing to gain
+            double exact[] = super.evaluateAll(individuals);
+            reference = quantile(exact);
+            return exact;
+        }
+
+        //
+        // screen on the sample
+        //
+        double s[] = screen(todo);
+        for (int j = 0; j < s.length; j++) {
+            if (Double.isNaN(s[j])) {
+                s[j] = -Double.MAX_VALUE;
+            }
+        }
+        double sorted[] = s.clone();
+        java.util.Arrays.sort(sorted);
+        int accepts = (int)Math.ceil(keep * s.length);
+        double cutoff = sorted[s.length - accepts];
+
+        Vector exact = new Vector();
+        boolean accepted[] = new boolean[s.length];
+        boolean audited[] = new boolean[s.length];
+        for (int j = 0; j < s.length; j++) {
+            accepted[j] = s[j] >= cutoff;
+            audited[j] = !accepted[j] && random.nextDouble() < auditRate;
+            if (accepted[j] || audited[j]) {
+                exact.addElement(todo.elementAt(j));
+            }
+        }
+        double f[] = super.evaluateAll(exact);
+
+        //
+        // fit exact fitness against the sample score, and check the
+        // audited rejects
+        //
+        double sx = 0, sy = 0, sxx = 0, sxy = 0, worst = Double.MAX_VALUE;
+        int n = 0, falses = 0, trues = 0, rejects = 0;
+        for (int j = 0, k = 0; j < s.length; j++) {
+            if (!accepted[j]) {
+                rejects++;
+            }
+            if (!accepted[j] && !audited[j]) {
+                continue;
+            }
+            double v = f[k++];
+            fvals[index[j]] = v;
+            known.addElement(new Double(v));
+            if (accepted[j]) {
+                worst = Math.min(worst, v);
+            } else if (v >= ref) {
+                falses++;
+            } else {
+                trues++;
+            }
+            if (s[j] != -Double.MAX_VALUE && v != getInvalidFitness()) {
+                sx += s[j];
+                sy += v;
+                sxx += s[j] * s[j];
+                sxy += s[j] * v;
+                n++;
+            }
+        }
+        double b = (n > 1) ? (n*sxy - sx*sy) / (n*sxx - sx*sx) : 0.0;
+        double a = (n > 0) ? (sy - b*sx) / n : worst;
+        if (Double.isNaN(b) || Double.isInfinite(b)) {
+            b = 0.0;
+            a = (n > 0) ? sy / n : worst;
+        }
+        double cap = Math.nextAfter(worst, Double.NEGATIVE_INFINITY);
+        for (int j = 0; j < s.length; j++) {
+            if (!accepted[j] && !audited[j]) {
+                double e = (s[j] == -Double.MAX_VALUE)
+                    ? getInvalidFitness() : Math.min(a + b*s[j], cap);
+                fvals[index[j]] = Double.isNaN(e) ? getInvalidFitness() : e;
+            }
+        }
+
+        //
+        // adapt the fraction accepted
+        //
+        for (int j = 0; j < falses + trues; j++) {
+            falseRate = 0.95*falseRate + ((j < falses) ? 0.05 : 0.0);
+        }
+        if (falses + trues > 0) {
+            if (falseRate > target) {
+                keep = Math.min(1.0, keep * 1.25);
+            } else {
+                keep = Math.max(minKeep, keep * 0.95);
+            }
+        }
+        reference = quantile(known);
+
+        Metrics.count(Metrics.SURROGATE_ACCEPTS, s.length - rejects);
+        Metrics.count(Metrics.SURROGATE_REJECTS, rejects);
+        Metrics.count(Metrics.SURROGATE_FALSE, falses);
+        Metrics.count(Metrics.SURROGATE_TRUE, trues);
+        return fvals;
+    }
+
+    /**
+     * Score individuals on a stratified sample of the test cases.  The
+     * sample is evaluated directly, so nothing is cached on the
+     * individuals and the screening counts neither as evaluations nor
+     * as subtree cache hits and misses; its time counts towards the
+     * evaluation phase.
+     */
+    private double[] screen(Vector todo) {
+        long t = Metrics.start();
+        try {
+            Vector v = sample();
+            Fitness f = new Fitness(v, getMaxFitness());
+            f.setMetric(getMetric());
+            f.setInvalidValue(getInvalidValue());
+            f.setPenaltyMode(getPenaltyMode());
+            f.setInvalidFitness(getInvalidFitness());
+            SubtreeEvaluator se = 
+                new SubtreeEvaluator(DataTable.fromRows(v), 0);
+            se.setCounted(false);
+            return se.evaluate(todo, f);
+        } finally {
+            Metrics.stop(Metrics.EVALUATE, t);
+        }
+    }
+
+    /**
+     * Whether every individual can be screened by SubtreeEvaluator
+     * without falling back to Fitness.score().
+     */
+    private static boolean arithmetic(Vector individuals) {
+        for (int i = 0; i < individuals.size(); i++) {
+            if (!(individuals.elementAt(i) instanceof ArithmeticIndividual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A stratified sample of the test cases.
+     */
+    private Vector sample() {
+        int n = testValues.size();
+
+        if (sorted != testValues || order.length != n) {
+            order = order(testValues);
+            sorted = testValues;
+        }
+
+        Vector v = new Vector();
+        for (int k = 0; k < sampleSize; k++) {
+            int lo = (int)((long)k * n / sampleSize);
+            int hi = (int)((long)(k + 1) * n / sampleSize);
+            int i = order[lo + random.nextInt(hi - lo)];
+            v.addElement(testValues.elementAt(i));
+        }
+        return v;
+    }
+
+    /**
+     * Indices of test cases, sorted by expected value.
+     */
+    private static int[] order(Vector tests) {
+        int n = tests.size();
+        final double e[] = new double[n];
+        Integer o[] = new Integer[n];
+
+        for (int i = 0; i < n; i++) {
+            Hashtable h = (Hashtable)tests.elementAt(i);
+            e[i] = ((Double)h.get("Expected")).doubleValue();
+            o[i] = new Integer(i);
+        }
+        java.util.Arrays.sort(o, new java.util.Comparator() {
+                public int compare(Object x, Object y) {
+                    return Double.compare(e[((Integer)x).intValue()],
+                                          e[((Integer)y).intValue()]);
+                }
+            });
+
+        int order[] = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = o[i].intValue();
+        }
+        return order;
+    }
+
+    /**
+     * The reference quantile of some fitness values, ignoring NaNs.
+     */
+    private double quantile(Vector values) {
+        double v[] = new double[values.size()];
+        for (int i = 0; i < v.length; i++) {
+            v[i] = ((Double)values.elementAt(i)).doubleValue();
+        }
+        return quantile(v);
+    }
+
+    private double quantile(double values[]) {
+        double v[] = values.clone();
+        int n = 0;
+        for (int i = 0; i < v.length; i++) {
+            if (!Double.isNaN(v[i])) {
+                v[n++] = v[i];
+            }
+        }
+        if (n == 0) {
+            return Double.NaN;
+        }
+        java.util.Arrays.sort(v, 0, n);
+        return v[(int)Math.min(n - 1, Math.floor(quantile * n))];
+    }
+}
@@ -0,0 +1,52 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+/**
+ * Interface for expression nodes that expose their structure: the
+ * symbol of the chromosome they were expressed from and their children.
+ * Evaluators and code generators that need to walk a tree, rather than
+ * just evaluate it, use this interface.
+ *
+ * @author   Matthew Sottile
+ * @version  1.0
+ */
+public interface SymbolNode extends ExpressionNode {
+    /**
+     * The chromosome symbol of this node.
+     *
+     * @return   A function or terminal character.
+     */
+    public char getSymbol();
+
+    /**
+     * The number of children, which is 0 for a terminal.
+     *
+     * @return   The arity of the node.
+     */
+    public int getArity();
+
+    /**
+     * Return a child.
+     *
+     * @param  i   Index of the child, 0 <= i < getArity().
+     * @return     The child.
+     */
+    public SymbolNode getChild(int i);
+}
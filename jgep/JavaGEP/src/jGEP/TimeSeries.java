@@ -0,0 +1,141 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Hashtable;
+
+/**
+ * A set of time series observed together, stored as one column per
+ * series.  Observations are appended one time step at a time; the
+ * columns grow by doubling, and values already appended never change,
+ * so evaluators can read them in place while the series grows.
+ *
+ * Appending is not synchronized with readers.  Append between
+ * evaluations, not during one.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class TimeSeries {
+    private String    names[];    // series names
+    private double    columns[][]; // [series][time], may have spare room
+    private int       length;     // number of time steps observed
+    private Hashtable index;      // name -> Integer series index
+
+    /**
+     * Constructor for empty series.
+     *
+     * @param  names   Name of each series.
+     */
+    public TimeSeries(String names[]) {
+        this(names, new double[names.length][0]);
+    }
+
+    /**
+     * Constructor.  The columns are used as they are, not copied, until
+     * an append needs more room.
+     *
+     * @param  names     Name of each series.
+     * @param  columns   Observations of each series, all the same length.
+     */
+    public TimeSeries(String names[], double columns[][]) {
+        this.names = names;
+        this.columns = columns;
+        length = (columns.length > 0) ? columns[0].length : 0;
+        index = new Hashtable();
+        for (int i = 0; i < names.length; i++) {
+            index.put(names[i], new Integer(i));
+        }
+    }
+
+    /**
+     * Append the observations of one time step.
+     *
+     * @param  obs   The value of each series, in order.
+     */
+    public void append(double obs[]) throws Exception {
+        if (obs.length != names.length) {
+            throw new Exception("Expected "+names.length+
+                                " observations, got "+obs.length);
+        }
+        if (columns.length > 0 && length == columns[0].length) {
+            int room = Math.max(16, 2*length);
+            for (int s = 0; s < columns.length; s++) {
+                double c[] = new double[room];
+                System.arraycopy(columns[s], 0, c, 0, length);
+                columns[s] = c;
+            }
+        }
+        for (int s = 0; s < obs.length; s++) {
+            columns[s][length] = obs[s];
+        }
+        length++;
+    }
+
+    /**
+     * Return the number of time steps observed.
+     *
+     * @return   The length of every series.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    public int getNumSeries() {
+        return names.length;
+    }
+
+    public String getName(int s) {
+        return names[s];
+    }
+
+    /**
+     * Return the index of a named series.
+     *
+     * @param  name   The series name.
+     * @return        The index, or -1 if there is no such series.
+     */
+    public int getIndex(String name) {
+        Integer i = (Integer)index.get(name);
+        return (i == null) ? -1 : i.intValue();
+    }
+
+    /**
+     * Return the array holding a series.  Not a copy: only the first
+     * getLength() values are observations, and the array is replaced
+     * when the series outgrows it.
+     *
+     * @param  s   The series index.
+     * @return     The backing array.
+     */
+    public double[] getColumn(int s) {
+        return columns[s];
+    }
+
+    /**
+     * Return one observation.
+     *
+     * @param  s   The series index.
+     * @param  t   The time step.
+     * @return     The value of series s at time t.
+     */
+    public double get(int s, int t) {
+        return columns[s][t];
+    }
+}
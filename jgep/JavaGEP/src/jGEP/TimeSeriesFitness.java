@@ -0,0 +1,447 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+
+/**
+ * Fitness harness for forecasting.  The test cases are the time steps
+ * of a TimeSeries, and the expected output at time t is the value of a
+ * target series at t.  A terminal that stands for series x at lag k
+ * (see the time series constructors of Genome) is read as x[t-k]
+ * straight from the column of x: every lag of a series is a shifted view
+ * of the same array, and nothing is copied into rows.  Genomes of plain
+ * named terminals also work; each terminal is then the series of the
+ * same name at lag 0.
+ *
+ * Individuals are scored over a window of time steps.  By default the
+ * window runs from the first time step at which every lag is available
+ * to the latest observation, and grows as observations are appended.
+ * Each individual keeps the metric accumulator of what it has already
+ * been scored on, so after an append only the new time steps are
+ * evaluated.  For walk-forward validation the window can instead be set
+ * or slid explicitly, and walkForward() scores an individual on a
+ * sequence of windows.
+ *
+ * Only arithmetic individuals can be evaluated.  They are compiled to
+ * programs (see Program) where possible; expressions using functions
+ * without an opcode are evaluated a time step at a time.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class TimeSeriesFitness extends Fitness {
+    private TimeSeries data;    // the observations
+    private int        target;  // series to forecast
+    private int        from;    // first time step of the window
+    private int        to;      // end of the window, -1 for the latest
+    private volatile Layout layout; // columns and shifts of the terminals
+
+    /**
+     * Time steps evaluated at a time.
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * Constructor.
+     *
+     * @param  data     The observations.
+     * @param  target   Name of the series to forecast.
+     * @param  max      Maximum possible fitness value.
+     */
+    public TimeSeriesFitness(TimeSeries data, String target, double max)
+        throws Exception {
+        super(null, max);
+        this.data = data;
+        this.target = data.getIndex(target);
+        if (this.target < 0) {
+            throw new Exception("No series named "+target);
+        }
+        from = 0;
+        to = -1;
+    }
+
+    public TimeSeries getData() {
+        return data;
+    }
+
+    /**
+     * Append the observations of one time step.  If the window runs to
+     * the latest observation, individuals evaluated from now on are
+     * scored on the new time step as well, and only that time step is
+     * evaluated for them.
+     *
+     * @param  obs   The value of each series, in the order of the
+     *               TimeSeries.
+     */
+    public void append(double obs[]) throws Exception {
+        data.append(obs);
+        changed();
+    }
+
+    /**
+     * Set the window of time steps individuals are scored on.  Time
+     * steps before the largest lag of the genome are always skipped.
+     *
+     * @param  from   First time step.
+     * @param  to     End of the window (exclusive), or -1 for the latest
+     *                observation.
+     */
+    public void setWindow(int from, int to) {
+        this.from = Math.max(0, from);
+        this.to = to;
+        changed();
+    }
+
+    public int getWindowStart() {
+        return from;
+    }
+
+    public int getWindowEnd() {
+        return to;
+    }
+
+    /**
+     * Move the window forward, for walk-forward runs that keep evolving
+     * the same population on later data.  A window that runs to the
+     * latest observation keeps doing so.
+     *
+     * @param  n   Number of time steps to move by.
+     */
+    public void slide(int n) {
+        from += n;
+        if (to >= 0) {
+            to += n;
+        }
+        changed();
+    }
+
+    protected double score(Individual ind) {
+        long t = Metrics.begin(Metrics.EVALUATE);
+        try {
+            return fitness(accumulator(ind));
+        } catch (Exception e) {
+            System.err.println("EXCEPTION (evaluate) :: "+e.toString());
+            return getInvalidFitness();
+        } finally {
+            Metrics.endEvaluation(t, 1);
+        }
+    }
+
+    /**
+     * Evaluate against a cutoff.  Scores are built up incrementally, so
+     * there is no early termination: the score is always exact.
+     *
+     * @param  ind      The individual to evaluate.
+     * @param  cutoff   Ignored.
+     * @return          The exact fitness of the individual.
+     */
+    protected Score score(Individual ind, double cutoff) {
+        return new Score(score(ind), false);
+    }
+
+    /**
+     * Evaluate a vector of individuals one at a time, each on the time
+     * steps it has not been scored on yet.
+     *
+     * @param  individuals   The individuals.
+     * @return               The fitness of each individual, in order.
+     */
+    public double[] evaluateAll(Vector individuals) {
+        FitnessBatchEvent ev = FitnessBatchEvent.start();
+        double fvals[] = new double[individuals.size()];
+        for (int i = 0; i < fvals.length; i++) {
+            fvals[i] = evaluate((Individual)individuals.elementAt(i));
+        }
+        ev.finish(this, fvals.length, data.getLength());
+        return fvals;
+    }
+
+    public double[] getScaling(Individual ind) {
+        if (!isLinearScaling()) {
+            return null;
+        }
+        try {
+            MetricAccumulator acc = accumulator(ind);
+            return (acc == null) ? null : FitnessMetrics.getScaling(acc);
+        } catch (Exception e) {
+            System.err.println("EXCEPTION (getScaling) :: "+e.toString());
+        }
+        return null;
+    }
+
+    /**
+     * Score an individual on a sequence of windows of the given length,
+     * each starting step time steps after the previous one, from the
+     * start of the current window up to the latest observation.  The
+     * individual's incremental score is not disturbed.
+     *
+     * @param  ind      The individual.
+     * @param  length   Time steps per window.
+     * @param  step     Time steps between the starts of the windows.
+     * @return          The fitness on each window, in time order.
+     */
+    public double[] walkForward(Individual ind, int length, int step)
+        throws Exception {
+        Layout l = layout(ind.getGenome());
+        State s = compile(ind);
+        int first = Math.max(from, l.maxLag);
+        int last = data.getLength();
+        int n = (length < 1 || step < 1 || first + length > last)
+            ? 0 : (last - first - length) / step + 1;
+        double fvals[] = new double[n];
+
+        for (int w = 0; w < n; w++) {
+            int a = first + w*step;
+            MetricAccumulator acc = getMetric().newAccumulator();
+            fvals[w] = run(ind, s.program, l, a, a + length, acc)
+                ? getMetric().fitness(acc) : getInvalidFitness();
+        }
+        return fvals;
+    }
+
+    /**
+     * Forecast the target at the next time step, one past the latest
+     * observation.
+     *
+     * @param  ind   The individual.
+     * @return       The forecast, or NaN if the individual uses a value
+     *               at lag 0 (which has not been observed yet).
+     */
+    public double forecast(Individual ind) throws Exception {
+        Layout l = layout(ind.getGenome());
+        int used[] = used(ind);
+        for (int i = 0; i < used.length; i++) {
+            if (l.offsets[used[i]] == 0) {
+                return Double.NaN;
+            }
+        }
+        double out[] = new double[1];
+        output(ind, compile(ind).program, l, used, data.getLength(), 1, out);
+        return out[0];
+    }
+
+    /**
+     * Return the accumulator of an individual over the current window,
+     * bringing the one cached on the individual up to date.  The cache
+     * is kept as long as the window start, metric and penalties stay the
+     * same and the window does not shrink.
+     */
+    private MetricAccumulator accumulator(Individual ind) throws Exception {
+        Layout l = layout(ind.getGenome());
+        FitnessMetric m = getMetric();
+        int start = Math.max(from, l.maxLag);
+        int end = (to < 0) ? data.getLength() 
+            : Math.min(to, data.getLength());
+        if (end < start) {
+            end = start;
+        }
+
+        State s = compile(ind);
+        if (s.metric != m || s.start != start || s.end > end ||
+            s.penalty != getPenaltyMode() ||
+            s.invalid != getInvalidValue()) {
+            s = new State(s.program, m, getPenaltyMode(), getInvalidValue(),
+                          start, start, m.newAccumulator());
+        }
+
+        if (s.end < end) {
+            MetricAccumulator acc = null;
+            MetricAccumulator add = m.newAccumulator();
+            if (s.acc != null && run(ind, s.program, l, s.end, end, add)) {
+                acc = m.newAccumulator();
+                acc.merge(s.acc);
+                acc.merge(add);
+            }
+            s = new State(s.program, m, s.penalty, s.invalid,
+                          start, end, acc);
+            ind.setCompiled(this, s);
+        }
+        return s.acc;
+    }
+
+    /**
+     * Return the state cached on an individual, compiling it if there is
+     * none.
+     */
+    private State compile(Individual ind) throws Exception {
+        Object c = ind.getCompiled(this);
+        if (c instanceof State) {
+            return (State)c;
+        }
+        if (!(ind instanceof ArithmeticIndividual)) {
+            throw new Exception("Cannot evaluate "+ind.getClass().getName());
+        }
+        Program p = Program.compile((ArithmeticIndividual)ind);
+        return new State(p, null, 0, 0.0, 0, 0, null);
+    }
+
+    /**
+     * Score time steps a to b (exclusive) into acc.
+     *
+     * @return   False if a case failed under PENALTY_PER_INDIVIDUAL.
+     */
+    private boolean run(Individual ind, Program p, Layout l, int a, int b,
+                        MetricAccumulator acc) {
+        int used[] = (p == null) ? used(ind) : null;
+        double out[] = new double[Math.min(CHUNK, Math.max(b - a, 0))];
+        double expected[] = data.getColumn(target);
+
+        for (int t = a; t < b; t += CHUNK) {
+            int n = Math.min(CHUNK, b - t);
+            output(ind, p, l, used, t, n, out);
+            if (!accumulateColumn(out, expected, t, n, acc)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the outputs of an individual for n time steps from t.  If
+     * the individual has no program, the terminals it uses are gathered
+     * into a row for each time step.
+     */
+    private void output(Individual ind, Program p, Layout l, int used[],
+                        int t, int n, double out[]) {
+        if (p != null) {
+            p.evaluate(l.cols, l.offsets, t, n, out);
+            return;
+        }
+
+        IndexedExpressionNode root = (IndexedExpressionNode)ind.express()[0];
+        double in[] = new double[ind.getGenome().getNumTerminals()];
+        for (int r = 0; r < n; r++) {
+            for (int i = 0; i < used.length; i++) {
+                int k = used[i];
+                in[k] = l.cols[k][l.offsets[k] + t + r];
+            }
+            out[r] = root.evaluateRow(in);
+        }
+    }
+
+    /**
+     * Return the indices of the terminals an individual uses, other than
+     * random constants.
+     */
+    private static int[] used(Individual ind) {
+        Genome g = ind.getGenome();
+        boolean seen[] = new boolean[g.getNumTerminals()];
+        int n = 0;
+        Vector todo = new Vector();
+        todo.addElement(ind.express()[0]);
+
+        while (todo.size() > 0) {
+            SymbolNode e = (SymbolNode)todo.remove(todo.size() - 1);
+            if (e.getArity() == 0) {
+                int k = g.getTerminalIndex(e.getSymbol());
+                if (k >= 0 && !(e instanceof ConstantNode) && !seen[k]) {
+                    seen[k] = true;
+                    n++;
+                }
+            }
+            for (int i = 0; i < e.getArity(); i++) {
+                todo.addElement(e.getChild(i));
+            }
+        }
+
+        int used[] = new int[n];
+        for (int k = 0, j = 0; k < seen.length; k++) {
+            if (seen[k]) used[j++] = k;
+        }
+        return used;
+    }
+
+    /**
+     * Return the columns and shifts of the terminals of a genome,
+     * rebuilding them when the genome changes or the series have
+     * outgrown their arrays.
+     */
+    private Layout layout(Genome g) throws Exception {
+        Layout l = layout;
+        if (l == null || l.genome != g || 
+            l.target != data.getColumn(target)) {
+            l = new Layout(g, data, target);
+            layout = l;
+        }
+        return l;
+    }
+
+    /**
+     * Where each terminal of a genome reads from: the column of its
+     * series, shifted back by its lag.
+     */
+    private static final class Layout {
+        final Genome genome;
+        final double target[];  // target column, to detect regrowth
+        final double cols[][];  // column of each terminal
+        final int    offsets[]; // minus the lag of each terminal
+        final int    maxLag;
+
+        Layout(Genome g, TimeSeries data, int target) throws Exception {
+            int nt = g.getNumTerminals();
+            genome = g;
+            this.target = data.getColumn(target);
+            cols = new double[nt][];
+            offsets = new int[nt];
+            int max = 0;
+
+            for (int k = 0; k < nt; k++) {
+                if (g.getTerminal(k) == Genome.CONSTANT) {
+                    continue;
+                }
+                String name = g.isTimeSeries() 
+                    ? g.getSeriesName(g.getSeries(k)) : g.getTerminalName(k);
+                int s = data.getIndex(name);
+                if (s < 0) {
+                    throw new Exception("No series named "+name);
+                }
+                cols[k] = data.getColumn(s);
+                offsets[k] = -g.getLag(k);
+                max = Math.max(max, g.getLag(k));
+            }
+            maxLag = max;
+        }
+    }
+
+    /**
+     * Compiled form of an individual and its score so far: the metric
+     * accumulator over time steps start to end.  Replaced, never
+     * modified, since it is shared with replicas.
+     */
+    private static final class State {
+        final Program           program;  // null if it cannot be compiled
+        final FitnessMetric     metric;   // metric acc was made by
+        final int               penalty;  // penalty mode when scored
+        final double            invalid;  // invalid value when scored
+        final int               start, end;
+        final MetricAccumulator acc;      // null if the individual failed
+
+        State(Program program, FitnessMetric metric, int penalty,
+              double invalid, int start, int end, MetricAccumulator acc) {
+            this.program = program;
+            this.metric = metric;
+            this.penalty = penalty;
+            this.invalid = invalid;
+            this.start = start;
+            this.end = end;
+            this.acc = acc;
+        }
+    }
+}
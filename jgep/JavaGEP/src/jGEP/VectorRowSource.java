@@ -0,0 +1,63 @@
+/** LANL:license
+ * -------------------------------------------------------------------------
+ * This SOFTWARE has been authored by an employee or employees of the
+ * University of California, operator of the Los Alamos National Laboratory
+ * under Contract No. W-7405-ENG-36 with the U.S. Department of Energy.
+ * The U.S. Government has rights to use, reproduce, and distribute this
+ * SOFTWARE.  The public may copy, distribute, prepare derivative works and
+ * publicly display this SOFTWARE without charge, provided that this Notice
+ * and any statement of authorship are reproduced on all copies.  Neither
+ * the Government nor the University makes any warranty, express or implied,
+ * or assumes any liability or responsibility for the use of this SOFTWARE.
+ * If SOFTWARE is modified to produce derivative works, such modified
+ * SOFTWARE should be clearly marked, so as not to confuse it with the
+ * version available from LANL.
+ * -------------------------------------------------------------------------
+ * LANL:license
+ * -------------------------------------------------------------------------
+ */
+package jGEP;
+
+import java.util.Vector;
+
+/**
+ * Row source backed by an in-memory vector of test cases.  Mostly useful
+ * for driving a StreamingFitness with data that already fits in memory,
+ * for example when comparing it against a plain Fitness.
+ *
+ * @author    Matthew Sottile
+ * @version   1.0
+ */
+public class VectorRowSource implements RowSource {
+    private Vector rows; // the test cases
+    private int    pos;  // index of the next row to hand out
+
+    /**
+     * Constructor.
+     *
+     * @param  rows   Vector of hashtables, one per test case.
+     */
+    public VectorRowSource(Vector rows) {
+        this.rows = rows;
+        pos = 0;
+    }
+
+    public Vector nextBlock(int maxRows) {
+        if (pos >= rows.size()) {
+            return null;
+        }
+
+        int end = Math.min(rows.size(), pos + maxRows);
+        Vector block = new Vector(end - pos);
+        for (int i = pos; i < end; i++) {
+            block.addElement(rows.elementAt(i));
+        }
+        pos = end;
+
+        return block;
+    }
+
+    public void rewind() {
+        pos = 0;
+    }
+}
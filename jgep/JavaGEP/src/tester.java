@@ -101,6 +101,8 @@ public class tester {
         gops.setPISTrans(0.05);
         gops.setPMutate(0.4);
         gops.setPRISTrans(0.03);        
+        OperatorPipeline pipeline = 
+            OperatorPipeline.standard(gops, r.nextLong(), null);
 
         boolean keepGoing = true;
         
@@ -140,69 +142,14 @@ public class tester {
             individuals = p.getIndividuals();
 
             /**
-             * step 6 : genetic operators
+             * step 6 : genetic operators, applied stage by stage to the
+             *          whole generation.  index 0 is the best
+             *          individual, left alone so it carries across
+             *          generations in case none of the others are any
+             *          better.
              */
-            for (int i = 1; i < popsize; i++) {
-                double draw;
-                ind = (Individual)individuals.elementAt(i);
+            pipeline.apply(individuals, 1);
 
-                //
-                // mutation
-                //
-                draw = r.nextDouble();
-                if (draw < gops.getPMutate()) {
-                    String newChromosome = 
-                        gops.mutate(ind.getChromosome(),1);
-                    ind.setChromosome(newChromosome);
-                }
-
-                //
-                // crossover
-                //
-                draw = r.nextDouble();
-                if (draw < gops.getCrossoverRate()) {
-                    String chromosomes[] = new String[2];
-                    int which = r.nextInt(2);
-
-                    //
-                    // crossover requires another individual --
-                    // pick another other than the one we're dealing with
-                    // right now.  also leave index 0 alone - that's the
-                    // best individual, and we want them to carry across
-                    // generations in case none of the others are any better
-                    //
-                    int otherIdx = r.nextInt(popsize);
-                    while (otherIdx == i || otherIdx == 0) {
-                        otherIdx = r.nextInt(popsize);
-                    }
-                    
-                    Individual otherind = 
-                        (Individual)individuals.elementAt(otherIdx);
-
-                    chromosomes[0] = ind.getChromosome();
-                    chromosomes[1] = otherind.getChromosome();
-
-                    switch (which) {
-                    case 0: // 1pt
-                        chromosomes = 
-                            gops.OnePointRecombination(chromosomes);
-                        break;
-                    case 1: // 2pt
-                        chromosomes = 
-                            gops.TwoPointRecombination(chromosomes);
-                        break;
-                    case 2: // gene
-                        System.err.println("Gene recombination not done.");
-                        break;
-                    default:
-                        System.err.println("Not supposed to happen.");
-                    }
-
-                    ind.setChromosome(chromosomes[0]);
-                    otherind.setChromosome(chromosomes[1]);
-                }
-            }
-            
             /**
              * Goto step 4 if fitness not converged to acceptable region
              */